@@ -0,0 +1,131 @@
+package org.sim0mq.federatestarter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * AdoptedProcess is the process of a federate that was started by an earlier run of the FederateStarter, and that was adopted
+ * from the FederateJournal after a restart. The process is not a child of this JVM, so it can be watched and destroyed through
+ * its ProcessHandle, but its exit code cannot be known, and its pipes are gone; the exit value of an adopted process is
+ * always -1.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class AdoptedProcess extends Process
+{
+    /** the exit value of an adopted process, of which the exit code cannot be known. */
+    public static final int UNKNOWN_EXIT = -1;
+
+    /** the handle of the process. */
+    private final ProcessHandle handle;
+
+    /** the future that completes with this process when it has exited. */
+    private final CompletableFuture<Process> exit;
+
+    /**
+     * @param handle the handle of the running process
+     */
+    public AdoptedProcess(final ProcessHandle handle)
+    {
+        this.handle = handle;
+        this.exit = handle.onExit().thenApply(h -> this);
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream()
+    {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException
+    {
+        try
+        {
+            this.exit.get();
+        }
+        catch (ExecutionException exception)
+        {
+            // onExit of a ProcessHandle only completes normally
+        }
+        return UNKNOWN_EXIT;
+    }
+
+    @Override
+    public int exitValue()
+    {
+        if (this.handle.isAlive())
+        {
+            throw new IllegalThreadStateException("process " + this.handle.pid() + " has not exited");
+        }
+        return UNKNOWN_EXIT;
+    }
+
+    @Override
+    public boolean isAlive()
+    {
+        return this.handle.isAlive();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit()
+    {
+        // a copy, so a caller that completes the future, e.g. with completeOnTimeout, does not complete the exit
+        return this.exit.copy();
+    }
+
+    @Override
+    public void destroy()
+    {
+        this.handle.destroy();
+    }
+
+    @Override
+    public Process destroyForcibly()
+    {
+        this.handle.destroyForcibly();
+        return this;
+    }
+
+    @Override
+    public boolean supportsNormalTermination()
+    {
+        return this.handle.supportsNormalTermination();
+    }
+
+    @Override
+    public long pid()
+    {
+        return this.handle.pid();
+    }
+
+    @Override
+    public ProcessHandle toHandle()
+    {
+        return this.handle;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AdoptedProcess [pid=" + this.handle.pid() + ", alive=" + isAlive() + "]";
+    }
+
+}
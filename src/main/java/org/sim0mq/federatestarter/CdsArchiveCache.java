@@ -0,0 +1,268 @@
+package org.sim0mq.federatestarter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CdsArchiveCache keeps a dynamic AppCDS archive per configuration of a Java federate, so later launches of the same
+ * configuration map the classes of the model from the archive instead of loading and verifying them again. A configuration is
+ * the java executable, the arguments before the model path, and the model path. The first launch of a configuration records
+ * the archive with <code>-XX:ArchiveClassesAtExit</code>; the JVM writes it when it exits, after which it is moved into the
+ * cache. Later launches get <code>-XX:SharedArchiveFile</code>. Only one launch per configuration records at a time; the
+ * launches during a recording run without archive.
+ * <p>
+ * Every archive has a stamp with the size and modification time of the java executable and of the files in the model path.
+ * Relative entries of the model path are resolved against the working directory of the federate, as the launched JVM does, so
+ * the stamp and the key describe the jars that the JVM actually loads. When the model jar or the JVM changes, the stamp no
+ * longer matches, and the archive is recorded again. The options are preceded by <code>-XX:+IgnoreUnrecognizedVMOptions</code>,
+ * so a JVM that does not support dynamic archives (before Java 13) still starts. A JVM that cannot use an archive, e.g.
+ * because it is corrupt, runs without it.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CdsArchiveCache
+{
+    /** the directory with the archives and their stamps. */
+    private final Path directory;
+
+    /** the stamps of the archives that are being recorded, per key. */
+    private final Map<String, String> recordingMap = new ConcurrentHashMap<>();
+
+    /** the option that records an archive. */
+    private static final String RECORD = "-XX:ArchiveClassesAtExit=";
+
+    /** the option that uses an archive. */
+    private static final String SHARE = "-XX:SharedArchiveFile=";
+
+    /** the option that lets a JVM without dynamic archives ignore the options. */
+    private static final String IGNORE = "-XX:+IgnoreUnrecognizedVMOptions";
+
+    /**
+     * Create the cache.
+     * @param directory the node-local directory with the archives; it is created when it does not exist
+     */
+    public CdsArchiveCache(final Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Return the JVM options for a launch: use the archive of the configuration when it is valid, record it when it is missing
+     * or out of date and no other launch is recording it, and no options otherwise, or when the software is not java.
+     * @param java the path of the executable
+     * @param argsBefore the arguments before the model path
+     * @param modelPath the model path
+     * @param workingDirectory the working directory of the federate, against which relative model path entries are resolved
+     * @return the JVM options to insert after the executable; empty when no archive is used or recorded
+     */
+    public List<String> options(final String java, final String argsBefore, final String modelPath,
+            final Path workingDirectory)
+    {
+        List<String> options = new ArrayList<>();
+        String name = Paths.get(java).getFileName().toString().toLowerCase();
+        if (!name.equals("java") && !name.equals("java.exe") && !name.equals("javaw.exe"))
+        {
+            return options;
+        }
+        List<String> entries = resolve(modelPath, workingDirectory);
+        String key = key(java, argsBefore, entries);
+        String stamp = stamp(java, entries);
+        Path archive = this.directory.resolve(key + ".jsa");
+        Path stampFile = this.directory.resolve(key + ".stamp");
+        try
+        {
+            if (Files.isRegularFile(archive) && Files.isReadable(stampFile)
+                    && Files.readString(stampFile, StandardCharsets.UTF_8).equals(stamp))
+            {
+                options.add(IGNORE);
+                options.add(SHARE + archive);
+                return options;
+            }
+            if (this.recordingMap.putIfAbsent(key, stamp) != null)
+            {
+                return options;
+            }
+            Files.createDirectories(this.directory);
+            Files.deleteIfExists(stampFile);
+            Files.deleteIfExists(archive);
+            Files.deleteIfExists(recording(key));
+            System.out.println("Recording CDS archive " + archive + " for " + modelPath);
+            options.add(IGNORE);
+            options.add(RECORD + recording(key));
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not use CDS archive " + archive + ": " + exception.getMessage());
+            this.recordingMap.remove(key);
+        }
+        return options;
+    }
+
+    /**
+     * Report the process that was launched with the options; when it records an archive, the archive is moved into the cache
+     * when the process exits.
+     * @param options the options that were returned by {@link #options}
+     * @param process the launched process, or null when the launch failed
+     */
+    public void launched(final List<String> options, final Process process)
+    {
+        for (String option : options)
+        {
+            if (option.startsWith(RECORD))
+            {
+                String file = Paths.get(option.substring(RECORD.length())).getFileName().toString();
+                String key = file.substring(0, file.indexOf('.'));
+                if (process == null)
+                {
+                    this.recordingMap.remove(key);
+                }
+                else
+                {
+                    process.onExit().thenRun(() -> commit(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a recorded archive into the cache and write its stamp, or give up the recording when the JVM wrote no archive,
+     * e.g. because it was killed.
+     * @param key the key of the configuration
+     */
+    private void commit(final String key)
+    {
+        String stamp = this.recordingMap.get(key);
+        try
+        {
+            Path recording = recording(key);
+            if (Files.isRegularFile(recording) && Files.size(recording) > 0)
+            {
+                // the stamp is written first, so a launch that finds the archive also finds its stamp
+                Path archive = this.directory.resolve(key + ".jsa");
+                Files.writeString(this.directory.resolve(key + ".stamp"), stamp, StandardCharsets.UTF_8);
+                Files.move(recording, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("CDS archive " + archive + " recorded");
+            }
+            else
+            {
+                Files.deleteIfExists(recording);
+            }
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not store CDS archive for " + key + ": " + exception.getMessage());
+        }
+        finally
+        {
+            this.recordingMap.remove(key);
+        }
+    }
+
+    /**
+     * @param key the key of the configuration
+     * @return the file to which the JVM writes the archive that is being recorded
+     */
+    private Path recording(final String key)
+    {
+        return this.directory.resolve(key + ".jsa.tmp");
+    }
+
+    /**
+     * Resolve the entries of a model path against the working directory of the federate.
+     * @param modelPath the model path, which can be a jar or a class path
+     * @param workingDirectory the working directory of the federate
+     * @return the absolute, normalized entries of the model path; an entry that is not a valid path is kept as it is
+     */
+    private static List<String> resolve(final String modelPath, final Path workingDirectory)
+    {
+        List<String> entries = new ArrayList<>();
+        for (String entry : modelPath.split(File.pathSeparator))
+        {
+            try
+            {
+                entries.add(workingDirectory.resolve(entry.trim()).toAbsolutePath().normalize().toString());
+            }
+            catch (InvalidPathException exception)
+            {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Return the key of a configuration: a hash of the executable, the arguments before the model path, and the resolved
+     * entries of the model path.
+     * @param java the path of the executable
+     * @param argsBefore the arguments before the model path
+     * @param entries the resolved entries of the model path
+     * @return the key, usable as a file name
+     */
+    private static String key(final String java, final String argsBefore, final List<String> entries)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest((java + "\n" + argsBefore + "\n" + entries).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 16; i++)
+            {
+                key.append(String.format("%02x", hash[i]));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // every JVM supports SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Return the stamp of a configuration: the size and modification time of the java executable and of the files in the
+     * model path. Entries that do not exist, e.g. a main class, are stamped as missing.
+     * @param java the path of the executable
+     * @param modelPath the resolved entries of the model path
+     * @return the stamp
+     */
+    private static String stamp(final String java, final List<String> modelPath)
+    {
+        StringBuilder stamp = new StringBuilder();
+        List<String> entries = new ArrayList<>();
+        entries.add(java);
+        entries.addAll(modelPath);
+        for (String entry : entries)
+        {
+            stamp.append(entry).append('\t');
+            try
+            {
+                BasicFileAttributes attrs = Files.readAttributes(Paths.get(entry.trim()), BasicFileAttributes.class);
+                stamp.append(attrs.size()).append('\t').append(attrs.lastModifiedTime().toMillis());
+            }
+            catch (IOException | RuntimeException exception)
+            {
+                stamp.append("missing");
+            }
+            stamp.append('\n');
+        }
+        return stamp.toString();
+    }
+
+}
@@ -0,0 +1,305 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * CorePlacement assigns a dedicated set of CPU cores to each federate that the FederateStarter starts, and keeps track of the
+ * occupied cores. The cores of a federate are taken from a single NUMA node, where the node with the most free cores is chosen,
+ * so federates are spread over the sockets. The command of the federate is wrapped with <code>taskset</code> or
+ * <code>numactl</code> to pin the process to its cores; numactl also binds the memory of the process to the NUMA node. The
+ * topology is read from /sys/devices/system/node, and limited to the cores that the FederateStarter itself may use. When the
+ * topology cannot be read, all available processors are assumed to be on one node.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class CorePlacement
+{
+    /** the launcher that pins the process: "taskset" or "numactl". */
+    private final String launcher;
+
+    /** the number of cores per federate. */
+    private final int coresPerFederate;
+
+    /** the cores per NUMA node. */
+    private final Map<Integer, BitSet> nodeCores = new TreeMap<>();
+
+    /** the occupied cores. */
+    private final BitSet occupied = new BitSet();
+
+    /**
+     * Create a core placement policy, and read the NUMA topology of the node.
+     * @param launcher the launcher that pins the process: "taskset" or "numactl"
+     * @param coresPerFederate the number of cores per federate
+     */
+    public CorePlacement(final String launcher, final int coresPerFederate)
+    {
+        this(launcher, coresPerFederate, Paths.get("/proc"), Paths.get("/sys"));
+    }
+
+    /**
+     * Create a core placement policy, and read the NUMA topology of the node from /proc and /sys file systems that are mounted
+     * at other roots, e.g., the file systems of the host that are mounted in a container.
+     * @param launcher the launcher that pins the process: "taskset" or "numactl"
+     * @param coresPerFederate the number of cores per federate
+     * @param proc the root of the /proc file system
+     * @param sys the root of the /sys file system
+     */
+    public CorePlacement(final String launcher, final int coresPerFederate, final Path proc, final Path sys)
+    {
+        Throw.whenNull(launcher, "launcher cannot be null");
+        Throw.whenNull(proc, "proc cannot be null");
+        Throw.whenNull(sys, "sys cannot be null");
+        Throw.when(!launcher.equals("taskset") && !launcher.equals("numactl"), IllegalArgumentException.class,
+                "launcher should be 'taskset' or 'numactl', not " + launcher);
+        Throw.when(coresPerFederate < 1, IllegalArgumentException.class, "coresPerFederate should be at least 1");
+        this.launcher = launcher;
+        this.coresPerFederate = coresPerFederate;
+        readTopology(proc, sys);
+    }
+
+    /**
+     * Read the cores per NUMA node from /sys/devices/system/node/node*&#47;cpulist, limited to the cores in the
+     * Cpus_allowed_list of /proc/self/status.
+     * @param proc the root of the /proc file system
+     * @param sys the root of the /sys file system
+     */
+    private void readTopology(final Path proc, final Path sys)
+    {
+        BitSet allowed = null;
+        try
+        {
+            for (String line : Files.readAllLines(proc.resolve("self").resolve("status")))
+            {
+                if (line.startsWith("Cpus_allowed_list:"))
+                {
+                    allowed = parseCpuList(line.substring(18));
+                }
+            }
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            // not on Linux
+        }
+
+        Path nodes = sys.resolve("devices").resolve("system").resolve("node");
+        if (Files.isDirectory(nodes))
+        {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(nodes, "node[0-9]*"))
+            {
+                for (Path node : stream)
+                {
+                    Path cpuList = node.resolve("cpulist");
+                    if (Files.isReadable(cpuList))
+                    {
+                        BitSet cores = parseCpuList(Files.readAllLines(cpuList).get(0));
+                        if (allowed != null)
+                        {
+                            cores.and(allowed);
+                        }
+                        if (!cores.isEmpty())
+                        {
+                            this.nodeCores.put(Integer.parseInt(node.getFileName().toString().substring(4)), cores);
+                        }
+                    }
+                }
+            }
+            catch (IOException | RuntimeException exception)
+            {
+                this.nodeCores.clear();
+            }
+        }
+
+        if (this.nodeCores.isEmpty())
+        {
+            BitSet cores = allowed;
+            if (cores == null || cores.isEmpty())
+            {
+                cores = new BitSet();
+                cores.set(0, Runtime.getRuntime().availableProcessors());
+            }
+            this.nodeCores.put(0, cores);
+        }
+    }
+
+    /**
+     * Parse a Linux CPU list such as "0-3,8-11,16".
+     * @param cpuList the CPU list
+     * @return the cores in the list
+     */
+    static BitSet parseCpuList(final String cpuList)
+    {
+        BitSet cores = new BitSet();
+        for (String part : cpuList.trim().split(","))
+        {
+            if (part.isEmpty())
+            {
+                continue;
+            }
+            int dash = part.indexOf('-');
+            if (dash < 0)
+            {
+                cores.set(Integer.parseInt(part.trim()));
+            }
+            else
+            {
+                cores.set(Integer.parseInt(part.substring(0, dash).trim()),
+                        Integer.parseInt(part.substring(dash + 1).trim()) + 1);
+            }
+        }
+        return cores;
+    }
+
+    /**
+     * Format cores as a Linux CPU list such as "0-3,8".
+     * @param cores the cores
+     * @return the CPU list
+     */
+    static String formatCpuList(final BitSet cores)
+    {
+        StringBuilder cpuList = new StringBuilder();
+        int start = cores.nextSetBit(0);
+        while (start >= 0)
+        {
+            int end = cores.nextClearBit(start) - 1;
+            cpuList.append(cpuList.length() == 0 ? "" : ",").append(start);
+            if (end > start)
+            {
+                cpuList.append("-").append(end);
+            }
+            start = cores.nextSetBit(end + 1);
+        }
+        return cpuList.toString();
+    }
+
+    /**
+     * Return whether a federate can get a dedicated set of cores.
+     * @return whether there is a NUMA node with enough free cores
+     */
+    public synchronized boolean hasFreeCores()
+    {
+        for (BitSet cores : this.nodeCores.values())
+        {
+            if (freeCores(cores).cardinality() >= this.coresPerFederate)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Allocate a dedicated set of cores on the NUMA node with the most free cores.
+     * @return the allocated cores, or null when no NUMA node has enough free cores
+     */
+    public synchronized BitSet allocate()
+    {
+        BitSet best = null;
+        for (BitSet cores : this.nodeCores.values())
+        {
+            BitSet free = freeCores(cores);
+            if (free.cardinality() >= this.coresPerFederate && (best == null || free.cardinality() > best.cardinality()))
+            {
+                best = free;
+            }
+        }
+        if (best == null)
+        {
+            return null;
+        }
+        BitSet allocated = new BitSet();
+        for (int core = best.nextSetBit(0); allocated.cardinality() < this.coresPerFederate; core = best.nextSetBit(core + 1))
+        {
+            allocated.set(core);
+        }
+        this.occupied.or(allocated);
+        return allocated;
+    }
+
+    /**
+     * Mark cores as allocated without choosing them, for a federate that was pinned by an earlier run of the FederateStarter
+     * and has been adopted.
+     * @param cores the cores of the federate
+     */
+    public synchronized void occupy(final BitSet cores)
+    {
+        this.occupied.or(cores);
+    }
+
+    /**
+     * Release the cores of a federate, so they can be allocated again.
+     * @param cores the cores to release
+     */
+    public synchronized void release(final BitSet cores)
+    {
+        this.occupied.andNot(cores);
+    }
+
+    /**
+     * Wrap the command of a federate with the launcher that pins the process to its cores.
+     * @param command the command of the federate
+     * @param cores the allocated cores
+     * @return the wrapped command
+     */
+    public List<String> wrap(final List<String> command, final BitSet cores)
+    {
+        List<String> wrapped = new ArrayList<>();
+        if (this.launcher.equals("numactl"))
+        {
+            wrapped.add("numactl");
+            wrapped.add("--physcpubind=" + formatCpuList(cores));
+            wrapped.add("--membind=" + getNode(cores));
+        }
+        else
+        {
+            wrapped.add("taskset");
+            wrapped.add("-c");
+            wrapped.add(formatCpuList(cores));
+        }
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * Return the NUMA node of the cores.
+     * @param cores the cores, which are all on one NUMA node
+     * @return the NUMA node of the cores
+     */
+    private int getNode(final BitSet cores)
+    {
+        for (Map.Entry<Integer, BitSet> entry : this.nodeCores.entrySet())
+        {
+            if (entry.getValue().intersects(cores))
+            {
+                return entry.getKey();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return the free cores of a NUMA node.
+     * @param cores the cores of the NUMA node
+     * @return the cores of the NUMA node that are not occupied
+     */
+    private BitSet freeCores(final BitSet cores)
+    {
+        BitSet free = (BitSet) cores.clone();
+        free.andNot(this.occupied);
+        return free;
+    }
+
+}
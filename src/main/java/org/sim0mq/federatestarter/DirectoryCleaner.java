@@ -0,0 +1,397 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * DirectoryCleaner deletes the working directories and the redirected output of federates in the background, so the
+ * FederateStarter does not wait for disk I/O before it replies to the Federation Manager. Directory trees are deleted
+ * recursively. The deletes are carried out in batches by a single daemon thread, and are limited to a maximum number of files
+ * per second, so a large cleanup does not starve the running federates of disk I/O.
+ * <p>
+ * The working directories that have to be deleted are registered in a journal when the federate starts, and removed from the
+ * journal when they have been deleted. When the FederateStarter stopped before the directories were deleted, e.g. because it
+ * crashed, the directories in the journal are orphans, and can be reclaimed when the FederateStarter starts again. Since a
+ * reclaim deletes directory trees that are named in a file, only directories under a configured root that did not exist before
+ * the FederateStarter created them are journaled, only the paths under the root are reclaimed, and the journal is only read
+ * when it is a regular file that is owned by the user of the FederateStarter.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class DirectoryCleaner
+{
+    /** the journal with the registered directories, or null when no journal is kept. */
+    private final Path journal;
+
+    /** the directory under which working directories are journaled and reclaimed, or null when none are. */
+    private final Path root;
+
+    /** the maximum number of files to delete per second, or 0 for no maximum. */
+    private final int rate;
+
+    /** the paths that wait to be deleted. */
+    private final BlockingQueue<Path> queue = new LinkedBlockingQueue<>();
+
+    /** the registered directories that have not been deleted yet. */
+    private final Set<Path> registered = new LinkedHashSet<>();
+
+    /** the number of lines in the journal, to decide when to compact it. */
+    private int journalLines = 0;
+
+    /** the start of the current one-second window of the rate limit, in ms. */
+    private long windowStart = 0L;
+
+    /** the number of files deleted in the current window. */
+    private int windowDeletes = 0;
+
+    /** the thread that deletes the paths. */
+    private final Thread thread;
+
+    /** the maximum number of paths that is deleted in one batch. */
+    private static final int BATCH_SIZE = 100;
+
+    /** the number of journal lines above which the journal is rewritten with only the registered directories. */
+    private static final int MAX_JOURNAL_LINES = 1000;
+
+    /**
+     * Create a cleaner, and start its thread.
+     * @param journal the journal with the registered directories, or null when no journal is kept
+     * @param root the directory under which working directories are journaled and reclaimed, or null when none are
+     * @param rate the maximum number of files to delete per second, or 0 for no maximum
+     */
+    public DirectoryCleaner(final Path journal, final Path root, final int rate)
+    {
+        this.journal = journal;
+        this.root = root == null ? null : root.toAbsolutePath().normalize();
+        this.rate = rate;
+        this.thread = new Thread(this::run, "DirectoryCleaner");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Register a working directory that the FederateStarter is about to create, and that has to be deleted later, so it can be
+     * reclaimed when the FederateStarter stops before it has been deleted. The directory is only journaled when it lies under
+     * the root and does not exist yet, so a directory that the FederateStarter did not create is never reclaimed.
+     * @param directory the working directory
+     */
+    public synchronized void register(final Path directory)
+    {
+        Path normalized = directory.toAbsolutePath().normalize();
+        if (isUnderRoot(normalized) && !Files.exists(normalized) && this.registered.add(normalized))
+        {
+            appendJournal(List.of("+" + normalized));
+        }
+    }
+
+    /**
+     * Keep a directory that an earlier run of the FederateStarter registered, e.g. the working directory of a federate that
+     * has been adopted, so it is not reclaimed as an orphan, and stays in the journal till it has been deleted.
+     * @param directory the working directory
+     */
+    public synchronized void keep(final Path directory)
+    {
+        Path normalized = directory.toAbsolutePath().normalize();
+        if (isUnderRoot(normalized))
+        {
+            this.registered.add(normalized);
+        }
+    }
+
+    /**
+     * Queue a file or directory tree for deletion. The call returns immediately.
+     * @param path the file or directory to delete
+     */
+    public void delete(final Path path)
+    {
+        Path normalized = path.toAbsolutePath().normalize();
+        if (isProtected(normalized))
+        {
+            System.err.println("Refusing to delete " + normalized + " -- it contains the home or working directory");
+            return;
+        }
+        this.queue.add(normalized);
+    }
+
+    /**
+     * Queue the directories in the journal that were registered by an earlier run of the FederateStarter, but were never
+     * deleted.
+     * @return the number of orphaned directories that were queued
+     */
+    public synchronized int reclaimOrphans()
+    {
+        if (this.journal == null || !Files.isReadable(this.journal))
+        {
+            return 0;
+        }
+        if (this.root == null)
+        {
+            System.err.println("Not reclaiming the orphans in cleanup journal " + this.journal + " -- no cleanup root");
+            return 0;
+        }
+        Set<Path> orphans = new LinkedHashSet<>();
+        try
+        {
+            if (!Files.isRegularFile(this.journal, LinkOption.NOFOLLOW_LINKS))
+            {
+                System.err.println("Not reclaiming the orphans in cleanup journal " + this.journal + " -- not a regular file");
+                return 0;
+            }
+            String owner = Files.getOwner(this.journal, LinkOption.NOFOLLOW_LINKS).getName();
+            if (!owner.equals(System.getProperty("user.name")))
+            {
+                System.err.println("Not reclaiming the orphans in cleanup journal " + this.journal + " -- owned by " + owner
+                        + ", not by " + System.getProperty("user.name"));
+                return 0;
+            }
+            for (String line : Files.readAllLines(this.journal, StandardCharsets.UTF_8))
+            {
+                if (line.startsWith("+"))
+                {
+                    orphans.add(Paths.get(line.substring(1)));
+                }
+                else if (line.startsWith("-"))
+                {
+                    orphans.remove(Paths.get(line.substring(1)));
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not read cleanup journal " + this.journal + ": " + exception.getMessage());
+            return 0;
+        }
+        int count = 0;
+        for (Path orphan : orphans)
+        {
+            if (isUnderRoot(orphan) && Files.exists(orphan) && !this.registered.contains(orphan))
+            {
+                this.registered.add(orphan);
+                delete(orphan);
+                count++;
+            }
+        }
+        compactJournal();
+        return count;
+    }
+
+    /**
+     * Stop the cleaner thread; paths that are still queued are not deleted, but remain in the journal.
+     */
+    public void shutdown()
+    {
+        this.thread.interrupt();
+    }
+
+    /**
+     * Take the queued paths in batches, and delete them.
+     */
+    private void run()
+    {
+        List<Path> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                batch.add(this.queue.take());
+                this.queue.drainTo(batch, BATCH_SIZE - 1);
+                List<String> deleted = new ArrayList<>();
+                for (Path path : batch)
+                {
+                    deleteTree(path);
+                    deleted.add("-" + path);
+                }
+                synchronized (this)
+                {
+                    if (this.registered.removeAll(batch))
+                    {
+                        appendJournal(deleted);
+                    }
+                    if (this.journalLines > MAX_JOURNAL_LINES)
+                    {
+                        compactJournal();
+                    }
+                }
+                batch.clear();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Delete a file or a directory tree, depth first.
+     * @param path the file or directory to delete
+     * @throws InterruptedException when the thread is interrupted while waiting for the rate limit
+     */
+    private void deleteTree(final Path path) throws InterruptedException
+    {
+        try
+        {
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+                {
+                    throttle();
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exception) throws IOException
+                {
+                    if (exception instanceof NoSuchFileException)
+                    {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exception;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exception) throws IOException
+                {
+                    if (exception != null)
+                    {
+                        throw exception;
+                    }
+                    throttle();
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException exception)
+        {
+            if (exception.getCause() instanceof InterruptedException)
+            {
+                throw (InterruptedException) exception.getCause();
+            }
+            System.err.println("Could not delete " + path + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Wait when the maximum number of deletes in the current second has been reached.
+     * @throws IOException wrapping an InterruptedException when the thread is interrupted while waiting
+     */
+    private void throttle() throws IOException
+    {
+        if (this.rate <= 0)
+        {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - this.windowStart >= 1000L)
+        {
+            this.windowStart = now;
+            this.windowDeletes = 0;
+        }
+        if (++this.windowDeletes > this.rate)
+        {
+            try
+            {
+                Thread.sleep(this.windowStart + 1000L - now);
+            }
+            catch (InterruptedException exception)
+            {
+                throw new IOException(exception);
+            }
+            this.windowStart = System.currentTimeMillis();
+            this.windowDeletes = 1;
+        }
+    }
+
+    /**
+     * Append lines to the journal.
+     * @param lines the lines to append
+     */
+    private void appendJournal(final List<String> lines)
+    {
+        if (this.journal == null)
+        {
+            return;
+        }
+        try
+        {
+            Files.write(this.journal, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.journalLines += lines.size();
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not write cleanup journal " + this.journal + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the registered directories that have not been deleted yet.
+     */
+    private void compactJournal()
+    {
+        if (this.journal == null)
+        {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        for (Path directory : this.registered)
+        {
+            lines.add("+" + directory);
+        }
+        try
+        {
+            Path temp = this.journal.resolveSibling(this.journal.getFileName() + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, this.journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.journalLines = lines.size();
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not compact cleanup journal " + this.journal + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Return whether a path lies under the root, and is not the root itself.
+     * @param path the absolute, normalized path
+     * @return whether the path can be journaled and reclaimed
+     */
+    private boolean isUnderRoot(final Path path)
+    {
+        return this.root != null && path.startsWith(this.root) && !path.equals(this.root);
+    }
+
+    /**
+     * Return whether a path must never be deleted recursively: the root of a file system, or a directory that contains the
+     * home directory of the user or the working directory of the FederateStarter.
+     * @param path the absolute, normalized path
+     * @return whether the path is protected
+     */
+    private static boolean isProtected(final Path path)
+    {
+        return path.getParent() == null || Paths.get(System.getProperty("user.home")).toAbsolutePath().startsWith(path)
+                || Paths.get("").toAbsolutePath().startsWith(path);
+    }
+
+}
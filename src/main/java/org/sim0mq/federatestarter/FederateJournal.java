@@ -0,0 +1,475 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+
+/**
+ * FederateJournal keeps the administration of the running federates in a compact append-only journal in a memory-mapped file,
+ * so a FederateStarter that restarts can adopt the federates that are still running, instead of leaving them as orphans that
+ * hold their ports. A record is written when a federate starts, when its process becomes idle for reuse, and when it ends. The
+ * records are written to the page cache through the mapping, without a system call per record, and survive a crash or restart
+ * of the JVM; they are not forced to disk, so a crash of the operating system, which also ends the federates, can lose them.
+ * <p>
+ * A record consists of its length, a type, and a sequence number that identifies the start of a federate. A start record also
+ * contains the pid and start time of the process, the port, the identity of the Federation Manager, the model id, the FM.1
+ * message, and the cores to which the process is pinned. The length of a record is written after its contents, so a record
+ * that was torn by a crash ends the journal. When the journal is opened, the records of the federates that have not ended are
+ * read, and the journal is compacted to these records; it is compacted again, and grown when needed, when it is full.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FederateJournal
+{
+    /** the journal file. */
+    private final Path file;
+
+    /** the mapped journal. */
+    private MappedByteBuffer buffer;
+
+    /** the position where the next record is written. */
+    private int position = 0;
+
+    /** the next sequence number. */
+    private long nextSequence = 1L;
+
+    /** the sequence number of the running federates, per instance id. */
+    private final Map<Object, Long> sequenceMap = new HashMap<>();
+
+    /** the start records of the running federates, per sequence number, to compact the journal. */
+    private final Map<Long, byte[]> startRecords = new LinkedHashMap<>();
+
+    /** the sequence numbers of the federates whose process is idle. */
+    private final Set<Long> idleSequences = new LinkedHashSet<>();
+
+    /** the federates that were running according to the journal when it was opened. */
+    private final List<Entry> recovered = new ArrayList<>();
+
+    /** type of the record of a start. */
+    private static final byte START = 1;
+
+    /** type of the record of a process that became idle. */
+    private static final byte IDLE = 2;
+
+    /** type of the record of an end. */
+    private static final byte END = 3;
+
+    /** the minimum size of the mapped journal. */
+    private static final int MIN_SIZE = 1 << 20;
+
+    /**
+     * Open the journal, read the federates that were running, and compact the journal.
+     * @param file the journal file; it is created when it does not exist
+     * @throws IOException when the journal cannot be opened or mapped
+     */
+    public FederateJournal(final Path file) throws IOException
+    {
+        this.file = file;
+        if (Files.exists(file))
+        {
+            replay(Files.readAllBytes(file));
+        }
+        compact(0);
+    }
+
+    /**
+     * Return the federates that were running according to the journal when it was opened.
+     * @return the entries of the federates that did not end, in order of their start
+     */
+    public synchronized List<Entry> getRecovered()
+    {
+        return new ArrayList<>(this.recovered);
+    }
+
+    /**
+     * Write the start of a federate.
+     * @param instanceId the instance id of the federate
+     * @param pid the pid of the process
+     * @param port the port of the model
+     * @param identity the identity of the Federation Manager that started the federate
+     * @param modelId the id under which the model was started, when the process is reused, or null
+     * @param startFederateMessage the FM.1 message
+     * @param cores the cores to which the process is pinned, or null when it is not pinned
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public synchronized void started(final Object instanceId, final long pid, final int port, final String identity,
+            final Object modelId, final FM1StartFederateMessage startFederateMessage, final BitSet cores)
+    {
+        byte[] message;
+        try
+        {
+            message = startFederateMessage.createByteArray();
+        }
+        catch (Exception exception)
+        {
+            System.err.println("Could not journal the start of " + instanceId + ": " + exception.getMessage());
+            return;
+        }
+        long startInstant =
+                ProcessHandle.of(pid).flatMap(h -> h.info().startInstant()).map(i -> i.toEpochMilli()).orElse(-1L);
+        byte[] id = identity.getBytes(StandardCharsets.UTF_8);
+        byte[] model = (modelId == null ? "" : modelId.toString()).getBytes(StandardCharsets.UTF_8);
+        byte[] pinned = cores == null ? new byte[0] : cores.toByteArray();
+        long sequence = this.nextSequence++;
+        ByteBuffer record = ByteBuffer.allocate(
+                1 + 8 + 8 + 8 + 8 + 4 + 4 + id.length + 4 + model.length + 4 + message.length + 4 + pinned.length);
+        record.put(START).putLong(sequence).putLong(pid).putLong(startInstant).putLong(System.currentTimeMillis());
+        record.putInt(port).putInt(id.length).put(id).putInt(model.length).put(model).putInt(message.length).put(message);
+        record.putInt(pinned.length).put(pinned);
+        this.sequenceMap.put(instanceId, sequence);
+        this.startRecords.put(sequence, record.array());
+        append(record.array());
+    }
+
+    /**
+     * Write that the process of a federate became idle, waiting to be reused.
+     * @param instanceId the instance id of the federate
+     */
+    public synchronized void idle(final Object instanceId)
+    {
+        Long sequence = this.sequenceMap.get(instanceId);
+        if (sequence != null && this.idleSequences.add(sequence))
+        {
+            append(ByteBuffer.allocate(9).put(IDLE).putLong(sequence).array());
+        }
+    }
+
+    /**
+     * Write the end of a federate.
+     * @param instanceId the instance id of the federate
+     */
+    public synchronized void ended(final Object instanceId)
+    {
+        Long sequence = this.sequenceMap.remove(instanceId);
+        if (sequence != null)
+        {
+            this.startRecords.remove(sequence);
+            this.idleSequences.remove(sequence);
+            append(ByteBuffer.allocate(9).put(END).putLong(sequence).array());
+        }
+    }
+
+    /**
+     * Read the records of a journal, and keep the start records of the federates that did not end.
+     * @param bytes the contents of the journal
+     */
+    private void replay(final byte[] bytes)
+    {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        while (in.remaining() >= 4)
+        {
+            int length = in.getInt();
+            if (length < 9 || length > in.remaining())
+            {
+                break;
+            }
+            byte[] record = new byte[length];
+            in.get(record);
+            ByteBuffer r = ByteBuffer.wrap(record);
+            byte type = r.get();
+            long sequence = r.getLong();
+            this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+            if (type == START)
+            {
+                this.startRecords.put(sequence, record);
+            }
+            else if (type == IDLE)
+            {
+                this.idleSequences.add(sequence);
+            }
+            else if (type == END)
+            {
+                this.startRecords.remove(sequence);
+                this.idleSequences.remove(sequence);
+            }
+        }
+        for (Map.Entry<Long, byte[]> startRecord : this.startRecords.entrySet())
+        {
+            try
+            {
+                Entry entry = decode(startRecord.getValue(), this.idleSequences.contains(startRecord.getKey()));
+                this.recovered.add(entry);
+                this.sequenceMap.put(entry.getStartFederateMessage().getInstanceId(), startRecord.getKey());
+            }
+            catch (Exception exception)
+            {
+                System.err.println("Skipping unreadable record in federate journal " + this.file + ": " + exception);
+            }
+        }
+        this.startRecords.keySet().retainAll(this.sequenceMap.values());
+        this.idleSequences.retainAll(this.startRecords.keySet());
+    }
+
+    /**
+     * Decode a start record.
+     * @param record the record, without its length
+     * @param idle whether the process of the federate was idle
+     * @return the entry
+     * @throws Exception when the FM.1 message cannot be decoded
+     */
+    private static Entry decode(final byte[] record, final boolean idle) throws Exception
+    {
+        ByteBuffer r = ByteBuffer.wrap(record);
+        r.get();
+        r.getLong();
+        long pid = r.getLong();
+        long startInstant = r.getLong();
+        long startTime = r.getLong();
+        int port = r.getInt();
+        byte[] id = new byte[r.getInt()];
+        r.get(id);
+        byte[] model = new byte[r.getInt()];
+        r.get(model);
+        byte[] message = new byte[r.getInt()];
+        r.get(message);
+        // a journal written before the cores were journaled has no cores
+        byte[] pinned = new byte[r.remaining() >= 4 ? r.getInt() : 0];
+        r.get(pinned);
+        String modelId = new String(model, StandardCharsets.UTF_8);
+        return new Entry(pid, startInstant, startTime, port, new String(id, StandardCharsets.UTF_8),
+                modelId.isEmpty() ? null : modelId, new FM1StartFederateMessage(Sim0MQMessage.decodeToArray(message)), idle,
+                pinned.length == 0 ? null : BitSet.valueOf(pinned));
+    }
+
+    /**
+     * Append a record to the mapped journal, compacting the journal when it is full, and growing it till the record fits.
+     * @param record the record, without its length
+     */
+    private void append(final byte[] record)
+    {
+        try
+        {
+            if (this.position + 4 + record.length + 4 > this.buffer.capacity())
+            {
+                compact(4 + record.length + 4);
+            }
+            // the contents first, then the length, so a torn record ends the journal
+            this.buffer.put(this.position + 4, record);
+            this.buffer.putInt(this.position + 4 + record.length, 0);
+            this.buffer.putInt(this.position, record.length);
+            this.position += 4 + record.length;
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            // a journal that cannot be written must not stop the FederateStarter
+            System.err.println("Could not write federate journal " + this.file + ": " + exception);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the records of the running federates, through a temporary file that replaces the journal
+     * atomically, and map it again with room for at least as many bytes as the live records and the next record take.
+     * @param next the number of bytes of the next record, with its length and the length after it, or 0
+     * @throws IOException when the journal cannot be written or mapped
+     */
+    private void compact(final int next) throws IOException
+    {
+        ByteBuffer live = ByteBuffer.allocate(liveSize());
+        for (Map.Entry<Long, byte[]> startRecord : this.startRecords.entrySet())
+        {
+            live.putInt(startRecord.getValue().length).put(startRecord.getValue());
+            if (this.idleSequences.contains(startRecord.getKey()))
+            {
+                live.putInt(9).put(IDLE).putLong(startRecord.getKey());
+            }
+        }
+        int size = Math.max(MIN_SIZE, Integer.highestOneBit(Math.max(1, (live.position() + next) * 2)) << 1);
+        Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            live.flip();
+            channel.write(live);
+            channel.truncate(live.limit());
+            channel.force(false);
+        }
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel channel =
+                FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.position = live.limit();
+    }
+
+    /**
+     * @return the number of bytes of the records of the running federates
+     */
+    private int liveSize()
+    {
+        int size = 0;
+        for (byte[] startRecord : this.startRecords.values())
+        {
+            size += 4 + startRecord.length;
+        }
+        return size + this.idleSequences.size() * 13;
+    }
+
+    /**
+     * A federate that was running according to the journal.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class Entry
+    {
+        /** the pid of the process. */
+        private final long pid;
+
+        /** the start time of the process in ms since the epoch according to the operating system, or -1 when unknown. */
+        private final long startInstant;
+
+        /** the time in ms since the epoch at which the federate was started by the FederateStarter. */
+        private final long startTime;
+
+        /** the port of the model. */
+        private final int port;
+
+        /** the identity of the Federation Manager that started the federate. */
+        private final String identity;
+
+        /** the id under which the model was started, when the process was reused, or null. */
+        private final String modelId;
+
+        /** the FM.1 message. */
+        private final FM1StartFederateMessage startFederateMessage;
+
+        /** whether the process was idle, waiting to be reused. */
+        private final boolean idle;
+
+        /** the cores to which the process is pinned, or null when it is not pinned. */
+        private final BitSet cores;
+
+        /**
+         * @param pid the pid of the process
+         * @param startInstant the start time of the process according to the operating system, or -1 when unknown
+         * @param startTime the time at which the federate was started by the FederateStarter
+         * @param port the port of the model
+         * @param identity the identity of the Federation Manager that started the federate
+         * @param modelId the id under which the model was started, when the process was reused, or null
+         * @param startFederateMessage the FM.1 message
+         * @param idle whether the process was idle
+         * @param cores the cores to which the process is pinned, or null when it is not pinned
+         */
+        @SuppressWarnings("checkstyle:parameternumber")
+        Entry(final long pid, final long startInstant, final long startTime, final int port, final String identity,
+                final String modelId, final FM1StartFederateMessage startFederateMessage, final boolean idle,
+                final BitSet cores)
+        {
+            this.pid = pid;
+            this.startInstant = startInstant;
+            this.startTime = startTime;
+            this.port = port;
+            this.identity = identity;
+            this.modelId = modelId;
+            this.startFederateMessage = startFederateMessage;
+            this.idle = idle;
+            this.cores = cores;
+        }
+
+        /**
+         * Return the process of the federate when it is still running. The start time of the process is compared to the
+         * journal, so a process that got the pid of the federate after it ended is not adopted.
+         * @return the process handle when the federate still runs, or null
+         */
+        public ProcessHandle findProcess()
+        {
+            ProcessHandle handle = ProcessHandle.of(this.pid).filter(ProcessHandle::isAlive).orElse(null);
+            if (handle == null || this.startInstant < 0)
+            {
+                return handle;
+            }
+            long instant = handle.info().startInstant().map(i -> i.toEpochMilli()).orElse(this.startInstant);
+            return Math.abs(instant - this.startInstant) < 1000L ? handle : null;
+        }
+
+        /**
+         * @return pid
+         */
+        public long getPid()
+        {
+            return this.pid;
+        }
+
+        /**
+         * @return startTime
+         */
+        public long getStartTime()
+        {
+            return this.startTime;
+        }
+
+        /**
+         * @return port
+         */
+        public int getPort()
+        {
+            return this.port;
+        }
+
+        /**
+         * @return identity
+         */
+        public String getIdentity()
+        {
+            return this.identity;
+        }
+
+        /**
+         * @return modelId, or null when the model was started under the instance id of the FM.1 message
+         */
+        public String getModelId()
+        {
+            return this.modelId;
+        }
+
+        /**
+         * @return startFederateMessage
+         */
+        public FM1StartFederateMessage getStartFederateMessage()
+        {
+            return this.startFederateMessage;
+        }
+
+        /**
+         * @return idle
+         */
+        public boolean isIdle()
+        {
+            return this.idle;
+        }
+
+        /**
+         * @return cores, or null when the process is not pinned
+         */
+        public BitSet getCores()
+        {
+            return this.cores == null ? null : (BitSet) this.cores.clone();
+        }
+    }
+
+}
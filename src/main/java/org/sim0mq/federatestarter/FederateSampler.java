@@ -0,0 +1,359 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * FederateSampler periodically reads the resource usage of the running federates from /proc/&lt;pid&gt;/stat, status and io,
+ * and keeps the samples per federate in a ring buffer of fixed size. Sampling is done by a single daemon thread, and costs a
+ * few small file reads per federate per interval. On a system without /proc (e.g., Windows), no samples are collected.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FederateSampler
+{
+    /** the number of samples to keep per federate. */
+    private final int history;
+
+    /** the sampled time series per instance id. */
+    private final Map<Object, Series> seriesMap = new ConcurrentHashMap<>();
+
+    /** the thread that samples the federates. */
+    private final ScheduledExecutorService executor;
+
+    /** the number of clock ticks per second in /proc/&lt;pid&gt;/stat (USER_HZ, 100 on practically all Linux systems). */
+    private static final double CLOCK_TICKS = 100.0;
+
+    /**
+     * Create a sampler, and start sampling.
+     * @param interval the time in ms between two samples
+     * @param history the number of samples to keep per federate
+     */
+    public FederateSampler(final long interval, final int history)
+    {
+        Throw.when(interval <= 0, IllegalArgumentException.class, "interval should be positive");
+        Throw.when(history < 1, IllegalArgumentException.class, "history should be at least 1");
+        this.history = history;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "FederateSampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleAtFixedRate(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start sampling the process of a federate.
+     * @param instanceId the instance id of the federate
+     * @param pid the process id of the federate
+     */
+    public void register(final Object instanceId, final long pid)
+    {
+        this.seriesMap.put(instanceId, new Series(pid, this.history));
+    }
+
+    /**
+     * Stop sampling the process of a federate, and discard its samples.
+     * @param instanceId the instance id of the federate
+     */
+    public void unregister(final Object instanceId)
+    {
+        this.seriesMap.remove(instanceId);
+    }
+
+    /**
+     * Keep the samples of a process under a new instance id, when the process is reused for another federate.
+     * @param oldInstanceId the instance id under which the process was sampled
+     * @param newInstanceId the new instance id of the process
+     */
+    public void rename(final Object oldInstanceId, final Object newInstanceId)
+    {
+        Series series = this.seriesMap.remove(oldInstanceId);
+        if (series != null)
+        {
+            this.seriesMap.put(newInstanceId, series);
+        }
+    }
+
+    /**
+     * Return the samples of a federate, oldest sample first.
+     * @param instanceId the instance id of the federate
+     * @return the samples of the federate, or null when the federate is not sampled
+     */
+    public Samples getSamples(final Object instanceId)
+    {
+        Series series = this.seriesMap.get(instanceId);
+        return series == null ? null : series.snapshot();
+    }
+
+    /**
+     * Stop sampling.
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Take a sample of all registered federates.
+     */
+    private void sample()
+    {
+        long now = System.currentTimeMillis();
+        for (Series series : this.seriesMap.values())
+        {
+            try
+            {
+                series.sample(now);
+            }
+            catch (RuntimeException exception)
+            {
+                // the process exited between two samples, or /proc has an unexpected format; skip this sample
+            }
+        }
+    }
+
+    /**
+     * The samples of a federate, oldest sample first. All arrays have the same length.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class Samples
+    {
+        /** the times of the samples in ms since the epoch. */
+        private final Long[] sampleTimes;
+
+        /** the CPU load per sample, as a fraction of one core. */
+        private final Double[] cpuLoad;
+
+        /** the resident memory per sample in bytes. */
+        private final Long[] residentMemory;
+
+        /** the cumulative number of bytes read from storage per sample, or -1 when unknown. */
+        private final Long[] readBytes;
+
+        /** the cumulative number of bytes written to storage per sample, or -1 when unknown. */
+        private final Long[] writeBytes;
+
+        /**
+         * @param size the number of samples
+         */
+        Samples(final int size)
+        {
+            this.sampleTimes = new Long[size];
+            this.cpuLoad = new Double[size];
+            this.residentMemory = new Long[size];
+            this.readBytes = new Long[size];
+            this.writeBytes = new Long[size];
+        }
+
+        /**
+         * @return sampleTimes
+         */
+        public Long[] getSampleTimes()
+        {
+            return this.sampleTimes;
+        }
+
+        /**
+         * @return cpuLoad
+         */
+        public Double[] getCpuLoad()
+        {
+            return this.cpuLoad;
+        }
+
+        /**
+         * @return residentMemory
+         */
+        public Long[] getResidentMemory()
+        {
+            return this.residentMemory;
+        }
+
+        /**
+         * @return readBytes
+         */
+        public Long[] getReadBytes()
+        {
+            return this.readBytes;
+        }
+
+        /**
+         * @return writeBytes
+         */
+        public Long[] getWriteBytes()
+        {
+            return this.writeBytes;
+        }
+    }
+
+    /**
+     * The ring buffers with the samples of one federate process.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Series
+    {
+        /** the /proc directory of the process. */
+        private final Path procDir;
+
+        /** the times of the samples. */
+        private final long[] sampleTimes;
+
+        /** the CPU load per sample. */
+        private final double[] cpuLoad;
+
+        /** the resident memory per sample. */
+        private final long[] residentMemory;
+
+        /** the bytes read per sample. */
+        private final long[] readBytes;
+
+        /** the bytes written per sample. */
+        private final long[] writeBytes;
+
+        /** the index where the next sample is stored. */
+        private int next = 0;
+
+        /** the number of samples in the buffers. */
+        private int size = 0;
+
+        /** the CPU time in clock ticks at the last sample, or -1 before the first sample. */
+        private long lastCpuTicks = -1L;
+
+        /** the time in ms of the last sample. */
+        private long lastTime = 0L;
+
+        /**
+         * @param pid the process id
+         * @param history the number of samples to keep
+         */
+        Series(final long pid, final int history)
+        {
+            this.procDir = Paths.get("/proc", String.valueOf(pid));
+            this.sampleTimes = new long[history];
+            this.cpuLoad = new double[history];
+            this.residentMemory = new long[history];
+            this.readBytes = new long[history];
+            this.writeBytes = new long[history];
+        }
+
+        /**
+         * Read /proc/&lt;pid&gt;/stat, status and io, and store the sample.
+         * @param now the time of the sample in ms
+         */
+        void sample(final long now)
+        {
+            List<String> stat = readLines(this.procDir.resolve("stat"));
+            if (stat.isEmpty())
+            {
+                return;
+            }
+            // the fields after the command name in parentheses; utime and stime are fields 14 and 15 of the stat line
+            String[] fields = stat.get(0).substring(stat.get(0).lastIndexOf(')') + 2).split(" ");
+            long cpuTicks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            double load = 0.0;
+            if (this.lastCpuTicks >= 0 && now > this.lastTime)
+            {
+                load = (cpuTicks - this.lastCpuTicks) / CLOCK_TICKS / ((now - this.lastTime) / 1000.0);
+            }
+            this.lastCpuTicks = cpuTicks;
+            this.lastTime = now;
+
+            long rss = 0L;
+            for (String line : readLines(this.procDir.resolve("status")))
+            {
+                if (line.startsWith("VmRSS:"))
+                {
+                    rss = Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024L;
+                }
+            }
+
+            long read = -1L;
+            long written = -1L;
+            for (String line : readLines(this.procDir.resolve("io")))
+            {
+                if (line.startsWith("read_bytes:"))
+                {
+                    read = Long.parseLong(line.substring(11).trim());
+                }
+                else if (line.startsWith("write_bytes:"))
+                {
+                    written = Long.parseLong(line.substring(12).trim());
+                }
+            }
+
+            synchronized (this)
+            {
+                this.sampleTimes[this.next] = now;
+                this.cpuLoad[this.next] = load;
+                this.residentMemory[this.next] = rss;
+                this.readBytes[this.next] = read;
+                this.writeBytes[this.next] = written;
+                this.next = (this.next + 1) % this.sampleTimes.length;
+                this.size = Math.min(this.size + 1, this.sampleTimes.length);
+            }
+        }
+
+        /**
+         * Copy the samples, oldest sample first.
+         * @return a copy of the samples
+         */
+        synchronized Samples snapshot()
+        {
+            Samples samples = new Samples(this.size);
+            int first = (this.next - this.size + this.sampleTimes.length) % this.sampleTimes.length;
+            for (int i = 0; i < this.size; i++)
+            {
+                int index = (first + i) % this.sampleTimes.length;
+                samples.sampleTimes[i] = this.sampleTimes[index];
+                samples.cpuLoad[i] = this.cpuLoad[index];
+                samples.residentMemory[i] = this.residentMemory[index];
+                samples.readBytes[i] = this.readBytes[index];
+                samples.writeBytes[i] = this.writeBytes[index];
+            }
+            return samples;
+        }
+
+        /**
+         * Read the lines of a file.
+         * @param path the file to read
+         * @return the lines of the file, or an empty list when the file cannot be read
+         */
+        private static List<String> readLines(final Path path)
+        {
+            try
+            {
+                return Files.readAllLines(path);
+            }
+            catch (IOException exception)
+            {
+                return List.of();
+            }
+        }
+    }
+
+}
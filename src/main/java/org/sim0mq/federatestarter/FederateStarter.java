@@ -3,18 +3,32 @@ package org.sim0mq.federatestarter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import org.djunits.unit.DurationUnit;
+import org.djunits.value.vdouble.scalar.Duration;
 import org.djutils.io.URLResource;
 import org.djutils.serialization.SerializationException;
 import org.sim0mq.Sim0MQException;
@@ -22,9 +36,19 @@ import org.sim0mq.message.Sim0MQMessage;
 import org.sim0mq.message.federatestarter.FS1RequestStatusMessage;
 import org.sim0mq.message.federatestarter.FS2FederateStartedMessage;
 import org.sim0mq.message.federatestarter.FS4FederateKilledMessage;
+import org.sim0mq.message.federatestarter.FS5FederatesKilledMessage;
+import org.sim0mq.message.federatestarter.FS6FederateExitedMessage;
+import org.sim0mq.message.federatestarter.FS7FederateStatisticsMessage;
+import org.sim0mq.message.federatestarter.FS8FederateOutputMessage;
+import org.sim0mq.message.federatestarter.FS9FederatesStartedMessage;
+import org.sim0mq.message.federationmanager.FM10RequestFederateStatisticsMessage;
+import org.sim0mq.message.federationmanager.FM11RequestFederateOutputMessage;
+import org.sim0mq.message.federationmanager.FM12StartFederatesMessage;
 import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM7SimResetMessage;
 import org.sim0mq.message.federationmanager.FM8KillFederateMessage;
 import org.sim0mq.message.modelcontroller.MC1StatusMessage;
+import org.sim0mq.message.modelcontroller.MC2AckNakMessage;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
@@ -33,6 +57,73 @@ import org.zeromq.ZMQException;
 /**
  * The FederateStarter start listening on the given port for messages to start components. Report back via the call-back port on
  * the status of the started components. If necessary, the FederateStarter can also forcefully stop a started (sub)process.
+ * A software code with a value of the form <code>jvm:&lt;main class&gt;</code> starts a Java model inside the JVM of the
+ * FederateStarter instead of in a process of its own, see {@link InJvmProcess}.
+ * <p>
+ * The behavior of the FederateStarter can be tuned with entries in the software properties that start with "fs.":
+ * <ul>
+ * <li>fs.reuse (default false): keep the process of a federate alive after FM.8, reset it with FM.7, and hand it out again to
+ * the next FM.1 with the same command line, working directory, template and redirects. This avoids a process launch per
+ * replication.</li>
+ * <li>fs.reuse.timeout (default 5000): time in ms to wait for the MC.2 reply of the model on the FM.7 reset message, after
+ * which the process is killed instead. Other messages are served while the FederateStarter waits.</li>
+ * <li>fs.notify (default false): send an unsolicited FS.6 message to the Federation Manager when its federate exits without
+ * being killed, and an unsolicited FS.2 message when a queued start has been carried out. Only use this when the Federation
+ * Manager connects with a DEALER socket, since a REQ socket cannot receive unsolicited messages.</li>
+ * <li>fs.kill.graceperiod (default 5000): time in ms that a model gets to exit after the FS.3 message, e.g. to flush its
+ * results, before its process is asked to terminate by the operating system.</li>
+ * <li>fs.kill.termperiod (default 1000): time in ms that a process gets to exit after the operating system asked it to
+ * terminate, before it is destroyed forcibly.</li>
+ * <li>fs.admission (default false): only start a federate when the node has room for it, based on the live CPU load and
+ * available memory of the node or its cgroup. Other starts are queued, and answered with an FS.2 status "queued".</li>
+ * <li>fs.admission.cpu (default 0.9): the maximum CPU load, as a fraction between 0 and 1, at which a federate is started.</li>
+ * <li>fs.admission.memory (default 1024): the minimum available memory in MB at which a federate is started.</li>
+ * <li>fs.admission.federates (default 0): the maximum number of running federates; 0 means no maximum.</li>
+ * <li>fs.admission.interval (default 500): the minimum time in ms between two admitted starts, so the load of a started
+ * federate shows in the metrics before the next one is admitted.</li>
+ * <li>fs.admission.queue (default 100): the maximum number of queued starts; an FM.1 beyond that gets an FS.2 error.</li>
+ * <li>fs.pinning (default none): pin each federate to a dedicated set of cores on one NUMA node by wrapping its command with
+ * "taskset" or "numactl". With numactl, the memory of the federate is bound to the NUMA node as well.</li>
+ * <li>fs.pinning.cores (default 1): the number of dedicated cores per federate.</li>
+ * <li>fs.sampling.interval (default 1000): the time in ms between two samples of the CPU, memory and I/O usage of the running
+ * federates, which are served with FM.10 / FS.7 messages; 0 switches sampling off. The CPU load assumes the Linux USER_HZ
+ * of 100 clock ticks per second in /proc/&lt;pid&gt;/stat, which holds for practically all kernels (see getconf CLK_TCK).</li>
+ * <li>fs.sampling.history (default 300): the number of samples to keep per federate; at least 1.</li>
+ * <li>fs.capture.buffer (default 65536): the size in bytes of the in-memory ring buffer per captured stream. A stream is
+ * captured when the FM.1 message uses %CAPTURE% as its redirect; the tail is served with FM.11 / FS.8 messages.</li>
+ * <li>fs.capture.spill (default empty): the directory to which captured output is also written as gzip-compressed files,
+ * which are deleted at cleanup when the FM.1 message asks to delete the stream; empty means no spill to disk.</li>
+ * <li>fs.capture.spill.size (default 16): the uncompressed size in MB after which a spill file is rolled over.</li>
+ * <li>fs.capture.spill.files (default 4): the number of rolled over spill files to keep per stream.</li>
+ * <li>fs.capture.retain (default 100): the number of exited federates of which the captured output is retained.</li>
+ * <li>fs.cleanup.rate (default 2000): the maximum number of files per second that the background cleanup deletes; 0 means no
+ * maximum.</li>
+ * <li>fs.cleanup.journal (default empty): the journal of the working directories that still have to be deleted; empty means
+ * no journal. Put it in a directory that only the user of the FederateStarter can write to, not in a shared temp directory;
+ * the journal is only read when it is owned by that user.</li>
+ * <li>fs.cleanup.root (default empty): the directory under which the FederateStarter creates the working directories of the
+ * federates. Only the working directories under it that did not exist before the FederateStarter created them are journaled
+ * and reclaimed; empty means that no working directories are journaled.</li>
+ * <li>fs.cleanup.orphans (default false): delete the working directories under fs.cleanup.root in the journal that an
+ * earlier run of the FederateStarter did not delete, at startup.</li>
+ * <li>fs.template.&lt;name&gt;: a template directory with the files that the FM.1 message can ask for in the working
+ * directory of a federate.</li>
+ * <li>fs.template.&lt;name&gt;.writable (default empty): comma-separated glob patterns of the files of the template that the
+ * federate modifies in place, and that are therefore copied rather than linked.</li>
+ * <li>fs.template.&lt;name&gt;.hardlink (default false): provision the template with hardlinks to the cached files when the
+ * file system does not support reflinks, instead of with copies. Hardlinked files are immutable: a federate that modifies
+ * one in place corrupts the cached template, so only use this when the federate replaces the files it changes, or lists
+ * them in fs.template.&lt;name&gt;.writable.</li>
+ * <li>fs.template.cache (default sim0mq-fs-templates in the temp directory): the directory where the templates are cached
+ * once per node; empty means that the templates are used in place, without hardlinks.</li>
+ * <li>fs.cds (default false): record an AppCDS archive on the first launch of every configuration of a Java federate, and
+ * use it for the later launches of the same configuration, to reduce the startup time of the JVM.</li>
+ * <li>fs.cds.cache (default sim0mq-fs-cds in the temp directory): the node-local directory with the AppCDS archives.</li>
+ * <li>fs.journal (default empty): the memory-mapped journal of the running federates, from which a restarted FederateStarter
+ * adopts the federates that still run; empty means no journal. Only the federates whose stdout and stderr are redirected to
+ * files are journaled; the output of the other federates goes to a pipe of the FederateStarter, which ends with it.</li>
+ * </ul>
+ * </p>
  * <p>
  * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
  * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
@@ -78,6 +169,141 @@ public class FederateStarter
     /** does the Federate Starter concern models with an MC or just processes? */
     private final boolean modelController;
 
+    /** whether processes are reset with FM.7 after FM.8 and kept for reuse by the next FM.1 for the same software. */
+    private final boolean reuseProcesses;
+
+    /** the time in ms to wait for the MC.2 reply on an FM.7 reset message. */
+    private final long reuseTimeout;
+
+    /** the resets of federates that wait for the MC.2 reply of the model before the FS.4 reply is sent, per instance id. */
+    private final Map<Object, PendingReset> pendingResets = new LinkedHashMap<>();
+
+    /** the reuse keys of the idle, reset processes that can be reused, per instance id, in the order of becoming idle. */
+    private final Map<Object, String> idleProcessMap = new LinkedHashMap<>();
+
+    /** the FM.1 messages of the earlier instances of a reused process, whose files are cleaned up when the process ends. */
+    private final Map<Object, List<FM1StartFederateMessage>> reusedStartMessages =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the sender id that the model process uses, for instances that reuse the process of an earlier instance. */
+    private final Map<Object, Object> modelIdMap = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the ROUTER identity of the Federation Manager that started the federate, to send unsolicited messages to. */
+    private final Map<Object, String> identityMap = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the time in ms (System.currentTimeMillis) at which the federate was started. */
+    private final Map<Object, Long> startTimeMap = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the exit codes of the federates that exited on their own, so a later FM.8 for such a federate can be answered. */
+    private final Map<Object, Integer> exitedFederateMap = new LinkedHashMap<>()
+    {
+        /** */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Object, Integer> eldest)
+        {
+            return size() > MAX_EXITED_FEDERATES;
+        }
+    };
+
+    /** whether a Federation Manager is notified with FS.6 when its federate exits without an FM.8 or FM.9 message. */
+    private final boolean notifyExit;
+
+    /** the time in ms that a model gets to exit after the FS.3 message, before its process is asked to terminate. */
+    private final long killGracePeriod;
+
+    /** the time in ms that a process gets to exit after it was asked to terminate, before it is destroyed forcibly. */
+    private final long killTermPeriod;
+
+    /**
+     * the cached DEALER connections to the model controllers, kept for the lifetime of the federate. Only used by the thread
+     * that owns the sockets.
+     */
+    private final Map<Object, ZMQ.Socket> modelSocketMap = new LinkedHashMap<>();
+
+    /** the instance ids of the federates that are being terminated, which keep their port until their process is gone. */
+    private final Set<Object> terminatingFederates = Collections.synchronizedSet(new HashSet<>());
+
+    /** whether starts are subject to admission control based on the load of the node. */
+    private final boolean admission;
+
+    /** the maximum CPU load, as a fraction between 0 and 1, at which a federate is admitted. */
+    private final double admissionCpu;
+
+    /** the minimum available memory in bytes at which a federate is admitted. */
+    private final long admissionMemory;
+
+    /** the maximum number of running federates, or 0 for no maximum. */
+    private final int admissionFederates;
+
+    /** the minimum time in ms between two admitted starts. */
+    private final long admissionInterval;
+
+    /** the maximum number of queued starts. */
+    private final int admissionQueueSize;
+
+    /** the live load of the node, only used for admission control. */
+    private final NodeMetrics nodeMetrics;
+
+    /** the time in ms (System.currentTimeMillis) of the last admitted start. */
+    private long lastAdmissionTime = 0L;
+
+    /** the starts that wait for admission; federations with more running federates first, so they complete sooner. */
+    private final PriorityQueue<QueuedStart> pendingStarts = new PriorityQueue<>(
+            Comparator.comparingInt((final QueuedStart q) -> -q.federationSize).thenComparingLong(q -> q.sequence));
+
+    /** the queued starts per instance id, till the Federation Manager has received the outcome of the start. */
+    private final Map<Object, QueuedStart> queuedStarts = new LinkedHashMap<>();
+
+    /** the sequence number of the last queued start. */
+    private long queueSequence = 0L;
+
+    /** the exponentially smoothed runtime of federates in ms, to estimate the wait for a queued start. */
+    private double averageRuntime = 0.0;
+
+    /** the placement of federates on dedicated cores, or null when federates are not pinned. */
+    private final CorePlacement corePlacement;
+
+    /** the cores that are allocated to the federates. */
+    private final Map<Object, BitSet> coreMap = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the sampler of the resource usage of the federates, or null when sampling is off. */
+    private final FederateSampler sampler;
+
+    /** the capture of the stdout and stderr of the federates that use the %CAPTURE% redirect. */
+    private final OutputCapture outputCapture;
+
+    /** the background deletion of working directories and redirected output. */
+    private final DirectoryCleaner directoryCleaner;
+
+    /** the provisioning of working directories from templates. */
+    private final TemplateProvisioner templateProvisioner;
+
+    /**
+     * the outcome of provisioning the working directory from its template per instance id, till the process is launched: an
+     * empty String when the working directory has been provisioned, or the error.
+     */
+    private final Map<Object, String> provisionedMap = new LinkedHashMap<>();
+
+    /** the instance ids of which the working directory is being provisioned on a worker thread. */
+    private final Set<Object> provisioningFederates = new HashSet<>();
+
+    /** the cache with the AppCDS archives of the Java federates, or null when no archives are used. */
+    private final CdsArchiveCache cdsArchiveCache;
+
+    /** the journal of the running federates, to adopt them after a restart, or null when no journal is kept. */
+    private final FederateJournal federateJournal;
+
+    /** work handed to the thread that owns the sockets, e.g. by the completion of Process.onExit(). */
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+
+    /** the poll timeout in ms, which bounds the delay before work in loopTasks is carried out. */
+    private static final long POLL_TIMEOUT = 10;
+
+    /** the maximum number of exited federates to remember. */
+    private static final int MAX_EXITED_FEDERATES = 10000;
+
     /**
      * @param fsPort the port number to listen on
      * @param softwareProperties the software properties to use
@@ -95,52 +321,143 @@ public class FederateStarter
         this.startPort = startPort;
         this.endPort = endPort;
         this.modelController = modelController;
+        this.reuseProcesses = Boolean.parseBoolean(softwareProperties.getProperty("fs.reuse", "false"));
+        this.reuseTimeout = Long.parseLong(softwareProperties.getProperty("fs.reuse.timeout", "5000"));
+        this.notifyExit = Boolean.parseBoolean(softwareProperties.getProperty("fs.notify", "false"));
+        this.killGracePeriod = Long.parseLong(softwareProperties.getProperty("fs.kill.graceperiod", "5000"));
+        this.killTermPeriod = Long.parseLong(softwareProperties.getProperty("fs.kill.termperiod", "1000"));
+        this.admission = Boolean.parseBoolean(softwareProperties.getProperty("fs.admission", "false"));
+        this.admissionCpu = Double.parseDouble(softwareProperties.getProperty("fs.admission.cpu", "0.9"));
+        this.admissionMemory = Long.parseLong(softwareProperties.getProperty("fs.admission.memory", "1024")) * 1024L * 1024L;
+        this.admissionFederates = Integer.parseInt(softwareProperties.getProperty("fs.admission.federates", "0"));
+        this.admissionInterval = Long.parseLong(softwareProperties.getProperty("fs.admission.interval", "500"));
+        this.admissionQueueSize = Integer.parseInt(softwareProperties.getProperty("fs.admission.queue", "100"));
+        this.nodeMetrics = new NodeMetrics(this.admissionInterval / 2);
+        String pinning = softwareProperties.getProperty("fs.pinning", "none");
+        this.corePlacement = pinning.equals("none") ? null
+                : new CorePlacement(pinning, Integer.parseInt(softwareProperties.getProperty("fs.pinning.cores", "1")));
+        long samplingInterval = Long.parseLong(softwareProperties.getProperty("fs.sampling.interval", "1000"));
+        this.sampler = samplingInterval <= 0 ? null : new FederateSampler(samplingInterval,
+                Integer.parseInt(softwareProperties.getProperty("fs.sampling.history", "300")));
+        String spillDirectory = softwareProperties.getProperty("fs.capture.spill", "");
+        this.outputCapture = new OutputCapture(Integer.parseInt(softwareProperties.getProperty("fs.capture.buffer", "65536")),
+                spillDirectory.isEmpty() ? null : Paths.get(spillDirectory),
+                Long.parseLong(softwareProperties.getProperty("fs.capture.spill.size", "16")) * 1024L * 1024L,
+                Integer.parseInt(softwareProperties.getProperty("fs.capture.spill.files", "4")),
+                Integer.parseInt(softwareProperties.getProperty("fs.capture.retain", "100")));
+        String journal = softwareProperties.getProperty("fs.cleanup.journal", "");
+        String cleanupRoot = softwareProperties.getProperty("fs.cleanup.root", "");
+        this.directoryCleaner = new DirectoryCleaner(journal.isEmpty() ? null : Paths.get(journal),
+                cleanupRoot.isEmpty() ? null : Paths.get(cleanupRoot),
+                Integer.parseInt(softwareProperties.getProperty("fs.cleanup.rate", "2000")));
+        String templateCache = softwareProperties.getProperty("fs.template.cache",
+                Paths.get(System.getProperty("java.io.tmpdir"), "sim0mq-fs-templates").toString());
+        this.templateProvisioner =
+                new TemplateProvisioner(softwareProperties, templateCache.isEmpty() ? null : Paths.get(templateCache));
+        String cdsCache = softwareProperties.getProperty("fs.cds.cache",
+                Paths.get(System.getProperty("java.io.tmpdir"), "sim0mq-fs-cds").toString());
+        this.cdsArchiveCache = Boolean.parseBoolean(softwareProperties.getProperty("fs.cds", "false"))
+                ? new CdsArchiveCache(Paths.get(cdsCache)) : null;
+        String federateJournalFile = softwareProperties.getProperty("fs.journal", "");
+        this.federateJournal = federateJournalFile.isEmpty() ? null : openFederateJournal(Paths.get(federateJournalFile));
+        if (this.federateJournal != null)
+        {
+            // adopt before the orphans are reclaimed, so the working directories of adopted federates are kept
+            adoptFederates();
+        }
+        if (Boolean.parseBoolean(softwareProperties.getProperty("fs.cleanup.orphans", "false")))
+        {
+            int orphans = this.directoryCleaner.reclaimOrphans();
+            if (orphans > 0)
+            {
+                System.out.println("Reclaiming " + orphans + " orphaned working directories");
+            }
+        }
 
         this.fsContext = new ZContext(1);
 
         this.fsSocket = this.fsContext.createSocket(SocketType.ROUTER);
         this.fsSocket.bind("tcp://*:" + this.fsPort);
 
+        ZMQ.Poller poller = this.fsContext.createPoller(1);
+        poller.register(this.fsSocket, ZMQ.Poller.POLLIN);
+
         while (!Thread.currentThread().isInterrupted())
         {
             // Wait for next request from the client -- first the identity (String) and the delimiter (#0)
             try
             {
-                String identity = this.fsSocket.recvStr();
-                this.fsSocket.recvStr();
+                poller.poll(POLL_TIMEOUT);
+                if (poller.pollin(0))
+                {
+                    String identity = this.fsSocket.recvStr();
+                    this.fsSocket.recvStr();
 
-                byte[] request = this.fsSocket.recv(0);
-                Sim0MQMessage message = Sim0MQMessage.decode(request);
-                String messageTypeId = message.getMessageTypeId().toString();
-                String receiverId = message.getReceiverId().toString();
+                    byte[] request = this.fsSocket.recv(0);
+                    Sim0MQMessage message = Sim0MQMessage.decode(request);
+                    String messageTypeId = message.getMessageTypeId().toString();
+                    String receiverId = message.getReceiverId().toString();
 
-                System.out.println("Received " + Sim0MQMessage.print(message.createObjectArray()));
+                    System.out.println("Received " + Sim0MQMessage.print(message.createObjectArray()));
 
-                if (receiverId.equals("FS"))
-                {
-                    switch (messageTypeId)
+                    if (receiverId.equals("FS"))
                     {
-                        case "FM.1":
-                            processStartFederate(identity, message);
-                            break;
+                        switch (messageTypeId)
+                        {
+                            case "FM.1":
+                                processStartFederate(identity, message);
+                                break;
+
+                            case "FM.8":
+                                processKillFederate(identity, message);
+                                break;
 
-                        case "FM.8":
-                            processKillFederate(identity, message);
-                            break;
+                            case "FM.9":
+                                processKillAllFederates(identity, message);
+                                break;
 
-                        case "FM.9":
-                            // processKillAllFederates(senderId, uniqueId);
-                            break;
+                            case "FM.10":
+                                processRequestStatistics(identity, message);
+                                break;
 
-                        default:
-                            // wrong message
-                            System.err.println("Received unknown message -- not processed: " + messageTypeId);
+                            case "FM.11":
+                                processRequestOutput(identity, message);
+                                break;
+
+                            case "FM.12":
+                                processStartFederates(identity, message);
+                                break;
+
+                            default:
+                                // wrong message
+                                System.err.println("Received unknown message -- not processed: " + messageTypeId);
+                        }
+                    }
+                    else
+                    {
+                        // wrong receiver
+                        System.err
+                                .println("Received message not intended for FS but for " + receiverId + " -- not processed: ");
                     }
                 }
-                else
+
+                // carry out the work that other threads handed to the thread that owns the sockets
+                Runnable task;
+                while ((task = this.loopTasks.poll()) != null)
+                {
+                    task.run();
+                }
+
+                // finish the resets of which the model replied or of which the reuse timeout expired
+                if (!this.pendingResets.isEmpty())
+                {
+                    finishPendingResets();
+                }
+
+                // start the queued federates for which the node has room now
+                if (this.admission)
                 {
-                    // wrong receiver
-                    System.err.println("Received message not intended for FS but for " + receiverId + " -- not processed: ");
+                    admitQueuedStarts();
                 }
             }
             catch (ZMQException e)
@@ -149,6 +466,14 @@ public class FederateStarter
             }
         }
 
+        poller.close();
+        if (this.sampler != null)
+        {
+            this.sampler.shutdown();
+        }
+        this.outputCapture.shutdown();
+        this.directoryCleaner.shutdown();
+        this.templateProvisioner.shutdown();
         try
         {
             this.fsSocket.close();
@@ -160,6 +485,99 @@ public class FederateStarter
         }
     }
 
+    /**
+     * Open the journal of the running federates.
+     * @param file the journal file
+     * @return the journal, or null when it cannot be opened
+     */
+    private static FederateJournal openFederateJournal(final Path file)
+    {
+        try
+        {
+            return new FederateJournal(file);
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not open federate journal " + file + " -- running without journal: "
+                    + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Return whether a federate can be journaled, so a restarted FederateStarter can adopt it: its stdout and stderr have to be
+     * redirected to files. Without a redirect, or with %CAPTURE%, the output goes to a pipe of the FederateStarter, and a
+     * federate that writes to that pipe after the FederateStarter ended is stopped by the operating system.
+     * @param startFederateMessage the FM.1 message of the federate
+     * @return whether the federate can be journaled
+     */
+    private static boolean isJournaled(final FM1StartFederateMessage startFederateMessage)
+    {
+        String stdOut = startFederateMessage.getRedirectStdout();
+        String stdErr = startFederateMessage.getRedirectStderr();
+        return !stdOut.isEmpty() && !stdErr.isEmpty() && !stdOut.equals(OutputCapture.CAPTURE)
+                && !stdErr.equals(OutputCapture.CAPTURE);
+    }
+
+    /**
+     * Adopt the federates that an earlier run of the FederateStarter started, and that are still running according to the
+     * journal and the operating system. Their ports, FM.1 messages, Federation Manager identities and pinned cores are
+     * restored, so they can be killed and reported as before, and their cores are not handed out again. The processes that were
+     * idle for reuse are destroyed, since their federates were already reported as killed, and so are the processes whose
+     * output went to a pipe of the earlier run, since that pipe ended with it. The files of the federates that ended while the
+     * FederateStarter was down are cleaned up.
+     */
+    private void adoptFederates()
+    {
+        List<FederateJournal.Entry> ended = new ArrayList<>();
+        for (FederateJournal.Entry entry : this.federateJournal.getRecovered())
+        {
+            FM1StartFederateMessage sfm = entry.getStartFederateMessage();
+            Object instanceId = sfm.getInstanceId();
+            ProcessHandle handle = entry.findProcess();
+            if (handle == null || entry.isIdle() || !isJournaled(sfm))
+            {
+                if (handle != null)
+                {
+                    handle.destroy();
+                }
+                ended.add(entry);
+                continue;
+            }
+            Process process = new AdoptedProcess(handle);
+            this.runningProcessMap.put(instanceId, process);
+            this.modelPortMap.put(instanceId, entry.getPort());
+            this.startFederateMessages.put(instanceId, sfm);
+            this.identityMap.put(instanceId, entry.getIdentity());
+            this.startTimeMap.put(instanceId, entry.getStartTime());
+            if (entry.getModelId() != null)
+            {
+                this.modelIdMap.put(instanceId, entry.getModelId());
+            }
+            BitSet cores = entry.getCores();
+            if (cores != null && this.corePlacement != null)
+            {
+                this.corePlacement.occupy(cores);
+                this.coreMap.put(instanceId, cores);
+            }
+            if (sfm.isDeleteWorkingDirectory())
+            {
+                this.directoryCleaner.keep(Paths.get(sfm.getWorkingDirectory()));
+            }
+            if (this.sampler != null)
+            {
+                this.sampler.register(instanceId, process.pid());
+            }
+            process.onExit().thenAccept(p -> this.loopTasks.add(() -> processExited(p)));
+            System.out.println("Adopted model " + instanceId + " (pid " + process.pid() + ") @ port " + entry.getPort());
+        }
+        for (FederateJournal.Entry entry : ended)
+        {
+            this.federateJournal.ended(entry.getStartFederateMessage().getInstanceId());
+            cleanupFederate(entry.getStartFederateMessage());
+        }
+    }
+
     /**
      * Process FM.2 message and send MC.2 message back.
      * @param identity reply id for REQ-ROUTER pattern
@@ -173,45 +591,323 @@ public class FederateStarter
         FM1StartFederateMessage startFederateMessage = new FM1StartFederateMessage(message.createObjectArray());
         String error = "";
 
+        FM1StartFederateMessage previous = this.startFederateMessages.get(startFederateMessage.getInstanceId());
+        Integer previousPort = this.modelPortMap.get(startFederateMessage.getInstanceId());
+        if (previous != null && previousPort != null && previous.getMessageId().equals(startFederateMessage.getMessageId())
+                && previous.getSenderId().equals(startFederateMessage.getSenderId()))
+        {
+            // the Federation Manager sent the same FM.1 message again, e.g., after a timeout: answer it again
+            sendFederateStarted(identity, startFederateMessage, "", previousPort);
+            return;
+        }
+
+        if (this.admission && this.queuedStarts.containsKey(startFederateMessage.getInstanceId()))
+        {
+            // the Federation Manager asks again for a start that was queued
+            reportQueuedStart(identity, this.queuedStarts.get(startFederateMessage.getInstanceId()));
+            return;
+        }
+
+        if (this.reuseProcesses)
+        {
+            Object idleId = takeIdleProcess(startFederateMessage);
+            if (idleId != null)
+            {
+                int modelPort = reuseProcess(idleId, startFederateMessage);
+                System.out.println("SEND MESSAGE FS.2 ABOUT MODEL " + startFederateMessage.getInstanceId() + " @ port "
+                        + modelPort + " (reusing process of " + getModelId(startFederateMessage.getInstanceId()) + ")");
+                sendFederateStarted(identity, startFederateMessage, error, modelPort);
+                return;
+            }
+        }
+
+        if (this.admission && (!this.pendingStarts.isEmpty() || !canAdmit()))
+        {
+            queueStart(identity, startFederateMessage);
+            return;
+        }
+
+        if (!provisioned(startFederateMessage, () -> retryStartFederate(identity, message)))
+        {
+            // the FM.1 message is processed again when the working directory has been provisioned
+            return;
+        }
+
         int modelPort = findFreePortNumber();
+        if (modelPort == -1 && evictIdleProcess(() -> retryStartFederate(identity, message)))
+        {
+            // the FM.1 message is processed again when the port of the idle process has been released
+            return;
+        }
 
         if (modelPort == -1)
         {
             error = "No free port number";
         }
-
         else
+        {
+            this.lastAdmissionTime = System.currentTimeMillis();
+            error = startProcess(identity, startFederateMessage, modelPort);
+        }
+
+        System.out.println("SEND MESSAGE FS.2 ABOUT MODEL " + startFederateMessage.getInstanceId() + " @ port " + modelPort);
+        sendFederateStarted(identity, startFederateMessage, error, modelPort);
+    }
 
+    /**
+     * Process FM.12 message and send FS.9 message back. Every instance is started as if it had its own FM.1 message, but all
+     * processes are launched before the FederateStarter waits for the models to start, so the models start in parallel, and
+     * the batch takes about as long as the slowest model instead of the sum of all models. Instances that have to wait for
+     * admission are queued, and are reported with status "queued"; when the FM.12 message is sent again, the outcome of the
+     * queued instances is reported.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message Message; the message
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private void processStartFederates(final String identity, final Sim0MQMessage message)
+            throws Sim0MQException, SerializationException
+    {
+        FM12StartFederatesMessage startFederatesMessage = new FM12StartFederatesMessage(message.createObjectArray());
+        int n = startFederatesMessage.getNumberInstances();
+        FM1StartFederateMessage[] startFederateMessages = new FM1StartFederateMessage[n];
+        String[] status = new String[n];
+        int[] modelPort = new int[n];
+        String[] error = new String[n];
+
+        // provision the working directories of the instances on worker threads; the FM.12 message is processed again when
+        // the last one is ready
+        boolean provisioned = true;
+        for (Map.Entry<String, String> entry : startFederatesMessage.getInstanceMap().entrySet())
         {
-            try
+            if (!this.queuedStarts.containsKey(entry.getKey()))
             {
-                ProcessBuilder pb = new ProcessBuilder();
-
-                Path workingPath = Files.createDirectories(Paths.get(startFederateMessage.getWorkingDirectory()));
-                pb.directory(workingPath.toFile());
+                provisioned &= provisioned(createStartFederateMessage(startFederatesMessage, entry.getKey(), entry.getValue()),
+                        () -> retryStartFederates(identity, message));
+            }
+        }
+        if (!provisioned)
+        {
+            return;
+        }
 
-                String softwareCode = "";
-                if (!this.softwareProperties.containsKey(startFederateMessage.getSoftwareCode()))
+        // launch all processes first
+        int i = 0;
+        for (Map.Entry<String, String> entry : startFederatesMessage.getInstanceMap().entrySet())
+        {
+            FM1StartFederateMessage startFederateMessage = createStartFederateMessage(startFederatesMessage, entry.getKey(),
+                    entry.getValue());
+            startFederateMessages[i] = startFederateMessage;
+            status[i] = "started";
+            error[i] = "";
+            boolean queued = this.admission && this.queuedStarts.containsKey(entry.getKey());
+            Object idleId = this.reuseProcesses && !queued ? takeIdleProcess(startFederateMessage) : null;
+            if (queued)
+            {
+                QueuedStart queuedStart = this.queuedStarts.get(entry.getKey());
+                status[i] = "queued";
+                if (queuedStart.done)
+                {
+                    this.queuedStarts.remove(entry.getKey());
+                    modelPort[i] = queuedStart.modelPort;
+                    error[i] = queuedStart.error;
+                    status[i] = error[i].isEmpty() ? "started" : "error";
+                }
+            }
+            else if (idleId != null)
+            {
+                modelPort[i] = reuseProcess(idleId, startFederateMessage);
+            }
+            else if (this.admission && (!this.pendingStarts.isEmpty() || !canAdmit()))
+            {
+                status[i] = enqueueStart(identity, startFederateMessage) ? "queued" : "error";
+                error[i] = status[i].equals("error") ? "node overloaded -- admission queue full" : "";
+            }
+            else
+            {
+                modelPort[i] = findFreePortNumber();
+                if (modelPort[i] == -1)
                 {
-                    System.err.println("Could not find software alias " + startFederateMessage.getSoftwareCode()
-                            + " in software properties file");
+                    error[i] = "No free port number";
                 }
                 else
                 {
-                    softwareCode = this.softwareProperties.getProperty(startFederateMessage.getSoftwareCode());
+                    this.lastAdmissionTime = System.currentTimeMillis();
+                    error[i] = launchProcess(identity, startFederateMessage, modelPort[i]);
+                    if (error[i].isEmpty())
+                    {
+                        status[i] = "launched";
+                    }
+                }
+                status[i] = error[i].isEmpty() ? status[i] : "error";
+            }
+            i++;
+        }
+
+        // then wait till the launched models have started
+        for (i = 0; i < n; i++)
+        {
+            if (status[i].equals("launched"))
+            {
+                Object instanceId = startFederateMessages[i].getInstanceId();
+                if (this.modelController && this.runningProcessMap.containsKey(instanceId))
+                {
+                    error[i] = waitForModelStarted(startFederatesMessage.getFederationId(), instanceId);
+                }
+                status[i] = error[i].isEmpty() ? "started" : "error";
+            }
+        }
+
+        FS9FederatesStartedMessage.Builder builder = new FS9FederatesStartedMessage.Builder();
+        for (i = 0; i < n; i++)
+        {
+            Object instanceId = startFederateMessages[i].getInstanceId();
+            builder.addInstanceStatus(instanceId, status[i], modelPort[i], error[i],
+                    status[i].equals("started") ? getModelId(instanceId) : instanceId);
+        }
+        System.out.println("SEND MESSAGE FS.9 ABOUT " + n + " MODELS");
+        this.fsSocket.sendMore(identity);
+        this.fsSocket.sendMore("");
+        //@formatter:off
+        byte[] fs9Message = builder
+                .setSimulationRunId(startFederatesMessage.getFederationId())
+                .setSenderId("FS")
+                .setReceiverId(startFederatesMessage.getSenderId())
+                .setMessageId(++this.messageCount)
+                .build()
+                .createByteArray();
+        this.fsSocket.send(fs9Message, 0);
+        //@formatter:on
+    }
+
+    /**
+     * Create the FM.1 message for one instance of an FM.12 message, replacing %INSTANCE% by the instance id.
+     * @param startFederatesMessage the FM.12 message
+     * @param instanceId the instance id
+     * @param argsAfter the argsAfter of the instance, or an empty String to use the shared argsAfter
+     * @return the FM.1 message for the instance
+     * @throws Sim0MQException on error
+     */
+    private FM1StartFederateMessage createStartFederateMessage(final FM12StartFederatesMessage startFederatesMessage,
+            final String instanceId, final String argsAfter) throws Sim0MQException
+    {
+        String token = FM12StartFederatesMessage.INSTANCE;
+        String args = argsAfter.isEmpty() ? startFederatesMessage.getArgsAfter() : argsAfter;
+        return new FM1StartFederateMessage(startFederatesMessage.getFederationId(), startFederatesMessage.getSenderId(), "FS",
+                startFederatesMessage.getMessageId(), instanceId, startFederatesMessage.getSoftwareCode(),
+                startFederatesMessage.getArgsBefore(), startFederatesMessage.getModelPath(), args.replace(token, instanceId),
+                startFederatesMessage.getWorkingDirectory().replace(token, instanceId),
+                startFederatesMessage.getRedirectStdin().replace(token, instanceId),
+                startFederatesMessage.getRedirectStdout().replace(token, instanceId),
+                startFederatesMessage.getRedirectStderr().replace(token, instanceId),
+                startFederatesMessage.isDeleteWorkingDirectory(), startFederatesMessage.isDeleteStdout(),
+                startFederatesMessage.isDeleteStderr(), startFederatesMessage.getTemplate());
+    }
+
+    /**
+     * Start the process of a federate on the given port, and wait till the model has started when it has a model controller.
+     * @param identity reply id for REQ-ROUTER pattern, to send unsolicited messages to later
+     * @param startFederateMessage the FM.1 message
+     * @param modelPort the port on which the model will listen
+     * @return empty String for no error, filled String for error
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private String startProcess(final String identity, final FM1StartFederateMessage startFederateMessage,
+            final int modelPort) throws Sim0MQException, SerializationException
+    {
+        String error = launchProcess(identity, startFederateMessage, modelPort);
+        if (error.isEmpty() && this.modelController && this.runningProcessMap.containsKey(startFederateMessage.getInstanceId()))
+        {
+            // wait till the model is ready...
+            error = waitForModelStarted(startFederateMessage.getFederationId(), startFederateMessage.getInstanceId());
+        }
+        return error;
+    }
+
+    /**
+     * Start the process of a federate on the given port, without waiting for the model to start.
+     * @param identity reply id for REQ-ROUTER pattern, to send unsolicited messages to later
+     * @param startFederateMessage the FM.1 message
+     * @param modelPort the port on which the model will listen
+     * @return empty String for no error, filled String for error
+     */
+    private String launchProcess(final String identity, final FM1StartFederateMessage startFederateMessage,
+            final int modelPort)
+    {
+        String error = "";
+        try
+        {
+            ProcessBuilder pb = new ProcessBuilder();
+
+            if (startFederateMessage.isDeleteWorkingDirectory())
+            {
+                // register before the working directory is created, so only a directory that did not exist is reclaimed
+                this.directoryCleaner.register(Paths.get(startFederateMessage.getWorkingDirectory()));
+            }
+            Path workingPath = Files.createDirectories(Paths.get(startFederateMessage.getWorkingDirectory()));
+            if (!startFederateMessage.getTemplate().isEmpty())
+            {
+                // the working directory has been provisioned on a worker thread before the launch
+                String provisionError = this.provisionedMap.remove(startFederateMessage.getInstanceId());
+                if (provisionError == null || !provisionError.isEmpty())
+                {
+                    throw new IOException(provisionError == null ? "working directory of model "
+                            + startFederateMessage.getInstanceId() + " has not been provisioned" : provisionError);
+                }
+            }
+            pb.directory(workingPath.toFile());
 
+            String softwareCode = "";
+            if (!this.softwareProperties.containsKey(startFederateMessage.getSoftwareCode()))
+            {
+                System.err.println("Could not find software alias " + startFederateMessage.getSoftwareCode()
+                        + " in software properties file");
+            }
+            else
+            {
+                softwareCode = this.softwareProperties.getProperty(startFederateMessage.getSoftwareCode());
+                List<String> argsAfter = Arrays.asList(
+                        startFederateMessage.getArgsAfter().replaceAll("%PORT%", String.valueOf(modelPort)).split(" "));
+
+                String stdIn = startFederateMessage.getRedirectStdin();
+                String stdOut = startFederateMessage.getRedirectStdout();
+                String stdErr = startFederateMessage.getRedirectStderr();
+                boolean captureStdout = stdOut.equals(OutputCapture.CAPTURE);
+                boolean captureStderr = stdErr.equals(OutputCapture.CAPTURE);
+
+                Process process = null;
+                if (softwareCode.startsWith(InJvmProcess.PREFIX))
+                {
+                    // run the model in this JVM; argsBefore (JVM options) and pinning do not apply
+                    process = InJvmProcess.start(startFederateMessage.getInstanceId(),
+                            softwareCode.substring(InJvmProcess.PREFIX.length()), startFederateMessage.getModelPath(),
+                            argsAfter, stdOut, stdErr);
+                }
+                else
+                {
+                    List<String> cdsOptions = this.cdsArchiveCache == null ? List.of()
+                            : this.cdsArchiveCache.options(softwareCode, startFederateMessage.getArgsBefore(),
+                                    startFederateMessage.getModelPath(), workingPath);
                     List<String> pbArgs = new ArrayList<>();
                     pbArgs.add(softwareCode);
+                    pbArgs.addAll(cdsOptions);
                     pbArgs.add(startFederateMessage.getArgsBefore());
                     pbArgs.add(startFederateMessage.getModelPath());
-                    pbArgs.addAll(Arrays.asList(
-                            startFederateMessage.getArgsAfter().replaceAll("%PORT%", String.valueOf(modelPort)).split(" ")));
+                    pbArgs.addAll(argsAfter);
+                    BitSet cores = this.corePlacement == null ? null : this.corePlacement.allocate();
+                    if (cores != null)
+                    {
+                        pbArgs = this.corePlacement.wrap(pbArgs, cores);
+                        this.coreMap.put(startFederateMessage.getInstanceId(), cores);
+                    }
+                    else if (this.corePlacement != null)
+                    {
+                        System.err
+                                .println("No free cores for model " + startFederateMessage.getInstanceId() + " -- not pinned");
+                    }
                     pb.command(pbArgs);
 
-                    String stdIn = startFederateMessage.getRedirectStdin();
-                    String stdOut = startFederateMessage.getRedirectStdout();
-                    String stdErr = startFederateMessage.getRedirectStderr();
-
                     if (stdIn.length() > 0)
                     {
                         // TODO working dir path if not absolute?
@@ -219,80 +915,721 @@ public class FederateStarter
                         pb.redirectInput(stdInFile);
                     }
 
-                    if (stdOut.length() > 0)
+                    if (stdOut.length() > 0 && !captureStdout)
                     {
                         // TODO working dir path if not absolute?
                         File stdOutFile = new File(stdOut);
                         pb.redirectOutput(stdOutFile);
                     }
 
-                    if (stdErr.length() > 0)
+                    if (stdErr.length() > 0 && !captureStderr)
                     {
                         // TODO working dir path if not absolute?
                         File stdErrFile = new File(stdErr);
                         pb.redirectError(stdErrFile);
                     }
 
-                    new Thread()
+                    try
+                    {
+                        process = pb.start();
+                    }
+                    finally
                     {
-                        @Override
-                        public void run()
+                        if (this.cdsArchiveCache != null)
                         {
-                            try
-                            {
-                                Process process = pb.start();
-                                FederateStarter.this.runningProcessMap.put(startFederateMessage.getInstanceId(), process);
-                                System.err.println("Process started:" + process.isAlive());
-                            }
-                            catch (IOException exception)
-                            {
-                                exception.printStackTrace();
-                            }
+                            this.cdsArchiveCache.launched(cdsOptions, process);
                         }
-                    }.start();
-
-                    this.modelPortMap.put(startFederateMessage.getInstanceId(), modelPort);
-                    this.startFederateMessages.put(startFederateMessage.getInstanceId(), startFederateMessage);
-
-                    // Thread.sleep(1000);
-
-                    // wait till the model is ready...
-                    System.out.println("modelController : " + this.modelController);
-                    if (this.modelController)
-                    {
-                        error = waitForModelStarted(startFederateMessage.getFederationId(),
-                                startFederateMessage.getInstanceId(), modelPort);
                     }
                 }
+                System.err.println("Process started:" + process.isAlive());
+
+                Object instanceId = startFederateMessage.getInstanceId();
+                this.runningProcessMap.put(instanceId, process);
+                this.modelPortMap.put(instanceId, modelPort);
+                this.startFederateMessages.put(instanceId, startFederateMessage);
+                this.identityMap.put(instanceId, identity);
+                this.startTimeMap.put(instanceId, System.currentTimeMillis());
+                this.exitedFederateMap.remove(instanceId);
+                if (this.federateJournal != null && !(process instanceof InJvmProcess) && isJournaled(startFederateMessage))
+                {
+                    this.federateJournal.started(instanceId, process.pid(), modelPort, identity, null, startFederateMessage,
+                            this.coreMap.get(instanceId));
+                }
+                if (this.sampler != null && !(process instanceof InJvmProcess))
+                {
+                    this.sampler.register(instanceId, process.pid());
+                }
+                if (captureStdout || captureStderr)
+                {
+                    this.outputCapture.register(instanceId, process, captureStdout, captureStderr);
+                }
+                process.onExit().thenAccept(p -> this.loopTasks.add(() -> processExited(p)));
             }
-            catch (IOException exception)
+        }
+        catch (IOException exception)
+        {
+            exception.printStackTrace();
+            error = exception.getMessage();
+            if (!this.runningProcessMap.containsKey(startFederateMessage.getInstanceId()))
             {
-                exception.printStackTrace();
-                error = exception.getMessage();
+                // the process could not be started, so its cores are free again
+                releaseCores(startFederateMessage.getInstanceId());
             }
         }
 
-        System.out.println("SEND MESSAGE FS.2 ABOUT MODEL " + startFederateMessage.getInstanceId() + " @ port " + modelPort);
+        return error;
+    }
 
-        // Send reply back to client
-        this.fsSocket.sendMore(identity);
-        this.fsSocket.sendMore("");
-        //@formatter:off
-        byte[] fs2Message = new FS2FederateStartedMessage.Builder()
+    /**
+     * Send the FS.2 message back to the Federation Manager that sent the FM.1 message. When the federate reuses the process of
+     * an earlier instance, the message carries the id that the model uses.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param startFederateMessage the FM.1 message to reply to
+     * @param error the error, or an empty String when the federate was started
+     * @param modelPort the port on which the model listens
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private void sendFederateStarted(final String identity, final FM1StartFederateMessage startFederateMessage,
+            final String error, final int modelPort) throws Sim0MQException, SerializationException
+    {
+        // Send reply back to client
+        this.fsSocket.sendMore(identity);
+        this.fsSocket.sendMore("");
+        Object instanceId = startFederateMessage.getInstanceId();
+        Object modelId = error.isEmpty() ? getModelId(instanceId) : instanceId;
+        //@formatter:off
+        byte[] fs2Message = new FS2FederateStartedMessage.Builder()
                 .setSimulationRunId(startFederateMessage.getFederationId())
-                .setInstanceId(startFederateMessage.getInstanceId())
+                .setInstanceId(instanceId)
                 .setSenderId("FS")
                 .setReceiverId(startFederateMessage.getSenderId())
                 .setMessageId(++this.messageCount)
                 .setStatus(error.isEmpty() ? "started" : "error")
                 .setError(error)
                 .setModelPort(modelPort)
+                .setModelId(modelId.equals(instanceId) ? null : modelId)
                 .build()
                 .createByteArray();
         this.fsSocket.send(fs2Message, 0);
         //@formatter:on
     }
 
+    /**
+     * Return whether the node has room to start another federate: the number of running federates is below its maximum, the
+     * last admitted start is at least fs.admission.interval ms ago, dedicated cores are free when federates are pinned, the CPU
+     * load is not above its maximum, and enough memory is available. A metric that cannot be read does not limit the admission.
+     * @return whether a federate can be started now
+     */
+    private boolean canAdmit()
+    {
+        if (this.admissionFederates > 0 && this.runningProcessMap.size() >= this.admissionFederates)
+        {
+            return false;
+        }
+        if (System.currentTimeMillis() - this.lastAdmissionTime < this.admissionInterval)
+        {
+            return false;
+        }
+        if (this.corePlacement != null && !this.corePlacement.hasFreeCores())
+        {
+            return false;
+        }
+        double cpuLoad = this.nodeMetrics.getCpuLoad();
+        if (!Double.isNaN(cpuLoad) && cpuLoad > this.admissionCpu)
+        {
+            return false;
+        }
+        long availableMemory = this.nodeMetrics.getAvailableMemory();
+        return availableMemory < 0 || availableMemory >= this.admissionMemory;
+    }
+
+    /**
+     * Queue a start that cannot be admitted now, and reply with an FS.2 message with status "queued". When the queue is full,
+     * the reply is an FS.2 message with status "error".
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param startFederateMessage the FM.1 message
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private void queueStart(final String identity, final FM1StartFederateMessage startFederateMessage)
+            throws Sim0MQException, SerializationException
+    {
+        if (!enqueueStart(identity, startFederateMessage))
+        {
+            sendFederateStarted(identity, startFederateMessage, "node overloaded -- admission queue full", 0);
+            return;
+        }
+        reportQueuedStart(identity, this.queuedStarts.get(startFederateMessage.getInstanceId()));
+    }
+
+    /**
+     * Queue a start that cannot be admitted now, without replying to the Federation Manager.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param startFederateMessage the FM.1 message
+     * @return whether the start was queued; false when the queue is full
+     */
+    private boolean enqueueStart(final String identity, final FM1StartFederateMessage startFederateMessage)
+    {
+        if (this.pendingStarts.size() >= this.admissionQueueSize)
+        {
+            System.err.println("Start of model " + startFederateMessage.getInstanceId() + " refused -- admission queue full");
+            return false;
+        }
+        int federationSize = 0;
+        synchronized (this.startFederateMessages)
+        {
+            for (FM1StartFederateMessage sfm : this.startFederateMessages.values())
+            {
+                if (sfm.getFederationId().equals(startFederateMessage.getFederationId()))
+                {
+                    federationSize++;
+                }
+            }
+        }
+        QueuedStart queuedStart = new QueuedStart(identity, startFederateMessage, federationSize, ++this.queueSequence);
+        this.pendingStarts.add(queuedStart);
+        this.queuedStarts.put(startFederateMessage.getInstanceId(), queuedStart);
+        // provision the working directory while the start waits for admission
+        provisioned(startFederateMessage, this::admitQueuedStarts);
+        System.out.println("Start of model " + startFederateMessage.getInstanceId() + " queued -- " + this.pendingStarts.size()
+                + " starts waiting for admission");
+        return true;
+    }
+
+    /**
+     * Reply to an FM.1 message for a queued start: with the outcome of the start when it has been carried out, and with an
+     * FS.2 message with status "queued" and the estimated wait otherwise.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param queuedStart the queued start
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private void reportQueuedStart(final String identity, final QueuedStart queuedStart)
+            throws Sim0MQException, SerializationException
+    {
+        FM1StartFederateMessage startFederateMessage = queuedStart.startFederateMessage;
+        if (queuedStart.done)
+        {
+            this.queuedStarts.remove(startFederateMessage.getInstanceId());
+            sendFederateStarted(identity, startFederateMessage, queuedStart.error, queuedStart.modelPort);
+            return;
+        }
+        this.fsSocket.sendMore(identity);
+        this.fsSocket.sendMore("");
+        //@formatter:off
+        byte[] fs2Message = new FS2FederateStartedMessage.Builder()
+                .setSimulationRunId(startFederateMessage.getFederationId())
+                .setInstanceId(startFederateMessage.getInstanceId())
+                .setSenderId("FS")
+                .setReceiverId(startFederateMessage.getSenderId())
+                .setMessageId(++this.messageCount)
+                .setStatus("queued")
+                .setError("")
+                .setModelPort(0)
+                .setEstimatedWait(estimateWait(queuedStart))
+                .build()
+                .createByteArray();
+        this.fsSocket.send(fs2Message, 0);
+        //@formatter:on
+    }
+
+    /**
+     * Estimate the wait till a queued start, based on its position in the queue, the admission interval, and the smoothed
+     * runtime of the federates that have ended on this node.
+     * @param queuedStart the queued start
+     * @return the estimated wait
+     */
+    private Duration estimateWait(final QueuedStart queuedStart)
+    {
+        int position = 1;
+        for (QueuedStart other : this.pendingStarts)
+        {
+            if (this.pendingStarts.comparator().compare(other, queuedStart) < 0)
+            {
+                position++;
+            }
+        }
+        double perStart = Math.max(this.admissionInterval, this.averageRuntime / Math.max(1, this.runningProcessMap.size()));
+        return new Duration(position * perStart, DurationUnit.MILLISECOND);
+    }
+
+    /**
+     * Start the queued federates for which the node has room, in order of priority. A queued start that finds no free port
+     * stays at the head of the queue till a port is released.
+     */
+    private void admitQueuedStarts()
+    {
+        while (!this.pendingStarts.isEmpty() && canAdmit())
+        {
+            QueuedStart queuedStart = this.pendingStarts.peek();
+            FM1StartFederateMessage startFederateMessage = queuedStart.startFederateMessage;
+            Object idleId = this.reuseProcesses ? takeIdleProcess(startFederateMessage) : null;
+            if (idleId == null && !provisioned(startFederateMessage, this::admitQueuedStarts))
+            {
+                // the admission round is carried out again when the working directory has been provisioned
+                return;
+            }
+            int modelPort = idleId != null ? reuseProcess(idleId, startFederateMessage) : findFreePortNumber();
+            if (modelPort == -1)
+            {
+                if (this.terminatingFederates.isEmpty())
+                {
+                    evictIdleProcess(() ->
+                    {
+                        // the start is retried by the next admission round
+                    });
+                }
+                return;
+            }
+
+            this.pendingStarts.poll();
+            queuedStart.modelPort = modelPort;
+            if (idleId == null)
+            {
+                this.lastAdmissionTime = System.currentTimeMillis();
+                try
+                {
+                    queuedStart.error = startProcess(queuedStart.identity, startFederateMessage, modelPort);
+                }
+                catch (Sim0MQException | SerializationException exception)
+                {
+                    exception.printStackTrace();
+                    queuedStart.error = exception.getMessage();
+                }
+            }
+            queuedStart.done = true;
+            System.out.println("Queued start of model " + startFederateMessage.getInstanceId() + " carried out @ port "
+                    + modelPort + (queuedStart.error.isEmpty() ? "" : " with error " + queuedStart.error));
+
+            if (this.notifyExit)
+            {
+                try
+                {
+                    reportQueuedStart(queuedStart.identity, queuedStart);
+                }
+                catch (Sim0MQException | SerializationException exception)
+                {
+                    exception.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a start from the queue, when it has not been carried out yet.
+     * @param instanceId the instance id of the federate
+     * @return whether a start that was still waiting for admission was removed
+     */
+    private boolean cancelQueuedStart(final Object instanceId)
+    {
+        QueuedStart queuedStart = this.queuedStarts.get(instanceId);
+        if (queuedStart == null || queuedStart.done)
+        {
+            return false;
+        }
+        this.queuedStarts.remove(instanceId);
+        this.pendingStarts.remove(queuedStart);
+        this.provisionedMap.remove(instanceId);
+        return true;
+    }
+
+    /**
+     * Process the FM.12 message again, after the working directories of its instances have been provisioned.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message Message; the FM.12 message
+     */
+    private void retryStartFederates(final String identity, final Sim0MQMessage message)
+    {
+        try
+        {
+            processStartFederates(identity, message);
+        }
+        catch (Sim0MQException | SerializationException exception)
+        {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Return whether the working directory of a federate is ready for the launch of its process, and start provisioning it
+     * from its template on a worker thread when that has not been done yet. Provisioning copies or links the files of the
+     * template, which can take long, so it does not run on the thread that owns the sockets; the outcome is handed back
+     * through loopTasks, after which the continuation is carried out.
+     * @param startFederateMessage the FM.1 message
+     * @param continuation the work to carry out on the thread that owns the sockets when provisioning has ended
+     * @return whether the FM.1 message has no template, or its working directory has been provisioned (with or without error)
+     */
+    private boolean provisioned(final FM1StartFederateMessage startFederateMessage, final Runnable continuation)
+    {
+        Object instanceId = startFederateMessage.getInstanceId();
+        if (startFederateMessage.getTemplate().isEmpty() || this.provisionedMap.containsKey(instanceId))
+        {
+            return true;
+        }
+        if (this.provisioningFederates.add(instanceId))
+        {
+            if (startFederateMessage.isDeleteWorkingDirectory())
+            {
+                // register before the working directory is created by the provisioning
+                this.directoryCleaner.register(Paths.get(startFederateMessage.getWorkingDirectory()));
+            }
+            this.templateProvisioner
+                    .provisionAsync(startFederateMessage.getTemplate(), Paths.get(startFederateMessage.getWorkingDirectory()))
+                    .whenComplete((result, exception) -> this.loopTasks.add(() ->
+                    {
+                        Throwable cause = exception != null && exception.getCause() != null ? exception.getCause() : exception;
+                        this.provisioningFederates.remove(instanceId);
+                        this.provisionedMap.put(instanceId, cause == null ? "" : String.valueOf(cause.getMessage()));
+                        continuation.run();
+                    }));
+        }
+        return false;
+    }
+
+    /**
+     * Process the FM.1 message again, after the process that occupied a port has been terminated.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message Message; the FM.1 message
+     */
+    private void retryStartFederate(final String identity, final Sim0MQMessage message)
+    {
+        try
+        {
+            processStartFederate(identity, message);
+        }
+        catch (Sim0MQException | SerializationException exception)
+        {
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Return the key under which idle processes are pooled for reuse. Only a process that was started with exactly the same
+     * command line, working directory, template and redirects can be handed out again, since these cannot be changed for a
+     * running process.
+     * @param startFederateMessage the FM.1 message
+     * @return the reuse key for the process that the FM.1 message asks for
+     */
+    private static String reuseKey(final FM1StartFederateMessage startFederateMessage)
+    {
+        return String.join("\0", startFederateMessage.getSoftwareCode(), startFederateMessage.getArgsBefore(),
+                startFederateMessage.getModelPath(), startFederateMessage.getArgsAfter(),
+                startFederateMessage.getWorkingDirectory(), startFederateMessage.getTemplate(),
+                startFederateMessage.getRedirectStdin(), startFederateMessage.getRedirectStdout(),
+                startFederateMessage.getRedirectStderr());
+    }
+
+    /**
+     * Return the id that the model process itself uses as its sender id. This differs from the instance id when the instance
+     * reuses the process of an earlier instance.
+     * @param instanceId the instance id as used by the Federation Manager
+     * @return the id that the model process uses
+     */
+    private Object getModelId(final Object instanceId)
+    {
+        return this.modelIdMap.getOrDefault(instanceId, instanceId);
+    }
+
+    /**
+     * Take an idle process from the pool that can be reused for the given FM.1 message, if available.
+     * @param startFederateMessage the FM.1 message
+     * @return the instance id of the idle process, or null when no idle process is available for reuse
+     */
+    private Object takeIdleProcess(final FM1StartFederateMessage startFederateMessage)
+    {
+        String key = reuseKey(startFederateMessage);
+        Iterator<Map.Entry<Object, String>> iterator = this.idleProcessMap.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            Map.Entry<Object, String> entry = iterator.next();
+            if (!entry.getValue().equals(key))
+            {
+                continue;
+            }
+            iterator.remove();
+            Object idleId = entry.getKey();
+            Process process = this.runningProcessMap.get(idleId);
+            if (process != null && process.isAlive())
+            {
+                return idleId;
+            }
+            // the idle process died in the meantime
+            cleanupFederate(this.startFederateMessages.get(idleId));
+            releaseFederate(idleId);
+        }
+        return null;
+    }
+
+    /**
+     * Hand out the idle process that is known under idleId to the instance of the FM.1 message. The process, port and model id
+     * of the idle instance move to the new instance id, so the FS.2 reply and later FM.8 message use the new instance id. The
+     * files that the FM.1 message of the idle instance asked to delete are still in use by the process; they are deleted when
+     * the process ends.
+     * @param idleId the instance id of the idle process
+     * @param startFederateMessage the FM.1 message for the new instance
+     * @return the port on which the reused model listens
+     */
+    private int reuseProcess(final Object idleId, final FM1StartFederateMessage startFederateMessage)
+    {
+        Object instanceId = startFederateMessage.getInstanceId();
+        Object modelId = getModelId(idleId);
+        this.modelIdMap.remove(idleId);
+        // the working directory of the idle process is the same, so a template that was provisioned ahead is not needed
+        this.provisionedMap.remove(instanceId);
+        FM1StartFederateMessage previous = this.startFederateMessages.remove(idleId);
+        List<FM1StartFederateMessage> earlier = this.reusedStartMessages.remove(idleId);
+        earlier = earlier == null ? new ArrayList<>() : earlier;
+        if (previous != null && (previous.isDeleteWorkingDirectory() || previous.isDeleteStdout() || previous.isDeleteStderr())
+                && earlier.stream().noneMatch(e -> e.isDeleteWorkingDirectory() == previous.isDeleteWorkingDirectory()
+                        && e.isDeleteStdout() == previous.isDeleteStdout() && e.isDeleteStderr() == previous.isDeleteStderr()))
+        {
+            // the paths are part of the reuse key, so one earlier message per combination of deletions is enough
+            earlier.add(previous);
+        }
+        if (!earlier.isEmpty())
+        {
+            this.reusedStartMessages.put(instanceId, earlier);
+        }
+        int modelPort = this.modelPortMap.remove(idleId);
+        this.runningProcessMap.put(instanceId, this.runningProcessMap.remove(idleId));
+        this.modelPortMap.put(instanceId, modelPort);
+        this.startFederateMessages.put(instanceId, startFederateMessage);
+        this.identityMap.put(instanceId, this.identityMap.remove(idleId));
+        ZMQ.Socket modelSocket = this.modelSocketMap.remove(idleId);
+        if (modelSocket != null)
+        {
+            this.modelSocketMap.put(instanceId, modelSocket);
+        }
+        BitSet cores = this.coreMap.remove(idleId);
+        if (cores != null)
+        {
+            this.coreMap.put(instanceId, cores);
+        }
+        if (this.sampler != null)
+        {
+            this.sampler.rename(idleId, instanceId);
+        }
+        this.outputCapture.rename(idleId, instanceId);
+        this.startTimeMap.remove(idleId);
+        this.startTimeMap.put(instanceId, System.currentTimeMillis());
+        this.exitedFederateMap.remove(instanceId);
+        if (!modelId.equals(instanceId))
+        {
+            this.modelIdMap.put(instanceId, modelId);
+        }
+        Process process = this.runningProcessMap.get(instanceId);
+        if (this.federateJournal != null && !(process instanceof InJvmProcess) && isJournaled(startFederateMessage))
+        {
+            this.federateJournal.ended(idleId);
+            this.federateJournal.started(instanceId, process.pid(), modelPort, this.identityMap.get(instanceId),
+                    modelId.equals(instanceId) ? null : modelId, startFederateMessage, this.coreMap.get(instanceId));
+        }
+        return modelPort;
+    }
+
+    /**
+     * Put the process of a federate that has been reset in the pool of idle processes.
+     * @param instanceId the instance id of the federate whose process becomes idle
+     */
+    private void parkIdleProcess(final Object instanceId)
+    {
+        this.idleProcessMap.put(instanceId, reuseKey(this.startFederateMessages.get(instanceId)));
+        if (this.federateJournal != null)
+        {
+            this.federateJournal.idle(instanceId);
+        }
+    }
+
+    /**
+     * Terminate the process that has been idle for the longest time to free its port.
+     * @param whenEvicted the work to carry out on the thread that owns the sockets when the port has been released
+     * @return whether an idle process is being terminated
+     */
+    private boolean evictIdleProcess(final Runnable whenEvicted)
+    {
+        if (this.idleProcessMap.isEmpty())
+        {
+            return false;
+        }
+        Object idleId = this.idleProcessMap.keySet().iterator().next();
+        this.idleProcessMap.remove(idleId);
+        FM1StartFederateMessage sfm = this.startFederateMessages.get(idleId);
+        System.out.println("Evicting idle process of " + idleId + " to free its port");
+        terminateFederates(sfm.getFederationId(), List.of(idleId), error -> whenEvicted.run());
+        return true;
+    }
+
+    /**
+     * Reset the model with an FM.7 message, so the process can be reused. The reset is parked till the model replies with
+     * MC.2 or the reuse timeout expires; {@link #finishPendingResets} then sends the FS.4 reply, so the thread that owns the
+     * sockets does not wait for the model.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param federationRunId the name of the federation
+     * @param senderId the sender of the FM.8 message
+     * @param instanceId the instance id of the model
+     * @return whether the FM.7 message was sent
+     */
+    private boolean resetModel(final String identity, final Object federationRunId, final Object senderId,
+            final Object instanceId)
+    {
+        try
+        {
+            long messageId = ++this.messageCount;
+            byte[] fm7Message =
+                    new FM7SimResetMessage(federationRunId, "FS", getModelId(instanceId), messageId).createByteArray();
+            sendToModel(instanceId, fm7Message);
+            this.pendingResets.put(instanceId, new PendingReset(identity, federationRunId, senderId, messageId,
+                    System.currentTimeMillis() + this.reuseTimeout));
+            return true;
+        }
+        catch (Exception exception)
+        {
+            exception.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Finish the pending resets without waiting: a model that acknowledged the reset is put in the pool of idle processes, and
+     * a model that refused the reset or did not reply within the reuse timeout is killed. The FS.4 reply is sent when the
+     * process is idle or gone. A reset of which the process exited in the meantime is answered at once.
+     */
+    private void finishPendingResets()
+    {
+        for (Object instanceId : new ArrayList<>(this.pendingResets.keySet()))
+        {
+            PendingReset reset = this.pendingResets.get(instanceId);
+            if (!this.modelPortMap.containsKey(instanceId))
+            {
+                // the process exited during the reset, and its administration has already been released
+                this.pendingResets.remove(instanceId);
+                sendFederateKilled(reset.identity, reset.federationRunId, reset.senderId, instanceId, "");
+                continue;
+            }
+            boolean acknowledged = false;
+            try
+            {
+                Object[] reply = receiveFromModel(instanceId, reset.messageId, 0);
+                if (reply == null && System.currentTimeMillis() < reset.deadline)
+                {
+                    continue;
+                }
+                if (reply == null)
+                {
+                    System.err.println("Model " + instanceId + " did not acknowledge the reset -- process will be killed");
+                }
+                else
+                {
+                    MC2AckNakMessage replyMessage = new MC2AckNakMessage(reply);
+                    acknowledged = replyMessage.getStatus();
+                    if (!acknowledged)
+                    {
+                        System.err.println("Model " + instanceId + " could not be reset: " + replyMessage.getError());
+                    }
+                }
+            }
+            catch (Exception exception)
+            {
+                exception.printStackTrace();
+            }
+            this.pendingResets.remove(instanceId);
+            if (acknowledged)
+            {
+                System.out.println("Model " + instanceId + " has been reset and is kept for reuse");
+                parkIdleProcess(instanceId);
+                sendFederateKilled(reset.identity, reset.federationRunId, reset.senderId, instanceId, "");
+            }
+            else
+            {
+                // the FS.4 reply is sent as soon as the process is gone
+                terminateFederates(reset.federationRunId, List.of(instanceId), killError -> sendFederateKilled(reset.identity,
+                        reset.federationRunId, reset.senderId, instanceId, killError));
+            }
+        }
+    }
+
+    /**
+     * Return the cached DEALER connection to the model controller of a federate, and create it when it does not exist yet. The
+     * connection is kept till the administration of the federate is released, so the connection setup is only paid once, and
+     * several requests to the model can be outstanding at the same time.
+     * @param instanceId the instance id of the federate
+     * @return the DEALER socket that is connected to the model
+     */
+    private ZMQ.Socket getModelSocket(final Object instanceId)
+    {
+        return this.modelSocketMap.computeIfAbsent(instanceId, id ->
+        {
+            ZMQ.Socket modelSocket = this.fsContext.createSocket(SocketType.DEALER);
+            modelSocket.setIdentity(UUID.randomUUID().toString().getBytes());
+            modelSocket.setLinger(0);
+            modelSocket.connect("tcp://127.0.0.1:" + this.modelPortMap.get(id));
+            return modelSocket;
+        });
+    }
+
+    /**
+     * Send a message to the model controller of a federate over its cached connection. The empty delimiter frame that a REQ
+     * socket would add is sent first, so the ROUTER of the model controller sees the same frames as for a REQ socket.
+     * @param instanceId the instance id of the federate
+     * @param message the encoded message
+     */
+    private void sendToModel(final Object instanceId, final byte[] message)
+    {
+        ZMQ.Socket modelSocket = getModelSocket(instanceId);
+        modelSocket.sendMore("");
+        modelSocket.send(message, 0);
+    }
+
+    /**
+     * Receive the reply on a request from the model controller of a federate. Since several requests can be outstanding on the
+     * DEALER connection, replies to other requests (e.g., a late reply to a request that timed out) are skipped.
+     * @param instanceId the instance id of the federate
+     * @param messageId the message id of the request
+     * @param timeout the time in ms to wait for the reply, or -1 to wait indefinitely
+     * @return the fields of the reply, or null when no reply was received within the timeout
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private Object[] receiveFromModel(final Object instanceId, final long messageId, final int timeout)
+            throws Sim0MQException, SerializationException
+    {
+        ZMQ.Socket modelSocket = getModelSocket(instanceId);
+        modelSocket.setReceiveTimeOut(timeout);
+        while (true)
+        {
+            // first the delimiter, then the message
+            if (modelSocket.recv(0) == null)
+            {
+                return null;
+            }
+            byte[] reply = modelSocket.recv(0);
+            if (reply == null)
+            {
+                return null;
+            }
+            Object[] objectArray = Sim0MQMessage.decodeToArray(reply);
+            if (objectArray.length > 8 && objectArray[8] instanceof Long && ((Long) objectArray[8]).longValue() == messageId)
+            {
+                return objectArray;
+            }
+            System.err.println("Skipped reply from model " + instanceId + " to an earlier request: " + objectArray[5]);
+        }
+    }
+
+    /**
+     * Close the cached connection to the model controller of a federate, if it exists.
+     * @param instanceId the instance id of the federate
+     */
+    private void closeModelSocket(final Object instanceId)
+    {
+        ZMQ.Socket modelSocket = this.modelSocketMap.remove(instanceId);
+        if (modelSocket != null)
+        {
+            modelSocket.close();
+        }
+    }
+
     /**
      * Find a free port for the model.
      * @return the first free fort number in the range startPort - endPort, inclusive
@@ -330,189 +1667,607 @@ public class FederateStarter
                 }
             }
         }
-        return -1;
+        return -1;
+    }
+
+    /**
+     * Wait for simulation to end using status polling with message FM.5.
+     * @param federationRunId the name of the federation
+     * @param modelId the String id of the model
+     * @return empty String for no error, filled String for error
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private String waitForModelStarted(final Object federationRunId, final Object modelId)
+            throws Sim0MQException, SerializationException
+    {
+        String error = "";
+        boolean started = false;
+        while (!started)
+        {
+            long messageId = ++this.messageCount;
+            byte[] fs1Message = new FS1RequestStatusMessage(federationRunId, "FS", modelId, messageId).createByteArray();
+            sendToModel(modelId, fs1Message);
+            System.out.println("Sent: FS.1 to " + modelId + ", waiting on MC1");
+
+            Object[] objectArray = receiveFromModel(modelId, messageId, -1);
+            System.out.println("Received\n" + Sim0MQMessage.print(objectArray));
+            MC1StatusMessage replyMessage = new MC1StatusMessage(objectArray);
+
+            if (!replyMessage.getStatus().equals("error") && !replyMessage.getStatus().equals("ended"))
+            {
+                if (replyMessage.getStatus().equals("started"))
+                {
+                    started = true;
+                }
+                else
+                {
+                    // wait a second
+                    try
+                    {
+                        Thread.sleep(100);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        // ignore
+                    }
+                }
+            }
+            else
+            {
+                error = replyMessage.getError();
+                System.err.println("Simulation start error -- status = " + replyMessage.getStatus());
+                System.err.println("Error message = " + error);
+                break;
+            }
+        }
+
+        return error;
+    }
+
+    /**
+     * Process FM.8 message and send FS.4 message back. When the federate has to be terminated, the FS.4 reply is sent as soon
+     * as its process is gone.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message the message
+     * @throws Sim0MQException on error
+     * @throws SerializationException on error
+     */
+    private void processKillFederate(final String identity, final Sim0MQMessage message)
+            throws Sim0MQException, SerializationException
+    {
+        String error = "";
+
+        Object federationRunId = message.getFederationId();
+        Object senderId = message.getSenderId();
+
+        FM8KillFederateMessage killMessage = new FM8KillFederateMessage(message.createObjectArray());
+        Object modelId = killMessage.getInstanceId();
+        if (cancelQueuedStart(modelId))
+        {
+            System.out.println("Queued start of model " + modelId + " cancelled");
+        }
+        else if (this.terminatingFederates.contains(modelId) || this.pendingResets.containsKey(modelId))
+        {
+            error = "model " + modelId + " is already being killed";
+        }
+        else if (this.exitedFederateMap.containsKey(modelId))
+        {
+            // the process exited on its own before, and its resources have already been released
+            System.out.println(
+                    "Model " + modelId + " had already exited with exit code " + this.exitedFederateMap.get(modelId));
+        }
+        else if (!this.modelPortMap.containsKey(modelId))
+        {
+            error = "model " + modelId + " unknown -- this model is unknown to the FederateStarter";
+        }
+        else
+        {
+            Process process = this.runningProcessMap.get(modelId);
+            if (this.reuseProcesses && process != null && process.isAlive()
+                    && resetModel(identity, federationRunId, senderId, modelId))
+            {
+                // the FS.4 reply is sent when the model has acknowledged the reset, or has been killed
+                return;
+            }
+            else
+            {
+                // the FS.4 reply is sent as soon as the process is gone
+                terminateFederates(federationRunId, List.of(modelId),
+                        killError -> sendFederateKilled(identity, federationRunId, senderId, modelId, killError));
+                return;
+            }
+        }
+
+        sendFederateKilled(identity, federationRunId, senderId, modelId, error);
+    }
+
+    /**
+     * Send the FS.4 message back to the Federation Manager that sent the FM.8 message.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param federationRunId the name of the federation
+     * @param senderId the sender of the FM.8 message
+     * @param modelId the instance id of the model
+     * @param error the error, or an empty String when the federate was killed
+     */
+    private void sendFederateKilled(final String identity, final Object federationRunId, final Object senderId,
+            final Object modelId, final String error)
+    {
+        try
+        {
+            byte[] fs4Message = new FS4FederateKilledMessage(federationRunId, "FS", senderId, ++this.messageCount, modelId,
+                    error.isEmpty(), error).createByteArray();
+            this.fsSocket.sendMore(identity);
+            this.fsSocket.sendMore("");
+            this.fsSocket.send(fs4Message, 0);
+        }
+        catch (Sim0MQException | SerializationException exception)
+        {
+            exception.printStackTrace();
+        }
     }
 
     /**
-     * Wait for simulation to end using status polling with message FM.5.
-     * @param federationRunId the name of the federation
-     * @param modelId the String id of the model
-     * @param modelPort port on which the model is listening
-     * @return empty String for no error, filled String for error
+     * Process FM.10 message and send FS.7 message back with the sampled resource usage of the federate.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message the message
      * @throws Sim0MQException on error
      * @throws SerializationException on error
      */
-    private String waitForModelStarted(final Object federationRunId, final Object modelId, final int modelPort)
+    private void processRequestStatistics(final String identity, final Sim0MQMessage message)
             throws Sim0MQException, SerializationException
     {
-        boolean ok = true;
+        FM10RequestFederateStatisticsMessage requestMessage =
+                new FM10RequestFederateStatisticsMessage(message.createObjectArray());
+        Object instanceId = requestMessage.getInstanceId();
+        FederateSampler.Samples samples = this.sampler == null ? null : this.sampler.getSamples(instanceId);
         String error = "";
-        ZMQ.Socket modelSocket = null;
-        try
+        if (this.sampler == null)
         {
-            modelSocket = this.fsContext.createSocket(SocketType.REQ);
-            modelSocket.setIdentity(UUID.randomUUID().toString().getBytes());
-            modelSocket.connect("tcp://127.0.0.1:" + modelPort);
-        }
-        catch (Exception exception)
-        {
-            exception.printStackTrace();
-            ok = false;
-            error = exception.getMessage();
+            error = "sampling is switched off in the FederateStarter";
         }
-
-        boolean started = false;
-        while (ok && !started)
+        else if (samples == null)
         {
-            byte[] fs1Message =
-                    new FS1RequestStatusMessage(federationRunId, "FS", modelId, ++this.messageCount).createByteArray();
-            modelSocket.send(fs1Message, 0);
-            System.out.println("Sent: FS.1 to " + modelId + ", waiting on MC1");
-
-            byte[] reply = modelSocket.recv(0);
-            Object[] objectArray = Sim0MQMessage.decodeToArray(reply);
-            System.out.println("Received\n" + Sim0MQMessage.print(objectArray));
-            MC1StatusMessage replyMessage = new MC1StatusMessage(objectArray);
-
-            // Synchronous and single-threaded, so the messageCount cannot change between send and receive
-            if (!replyMessage.getStatus().equals("error") && !replyMessage.getStatus().equals("ended")
-                    && ((Long) replyMessage.getReplyToId()).longValue() == this.messageCount)
-            {
-                if (replyMessage.getStatus().equals("started"))
-                {
-                    started = true;
-                }
-                else
-                {
-                    // wait a second
-                    try
-                    {
-                        Thread.sleep(100);
-                    }
-                    catch (InterruptedException ie)
-                    {
-                        // ignore
-                    }
-                }
-            }
-            else
-            {
-                ok = false;
-                error = replyMessage.getError();
-                System.err.println("Simulation start error -- status = " + replyMessage.getStatus());
-                System.err.println("Error message = " + error);
-            }
+            error = "model " + instanceId + " unknown -- this model is not running in the FederateStarter";
         }
-
-        if (modelSocket != null)
+        if (samples == null)
         {
-            modelSocket.close();
+            samples = new FederateSampler.Samples(0);
         }
 
-        return error;
+        //@formatter:off
+        byte[] fs7Message = new FS7FederateStatisticsMessage.Builder()
+                .setSimulationRunId(message.getFederationId())
+                .setSenderId("FS")
+                .setReceiverId(message.getSenderId())
+                .setMessageId(++this.messageCount)
+                .setInstanceId(instanceId)
+                .setStatus(error.isEmpty())
+                .setError(error)
+                .setSampleTimes(samples.getSampleTimes())
+                .setCpuLoad(samples.getCpuLoad())
+                .setResidentMemory(samples.getResidentMemory())
+                .setReadBytes(samples.getReadBytes())
+                .setWriteBytes(samples.getWriteBytes())
+                .build()
+                .createByteArray();
+        //@formatter:on
+        this.fsSocket.sendMore(identity);
+        this.fsSocket.sendMore("");
+        this.fsSocket.send(fs7Message, 0);
     }
 
     /**
-     * Process FM.8 message and send FS.4 message back.
+     * Process FM.11 message and send FS.8 message back with the tail of the captured output of the federate. The output of a
+     * federate that exited is retained for a while, so the reason of a crash can still be retrieved.
      * @param identity reply id for REQ-ROUTER pattern
      * @param message the message
      * @throws Sim0MQException on error
      * @throws SerializationException on error
      */
-    private void processKillFederate(final String identity, final Sim0MQMessage message)
+    private void processRequestOutput(final String identity, final Sim0MQMessage message)
             throws Sim0MQException, SerializationException
     {
-        boolean status = true;
+        FM11RequestFederateOutputMessage requestMessage = new FM11RequestFederateOutputMessage(message.createObjectArray());
+        Object instanceId = requestMessage.getInstanceId();
+        OutputCapture.RingBuffer buffer = this.outputCapture.getBuffer(instanceId, requestMessage.getStream());
         String error = "";
+        String output = "";
+        long totalBytes = 0L;
+        if (buffer == null)
+        {
+            error = "the " + requestMessage.getStream() + " of model " + instanceId + " is not captured by the FederateStarter";
+        }
+        else
+        {
+            synchronized (buffer)
+            {
+                output = new String(buffer.tail(requestMessage.getMaxBytes()), StandardCharsets.UTF_8);
+                totalBytes = buffer.getTotalBytes();
+            }
+        }
+
+        //@formatter:off
+        byte[] fs8Message = new FS8FederateOutputMessage.Builder()
+                .setSimulationRunId(message.getFederationId())
+                .setSenderId("FS")
+                .setReceiverId(message.getSenderId())
+                .setMessageId(++this.messageCount)
+                .setInstanceId(instanceId)
+                .setStream(requestMessage.getStream())
+                .setStatus(error.isEmpty())
+                .setError(error)
+                .setTotalBytes(totalBytes)
+                .setOutput(output)
+                .build()
+                .createByteArray();
+        //@formatter:on
+        this.fsSocket.sendMore(identity);
+        this.fsSocket.sendMore("");
+        this.fsSocket.send(fs8Message, 0);
+    }
 
+    /**
+     * Process FM.9 message and send FS.5 message back. All federates of the federation, including its idle processes, are
+     * terminated at the same time. The FS.5 reply is sent as soon as all processes are gone.
+     * @param identity reply id for REQ-ROUTER pattern
+     * @param message the message
+     */
+    private void processKillAllFederates(final String identity, final Sim0MQMessage message)
+    {
         Object federationRunId = message.getFederationId();
         Object senderId = message.getSenderId();
 
-        FM8KillFederateMessage killMessage = new FM8KillFederateMessage(message.createObjectArray());
-        Object modelId = killMessage.getInstanceId();
-        if (!this.modelPortMap.containsKey(modelId))
+        List<Object> instanceIds = new ArrayList<>();
+        synchronized (this.startFederateMessages)
         {
-            status = false;
-            error = "model " + modelId + " unknown -- this model is unknown to the FederateStarter";
+            for (Map.Entry<Object, FM1StartFederateMessage> entry : this.startFederateMessages.entrySet())
+            {
+                if (entry.getValue().getFederationId().equals(federationRunId)
+                        && !this.terminatingFederates.contains(entry.getKey()))
+                {
+                    instanceIds.add(entry.getKey());
+                }
+            }
         }
-        else
+        this.idleProcessMap.keySet().removeAll(instanceIds);
+        for (QueuedStart queuedStart : new ArrayList<>(this.pendingStarts))
         {
-            int modelPort = this.modelPortMap.remove(modelId);
-            Process process = this.runningProcessMap.remove(modelId);
+            if (queuedStart.startFederateMessage.getFederationId().equals(federationRunId))
+            {
+                cancelQueuedStart(queuedStart.startFederateMessage.getInstanceId());
+            }
+        }
+        System.out.println("Killing " + instanceIds.size() + " federates of federation " + federationRunId);
 
+        terminateFederates(federationRunId, instanceIds, error ->
+        {
             try
             {
-                try
-                {
-                    ZMQ.Socket modelSocket = this.fsContext.createSocket(SocketType.REQ);
-                    modelSocket.setIdentity(UUID.randomUUID().toString().getBytes());
-                    modelSocket.connect("tcp://127.0.0.1:" + modelPort);
+                byte[] fs5Message = new FS5FederatesKilledMessage(federationRunId, "FS", senderId, ++this.messageCount,
+                        error.isEmpty(), error).createByteArray();
+                this.fsSocket.sendMore(identity);
+                this.fsSocket.sendMore("");
+                this.fsSocket.send(fs5Message, 0);
+            }
+            catch (Sim0MQException | SerializationException exception)
+            {
+                exception.printStackTrace();
+            }
+        });
+    }
 
-                    byte[] fs3Message =
-                            Sim0MQMessage.encodeUTF8(true, federationRunId, "FS", modelId, "FS.3", ++this.messageCount);
-                    modelSocket.send(fs3Message, 0);
+    /**
+     * Terminate a number of models at the same time, without blocking the thread that owns the sockets. All models receive an
+     * FS.3 message at once, after which every process is escalated on its own deadlines: when it has not exited after
+     * fs.kill.graceperiod ms, it is asked to terminate by the operating system (destroy), and when it has not exited
+     * fs.kill.termperiod ms later, it is destroyed forcibly. A process without a model controller is asked to terminate by the
+     * operating system right away. The files of the federates are cleaned up concurrently as soon as their process is gone.
+     * When all processes are gone, the administration of the federates is released, and whenTerminated is called on the
+     * thread that owns the sockets.
+     * @param federationRunId the name of the federation
+     * @param modelIds the instance ids of the models
+     * @param whenTerminated receives an empty String for no error, or a filled String with the problems of all models
+     */
+    private void terminateFederates(final Object federationRunId, final List<Object> modelIds,
+            final Consumer<String> whenTerminated)
+    {
+        StringBuffer error = new StringBuffer();
+        List<CompletableFuture<Void>> terminations = new ArrayList<>();
+        this.terminatingFederates.addAll(modelIds);
+        // a reset that is still pending is taken over by the termination, and answered when the process is gone
+        Map<Object, PendingReset> resets = new LinkedHashMap<>();
+        for (Object modelId : modelIds)
+        {
+            PendingReset reset = this.pendingResets.remove(modelId);
+            if (reset != null)
+            {
+                resets.put(modelId, reset);
+            }
+        }
 
-                    modelSocket.close();
+        for (Object modelId : modelIds)
+        {
+            Process process = this.runningProcessMap.get(modelId);
+            FM1StartFederateMessage sfm = this.startFederateMessages.get(modelId);
+            CompletableFuture<Process> gone;
+            if (process == null || !process.isAlive())
+            {
+                gone = CompletableFuture.completedFuture(process);
+            }
+            else if (!this.modelController)
+            {
+                // there is no model controller to send FS.3 to, so the grace period is skipped
+                gone = escalate(process, modelId, 0);
+            }
+            else
+            {
+                try
+                {
+                    // the cached connection stays open till the process is gone, so the FS.3 message is delivered
+                    byte[] fs3Message = Sim0MQMessage.encodeUTF8(true, federationRunId, "FS", getModelId(modelId), "FS.3",
+                            ++this.messageCount);
+                    sendToModel(modelId, fs3Message);
                 }
                 catch (Exception exception)
                 {
                     exception.printStackTrace();
-                    status = true;
-                    error = exception.getMessage();
                 }
+                gone = escalate(process, modelId, this.killGracePeriod);
+            }
 
-                try
-                {
-                    Thread.sleep(100);
-                }
-                catch (InterruptedException ie)
+            terminations.add(gone.thenAccept(p ->
+            {
+                if (p == null)
                 {
-                    // ignore
+                    appendError(error, "model " + modelId + " could not be killed");
                 }
-
-                if (process != null && process.isAlive())
+                if (sfm != null)
                 {
-                    process.destroyForcibly();
+                    cleanupFederate(sfm);
                 }
+            }).exceptionally(exception ->
+            {
+                exception.printStackTrace();
+                appendError(error, exception.toString());
+                return null;
+            }));
+        }
 
-                FM1StartFederateMessage sfm = this.startFederateMessages.get(modelId);
-                if (sfm.isDeleteStdout())
+        CompletableFuture.allOf(terminations.toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> this.loopTasks.add(() ->
                 {
-                    if (sfm.getRedirectStdout().length() > 0)
+                    for (Object modelId : modelIds)
                     {
-                        File stdOutFile = new File(sfm.getRedirectStdout());
-                        stdOutFile.delete();
+                        releaseFederate(modelId);
                     }
-                }
+                    this.terminatingFederates.removeAll(modelIds);
+                    resets.forEach((modelId, reset) -> sendFederateKilled(reset.identity, reset.federationRunId,
+                            reset.senderId, modelId, error.toString()));
+                    whenTerminated.accept(error.toString());
+                }));
+    }
+
+    /**
+     * Escalate the termination of a process: wait gracePeriod ms for its exit, then ask the operating system to terminate it
+     * (destroy), wait fs.kill.termperiod ms, then destroy it forcibly, and wait fs.kill.termperiod ms again. No thread is
+     * blocked while waiting.
+     * @param process the process to terminate
+     * @param modelId the instance id of the model, for logging
+     * @param gracePeriod the time in ms to wait before the process is asked to terminate by the operating system
+     * @return a future that completes with the process when it is gone, or with null when it could not be killed
+     */
+    private CompletableFuture<Process> escalate(final Process process, final Object modelId, final long gracePeriod)
+    {
+        return process.onExit().completeOnTimeout(null, gracePeriod, TimeUnit.MILLISECONDS).thenCompose(p ->
+        {
+            if (p != null)
+            {
+                return CompletableFuture.completedFuture(p);
+            }
+            if (gracePeriod > 0)
+            {
+                System.err.println("Model " + modelId + " did not exit in time -- process asked to terminate");
+            }
+            process.destroy();
+            return process.onExit().completeOnTimeout(null, this.killTermPeriod, TimeUnit.MILLISECONDS);
+        }).thenCompose(p ->
+        {
+            if (p != null)
+            {
+                return CompletableFuture.completedFuture(p);
+            }
+            System.err.println("Model " + modelId + " did not terminate in time -- process destroyed forcibly");
+            process.destroyForcibly();
+            return process.onExit().completeOnTimeout(null, this.killTermPeriod, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Append an error to the errors of a termination, separated by a semicolon.
+     * @param errors the errors so far, which can be appended to by several threads
+     * @param error the error to append
+     */
+    private static void appendError(final StringBuffer errors, final String error)
+    {
+        synchronized (errors)
+        {
+            errors.append(errors.length() == 0 ? "" : "; ").append(error);
+        }
+    }
+
+    /**
+     * Queue the redirected output and the working directory of a federate for deletion in the background, when the FM.1
+     * message asked for it. The working directory is not deleted while another federate that is not being terminated still
+     * uses it. When the process of the federate was reused, the files of the earlier instances of the process are deleted as
+     * well. The spill files of captured output are deleted under the same delete flags as redirect files.
+     * @param sfm the FM.1 message that started the federate
+     */
+    private void cleanupFederate(final FM1StartFederateMessage sfm)
+    {
+        cleanupFiles(sfm, sfm.getInstanceId());
+        if (sfm.isDeleteStdout())
+        {
+            this.outputCapture.closeSpillFiles(sfm.getInstanceId(), "stdout").forEach(this.directoryCleaner::delete);
+        }
+        if (sfm.isDeleteStderr())
+        {
+            this.outputCapture.closeSpillFiles(sfm.getInstanceId(), "stderr").forEach(this.directoryCleaner::delete);
+        }
+        List<FM1StartFederateMessage> earlier = this.reusedStartMessages.remove(sfm.getInstanceId());
+        if (earlier != null)
+        {
+            for (FM1StartFederateMessage earlierMessage : earlier)
+            {
+                cleanupFiles(earlierMessage, sfm.getInstanceId());
+            }
+        }
+    }
+
+    /**
+     * Queue the files that an FM.1 message asked to delete for deletion in the background.
+     * @param sfm the FM.1 message
+     * @param instanceId the instance id of the federate whose process used the files
+     */
+    private void cleanupFiles(final FM1StartFederateMessage sfm, final Object instanceId)
+    {
+        if (sfm.isDeleteStdout())
+        {
+            if (sfm.getRedirectStdout().length() > 0 && !sfm.getRedirectStdout().equals(OutputCapture.CAPTURE))
+            {
+                this.directoryCleaner.delete(Paths.get(sfm.getRedirectStdout()));
+            }
+        }
+
+        if (sfm.isDeleteStderr())
+        {
+            if (sfm.getRedirectStderr().length() > 0 && !sfm.getRedirectStderr().equals(OutputCapture.CAPTURE))
+            {
+                this.directoryCleaner.delete(Paths.get(sfm.getRedirectStderr()));
+            }
+        }
 
-                if (sfm.isDeleteStderr())
+        if (sfm.isDeleteWorkingDirectory())
+        {
+            synchronized (this.startFederateMessages)
+            {
+                for (Map.Entry<Object, FM1StartFederateMessage> entry : this.startFederateMessages.entrySet())
                 {
-                    if (sfm.getRedirectStderr().length() > 0)
+                    if (!entry.getKey().equals(instanceId) && !this.terminatingFederates.contains(entry.getKey())
+                            && entry.getValue().getWorkingDirectory().equals(sfm.getWorkingDirectory()))
                     {
-                        File stdErrFile = new File(sfm.getRedirectStderr());
-                        stdErrFile.delete();
+                        return;
                     }
                 }
+            }
+            this.directoryCleaner.delete(Paths.get(sfm.getWorkingDirectory()));
+        }
+    }
+
+    /**
+     * Remove all administration of the federate, so its port becomes available again.
+     * @param instanceId the instance id of the federate
+     */
+    private void releaseFederate(final Object instanceId)
+    {
+        closeModelSocket(instanceId);
+        this.runningProcessMap.remove(instanceId);
+        this.modelPortMap.remove(instanceId);
+        this.startFederateMessages.remove(instanceId);
+        this.reusedStartMessages.remove(instanceId);
+        this.modelIdMap.remove(instanceId);
+        this.identityMap.remove(instanceId);
+        this.queuedStarts.remove(instanceId);
+        releaseCores(instanceId);
+        if (this.sampler != null)
+        {
+            this.sampler.unregister(instanceId);
+        }
+        this.outputCapture.unregister(instanceId);
+        if (this.federateJournal != null)
+        {
+            this.federateJournal.ended(instanceId);
+        }
+        Long startTime = this.startTimeMap.remove(instanceId);
+        if (startTime != null)
+        {
+            long runtime = System.currentTimeMillis() - startTime;
+            this.averageRuntime = this.averageRuntime == 0.0 ? runtime : 0.8 * this.averageRuntime + 0.2 * runtime;
+        }
+    }
+
+    /**
+     * Release the cores that were allocated to a federate, if any.
+     * @param instanceId the instance id of the federate
+     */
+    private void releaseCores(final Object instanceId)
+    {
+        BitSet cores = this.coreMap.remove(instanceId);
+        if (cores != null)
+        {
+            this.corePlacement.release(cores);
+        }
+    }
 
-                if (sfm.isDeleteWorkingDirectory())
+    /**
+     * Handle the exit of a federate process. When the process is still administered, it exited or crashed on its own: its
+     * port and administration are released at once, its files are cleaned up, and when fs.notify is set, the Federation
+     * Manager that started it receives an FS.6 message. A process that is being terminated or was killed by the FederateStarter
+     * is ignored.
+     * @param process the process that exited
+     */
+    private void processExited(final Process process)
+    {
+        Object instanceId = null;
+        synchronized (this.runningProcessMap)
+        {
+            for (Map.Entry<Object, Process> entry : this.runningProcessMap.entrySet())
+            {
+                if (entry.getValue() == process)
                 {
-                    File workingDir = new File(sfm.getWorkingDirectory());
-                    workingDir.delete();
+                    instanceId = entry.getKey();
+                    break;
                 }
             }
-            catch (Exception exception)
+        }
+        if (instanceId == null || this.terminatingFederates.contains(instanceId))
+        {
+            return;
+        }
+
+        int exitCode = process.exitValue();
+        long runtime = System.currentTimeMillis() - this.startTimeMap.get(instanceId);
+        FM1StartFederateMessage sfm = this.startFederateMessages.get(instanceId);
+        String identity = this.identityMap.get(instanceId);
+        System.out.println("Process of model " + instanceId + " exited on its own with exit code " + exitCode);
+
+        this.idleProcessMap.remove(instanceId);
+        try
+        {
+            cleanupFederate(sfm);
+        }
+        catch (Exception exception)
+        {
+            exception.printStackTrace();
+        }
+        releaseFederate(instanceId);
+        this.exitedFederateMap.put(instanceId, exitCode);
+
+        if (this.notifyExit)
+        {
+            try
+            {
+                byte[] fs6Message = new FS6FederateExitedMessage(sfm.getFederationId(), "FS", sfm.getSenderId(),
+                        ++this.messageCount, instanceId, exitCode, new Duration(runtime, DurationUnit.MILLISECOND))
+                                .createByteArray();
+                this.fsSocket.sendMore(identity);
+                this.fsSocket.sendMore("");
+                this.fsSocket.send(fs6Message, 0);
+            }
+            catch (Sim0MQException | SerializationException exception)
             {
                 exception.printStackTrace();
-                status = false;
-                error = exception.getMessage();
             }
-
-            byte[] fs4Message =
-                    new FS4FederateKilledMessage(federationRunId, "FS", senderId, ++this.messageCount, modelId, status, error)
-                            .createByteArray();
-            this.fsSocket.sendMore(identity);
-            this.fsSocket.sendMore("");
-            this.fsSocket.send(fs4Message, 0);
         }
     }
 
@@ -606,4 +2361,97 @@ public class FederateStarter
         new FederateStarter(port, softwareProperties, startPort, endPort, true);
     }
 
+    /**
+     * A start of a federate that waits for admission, and its outcome till the Federation Manager has received it.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class QueuedStart
+    {
+        /** reply id of the Federation Manager that sent the FM.1 message. */
+        private final String identity;
+
+        /** the FM.1 message. */
+        private final FM1StartFederateMessage startFederateMessage;
+
+        /** the number of running federates of the federation when the start was queued. */
+        private final int federationSize;
+
+        /** the sequence number of the start in order of arrival. */
+        private final long sequence;
+
+        /** whether the start has been carried out. */
+        private boolean done = false;
+
+        /** the error of the start, or an empty String when the federate was started. */
+        private String error = "";
+
+        /** the port on which the federate listens, when the start has been carried out. */
+        private int modelPort = 0;
+
+        /**
+         * @param identity reply id of the Federation Manager that sent the FM.1 message
+         * @param startFederateMessage the FM.1 message
+         * @param federationSize the number of running federates of the federation
+         * @param sequence the sequence number of the start in order of arrival
+         */
+        QueuedStart(final String identity, final FM1StartFederateMessage startFederateMessage, final int federationSize,
+                final long sequence)
+        {
+            this.identity = identity;
+            this.startFederateMessage = startFederateMessage;
+            this.federationSize = federationSize;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A reset of a federate with FM.7 that waits for the MC.2 reply of the model, after which the FS.4 reply on the FM.8
+     * message is sent.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class PendingReset
+    {
+        /** reply id of the Federation Manager that sent the FM.8 message. */
+        private final String identity;
+
+        /** the name of the federation. */
+        private final Object federationRunId;
+
+        /** the sender of the FM.8 message. */
+        private final Object senderId;
+
+        /** the message id of the FM.7 message, to recognize the MC.2 reply. */
+        private final long messageId;
+
+        /** the time in ms (System.currentTimeMillis) after which the model is killed instead of reset. */
+        private final long deadline;
+
+        /**
+         * @param identity reply id of the Federation Manager that sent the FM.8 message
+         * @param federationRunId the name of the federation
+         * @param senderId the sender of the FM.8 message
+         * @param messageId the message id of the FM.7 message
+         * @param deadline the time in ms after which the model is killed instead of reset
+         */
+        PendingReset(final String identity, final Object federationRunId, final Object senderId, final long messageId,
+                final long deadline)
+        {
+            this.identity = identity;
+            this.federationRunId = federationRunId;
+            this.senderId = senderId;
+            this.messageId = messageId;
+            this.deadline = deadline;
+        }
+    }
+
 }
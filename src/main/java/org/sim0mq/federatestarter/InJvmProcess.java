@@ -0,0 +1,666 @@
+package org.sim0mq.federatestarter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * InJvmProcess runs a Java model inside the JVM of the FederateStarter instead of in a process of its own, which saves the boot
+ * of a JVM per federate; the classes of the JDK are shared with the FederateStarter and are already loaded and compiled. A
+ * software code is started in the JVM when its software property has the form <code>jvm:&lt;main class&gt;</code>; the model
+ * path is then the class path of the model: jar files or directories, separated by the path separator of the platform. Every
+ * instance gets its own URLClassLoader, so the static state of instances of the same model is isolated, and its own thread
+ * group, in which the main method runs. The model binds to its port on the loopback interface like a forked model.
+ * <p>
+ * The process is alive as long as a non-daemon thread in the thread group of the instance is alive, just like a JVM. Destroying
+ * the process interrupts all threads of the instance; destroying it forcibly keeps interrupting all threads, including the
+ * daemon threads, and the process exits when they have all ended. When the process has exited, its class loader is closed, so
+ * no thread of the instance can load classes from a closed loader. The process has no pid of its own: {@link #pid()} and
+ * {@link #toHandle()} return the FederateStarter process, so a caller that journals or samples federates per pid should
+ * leave out in-JVM processes. The output that the threads of an instance write
+ * to System.out and System.err is sent to the redirect file, to the OutputCapture for %CAPTURE%, or to the console of the
+ * FederateStarter when there is no redirect. A model that runs in the JVM must never call System.exit, since that would stop
+ * the FederateStarter, and has to use absolute paths, since the working directory is shared with the FederateStarter.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class InJvmProcess extends Process
+{
+    /** the prefix of a software property that starts the model in the JVM of the FederateStarter. */
+    public static final String PREFIX = "jvm:";
+
+    /** the exit code of a process that was destroyed. */
+    private static final int EXIT_TERMINATED = 143;
+
+    /** the exit code of a process that was destroyed forcibly. */
+    private static final int EXIT_KILLED = 137;
+
+    /** the time in ms between two interrupts of the threads of a process that was destroyed forcibly. */
+    private static final long KILL_INTERVAL = 100L;
+
+    /** the stdout sinks per thread group of an instance. */
+    private static final Map<ThreadGroup, OutputStream> OUT_SINKS = new ConcurrentHashMap<>();
+
+    /** the stderr sinks per thread group of an instance. */
+    private static final Map<ThreadGroup, OutputStream> ERR_SINKS = new ConcurrentHashMap<>();
+
+    /** whether System.out and System.err have been replaced by the streams that dispatch per thread group. */
+    private static boolean installed = false;
+
+    /** the thread group of the instance. */
+    private final ThreadGroup group;
+
+    /** the class loader of the instance. */
+    private final URLClassLoader loader;
+
+    /** the future that completes when the process has exited. */
+    private final CompletableFuture<Process> exit = new CompletableFuture<>();
+
+    /** the pipe with the captured stdout, or null when stdout is not captured. */
+    private final Pipe stdoutPipe;
+
+    /** the pipe with the captured stderr, or null when stderr is not captured. */
+    private final Pipe stderrPipe;
+
+    /** the exit code, valid when the process has exited. */
+    private volatile int exitCode = 0;
+
+    /** whether the process has been destroyed. */
+    private volatile boolean destroyed = false;
+
+    /** whether the process has been destroyed forcibly. */
+    private volatile boolean killed = false;
+
+    /**
+     * Create the administration of an in-JVM process; the process is started with {@link #start}.
+     * @param instanceId the instance id of the federate, used for the names of the thread group and class loader
+     * @param loader the class loader of the instance
+     * @param captureStdout whether stdout is captured in a pipe
+     * @param captureStderr whether stderr is captured in a pipe
+     */
+    private InJvmProcess(final Object instanceId, final URLClassLoader loader, final boolean captureStdout,
+            final boolean captureStderr)
+    {
+        this.group = new ThreadGroup("federate-" + instanceId);
+        this.loader = loader;
+        this.stdoutPipe = captureStdout ? new Pipe() : null;
+        this.stderrPipe = captureStderr ? new Pipe() : null;
+    }
+
+    /**
+     * Load the main class of a model in a class loader of its own, and run its main method in a new thread group.
+     * @param instanceId the instance id of the federate
+     * @param mainClass the fully qualified name of the class with the main method
+     * @param classPath the jar files and directories of the model, separated by the path separator of the platform
+     * @param args the arguments for the main method
+     * @param redirectStdout the file for stdout, %CAPTURE% to capture it, or an empty String for the console
+     * @param redirectStderr the file for stderr, %CAPTURE% to capture it, or an empty String for the console
+     * @return the running process
+     * @throws IOException when the class path is invalid, the main class or method cannot be found, or a redirect file cannot
+     *             be opened
+     */
+    public static InJvmProcess start(final Object instanceId, final String mainClass, final String classPath,
+            final List<String> args, final String redirectStdout, final String redirectStderr) throws IOException
+    {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator))
+        {
+            if (!entry.isBlank())
+            {
+                urls.add(Paths.get(entry.trim()).toAbsolutePath().toUri().toURL());
+            }
+        }
+        URLClassLoader loader = new URLClassLoader("federate-" + instanceId, urls.toArray(new URL[0]),
+                ClassLoader.getPlatformClassLoader());
+        Method main;
+        try
+        {
+            main = Class.forName(mainClass, false, loader).getMethod("main", String[].class);
+            if (!Modifier.isStatic(main.getModifiers()))
+            {
+                throw new NoSuchMethodException("main method of " + mainClass + " is not static");
+            }
+        }
+        catch (ReflectiveOperationException | LinkageError exception)
+        {
+            loader.close();
+            throw new IOException("cannot start " + mainClass + " in the JVM: " + exception, exception);
+        }
+
+        InJvmProcess process = new InJvmProcess(instanceId, loader, redirectStdout.equals(OutputCapture.CAPTURE),
+                redirectStderr.equals(OutputCapture.CAPTURE));
+        install();
+        try
+        {
+            register(OUT_SINKS, process.group, redirectStdout, process.stdoutPipe);
+            register(ERR_SINKS, process.group, redirectStderr, process.stderrPipe);
+        }
+        catch (IOException exception)
+        {
+            process.finish(1);
+            throw exception;
+        }
+        String[] mainArgs = args.stream().filter(a -> !a.isEmpty()).toArray(String[]::new);
+        Thread thread = new Thread(process.group, () -> process.run(main, mainArgs), "federate-" + instanceId + "-main");
+        thread.setContextClassLoader(loader);
+        thread.start();
+        return process;
+    }
+
+    /**
+     * Run the main method, and wait till the non-daemon threads of the instance have ended, or, when the process was destroyed
+     * forcibly, till all threads of the instance have ended.
+     * @param main the main method
+     * @param args the arguments for the main method
+     */
+    private void run(final Method main, final String[] args)
+    {
+        int code = 0;
+        try
+        {
+            main.invoke(null, (Object) args);
+        }
+        catch (InvocationTargetException exception)
+        {
+            exception.getCause().printStackTrace();
+            code = 1;
+        }
+        catch (IllegalAccessException | RuntimeException | LinkageError exception)
+        {
+            exception.printStackTrace();
+            code = 1;
+        }
+        Thread thread;
+        while ((thread = liveThread(this.killed)) != null)
+        {
+            try
+            {
+                thread.join(this.killed ? KILL_INTERVAL : 0L);
+            }
+            catch (InterruptedException exception)
+            {
+                // interrupted by destroy; wait for the threads of the instance to end
+            }
+        }
+        finish(code);
+    }
+
+    /**
+     * Return a live thread of the instance other than the current thread.
+     * @param daemon whether daemon threads count as well
+     * @return a live thread, or null when there is none
+     */
+    private Thread liveThread(final boolean daemon)
+    {
+        Thread[] threads = new Thread[this.group.activeCount() + 16];
+        int n = this.group.enumerate(threads, true);
+        for (int i = 0; i < n; i++)
+        {
+            if (threads[i] != Thread.currentThread() && threads[i].isAlive() && (daemon || !threads[i].isDaemon()))
+            {
+                return threads[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Declare the process exited: close its output and its class loader, and complete the exit future.
+     * @param code the exit code, unless the process was destroyed
+     */
+    private synchronized void finish(final int code)
+    {
+        if (this.exit.isDone())
+        {
+            return;
+        }
+        this.exitCode = this.killed ? EXIT_KILLED : this.destroyed ? EXIT_TERMINATED : code;
+        closeSink(OUT_SINKS.remove(this.group));
+        closeSink(ERR_SINKS.remove(this.group));
+        try
+        {
+            this.loader.close();
+        }
+        catch (IOException exception)
+        {
+            System.err.println("Could not close class loader " + this.loader.getName() + ": " + exception.getMessage());
+        }
+        this.exit.complete(this);
+    }
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return this.stdoutPipe == null ? InputStream.nullInputStream() : this.stdoutPipe.in;
+    }
+
+    @Override
+    public InputStream getErrorStream()
+    {
+        return this.stderrPipe == null ? InputStream.nullInputStream() : this.stderrPipe.in;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException
+    {
+        try
+        {
+            this.exit.get();
+        }
+        catch (ExecutionException exception)
+        {
+            // the future is only completed normally
+        }
+        return this.exitCode;
+    }
+
+    @Override
+    public int exitValue()
+    {
+        if (!this.exit.isDone())
+        {
+            throw new IllegalThreadStateException("process of " + this.group.getName() + " has not exited");
+        }
+        return this.exitCode;
+    }
+
+    @Override
+    public boolean isAlive()
+    {
+        return !this.exit.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit()
+    {
+        // a copy, so a caller that completes the future, e.g. with completeOnTimeout, does not complete the exit
+        return this.exit.copy();
+    }
+
+    @Override
+    public boolean supportsNormalTermination()
+    {
+        return true;
+    }
+
+    /**
+     * Interrupt all threads of the instance; the process exits when its non-daemon threads have ended.
+     */
+    @Override
+    public void destroy()
+    {
+        this.destroyed = true;
+        this.group.interrupt();
+    }
+
+    /**
+     * Keep interrupting all threads of the instance, including the daemon threads, till they have ended; the process exits,
+     * and its class loader is closed, when the last thread has ended.
+     * @return this process
+     */
+    @Override
+    public synchronized Process destroyForcibly()
+    {
+        if (!this.killed && !this.exit.isDone())
+        {
+            this.killed = true;
+            // the interrupts come from a thread outside the instance, so also a main method that ignores them is interrupted
+            Thread killer = new Thread(() ->
+            {
+                while (!this.exit.isDone())
+                {
+                    this.group.interrupt();
+                    try
+                    {
+                        this.exit.get(KILL_INTERVAL, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException | ExecutionException | TimeoutException exception)
+                    {
+                        // interrupt again till the process has exited
+                    }
+                }
+            }, this.group.getName() + "-kill");
+            killer.setDaemon(true);
+            killer.start();
+        }
+        return this;
+    }
+
+    /**
+     * Return the pid of the FederateStarter, in whose JVM the model runs.
+     * @return the pid of the FederateStarter process
+     */
+    @Override
+    public long pid()
+    {
+        return ProcessHandle.current().pid();
+    }
+
+    /**
+     * Return the handle of the FederateStarter, in whose JVM the model runs, consistent with {@link #pid()}.
+     * @return the handle of the FederateStarter process
+     */
+    @Override
+    public ProcessHandle toHandle()
+    {
+        return ProcessHandle.current();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "InJvmProcess [" + this.group.getName() + ", alive=" + isAlive() + "]";
+    }
+
+    /**
+     * Replace System.out and System.err by streams that send the output of the threads of an instance to its sink, and the
+     * output of all other threads to the original streams.
+     */
+    private static synchronized void install()
+    {
+        if (!installed)
+        {
+            System.setOut(new PrintStream(new Dispatcher(OUT_SINKS, System.out), true));
+            System.setErr(new PrintStream(new Dispatcher(ERR_SINKS, System.err), true));
+            installed = true;
+        }
+    }
+
+    /**
+     * Register the sink of a stream of an instance.
+     * @param sinks the sinks of the stream
+     * @param group the thread group of the instance
+     * @param redirect the redirect file, %CAPTURE%, or an empty String for the console
+     * @param pipe the pipe for %CAPTURE%, or null
+     * @throws IOException when the redirect file cannot be opened
+     */
+    private static void register(final Map<ThreadGroup, OutputStream> sinks, final ThreadGroup group, final String redirect,
+            final Pipe pipe) throws IOException
+    {
+        if (pipe != null)
+        {
+            sinks.put(group, pipe.out);
+        }
+        else if (!redirect.isEmpty())
+        {
+            sinks.put(group, new FileOutputStream(redirect));
+        }
+    }
+
+    /**
+     * Close a sink, ignoring errors.
+     * @param sink the sink, or null
+     */
+    private static void closeSink(final OutputStream sink)
+    {
+        if (sink != null)
+        {
+            try
+            {
+                sink.close();
+            }
+            catch (IOException exception)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * An output stream that writes to the sink of the thread group of the current thread or one of its parents, and to the
+     * original stream when there is no sink.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Dispatcher extends OutputStream
+    {
+        /** the sinks per thread group. */
+        private final Map<ThreadGroup, OutputStream> sinks;
+
+        /** the original stream. */
+        private final OutputStream original;
+
+        /**
+         * @param sinks the sinks per thread group
+         * @param original the original stream
+         */
+        Dispatcher(final Map<ThreadGroup, OutputStream> sinks, final OutputStream original)
+        {
+            this.sinks = sinks;
+            this.original = original;
+        }
+
+        /**
+         * @return the sink of the current thread
+         */
+        private OutputStream sink()
+        {
+            if (!this.sinks.isEmpty())
+            {
+                for (ThreadGroup g = Thread.currentThread().getThreadGroup(); g != null; g = g.getParent())
+                {
+                    OutputStream sink = this.sinks.get(g);
+                    if (sink != null)
+                    {
+                        return sink;
+                    }
+                }
+            }
+            return this.original;
+        }
+
+        @Override
+        public void write(final int b) throws IOException
+        {
+            sink().write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            sink().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            sink().flush();
+        }
+    }
+
+    /**
+     * A bounded in-memory pipe between the threads of an instance and the thread of the OutputCapture that drains it. Unlike
+     * PipedInputStream, it does not break when the thread that wrote last has ended.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Pipe
+    {
+        /** the buffer. */
+        private final byte[] buffer = new byte[65536];
+
+        /** the position of the first unread byte. */
+        private int head = 0;
+
+        /** the number of unread bytes. */
+        private int count = 0;
+
+        /** whether the write side has been closed. */
+        private boolean closed = false;
+
+        /** the read side. */
+        private final InputStream in = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException
+            {
+                return Pipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available()
+            {
+                return Pipe.this.available();
+            }
+        };
+
+        /** the write side. */
+        private final OutputStream out = new OutputStream()
+        {
+            @Override
+            public void write(final int b) throws IOException
+            {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException
+            {
+                Pipe.this.write(b, off, len);
+            }
+
+            @Override
+            public void close()
+            {
+                Pipe.this.close();
+            }
+        };
+
+        /**
+         * Write bytes, waiting while the buffer is full.
+         * @param b the bytes
+         * @param off the offset of the first byte
+         * @param len the number of bytes
+         * @throws IOException when the pipe is closed or the thread is interrupted
+         */
+        private synchronized void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0)
+            {
+                while (this.count == this.buffer.length && !this.closed)
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("interrupted while writing to the pipe", exception);
+                    }
+                }
+                if (this.closed)
+                {
+                    throw new IOException("pipe closed");
+                }
+                int tail = (this.head + this.count) % this.buffer.length;
+                int n = Math.min(remaining, Math.min(this.buffer.length - this.count, this.buffer.length - tail));
+                System.arraycopy(b, offset, this.buffer, tail, n);
+                this.count += n;
+                offset += n;
+                remaining -= n;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Read bytes, waiting while the buffer is empty and the pipe is open.
+         * @param b the array to read into
+         * @param off the offset in the array
+         * @param len the maximum number of bytes
+         * @return the number of bytes read, or -1 at the end of the stream
+         * @throws IOException when the thread is interrupted
+         */
+        private synchronized int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            while (this.count == 0 && !this.closed)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException exception)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading from the pipe", exception);
+                }
+            }
+            if (this.count == 0)
+            {
+                return -1;
+            }
+            int n = Math.min(len, Math.min(this.count, this.buffer.length - this.head));
+            System.arraycopy(this.buffer, this.head, b, off, n);
+            this.head = (this.head + n) % this.buffer.length;
+            this.count -= n;
+            notifyAll();
+            return n;
+        }
+
+        /**
+         * @return the number of bytes that can be read without waiting
+         */
+        private synchronized int available()
+        {
+            return this.count;
+        }
+
+        /**
+         * Close the write side; the read side returns the remaining bytes and then the end of the stream.
+         */
+        private synchronized void close()
+        {
+            this.closed = true;
+            notifyAll();
+        }
+    }
+
+}
@@ -0,0 +1,365 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * NodeMetrics reads the live load of the node from the Linux /proc file system and from the cgroup (v2 or v1) files of the
+ * container the FederateStarter runs in, when present. The cgroup of the FederateStarter is looked up in /proc/self/cgroup, and
+ * the tightest CPU and memory limit of that cgroup and its ancestors applies, so a limit of a systemd slice or a Kubernetes pod
+ * is found as well as a limit at the root of the container. The CPU load is calculated over the interval between two samples.
+ * When the files are not available (e.g., on Windows), the metrics are reported as unknown, and admission is not limited by
+ * them.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class NodeMetrics
+{
+    /** the minimum time in ms between two samples; a more frequent request returns the last sampled values. */
+    private final long sampleInterval;
+
+    /** the time in ms (System.currentTimeMillis) of the last sample. */
+    private long lastSampleTime = 0L;
+
+    /** the total number of jiffies in /proc/stat at the last sample. */
+    private long lastTotalJiffies = -1L;
+
+    /** the number of idle jiffies in /proc/stat at the last sample. */
+    private long lastIdleJiffies = -1L;
+
+    /** the cgroup CPU usage in microseconds at the last sample. */
+    private long lastCgroupUsage = -1L;
+
+    /** the time in ns (System.nanoTime) at the last sample of the cgroup CPU usage. */
+    private long lastCgroupTime = 0L;
+
+    /** the CPU load as a fraction between 0 and 1 at the last sample, or NaN when unknown. */
+    private double cpuLoad = Double.NaN;
+
+    /** the available memory in bytes at the last sample, or -1 when unknown. */
+    private long availableMemory = -1L;
+
+    /** the cgroup v2 directory of this process, or null when the node does not use cgroup v2. */
+    private final Path cgroup;
+
+    /** the cgroup v1 directories of this process for the cpu, cpuacct and memory controllers, or null when not mounted. */
+    private final Path[] cgroupV1 = new Path[3];
+
+    /** the cgroup v1 controllers, in the order of cgroupV1. */
+    private static final String[] CONTROLLERS = {"cpu", "cpuacct", "memory"};
+
+    /** the root of the /proc file system. */
+    private final Path proc;
+
+    /** the root of the cgroup file system. */
+    private final Path cgroupRoot;
+
+    /**
+     * Create a reader for the node metrics.
+     * @param sampleInterval the minimum time in ms between two samples
+     */
+    public NodeMetrics(final long sampleInterval)
+    {
+        this(sampleInterval, Paths.get("/proc"), Paths.get("/sys/fs/cgroup"));
+    }
+
+    /**
+     * Create a reader for the node metrics of which the /proc and cgroup file systems are mounted at other roots, e.g., the
+     * file systems of the host that are mounted in a container.
+     * @param sampleInterval the minimum time in ms between two samples
+     * @param proc the root of the /proc file system
+     * @param cgroupRoot the root of the cgroup file system
+     */
+    public NodeMetrics(final long sampleInterval, final Path proc, final Path cgroupRoot)
+    {
+        Throw.whenNull(proc, "proc cannot be null");
+        Throw.whenNull(cgroupRoot, "cgroupRoot cannot be null");
+        this.sampleInterval = sampleInterval;
+        this.proc = proc;
+        this.cgroupRoot = cgroupRoot;
+        Path ownV2 = null;
+        for (String line : readLines(proc.resolve("self").resolve("cgroup")))
+        {
+            // hierarchy-id:controller-list:cgroup-path
+            String[] fields = line.split(":", 3);
+            if (fields.length < 3 || !fields[2].startsWith("/"))
+            {
+                continue;
+            }
+            if (fields[0].equals("0") && fields[1].isEmpty())
+            {
+                ownV2 = ownDirectory(cgroupRoot, fields[2]);
+            }
+            List<String> controllers = Arrays.asList(fields[1].split(","));
+            for (int i = 0; i < CONTROLLERS.length; i++)
+            {
+                if (controllers.contains(CONTROLLERS[i]))
+                {
+                    this.cgroupV1[i] = ownDirectory(cgroupRoot.resolve(CONTROLLERS[i]), fields[2]);
+                }
+            }
+        }
+        this.cgroup = Files.exists(cgroupRoot.resolve("cgroup.controllers")) ? (ownV2 == null ? cgroupRoot : ownV2) : null;
+    }
+
+    /**
+     * Return the directory of the cgroup of this process in a cgroup hierarchy. Inside a container without a cgroup namespace,
+     * the path of /proc/self/cgroup is not visible, and the root of the hierarchy is the cgroup of the container.
+     * @param root the root of the hierarchy
+     * @param cgroupPath the path of the cgroup, relative to the root of the hierarchy, starting with a slash
+     * @return the directory of the cgroup, or the root when the directory does not exist
+     */
+    private static Path ownDirectory(final Path root, final String cgroupPath)
+    {
+        Path directory = root.resolve(cgroupPath.substring(1));
+        return directory.startsWith(root) && Files.isDirectory(directory) ? directory : root;
+    }
+
+    /**
+     * Return a cgroup directory and its ancestors, up to and including the root of the cgroup file system.
+     * @param directory the cgroup directory, or null
+     * @return the directory and its ancestors, starting with the directory; empty when the directory is null
+     */
+    private List<Path> ancestors(final Path directory)
+    {
+        List<Path> result = new ArrayList<>();
+        for (Path d = directory; d != null && d.startsWith(this.cgroupRoot); d = d.getParent())
+        {
+            result.add(d);
+        }
+        return result;
+    }
+
+    /**
+     * Return the CPU load of the node, or of the container when it has a CPU limit, over the last sample interval.
+     * @return the CPU load as a fraction between 0 and 1, or NaN when unknown
+     */
+    public double getCpuLoad()
+    {
+        sample();
+        return this.cpuLoad;
+    }
+
+    /**
+     * Return the memory that is available for new processes: the MemAvailable of /proc/meminfo, limited by the room that is
+     * left under the memory limit of the cgroup, if any.
+     * @return the available memory in bytes, or -1 when unknown
+     */
+    public long getAvailableMemory()
+    {
+        sample();
+        return this.availableMemory;
+    }
+
+    /**
+     * Sample the metrics, when the sample interval has passed since the last sample.
+     */
+    private synchronized void sample()
+    {
+        long now = System.currentTimeMillis();
+        if (now - this.lastSampleTime < this.sampleInterval)
+        {
+            return;
+        }
+        this.lastSampleTime = now;
+        Path[] quotaGroup = new Path[1];
+        double quota = readCgroupCpuQuota(quotaGroup);
+        double load = quota > 0.0 ? sampleCgroupCpuLoad(quota, quotaGroup[0]) : Double.NaN;
+        this.cpuLoad = Double.isNaN(load) ? sampleProcCpuLoad() : load;
+        this.availableMemory = sampleAvailableMemory();
+    }
+
+    /**
+     * Calculate the CPU load of the node from the first line of /proc/stat since the last sample.
+     * @return the CPU load as a fraction between 0 and 1, or NaN when unknown or when this is the first sample
+     */
+    private double sampleProcCpuLoad()
+    {
+        List<String> lines = readLines(this.proc.resolve("stat"));
+        if (lines.isEmpty() || !lines.get(0).startsWith("cpu "))
+        {
+            return Double.NaN;
+        }
+        String[] fields = lines.get(0).trim().split("\\s+");
+        long total = 0L;
+        for (int i = 1; i < fields.length; i++)
+        {
+            total += Long.parseLong(fields[i]);
+        }
+        // idle and iowait
+        long idle = Long.parseLong(fields[4]) + (fields.length > 5 ? Long.parseLong(fields[5]) : 0L);
+        double load = Double.NaN;
+        if (this.lastTotalJiffies >= 0 && total > this.lastTotalJiffies)
+        {
+            load = 1.0 - (double) (idle - this.lastIdleJiffies) / (total - this.lastTotalJiffies);
+        }
+        this.lastTotalJiffies = total;
+        this.lastIdleJiffies = idle;
+        return load;
+    }
+
+    /**
+     * Calculate the CPU load of the cgroup with the CPU quota from the usage in its cpu.stat (v2) or cpuacct.usage (v1) file
+     * since the last sample, relative to the CPU quota of the cgroup.
+     * @param quota the number of CPUs in the quota of the cgroup
+     * @param quotaGroup the cgroup directory with the quota
+     * @return the CPU load as a fraction between 0 and 1, or NaN when unknown or when this is the first sample
+     */
+    private double sampleCgroupCpuLoad(final double quota, final Path quotaGroup)
+    {
+        long usage = -1L;
+        if (this.cgroup != null)
+        {
+            for (String line : readLines(quotaGroup.resolve("cpu.stat")))
+            {
+                if (line.startsWith("usage_usec "))
+                {
+                    usage = Long.parseLong(line.substring(11).trim());
+                }
+            }
+        }
+        else if (this.cgroupV1[1] != null)
+        {
+            // the cpu and cpuacct hierarchies are normally mounted together, so the cgroup has the same relative path
+            Path cpuRoot = this.cgroupRoot.resolve(CONTROLLERS[0]);
+            Path cpuacctRoot = this.cgroupRoot.resolve(CONTROLLERS[1]);
+            Path cpuacct = quotaGroup.startsWith(cpuRoot) ? cpuacctRoot.resolve(cpuRoot.relativize(quotaGroup)) : cpuacctRoot;
+            List<String> lines = readLines(cpuacct.resolve("cpuacct.usage"));
+            if (lines.isEmpty())
+            {
+                lines = readLines(this.cgroupV1[1].resolve("cpuacct.usage"));
+            }
+            if (!lines.isEmpty())
+            {
+                usage = Long.parseLong(lines.get(0).trim()) / 1000L;
+            }
+        }
+        if (usage < 0)
+        {
+            return Double.NaN;
+        }
+        long time = System.nanoTime();
+        double load = Double.NaN;
+        if (this.lastCgroupUsage >= 0 && time > this.lastCgroupTime)
+        {
+            load = Math.min(1.0, (usage - this.lastCgroupUsage) * 1000.0 / ((time - this.lastCgroupTime) * quota));
+        }
+        this.lastCgroupUsage = usage;
+        this.lastCgroupTime = time;
+        return load;
+    }
+
+    /**
+     * Read the tightest CPU quota of the cgroup of this process and its ancestors, from cpu.max (v2) or cpu.cfs_quota_us and
+     * cpu.cfs_period_us (v1).
+     * @param quotaGroup an array of length 1 in which the cgroup directory with the tightest quota is returned
+     * @return the number of CPUs in the quota, or 0 when there is no quota
+     */
+    private double readCgroupCpuQuota(final Path[] quotaGroup)
+    {
+        double result = 0.0;
+        for (Path directory : ancestors(this.cgroup != null ? this.cgroup : this.cgroupV1[0]))
+        {
+            double quota = 0.0;
+            if (this.cgroup != null)
+            {
+                List<String> lines = readLines(directory.resolve("cpu.max"));
+                String[] fields = lines.isEmpty() ? new String[0] : lines.get(0).trim().split("\\s+");
+                if (fields.length == 2 && !fields[0].equals("max"))
+                {
+                    quota = Double.parseDouble(fields[0]) / Double.parseDouble(fields[1]);
+                }
+            }
+            else
+            {
+                long cfsQuota = readLong(directory.resolve("cpu.cfs_quota_us"));
+                long cfsPeriod = readLong(directory.resolve("cpu.cfs_period_us"));
+                if (cfsQuota > 0 && cfsPeriod > 0)
+                {
+                    quota = (double) cfsQuota / cfsPeriod;
+                }
+            }
+            if (quota > 0.0 && (result == 0.0 || quota < result))
+            {
+                result = quota;
+                quotaGroup[0] = directory;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read the available memory from /proc/meminfo, and limit it by the room under the memory limits of the cgroup of this
+     * process and its ancestors, from memory.max and memory.current (v2) or memory.limit_in_bytes and memory.usage_in_bytes
+     * (v1).
+     * @return the available memory in bytes, or -1 when unknown
+     */
+    private long sampleAvailableMemory()
+    {
+        long available = -1L;
+        for (String line : readLines(this.proc.resolve("meminfo")))
+        {
+            if (line.startsWith("MemAvailable:"))
+            {
+                available = Long.parseLong(line.substring(13).trim().split("\\s+")[0]) * 1024L;
+            }
+        }
+        boolean v2 = this.cgroup != null;
+        for (Path directory : ancestors(v2 ? this.cgroup : this.cgroupV1[2]))
+        {
+            long limit = readLong(directory.resolve(v2 ? "memory.max" : "memory.limit_in_bytes"));
+            long usage = readLong(directory.resolve(v2 ? "memory.current" : "memory.usage_in_bytes"));
+            if (limit > 0 && usage >= 0 && (available < 0 || limit - usage < available))
+            {
+                available = Math.max(0L, limit - usage);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Read a number from the first line of a file.
+     * @param path the file to read
+     * @return the number, or -1 when the file does not exist, or does not contain a number (e.g., "max")
+     */
+    private static long readLong(final Path path)
+    {
+        List<String> lines = readLines(path);
+        try
+        {
+            return lines.isEmpty() ? -1L : Long.parseLong(lines.get(0).trim());
+        }
+        catch (NumberFormatException exception)
+        {
+            return -1L;
+        }
+    }
+
+    /**
+     * Read the lines of a file.
+     * @param path the file to read
+     * @return the lines of the file, or an empty list when the file cannot be read
+     */
+    private static List<String> readLines(final Path path)
+    {
+        try
+        {
+            return Files.isReadable(path) ? Files.readAllLines(path) : List.of();
+        }
+        catch (IOException exception)
+        {
+            return List.of();
+        }
+    }
+
+}
@@ -0,0 +1,538 @@
+package org.sim0mq.federatestarter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * OutputCapture drains the stdout and stderr pipes of the federates that asked for it with the %CAPTURE% redirect, and keeps
+ * the last part of the output of every stream in a bounded in-memory ring buffer, so the tail can be retrieved with an FM.11
+ * message without any disk I/O. Optionally, the output is also spilled to gzip-compressed files in a spill directory, which are
+ * rolled over when they reach a maximum size, and deleted when the federate is cleaned up and the FM.1 message asked to delete
+ * the stream. All pipes are drained by one shared daemon thread, which reads the bytes that are available without blocking,
+ * and sleeps for a few ms when no pipe has output; a pipe is closed when its process has exited and the pipe is empty. While
+ * no pipe is being drained, the thread waits till a pipe is registered, so an idle FederateStarter does not poll. The buffers
+ * of an exited federate are retained for a while, so the output of a crashed federate can still be retrieved.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class OutputCapture
+{
+    /** the redirect in the FM.1 message that asks for capturing a stream. */
+    public static final String CAPTURE = "%CAPTURE%";
+
+    /** the size of the ring buffer per stream in bytes. */
+    private final int bufferSize;
+
+    /** the directory for the compressed spill files, or null when the output is not spilled to disk. */
+    private final Path spillDirectory;
+
+    /** the number of uncompressed bytes after which a spill file is rolled over. */
+    private final long spillSize;
+
+    /** the number of rolled over spill files to keep per stream. */
+    private final int spillFiles;
+
+    /** the buffers of the running federates, per instance id; index 0 is stdout and index 1 is stderr. */
+    private final Map<Object, RingBuffer[]> bufferMap = new LinkedHashMap<>();
+
+    /** the buffers of the federates that exited, the oldest first. */
+    private final Map<Object, RingBuffer[]> retainedMap;
+
+    /** the pipes that are being drained; the drain thread waits on this list while it is empty. */
+    private final List<Drain> drains = new CopyOnWriteArrayList<>();
+
+    /** the pipes of the running federates, per instance id, to close their spill files when the federate is cleaned up. */
+    private final Map<Object, List<Drain>> drainMap = new LinkedHashMap<>();
+
+    /** the thread that drains the pipes, started when the first pipe is registered. */
+    private final Thread thread = new Thread(null, this::drainAll, "OutputCapture", STACK_SIZE);
+
+    /** the stack size of the drain thread; the thread only copies bytes, so it needs little stack. */
+    private static final long STACK_SIZE = 128L * 1024L;
+
+    /** the size of the read buffer of the drain thread. */
+    private static final int READ_SIZE = 8192;
+
+    /** the time in ms that the drain thread sleeps when no pipe has output. */
+    private static final long POLL_INTERVAL = 10L;
+
+    /**
+     * Create the capture administration.
+     * @param bufferSize the size of the ring buffer per stream in bytes
+     * @param spillDirectory the directory for the compressed spill files, or null when the output is not spilled to disk
+     * @param spillSize the number of uncompressed bytes after which a spill file is rolled over
+     * @param spillFiles the number of rolled over spill files to keep per stream
+     * @param retain the number of exited federates of which the buffers are retained
+     */
+    public OutputCapture(final int bufferSize, final Path spillDirectory, final long spillSize, final int spillFiles,
+            final int retain)
+    {
+        Throw.when(bufferSize < 1, IllegalArgumentException.class, "bufferSize should be at least 1");
+        Throw.when(spillSize < 1, IllegalArgumentException.class, "spillSize should be at least 1");
+        this.bufferSize = bufferSize;
+        this.spillDirectory = spillDirectory;
+        this.spillSize = spillSize;
+        this.spillFiles = spillFiles;
+        this.retainedMap = new LinkedHashMap<>()
+        {
+            /** */
+            private static final long serialVersionUID = 20261019L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Object, RingBuffer[]> eldest)
+            {
+                return size() > retain;
+            }
+        };
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start capturing the output of the process of a federate. The output is spilled to disk as well when a spill directory has
+     * been configured.
+     * @param instanceId the instance id of the federate
+     * @param process the process, which tells when the pipes can be closed
+     * @param captureStdout whether stdout is captured
+     * @param captureStderr whether stderr is captured
+     */
+    public synchronized void register(final Object instanceId, final Process process, final boolean captureStdout,
+            final boolean captureStderr)
+    {
+        RingBuffer[] buffers = new RingBuffer[2];
+        List<Drain> instanceDrains = new ArrayList<>();
+        if (captureStdout)
+        {
+            buffers[0] = new RingBuffer(this.bufferSize);
+            instanceDrains.add(new Drain(process, process.getInputStream(), buffers[0], spillFile(instanceId, "stdout")));
+        }
+        if (captureStderr)
+        {
+            buffers[1] = new RingBuffer(this.bufferSize);
+            instanceDrains.add(new Drain(process, process.getErrorStream(), buffers[1], spillFile(instanceId, "stderr")));
+        }
+        this.retainedMap.remove(instanceId);
+        this.bufferMap.put(instanceId, buffers);
+        this.drainMap.put(instanceId, instanceDrains);
+        synchronized (this.drains)
+        {
+            this.drains.addAll(instanceDrains);
+            this.drains.notifyAll();
+        }
+        if (this.thread.getState() == Thread.State.NEW)
+        {
+            this.thread.start();
+        }
+    }
+
+    /**
+     * Move the buffers of a federate that exited or was killed to the retained buffers.
+     * @param instanceId the instance id of the federate
+     */
+    public synchronized void unregister(final Object instanceId)
+    {
+        RingBuffer[] buffers = this.bufferMap.remove(instanceId);
+        if (buffers != null)
+        {
+            this.retainedMap.put(instanceId, buffers);
+        }
+        this.drainMap.remove(instanceId);
+    }
+
+    /**
+     * Stop spilling a stream of a federate to disk, and return its spill files, so they can be deleted. The ring buffer keeps
+     * receiving the output of the stream.
+     * @param instanceId the instance id of the federate
+     * @param stream "stdout" or "stderr"
+     * @return the current and rolled over spill files of the stream that exist; empty when the stream is not spilled
+     */
+    public synchronized List<Path> closeSpillFiles(final Object instanceId, final String stream)
+    {
+        List<Path> files = new ArrayList<>();
+        for (Drain drain : this.drainMap.getOrDefault(instanceId, List.of()))
+        {
+            Path spillFile = drain.closeSpill();
+            if (spillFile != null && spillFile.getFileName().toString().endsWith("." + stream + ".gz"))
+            {
+                String name = spillFile.getFileName().toString();
+                String base = name.substring(0, name.length() - 3);
+                for (int i = 0; i <= this.spillFiles; i++)
+                {
+                    Path file = i == 0 ? spillFile : spillFile.resolveSibling(base + "." + i + ".gz");
+                    if (Files.exists(file))
+                    {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Keep the buffers of a process under a new instance id, when the process is reused for another federate.
+     * @param oldInstanceId the instance id under which the output was captured
+     * @param newInstanceId the new instance id of the process
+     */
+    public synchronized void rename(final Object oldInstanceId, final Object newInstanceId)
+    {
+        RingBuffer[] buffers = this.bufferMap.remove(oldInstanceId);
+        if (buffers != null)
+        {
+            this.bufferMap.put(newInstanceId, buffers);
+        }
+        List<Drain> instanceDrains = this.drainMap.remove(oldInstanceId);
+        if (instanceDrains != null)
+        {
+            this.drainMap.put(newInstanceId, instanceDrains);
+        }
+    }
+
+    /**
+     * Return the buffer of a stream of a running or retained federate.
+     * @param instanceId the instance id of the federate
+     * @param stream "stdout" or "stderr"
+     * @return the buffer, or null when the stream of the federate is not captured
+     */
+    public synchronized RingBuffer getBuffer(final Object instanceId, final String stream)
+    {
+        RingBuffer[] buffers = this.bufferMap.get(instanceId);
+        if (buffers == null)
+        {
+            buffers = this.retainedMap.get(instanceId);
+        }
+        return buffers == null ? null : buffers[stream.equals("stderr") ? 1 : 0];
+    }
+
+    /**
+     * Stop the drain thread, and close the pipes and spill files.
+     */
+    public void shutdown()
+    {
+        this.thread.interrupt();
+        for (Drain drain : this.drains)
+        {
+            drain.close();
+        }
+    }
+
+    /**
+     * Return the spill file of a stream, or null when no spill directory has been configured.
+     * @param instanceId the instance id of the federate
+     * @param stream "stdout" or "stderr"
+     * @return the spill file, or null
+     */
+    private Path spillFile(final Object instanceId, final String stream)
+    {
+        return this.spillDirectory == null ? null
+                : this.spillDirectory.resolve(instanceId.toString().replaceAll("[^A-Za-z0-9._-]", "_") + "." + stream + ".gz");
+    }
+
+    /**
+     * Drain the pipes, till the FederateStarter shuts down. Only the bytes that are available are read, so one quiet or
+     * blocked federate does not hold up the others. While there are no pipes, the thread waits till one is registered.
+     */
+    private void drainAll()
+    {
+        byte[] bytes = new byte[READ_SIZE];
+        while (!Thread.currentThread().isInterrupted())
+        {
+            synchronized (this.drains)
+            {
+                while (this.drains.isEmpty())
+                {
+                    try
+                    {
+                        this.drains.wait();
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        return;
+                    }
+                }
+            }
+            boolean read = false;
+            for (Drain drain : this.drains)
+            {
+                read |= drain.poll(bytes);
+            }
+            if (!read)
+            {
+                try
+                {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+                catch (InterruptedException exception)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Roll over the spill files: name.gz becomes name.1.gz, name.1.gz becomes name.2.gz, etc., and the oldest file is deleted.
+     * @param spillFile the current spill file
+     * @throws IOException on error
+     */
+    private void roll(final Path spillFile) throws IOException
+    {
+        String name = spillFile.getFileName().toString();
+        String base = name.substring(0, name.length() - 3);
+        Files.deleteIfExists(spillFile.resolveSibling(base + "." + this.spillFiles + ".gz"));
+        for (int i = this.spillFiles - 1; i >= 1; i--)
+        {
+            Path older = spillFile.resolveSibling(base + "." + i + ".gz");
+            if (Files.exists(older))
+            {
+                Files.move(older, spillFile.resolveSibling(base + "." + (i + 1) + ".gz"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (this.spillFiles > 0)
+        {
+            Files.move(spillFile, spillFile.resolveSibling(base + ".1.gz"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * A pipe of a process that is drained into a ring buffer, and into a spill file when a spill directory has been configured.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private final class Drain
+    {
+        /** the process that writes to the pipe. */
+        private final Process process;
+
+        /** the pipe. */
+        private final InputStream in;
+
+        /** the ring buffer. */
+        private final RingBuffer buffer;
+
+        /** the spill file, or null when the stream is not spilled. */
+        private Path spillFile;
+
+        /** the open spill file, or null when it has not been opened yet. */
+        private OutputStream spill = null;
+
+        /** the number of uncompressed bytes in the current spill file. */
+        private long spilled = 0L;
+
+        /** whether the pipe has been closed. */
+        private boolean closed = false;
+
+        /**
+         * @param process the process that writes to the pipe
+         * @param in the pipe
+         * @param buffer the ring buffer
+         * @param spillFile the spill file, or null when the stream is not spilled
+         */
+        Drain(final Process process, final InputStream in, final RingBuffer buffer, final Path spillFile)
+        {
+            this.process = process;
+            this.in = in;
+            this.buffer = buffer;
+            this.spillFile = spillFile;
+        }
+
+        /**
+         * Read the bytes that are available in the pipe without blocking, and close the pipe when the process has exited and
+         * the pipe is empty.
+         * @param bytes the read buffer
+         * @return whether bytes were read
+         */
+        synchronized boolean poll(final byte[] bytes)
+        {
+            if (this.closed)
+            {
+                return false;
+            }
+            try
+            {
+                // check the process first, so the output it wrote before it exited is available
+                boolean alive = this.process.isAlive();
+                int available = this.in.available();
+                if (available > 0)
+                {
+                    int n = this.in.read(bytes, 0, Math.min(available, bytes.length));
+                    if (n > 0)
+                    {
+                        this.buffer.write(bytes, n);
+                        spill(bytes, n);
+                        return true;
+                    }
+                }
+                if (!alive)
+                {
+                    close();
+                }
+            }
+            catch (IOException exception)
+            {
+                // the pipe was closed because the process was destroyed, or the spill file could not be written
+                close();
+            }
+            return false;
+        }
+
+        /**
+         * Write bytes to the spill file, rolling it over when it is full.
+         * @param bytes the bytes
+         * @param n the number of bytes
+         * @throws IOException when the spill file cannot be written
+         */
+        private void spill(final byte[] bytes, final int n) throws IOException
+        {
+            if (this.spillFile == null)
+            {
+                return;
+            }
+            if (this.spill != null && this.spilled >= OutputCapture.this.spillSize)
+            {
+                this.spill.close();
+                this.spill = null;
+                roll(this.spillFile);
+            }
+            if (this.spill == null)
+            {
+                Files.createDirectories(this.spillFile.getParent());
+                this.spill = new GZIPOutputStream(Files.newOutputStream(this.spillFile), READ_SIZE);
+                this.spilled = 0L;
+            }
+            this.spill.write(bytes, 0, n);
+            this.spilled += n;
+        }
+
+        /**
+         * Stop spilling the stream.
+         * @return the spill file, or null when the stream was not spilled
+         */
+        synchronized Path closeSpill()
+        {
+            Path file = this.spillFile;
+            closeQuietly(this.spill);
+            this.spill = null;
+            this.spillFile = null;
+            return file;
+        }
+
+        /**
+         * Close the pipe and the spill file, and stop draining the pipe.
+         */
+        synchronized void close()
+        {
+            this.closed = true;
+            closeQuietly(this.in);
+            closeQuietly(this.spill);
+            this.spill = null;
+            OutputCapture.this.drains.remove(this);
+        }
+
+        /**
+         * Close a stream, ignoring errors.
+         * @param stream the stream, or null
+         */
+        private void closeQuietly(final Closeable stream)
+        {
+            try
+            {
+                if (stream != null)
+                {
+                    stream.close();
+                }
+            }
+            catch (IOException exception)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * A ring buffer with the last bytes that were written to a stream.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class RingBuffer
+    {
+        /** the bytes. */
+        private final byte[] buffer;
+
+        /** the total number of bytes that were written. */
+        private long totalBytes = 0L;
+
+        /**
+         * @param size the size of the buffer
+         */
+        RingBuffer(final int size)
+        {
+            this.buffer = new byte[size];
+        }
+
+        /**
+         * Append bytes to the buffer, overwriting the oldest bytes when the buffer is full.
+         * @param bytes the bytes to write
+         * @param length the number of bytes to write from the start of the array
+         */
+        synchronized void write(final byte[] bytes, final int length)
+        {
+            int size = this.buffer.length;
+            int offset = Math.max(0, length - size);
+            int position = (int) ((this.totalBytes + offset) % size);
+            int first = Math.min(length - offset, size - position);
+            System.arraycopy(bytes, offset, this.buffer, position, first);
+            System.arraycopy(bytes, offset + first, this.buffer, 0, length - offset - first);
+            this.totalBytes += length;
+        }
+
+        /**
+         * Return the last bytes that were written.
+         * @param maxBytes the maximum number of bytes to return
+         * @return the last bytes, at most maxBytes and at most the size of the buffer
+         */
+        public synchronized byte[] tail(final int maxBytes)
+        {
+            int size = this.buffer.length;
+            int n = (int) Math.min(Math.max(0, maxBytes), Math.min(this.totalBytes, size));
+            byte[] tail = new byte[n];
+            int position = (int) ((this.totalBytes - n) % size);
+            int first = Math.min(n, size - position);
+            System.arraycopy(this.buffer, position, tail, 0, first);
+            System.arraycopy(this.buffer, 0, tail, first, n - first);
+            return tail;
+        }
+
+        /**
+         * @return the total number of bytes that were written to the stream
+         */
+        public synchronized long getTotalBytes()
+        {
+            return this.totalBytes;
+        }
+    }
+
+}
@@ -0,0 +1,400 @@
+package org.sim0mq.federatestarter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * TemplateProvisioner fills the working directory of a federate with the files of a named template directory, so large input
+ * files do not have to be copied for every start. The templates are defined in the properties of the FederateStarter as
+ * <code>fs.template.&lt;name&gt;=&lt;directory&gt;</code>. When a cache directory is configured, every template is copied to
+ * the cache once per node, validated against the size and modification time of the files in the template, and its files are
+ * made read-only.
+ * <p>
+ * A working directory is provisioned with a reflink copy (copy-on-write, e.g. on btrfs or XFS) when its file system supports
+ * it, and with a normal copy otherwise. With reflinks, a file that the federate modifies is broken out by the file system.
+ * A template can opt in to hardlinks to the files in the cache with <code>fs.template.&lt;name&gt;.hardlink=true</code>, for
+ * when neither reflinks nor copies of its size are affordable. Hardlinked files are immutable: they share their inode, and
+ * with it their permissions, with the cached file, so a federate that makes a linked file writable and modifies it corrupts
+ * the template for every other federate. A federate may only replace a linked file, which breaks the link. The files that
+ * match the glob patterns in <code>fs.template.&lt;name&gt;.writable</code> are never linked but copied, so they can be
+ * modified in place.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TemplateProvisioner
+{
+    /** the template directories per name. */
+    private final Map<String, Path> templateMap = new ConcurrentHashMap<>();
+
+    /** the files per template that are copied rather than hardlinked, so the federate can modify them. */
+    private final Map<String, List<PathMatcher>> writableMap = new ConcurrentHashMap<>();
+
+    /** the templates that opted in to hardlinks to the files in the cache. */
+    private final Set<String> hardlinkTemplates = ConcurrentHashMap.newKeySet();
+
+    /** the directory in which the templates are cached, or null when the templates are used in place. */
+    private final Path cacheDirectory;
+
+    /** the validated root directory per template, in the cache or in place. */
+    private final Map<String, CompletableFuture<Path>> preparedMap = new ConcurrentHashMap<>();
+
+    /** the cheapest provisioning method that may work per file system of the working directories. */
+    private final Map<FileStore, Method> methodMap = new ConcurrentHashMap<>();
+
+    /** the thread that prepares the templates. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "TemplateProvisioner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** the threads that provision working directories for {@link #provisionAsync}. */
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKERS, r ->
+    {
+        Thread thread = new Thread(r, "TemplateProvisioner-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** the number of threads that provision working directories in parallel. */
+    private static final int WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /** the provisioning methods, from cheapest to most expensive. */
+    private enum Method
+    {
+        /** copy-on-write copy with <code>cp --reflink=always</code>. */
+        REFLINK,
+
+        /** hardlinks to the read-only files in the cache, only for the templates that opted in. */
+        HARDLINK,
+
+        /** normal copy. */
+        COPY
+    }
+
+    /**
+     * Create the provisioner for the templates in the properties, and start preparing them in the background.
+     * @param softwareProperties the properties of the FederateStarter with the fs.template.* keys
+     * @param cacheDirectory the directory in which the templates are cached, or null when the templates are used in place
+     */
+    public TemplateProvisioner(final Properties softwareProperties, final Path cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+        for (String key : softwareProperties.stringPropertyNames())
+        {
+            if (key.startsWith("fs.template.") && !key.equals("fs.template.cache") && !key.endsWith(".writable")
+                    && !key.endsWith(".hardlink"))
+            {
+                String name = key.substring(12);
+                this.templateMap.put(name, Paths.get(softwareProperties.getProperty(key)).toAbsolutePath().normalize());
+                List<PathMatcher> matchers = new ArrayList<>();
+                for (String glob : softwareProperties.getProperty(key + ".writable", "").split(","))
+                {
+                    if (!glob.isBlank())
+                    {
+                        matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+                    }
+                }
+                this.writableMap.put(name, matchers);
+                if (Boolean.parseBoolean(softwareProperties.getProperty(key + ".hardlink", "false")))
+                {
+                    this.hardlinkTemplates.add(name);
+                }
+                prepare(name);
+            }
+        }
+    }
+
+    /**
+     * Return whether a template with the given name has been defined.
+     * @param name the name of the template
+     * @return whether the template exists
+     */
+    public boolean hasTemplate(final String name)
+    {
+        return this.templateMap.containsKey(name);
+    }
+
+    /**
+     * Provision a working directory with the files of a template. When the template is still being cached, the call waits
+     * till the cache is ready.
+     * @param name the name of the template
+     * @param workingDirectory the working directory, which exists
+     * @throws IOException when the template is unknown or invalid, or when the working directory cannot be provisioned
+     */
+    public void provision(final String name, final Path workingDirectory) throws IOException
+    {
+        if (!hasTemplate(name))
+        {
+            throw new IOException("template " + name + " is not defined in the properties of the FederateStarter");
+        }
+        Path root;
+        try
+        {
+            root = prepare(name).join();
+        }
+        catch (CompletionException exception)
+        {
+            this.preparedMap.remove(name);
+            throw new IOException("template " + name + " could not be prepared: " + exception.getCause().getMessage(),
+                    exception.getCause());
+        }
+
+        FileStore store = Files.getFileStore(workingDirectory);
+        Method method = this.methodMap.getOrDefault(store, Method.REFLINK);
+        if (method == Method.REFLINK)
+        {
+            if (reflink(root, workingDirectory))
+            {
+                this.methodMap.put(store, Method.REFLINK);
+                return;
+            }
+            method = Method.HARDLINK;
+        }
+        if (method == Method.HARDLINK && (this.cacheDirectory == null || !this.hardlinkTemplates.contains(name)))
+        {
+            // the file system may support hardlinks, but the template did not opt in to them
+            this.methodMap.put(store, Method.HARDLINK);
+            copyTree(root, workingDirectory, Method.COPY, List.of());
+            return;
+        }
+        method = copyTree(root, workingDirectory, method, this.writableMap.get(name));
+        this.methodMap.put(store, method);
+    }
+
+    /**
+     * Provision a working directory with the files of a template on a worker thread, so the caller, e.g., the thread that owns
+     * the sockets of the FederateStarter, does not wait while the template is cached or its files are copied.
+     * @param name the name of the template
+     * @param workingDirectory the working directory, which is created when it does not exist
+     * @return the future that completes when the working directory has been provisioned, or completes exceptionally with the
+     *         IOException that {@link #provision} throws
+     */
+    public CompletableFuture<Void> provisionAsync(final String name, final Path workingDirectory)
+    {
+        return CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                provision(name, Files.createDirectories(workingDirectory));
+            }
+            catch (IOException exception)
+            {
+                throw new CompletionException(exception);
+            }
+        }, this.workers);
+    }
+
+    /**
+     * Stop preparing templates and provisioning working directories.
+     */
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+        this.workers.shutdownNow();
+    }
+
+    /**
+     * Return the future root directory of a template, and start preparing it when that has not been done yet.
+     * @param name the name of the template
+     * @return the future root directory of the template
+     */
+    private CompletableFuture<Path> prepare(final String name)
+    {
+        return this.preparedMap.computeIfAbsent(name, n -> CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return validate(n);
+            }
+            catch (IOException exception)
+            {
+                System.err.println("Template " + n + " could not be prepared: " + exception.getMessage());
+                throw new CompletionException(exception);
+            }
+        }, this.executor));
+    }
+
+    /**
+     * Validate a template, and cache it when a cache directory has been configured and the cache is missing or out of date.
+     * @param name the name of the template
+     * @return the root directory of the template to provision from
+     * @throws IOException when the template does not exist or cannot be cached
+     */
+    private Path validate(final String name) throws IOException
+    {
+        Path template = this.templateMap.get(name);
+        if (!Files.isDirectory(template))
+        {
+            throw new IOException("template directory " + template + " does not exist");
+        }
+        List<String> manifest = manifest(template);
+        if (this.cacheDirectory == null)
+        {
+            return template;
+        }
+
+        Path cached = this.cacheDirectory.resolve(name);
+        Path manifestFile = this.cacheDirectory.resolve(name + ".manifest");
+        if (Files.isDirectory(cached) && Files.isReadable(manifestFile)
+                && Files.readAllLines(manifestFile, StandardCharsets.UTF_8).equals(manifest))
+        {
+            return cached;
+        }
+
+        System.out.println("Caching template " + name + " from " + template);
+        Files.createDirectories(this.cacheDirectory);
+        Path temp = this.cacheDirectory.resolve(name + ".tmp" + System.nanoTime());
+        Files.createDirectories(temp);
+        copyTree(template, temp, Method.COPY, List.of());
+        try (Stream<Path> files = Files.walk(temp))
+        {
+            files.filter(Files::isRegularFile).forEach(file -> file.toFile().setWritable(false, false));
+        }
+        Files.deleteIfExists(manifestFile);
+        if (Files.exists(cached))
+        {
+            try (Stream<Path> files = Files.walk(cached))
+            {
+                for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator)
+                {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+        Files.write(manifestFile, manifest, StandardCharsets.UTF_8);
+        return cached;
+    }
+
+    /**
+     * Make a manifest of a template: the relative path, size and modification time of every file, in a fixed order.
+     * @param template the template directory
+     * @return the manifest lines
+     * @throws IOException when the template cannot be read
+     */
+    private static List<String> manifest(final Path template) throws IOException
+    {
+        List<String> manifest = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(template))
+        {
+            for (Path file : (Iterable<Path>) files.sorted()::iterator)
+            {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                manifest.add(template.relativize(file) + "\t" + (attrs.isDirectory() ? "d" : attrs.size()) + "\t"
+                        + attrs.lastModifiedTime().toMillis());
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Make a copy-on-write copy of a tree with <code>cp --reflink=always</code>, and make the copied files writable.
+     * @param source the source directory
+     * @param target the target directory
+     * @return whether the file system supports reflinks and the copy succeeded
+     */
+    private static boolean reflink(final Path source, final Path target)
+    {
+        try
+        {
+            Process cp = new ProcessBuilder("cp", "-R", "-p", "-f", "--reflink=always", source + "/.", target.toString())
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (cp.waitFor() != 0)
+            {
+                return false;
+            }
+            try (Stream<Path> files = Files.walk(target))
+            {
+                files.filter(Files::isRegularFile).forEach(file -> file.toFile().setWritable(true, true));
+            }
+            return true;
+        }
+        catch (IOException exception)
+        {
+            return false;
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Provision a tree with hardlinks or copies. The files that match the writable patterns are always copied. When a hardlink
+     * fails, e.g. because the target is on another file system, the remaining files are copied.
+     * @param source the source directory
+     * @param target the target directory
+     * @param method HARDLINK or COPY
+     * @param writable the patterns of the files that have to be copied
+     * @return the method that worked
+     * @throws IOException when a file cannot be copied
+     */
+    private static Method copyTree(final Path source, final Path target, final Method method, final List<PathMatcher> writable)
+            throws IOException
+    {
+        Method[] used = new Method[] {method};
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException
+            {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+            {
+                Path relative = source.relativize(file);
+                Path destination = target.resolve(relative.toString());
+                Files.deleteIfExists(destination);
+                boolean copy = used[0] == Method.COPY || writable.stream().anyMatch(m -> m.matches(relative));
+                if (!copy)
+                {
+                    try
+                    {
+                        Files.createLink(destination, file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    catch (IOException | UnsupportedOperationException exception)
+                    {
+                        used[0] = Method.COPY;
+                    }
+                }
+                Files.copy(file, destination, StandardCopyOption.COPY_ATTRIBUTES);
+                destination.toFile().setWritable(true, true);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return used[0];
+    }
+
+}
@@ -0,0 +1,1658 @@
+package org.sim0mq.federationmanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.djutils.exceptions.Throw;
+import org.djutils.serialization.SerializationException;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.federationmanager.TimeoutPolicy.Interaction;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.federatestarter.FS2FederateStartedMessage;
+import org.sim0mq.message.federatestarter.FS4FederateKilledMessage;
+import org.sim0mq.message.federatestarter.FS6FederateExitedMessage;
+import org.sim0mq.message.federationmanager.FM13RequestStatisticsListMessage;
+import org.sim0mq.message.federationmanager.FM14SetParametersMessage;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+import org.sim0mq.message.federationmanager.FM3SetParameterMessage;
+import org.sim0mq.message.federationmanager.FM4SimStartMessage;
+import org.sim0mq.message.federationmanager.FM5RequestStatus;
+import org.sim0mq.message.federationmanager.FM6RequestStatisticsMessage;
+import org.sim0mq.message.federationmanager.FM8KillFederateMessage;
+import org.sim0mq.message.heartbeat.HB1HeartbeatMessage;
+import org.sim0mq.message.heartbeat.HB2AliveMessage;
+import org.sim0mq.message.modelcontroller.MC1StatusMessage;
+import org.sim0mq.message.modelcontroller.MC2AckNakMessage;
+import org.sim0mq.message.modelcontroller.MC3StatisticsMessage;
+import org.sim0mq.message.modelcontroller.MC4StatisticsErrorMessage;
+import org.sim0mq.message.modelcontroller.MC5StatisticsListMessage;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
+
+/**
+ * The FederationManager moves many {@link ModelRun}s at the same time through the states of model execution: FM.1 to the
+ * FederateStarter, FS.2 back, FM.2 and FM.3 to the model controller, FM.4 to start the simulator, FM.5 till the model reports
+ * that it has ended, FM.6 or FM.13 to gather the statistics, and FM.8 to the FederateStarter to kill the model. Instead of a
+ * thread with its own blocking REQ sockets per model, one thread runs an event loop around a ZMQ.Poller, and never blocks on a
+ * single model; a run only occupies memory while it waits for a reply.
+ * <p>
+ * All FederateStarters and model controllers are reached through one ROUTER socket that connects to each of them with its own
+ * connect routing id, so the number of sockets, and the cost of a poll, does not grow with the number of models. Since the
+ * FederateStarters and model controllers are ROUTER sockets as well, they see an ordinary client with a fixed identity, and
+ * unsolicited messages such as FS.6 arrive on the same socket. Several FederationManagers can run in one process, each with
+ * its own thread and socket.
+ * </p>
+ * <p>
+ * Every request that waits for a reply has a deadline in a {@link TimerWheel}, according to the {@link TimeoutPolicy} of its
+ * kind of interaction. A request that is not answered in time is sent again with the same message id; when the retries have
+ * been used up, the model is restarted or the run fails, so a hung FederateStarter or model controller cannot stall a run
+ * forever. Optionally, HB.1 heartbeats check the connection to the model controllers of the runs.
+ * </p>
+ * <p>
+ * The FederationManager is thread-safe: runs can be submitted from any thread, and are handed to the thread of the event
+ * loop. The states and results of the runs are written by that thread only.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FederationManager implements AutoCloseable
+{
+    /** the federation id of the messages. */
+    private final Object federationId;
+
+    /** the sender id of the messages, which is the receiver id of the replies. */
+    private final String senderId;
+
+    /** the identity of the socket, unique per FederationManager. */
+    private final String identity;
+
+    /** the thread that runs the event loop and owns the socket. */
+    private final Thread loopThread;
+
+    /** work handed to the thread that owns the socket, e.g. the submission of a run. */
+    private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+
+    /** the value of System.nanoTime() when the FederationManager was created, the origin of the clock of the timers. */
+    private final long clockOrigin = System.nanoTime();
+
+    /** the timers of the event loop, with a resolution of 1 ms on the clock of {@link #now}; only used by the loop thread. */
+    private final TimerWheel timers = new TimerWheel(1L, 1 << 14, 0L);
+
+    /** the timeout policy per kind of interaction. */
+    private final Map<Interaction, TimeoutPolicy> timeoutPolicies = new ConcurrentHashMap<>();
+
+    /** the time in ms between two HB.1 messages to the model controller of a run, or 0 when no heartbeats are sent. */
+    private volatile long heartbeatInterval = 0L;
+
+    /** the number of requests that were sent again because they were not answered in time. */
+    private volatile long numberRetries = 0L;
+
+    /** the number of requests that were not answered in time after their retries. */
+    private volatile long numberTimeouts = 0L;
+
+    /** the number of runs that were restarted after a timeout. */
+    private volatile long numberRestarts = 0L;
+
+    /** the endpoints of the FederateStarters, per name; only used by the loop thread. */
+    private final Map<String, String> federateStarterMap = new HashMap<>();
+
+    /** the runs that have not completed, per instance id; only used by the loop thread. */
+    private final Map<String, Slot> slotMap = new HashMap<>();
+
+    /** the states of the runs that are in the slot map, which can be read from any thread. */
+    private final ModelStateTable stateTable = new ModelStateTable();
+
+    /** the number of runs that have been submitted and have not completed. */
+    private final AtomicInteger numberActive = new AtomicInteger();
+
+    /** the number of the last message sent. */
+    private long messageCount = 0;
+
+    /** the socket to the FederateStarters and model controllers. */
+    private ZMQ.Socket socket;
+
+    /** whether the FederationManager has been closed. */
+    private volatile boolean closed = false;
+
+    /** the cache of the results of runs, or null. */
+    private volatile ResultCache resultCache = null;
+
+    /** the thread that reads and writes the entries of the result cache, so the event loop does not wait for the disk. */
+    private final ExecutorService cacheExecutor;
+
+    /** the poll timeout in ms, which bounds the delay before work in loopTasks is carried out. */
+    private static final long POLL_TIMEOUT = 10;
+
+    /**
+     * the time in ms in which a new connection should complete its handshake; a connection whose handshake stalls is dropped
+     * and made again, instead of holding the messages to its peer for the 30 s default of JeroMQ.
+     */
+    private static final int HANDSHAKE_INTERVAL = 1000;
+
+    /** the prefix of the routing id of a FederateStarter. */
+    private static final String FS_PREFIX = "fs/";
+
+    /** the prefix of the routing id of a model controller. */
+    private static final String MC_PREFIX = "mc/";
+
+    /**
+     * Create a FederationManager and start its event loop.
+     * @param federationId the federation id of the messages
+     * @param senderId the sender id of the messages, which the FederateStarters and models use as receiver id
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FederationManager(final Object federationId, final String senderId)
+    {
+        Throw.whenNull(federationId, "federationId cannot be null");
+        Throw.whenNull(senderId, "senderId cannot be null");
+        this.federationId = federationId;
+        this.senderId = senderId;
+        this.identity = senderId + "-" + UUID.randomUUID().toString();
+        this.cacheExecutor = Executors.newSingleThreadExecutor(r ->
+        {
+            Thread thread = new Thread(r, "FederationManager " + senderId + " cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeoutPolicies.put(Interaction.START, new TimeoutPolicy(60_000L, 2, 0));
+        this.timeoutPolicies.put(Interaction.CONTROL, new TimeoutPolicy(30_000L, 0, 0));
+        this.timeoutPolicies.put(Interaction.STATUS, new TimeoutPolicy(30_000L, 2, 0));
+        this.timeoutPolicies.put(Interaction.STATISTICS, new TimeoutPolicy(60_000L, 1, 0));
+        this.timeoutPolicies.put(Interaction.KILL, new TimeoutPolicy(30_000L, 2, 0));
+        this.timeoutPolicies.put(Interaction.HEARTBEAT, new TimeoutPolicy(10_000L, 2, 0));
+        this.loopThread = new Thread(this::loop, "FederationManager " + senderId);
+        this.loopThread.setDaemon(true);
+        this.loopThread.start();
+    }
+
+    /**
+     * Set the cache of the results of runs. A run with the same inputs as a run in the cache completes with the cached
+     * statistics, without starting its model; a run that terminates successfully, with all its statistics, is added to the
+     * cache.
+     * @param newResultCache the cache, or null to execute all runs
+     */
+    public void setResultCache(final ResultCache newResultCache)
+    {
+        this.resultCache = newResultCache;
+    }
+
+    /**
+     * @return the cache of the results of runs, or null
+     */
+    public ResultCache getResultCache()
+    {
+        return this.resultCache;
+    }
+
+    /**
+     * Set the policy for the requests of a kind of interaction that are sent from now on. The defaults wait 60 s for FS.2 and
+     * for the statistics, and 30 s for the other replies; START, STATUS, KILL and HEARTBEAT requests are sent again twice and
+     * STATISTICS requests once, and CONTROL requests are not sent again, since a model might carry out FM.4 twice. No run is
+     * restarted by default.
+     * @param interaction the kind of interaction
+     * @param policy the policy; TimeoutPolicy.NONE waits forever
+     */
+    public void setTimeoutPolicy(final Interaction interaction, final TimeoutPolicy policy)
+    {
+        Throw.whenNull(interaction, "interaction cannot be null");
+        Throw.whenNull(policy, "policy cannot be null");
+        this.timeoutPolicies.put(interaction, policy);
+    }
+
+    /**
+     * @param interaction the kind of interaction
+     * @return the policy for the requests of the kind of interaction
+     */
+    public TimeoutPolicy getTimeoutPolicy(final Interaction interaction)
+    {
+        return this.timeoutPolicies.get(interaction);
+    }
+
+    /**
+     * Set the time between two HB.1 heartbeats to the model controller of a run, for the runs whose model is started from now
+     * on. A model controller that does not answer with HB.2 in time is handled according to the HEARTBEAT policy.
+     * @param newHeartbeatInterval the time in ms between two heartbeats, or 0 to send no heartbeats, which is the default
+     */
+    public void setHeartbeatInterval(final long newHeartbeatInterval)
+    {
+        Throw.when(newHeartbeatInterval < 0, IllegalArgumentException.class, "heartbeatInterval should be >= 0");
+        this.heartbeatInterval = newHeartbeatInterval;
+    }
+
+    /**
+     * @return the time in ms between two HB.1 heartbeats, or 0 when no heartbeats are sent
+     */
+    public long getHeartbeatInterval()
+    {
+        return this.heartbeatInterval;
+    }
+
+    /**
+     * @return the number of requests that were sent again because they were not answered in time
+     */
+    public long getNumberRetries()
+    {
+        return this.numberRetries;
+    }
+
+    /**
+     * @return the number of requests that were not answered in time after their retries
+     */
+    public long getNumberTimeouts()
+    {
+        return this.numberTimeouts;
+    }
+
+    /**
+     * @return the number of runs that were restarted with a new model after a timeout
+     */
+    public long getNumberRestarts()
+    {
+        return this.numberRestarts;
+    }
+
+    /**
+     * Register a FederateStarter, to which the runs refer by name.
+     * @param name the name of the FederateStarter
+     * @param endpoint the endpoint of the FederateStarter, e.g. tcp://node12:5555; the models it starts are reached on the
+     *            same host
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public void addFederateStarter(final String name, final String endpoint)
+    {
+        Throw.whenNull(name, "name cannot be null");
+        Throw.whenNull(endpoint, "endpoint cannot be null");
+        this.loopTasks.add(() ->
+        {
+            if (this.federateStarterMap.containsKey(name))
+            {
+                this.socket.disconnect(this.federateStarterMap.get(name));
+            }
+            this.federateStarterMap.put(name, endpoint);
+            this.socket.setConnectRid(FS_PREFIX + name);
+            this.socket.connect(endpoint);
+        });
+    }
+
+    /**
+     * Submit a run; the model is started at once, and moved through its states till it has been terminated or has failed.
+     * @param run the run to execute
+     * @return the future that completes with the run when the model has been terminated, or has failed
+     * @throws NullPointerException when run is null
+     * @throws IllegalStateException when the FederationManager has been closed
+     */
+    public CompletableFuture<ModelRun> submit(final ModelRun run)
+    {
+        Throw.whenNull(run, "run cannot be null");
+        Throw.when(this.closed, IllegalStateException.class, "FederationManager has been closed");
+        this.numberActive.incrementAndGet();
+        Runnable task = () ->
+        {
+            if (this.closed)
+            {
+                // the task is carried out after the loop stopped; the run fails without a message to the FederateStarter
+                Slot closedSlot = new Slot(run);
+                closedSlot.killing = true;
+                fail(closedSlot, "FederationManager closed");
+                return;
+            }
+            if (this.slotMap.containsKey(run.getInstanceId()))
+            {
+                Slot duplicate = new Slot(run);
+                duplicate.killing = true;
+                fail(duplicate, "instance id " + run.getInstanceId() + " is already running");
+                return;
+            }
+            Slot slot = new Slot(run);
+            this.slotMap.put(run.getInstanceId(), slot);
+            run.setStateTable(this.stateTable, this.stateTable.add(run.getInstanceId()));
+            advance(slot);
+        };
+        this.loopTasks.add(task);
+        // a run that was submitted while the FederationManager was closed, after the loop carried out its last tasks, fails
+        if (!this.loopThread.isAlive() && this.loopTasks.remove(task))
+        {
+            run.setError("FederationManager closed");
+            run.setState(ModelState.ERROR);
+            this.numberActive.decrementAndGet();
+            run.getCompletion().complete(run);
+        }
+        return run.getCompletion();
+    }
+
+    /**
+     * Cancel a run: its model is killed when it has been started, and the run fails. A run that has completed, or whose model
+     * is being killed already, is not affected.
+     * @param run the run to cancel
+     */
+    public void cancel(final ModelRun run)
+    {
+        Throw.whenNull(run, "run cannot be null");
+        this.loopTasks.add(() ->
+        {
+            Slot slot = this.slotMap.get(run.getInstanceId());
+            if (slot == null || slot.run != run || slot.killing || slot.cancelled)
+            {
+                return;
+            }
+            slot.cancelled = true;
+            // a model that is being started is killed when the FS.2 reply arrives
+            if (run.getState() != ModelState.NOT_STARTED)
+            {
+                fail(slot, "model " + run.getInstanceId() + " cancelled");
+            }
+        });
+    }
+
+    /**
+     * Carry out an action on the thread of the event loop after a delay. The action should not block; an exception that it
+     * throws is logged.
+     * @param delay the delay in ms
+     * @param action the action
+     */
+    public void runLater(final long delay, final Runnable action)
+    {
+        Throw.whenNull(action, "action cannot be null");
+        this.loopTasks.add(() -> schedule(delay, action));
+    }
+
+    /**
+     * Return the table with the states of the active runs, e.g., to count the runs whose simulator is running. The table can be
+     * read from any thread without locks; a run leaves the table when it completes.
+     * @return the table with the states of the active runs
+     */
+    public ModelStateTable getStateTable()
+    {
+        return this.stateTable;
+    }
+
+    /**
+     * @return the number of runs that have been submitted and have not completed
+     */
+    public int getNumberActive()
+    {
+        return this.numberActive.get();
+    }
+
+    /**
+     * Stop the event loop, and wait till it has stopped. Runs that have not completed fail; their models are not killed. When
+     * close is called on the thread of the event loop, e.g., by an action that is chained to the completion of a run, the loop
+     * stops after the current task, and close does not wait.
+     */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        if (Thread.currentThread() == this.loopThread)
+        {
+            return;
+        }
+        try
+        {
+            this.loopThread.join();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The event loop: receive the replies, carry out the tasks of other threads, and fire the timers that are due.
+     */
+    private void loop()
+    {
+        ZContext context = new ZContext(1);
+        this.socket = context.createSocket(SocketType.ROUTER);
+        this.socket.setIdentity(this.identity.getBytes(StandardCharsets.UTF_8));
+        this.socket.setRouterMandatory(true);
+        this.socket.setRouterHandover(true);
+        this.socket.setLinger(0);
+        this.socket.setHandshakeIvl(HANDSHAKE_INTERVAL);
+        ZMQ.Poller poller = context.createPoller(1);
+        poller.register(this.socket, ZMQ.Poller.POLLIN);
+
+        while (!this.closed)
+        {
+            try
+            {
+                poller.poll(this.timers.delay(now(), POLL_TIMEOUT));
+                if (poller.pollin(0))
+                {
+                    String routingId;
+                    while ((routingId = this.socket.recvStr(ZMQ.DONTWAIT)) != null)
+                    {
+                        // the delimiter (#0) and the message; a peer that sends no delimiter is tolerated
+                        byte[] message = this.socket.recv(0);
+                        while (this.socket.hasReceiveMore())
+                        {
+                            message = this.socket.recv(0);
+                        }
+                        receive(routingId, message);
+                    }
+                }
+
+                // carry out the work that other threads handed to the thread that owns the socket
+                runLoopTasks();
+
+                // fire the timers that are due; the wheel keeps firing the other timers when an action throws
+                this.timers.advance(now());
+            }
+            catch (ZMQException exception)
+            {
+                System.err.println(exception.getMessage());
+            }
+            catch (RuntimeException exception)
+            {
+                // a bug in the handling of one run should not stop the loop for all runs
+                System.err.println("FederationManager " + this.senderId + " caught " + exception);
+                exception.printStackTrace();
+            }
+        }
+
+        for (Slot slot : this.slotMap.values().toArray(new Slot[0]))
+        {
+            slot.killing = true;
+            try
+            {
+                fail(slot, "FederationManager closed");
+            }
+            catch (RuntimeException exception)
+            {
+                exception.printStackTrace();
+            }
+        }
+        runLoopTasks();
+        // the entries that are being written are finished; the lookups of the failed runs are ignored
+        this.cacheExecutor.shutdown();
+        poller.close();
+        context.close();
+    }
+
+    /**
+     * Carry out the work that other threads handed to the thread that owns the socket. A task that throws is logged, and the
+     * other tasks are carried out.
+     */
+    private void runLoopTasks()
+    {
+        Runnable task;
+        while ((task = this.loopTasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException exception)
+            {
+                System.err.println("FederationManager " + this.senderId + " caught " + exception + " in a task");
+                exception.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Handle a message from a FederateStarter or a model controller.
+     * @param routingId the routing id of the peer that sent the message
+     * @param message the message
+     */
+    private void receive(final String routingId, final byte[] message)
+    {
+        Object[] fields;
+        try
+        {
+            fields = Sim0MQMessage.decodeToArray(message);
+        }
+        catch (Sim0MQException | SerializationException exception)
+        {
+            System.err.println("Received message from " + routingId + " that could not be decoded: " + exception.getMessage());
+            return;
+        }
+        String messageTypeId = fields[5].toString();
+        try
+        {
+            if (routingId.startsWith(FS_PREFIX))
+            {
+                switch (messageTypeId)
+                {
+                    case "FS.2":
+                        processFederateStarted(new FS2FederateStartedMessage(fields));
+                        break;
+
+                    case "FS.4":
+                        processFederateKilled(new FS4FederateKilledMessage(fields));
+                        break;
+
+                    case "FS.6":
+                        processFederateExited(new FS6FederateExitedMessage(fields));
+                        break;
+
+                    default:
+                        // wrong message
+                        System.err.println(
+                                "Received unknown message from " + routingId + " -- not processed: " + messageTypeId);
+                }
+            }
+            else if (routingId.startsWith(MC_PREFIX))
+            {
+                Slot slot = this.slotMap.get(routingId.substring(MC_PREFIX.length()));
+                if (slot == null)
+                {
+                    return;
+                }
+                switch (messageTypeId)
+                {
+                    case "MC.1":
+                        processStatus(slot, new MC1StatusMessage(fields));
+                        break;
+
+                    case "MC.2":
+                        processAckNak(slot, new MC2AckNakMessage(fields));
+                        break;
+
+                    case "MC.3":
+                        processStatistics(slot, new MC3StatisticsMessage(fields));
+                        break;
+
+                    case "MC.4":
+                        processStatisticsError(slot, new MC4StatisticsErrorMessage(fields));
+                        break;
+
+                    case "MC.5":
+                        processStatisticsList(slot, new MC5StatisticsListMessage(fields));
+                        break;
+
+                    case "HB.2":
+                        processAlive(slot, new HB2AliveMessage(fields));
+                        break;
+
+                    default:
+                        // wrong message
+                        System.err.println(
+                                "Received unknown message from " + routingId + " -- not processed: " + messageTypeId);
+                }
+            }
+        }
+        catch (Sim0MQException | RuntimeException exception)
+        {
+            System.err.println(
+                    "Received invalid " + messageTypeId + " message from " + routingId + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Send the message for the current state of a run, or complete the run when it has been terminated.
+     * @param slot the run
+     */
+    private void advance(final Slot slot)
+    {
+        ModelRun run = slot.run;
+        try
+        {
+            switch (run.getState())
+            {
+                case NOT_STARTED:
+                    sendStartFederate(slot);
+                    break;
+
+                case STARTED:
+                    if (run.getRunControlBuilder() == null)
+                    {
+                        run.setState(ModelState.RUNCONTROL);
+                        advance(slot);
+                    }
+                    else
+                    {
+                        sendToModel(slot, Interaction.CONTROL, buildRunControl(slot).createByteArray());
+                    }
+                    break;
+
+                case RUNCONTROL:
+                    if (run.isParameterList() && slot.parameterIndex < slot.parameterNames.length)
+                    {
+                        sendToModel(slot, Interaction.CONTROL, new FM14SetParametersMessage(this.federationId, this.senderId,
+                                slot.modelId, ++this.messageCount, run.getParameters()).createByteArray());
+                    }
+                    else if (slot.parameterIndex < slot.parameterNames.length)
+                    {
+                        // pipeline the FM.3 messages, up to the window of unacknowledged messages
+                        while (slot.parameterSent < slot.parameterNames.length
+                                && slot.parameterSent - slot.parameterIndex < run.getParameterWindow())
+                        {
+                            slot.parameterIds[slot.parameterSent] = ++this.messageCount;
+                            slot.outstanding = this.messageCount;
+                            send(MC_PREFIX + run.getInstanceId(), buildSetParameter(slot, slot.parameterSent++));
+                        }
+                        // the deadline covers the oldest unacknowledged FM.3 message; a retry sends them all again
+                        expect(slot, Interaction.CONTROL, () -> resendParameters(slot));
+                    }
+                    else
+                    {
+                        run.setState(ModelState.PARAMETERS);
+                        advance(slot);
+                    }
+                    break;
+
+                case PARAMETERS:
+                    sendToModel(slot, Interaction.CONTROL, new FM4SimStartMessage(this.federationId, this.senderId,
+                            slot.modelId, ++this.messageCount).createByteArray());
+                    break;
+
+                case SIMULATORSTARTED:
+                    sendToModel(slot, Interaction.STATUS, new FM5RequestStatus(this.federationId, this.senderId,
+                            slot.modelId, ++this.messageCount).createByteArray());
+                    break;
+
+                case SIMULATORENDED:
+                    if (run.isStatisticsList() && slot.statisticIndex < run.getStatisticNames().size())
+                    {
+                        sendToModel(slot, Interaction.STATISTICS, new FM13RequestStatisticsListMessage(this.federationId,
+                                this.senderId, slot.modelId, ++this.messageCount, run.getStatisticNames())
+                                        .createByteArray());
+                    }
+                    else if (slot.statisticIndex < run.getStatisticNames().size())
+                    {
+                        sendToModel(slot, Interaction.STATISTICS, new FM6RequestStatisticsMessage(this.federationId,
+                                this.senderId, slot.modelId, ++this.messageCount,
+                                run.getStatisticNames().get(slot.statisticIndex)).createByteArray());
+                    }
+                    else
+                    {
+                        run.setState(ModelState.STATISTICSGATHERED);
+                        advance(slot);
+                    }
+                    break;
+
+                case STATISTICSGATHERED:
+                    sendKillFederate(slot);
+                    break;
+
+                case TERMINATED:
+                case ERROR:
+                    complete(slot);
+                    break;
+
+                default:
+                    break;
+            }
+        }
+        catch (Sim0MQException | SerializationException | ZMQException exception)
+        {
+            fail(slot, "could not send message to " + run.getInstanceId() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Send the FM.1 message of a run to its FederateStarter. With a result cache, the run is looked up in the cache first, on
+     * the thread of the cache, and the FM.1 message is only sent when the run is not in the cache.
+     * @param slot the run
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when the message cannot be serialized
+     */
+    private void sendStartFederate(final Slot slot) throws Sim0MQException, SerializationException
+    {
+        ModelRun run = slot.run;
+        if (slot.cancelled)
+        {
+            fail(slot, "model " + run.getInstanceId() + " cancelled");
+            return;
+        }
+        if (!this.federateStarterMap.containsKey(run.getFederateStarter()))
+        {
+            fail(slot, "unknown FederateStarter " + run.getFederateStarter());
+            return;
+        }
+        FM1StartFederateMessage.Builder builder = run.getStartBuilder();
+        builder.setInstanceId(run.getInstanceId());
+        builder.setSimulationRunId(this.federationId).setSenderId(this.senderId).setReceiverId("FS")
+                .setMessageId(++this.messageCount);
+        FM1StartFederateMessage message = builder.build();
+        ResultCache cache = this.resultCache;
+        if (cache != null)
+        {
+            try
+            {
+                slot.cacheKey = ResultCache.key(message, run.getRunControlBuilder() == null ? null : buildRunControl(slot),
+                        run.getParameters(), run.getStatisticNames(), run.isStatisticsList());
+            }
+            catch (SerializationException exception)
+            {
+                System.err.println("cannot compute the cache key of " + run.getInstanceId() + ": " + exception.getMessage());
+            }
+            String key = slot.cacheKey;
+            if (key != null)
+            {
+                // the entry is read on the thread of the cache, and the run continues on the thread of the event loop
+                this.cacheExecutor.execute(() ->
+                {
+                    MC5StatisticsListMessage cached = cache.get(key);
+                    this.loopTasks.add(() -> processCacheLookup(slot, key, message, cached));
+                });
+                return;
+            }
+        }
+        sendStartFederate(slot, message);
+    }
+
+    /**
+     * Send an FM.1 message to the FederateStarter of a run, and set the deadline of its FS.2 reply.
+     * @param slot the run
+     * @param message the FM.1 message
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when the message cannot be serialized
+     */
+    private void sendStartFederate(final Slot slot, final FM1StartFederateMessage message)
+            throws Sim0MQException, SerializationException
+    {
+        String routingId = FS_PREFIX + slot.run.getFederateStarter();
+        byte[] bytes = message.createByteArray();
+        send(routingId, bytes);
+        expect(slot, Interaction.START, () -> send(routingId, bytes));
+    }
+
+    /**
+     * Complete a run with the statistics from the result cache, or start its model when the run is not in the cache.
+     * @param slot the run
+     * @param key the key of the run in the result cache
+     * @param message the FM.1 message of the run
+     * @param cached the statistics of the run in the cache, or null when the run is not in the cache
+     */
+    private void processCacheLookup(final Slot slot, final String key, final FM1StartFederateMessage message,
+            final MC5StatisticsListMessage cached)
+    {
+        ModelRun run = slot.run;
+        if (this.slotMap.get(run.getInstanceId()) != slot || !key.equals(slot.cacheKey))
+        {
+            // the run has completed in the meantime, e.g., because the FederationManager was closed
+            return;
+        }
+        if (slot.cancelled)
+        {
+            fail(slot, "model " + run.getInstanceId() + " cancelled");
+            return;
+        }
+        if (cached != null)
+        {
+            // the run has been executed before with the same inputs
+            run.getStatistics().putAll(cached.getValueMap());
+            run.getStatisticsErrors().putAll(cached.getErrorMap());
+            run.setCached(true);
+            run.setState(ModelState.TERMINATED);
+            complete(slot);
+            return;
+        }
+        try
+        {
+            sendStartFederate(slot, message);
+        }
+        catch (Sim0MQException | SerializationException | ZMQException exception)
+        {
+            fail(slot, "could not send message to " + run.getInstanceId() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Build the FM.2 message of a run, with the seeds of the run. The FM.2 builder can be shared by many runs and their
+     * copies, so the seeds of the run go into a new message, and the stream map of the builder is left alone.
+     * @param slot the run, which has an FM.2 builder
+     * @return the FM.2 message
+     * @throws Sim0MQException on an invalid message
+     */
+    private FM2SimRunControlMessage buildRunControl(final Slot slot) throws Sim0MQException
+    {
+        ModelRun run = slot.run;
+        FM2SimRunControlMessage message = run.getRunControlBuilder().setSimulationRunId(this.federationId)
+                .setSenderId(this.senderId).setReceiverId(slot.modelId).setMessageId(++this.messageCount).build();
+        Map<Object, Long> streamMap = run.getStreamMap();
+        if (streamMap == null)
+        {
+            return message;
+        }
+        return new FM2SimRunControlMessage(this.federationId, this.senderId, slot.modelId, this.messageCount,
+                message.getRunDuration().getObject(), message.getWarmupDuration().getObject(),
+                message.getOffsetTime().getObject(), message.getSpeed(), message.getNumberReplications(), streamMap.size(),
+                streamMap);
+    }
+
+    /**
+     * Send the FM.8 message of a run to its FederateStarter.
+     * @param slot the run
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when the message cannot be serialized
+     */
+    private void sendKillFederate(final Slot slot) throws Sim0MQException, SerializationException
+    {
+        slot.killing = true;
+        ModelRun run = slot.run;
+        String routingId = FS_PREFIX + run.getFederateStarter();
+        byte[] bytes = new FM8KillFederateMessage(this.federationId, this.senderId, "FS", ++this.messageCount,
+                run.getInstanceId()).createByteArray();
+        send(routingId, bytes);
+        expect(slot, Interaction.KILL, () -> send(routingId, bytes));
+    }
+
+    /**
+     * Build the FM.3 message for a parameter of a run, with the message id that was issued for the parameter.
+     * @param slot the run
+     * @param i the index of the parameter
+     * @return the FM.3 message
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when the message cannot be serialized
+     */
+    private byte[] buildSetParameter(final Slot slot, final int i) throws Sim0MQException, SerializationException
+    {
+        String name = slot.parameterNames[i];
+        return new FM3SetParameterMessage(this.federationId, this.senderId, slot.modelId, slot.parameterIds[i],
+                name, slot.run.getParameters().get(name)).createByteArray();
+    }
+
+    /**
+     * Send the FM.3 messages of a run that have not been acknowledged again, with their original message ids.
+     * @param slot the run
+     */
+    private void resendParameters(final Slot slot)
+    {
+        try
+        {
+            for (int i = slot.parameterIndex; i < slot.parameterSent; i++)
+            {
+                send(MC_PREFIX + slot.run.getInstanceId(), buildSetParameter(slot, i));
+            }
+        }
+        catch (Sim0MQException | SerializationException exception)
+        {
+            System.err.println("could not send message to " + slot.run.getInstanceId() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Send a request to the model controller of a run, remember its message id to match the reply, and set its deadline.
+     * @param slot the run
+     * @param interaction the kind of interaction of the request
+     * @param message the message, of which the message id is the last one that was issued
+     */
+    private void sendToModel(final Slot slot, final Interaction interaction, final byte[] message)
+    {
+        slot.outstanding = this.messageCount;
+        String routingId = MC_PREFIX + slot.run.getInstanceId();
+        send(routingId, message);
+        expect(slot, interaction, () -> send(routingId, message));
+    }
+
+    /**
+     * Send a message to a FederateStarter or a model controller.
+     * @param routingId the routing id of the peer
+     * @param message the message
+     * @throws ZMQException when the peer is not connected
+     */
+    private void send(final String routingId, final byte[] message)
+    {
+        this.socket.sendMore(routingId);
+        this.socket.sendMore("");
+        this.socket.send(message, 0);
+    }
+
+    /**
+     * Process the FS.2 reply to an FM.1 message: connect to the model controller when the model has started, ask again later
+     * when the start is queued, and fail the run otherwise.
+     * @param message the FS.2 message
+     */
+    private void processFederateStarted(final FS2FederateStartedMessage message)
+    {
+        Slot slot = this.slotMap.get(message.getInstanceId().toString());
+        if (slot == null || slot.run.getState() != ModelState.NOT_STARTED || slot.killing)
+        {
+            return;
+        }
+        ModelRun run = slot.run;
+        if (slot.cancelled)
+        {
+            // the model of a run that was cancelled while it was being started is killed at once
+            run.setModelPort("started".equals(message.getStatus()) ? message.getModelPort() : 0);
+            fail(slot, "model " + run.getInstanceId() + " cancelled");
+            return;
+        }
+        switch (message.getStatus())
+        {
+            case "started":
+                String fsEndpoint = this.federateStarterMap.get(run.getFederateStarter());
+                slot.modelEndpoint = fsEndpoint.substring(0, fsEndpoint.lastIndexOf(':') + 1) + message.getModelPort();
+                this.socket.setConnectRid(MC_PREFIX + run.getInstanceId());
+                this.socket.connect(slot.modelEndpoint);
+                // a wake-up after an earlier "queued" reply would send the FM.1 message again, or the next message twice
+                if (slot.wakeup != null)
+                {
+                    slot.wakeup.cancel();
+                    slot.wakeup = null;
+                }
+                // a FederateStarter that reuses the process of an earlier instance reports the id that the model uses
+                slot.modelId = message.getModelId();
+                run.setModelPort(message.getModelPort());
+                run.setState(ModelState.STARTED);
+                if (this.heartbeatInterval > 0)
+                {
+                    slot.heartbeatTimer = schedule(this.heartbeatInterval, () -> sendHeartbeat(slot));
+                }
+                advance(slot);
+                break;
+
+            case "queued":
+                // ask again when the FederateStarter expects to have room, but not more often than every 100 ms
+                settle(slot);
+                slot.wakeup = schedule(Math.max(100L, (long) (1000.0 * message.getEstimatedWait().getSI())),
+                        () -> advance(slot));
+                break;
+
+            default:
+                fail(slot, "model " + run.getInstanceId() + " could not be started: " + message.getError());
+                break;
+        }
+    }
+
+    /**
+     * Process the FS.4 reply to an FM.8 message, after which the run is complete. A model that is already being killed is
+     * the answer to a retried FM.8 message, so the run waits for the reply to the first one. A model that is unknown to the
+     * FederateStarter is not running, e.g., because it was never started after a START timeout, or because the reply to an
+     * earlier FM.8 message was lost; it counts as killed for a restart and for a run of which the statistics were gathered.
+     * @param message the FS.4 message
+     */
+    private void processFederateKilled(final FS4FederateKilledMessage message)
+    {
+        Slot slot = this.slotMap.get(message.getInstanceId().toString());
+        if (slot == null || !slot.killing)
+        {
+            return;
+        }
+        String error = message.getError() == null ? "" : message.getError();
+        if (!message.isStatus() && error.contains("already being killed"))
+        {
+            return;
+        }
+        boolean killed = message.isStatus() || (error.contains("unknown")
+                && (slot.restarting || slot.run.getState() == ModelState.STATISTICSGATHERED));
+        if (slot.restarting && killed)
+        {
+            restartRun(slot);
+            return;
+        }
+        if (!killed && slot.run.getError() == null)
+        {
+            slot.run.setError("model " + slot.run.getInstanceId() + " could not be killed: " + message.getError());
+            slot.run.setState(ModelState.ERROR);
+        }
+        if (slot.run.getState() != ModelState.ERROR)
+        {
+            slot.run.setState(ModelState.TERMINATED);
+        }
+        complete(slot);
+    }
+
+    /**
+     * Process the unsolicited FS.6 message of a model that exited on its own; the FederateStarter has already cleaned it up.
+     * @param message the FS.6 message
+     */
+    private void processFederateExited(final FS6FederateExitedMessage message)
+    {
+        Slot slot = this.slotMap.get(message.getInstanceId().toString());
+        if (slot == null || slot.killing)
+        {
+            return;
+        }
+        slot.killing = true;
+        if (slot.run.getState() == ModelState.STATISTICSGATHERED)
+        {
+            slot.run.setState(ModelState.TERMINATED);
+            complete(slot);
+        }
+        else
+        {
+            fail(slot, "model " + slot.run.getInstanceId() + " exited with exit code " + message.getExitCode());
+        }
+    }
+
+    /**
+     * Process the MC.1 reply to an FM.5 message: gather the statistics when the simulation has ended, and ask again later
+     * while it runs.
+     * @param slot the run
+     * @param message the MC.1 message
+     */
+    private void processStatus(final Slot slot, final MC1StatusMessage message)
+    {
+        if (!isReply(slot, message.getReplyToId()) || slot.run.getState() != ModelState.SIMULATORSTARTED)
+        {
+            return;
+        }
+        switch (message.getStatus())
+        {
+            case "ended":
+                slot.run.setSimulatorEndTime(System.currentTimeMillis());
+                slot.run.setState(ModelState.SIMULATORENDED);
+                advance(slot);
+                break;
+
+            case "error":
+                fail(slot, "model " + slot.run.getInstanceId() + " reported an error: " + message.getError());
+                break;
+
+            default:
+                settle(slot);
+                slot.wakeup = schedule(slot.run.getStatusInterval(), () -> advance(slot));
+                break;
+        }
+    }
+
+    /**
+     * Process the MC.2 reply to an FM.2, FM.3 or FM.4 message.
+     * @param slot the run
+     * @param message the MC.2 message
+     */
+    private void processAckNak(final Slot slot, final MC2AckNakMessage message)
+    {
+        ModelRun run = slot.run;
+        if (run.getState() == ModelState.RUNCONTROL && !run.isParameterList())
+        {
+            processParameterAckNak(slot, message);
+            return;
+        }
+        if (!isReply(slot, message.getReplyToId()))
+        {
+            return;
+        }
+        if (!message.getStatus())
+        {
+            fail(slot, "model " + run.getInstanceId() + " refused the message in state " + run.getState() + ": "
+                    + message.getError() + (message.getFailureMap().isEmpty() ? "" : " " + message.getFailureMap()));
+            return;
+        }
+        switch (run.getState())
+        {
+            case STARTED:
+                run.setState(ModelState.RUNCONTROL);
+                break;
+
+            case RUNCONTROL:
+                // the FM.14 message has set all parameters
+                slot.parameterIndex = slot.parameterNames.length;
+                break;
+
+            case PARAMETERS:
+                run.setSimulatorStartTime(System.currentTimeMillis());
+                run.setState(ModelState.SIMULATORSTARTED);
+                break;
+
+            default:
+                return;
+        }
+        advance(slot);
+    }
+
+    /**
+     * Process the MC.2 reply to one of the pipelined FM.3 messages. The model handles the messages in order, so an
+     * acknowledgement also acknowledges the FM.3 messages that were sent before it.
+     * @param slot the run
+     * @param message the MC.2 message
+     */
+    private void processParameterAckNak(final Slot slot, final MC2AckNakMessage message)
+    {
+        if (slot.killing || !(message.getReplyToId() instanceof Number))
+        {
+            return;
+        }
+        long replyToId = ((Number) message.getReplyToId()).longValue();
+        for (int i = slot.parameterIndex; i < slot.parameterSent; i++)
+        {
+            if (slot.parameterIds[i] == replyToId)
+            {
+                if (!message.getStatus())
+                {
+                    fail(slot, "model " + slot.run.getInstanceId() + " refused parameter " + slot.parameterNames[i] + ": "
+                            + message.getError());
+                    return;
+                }
+                slot.parameterIndex = i + 1;
+                advance(slot);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Process the MC.3 reply to an FM.6 message.
+     * @param slot the run
+     * @param message the MC.3 message
+     */
+    private void processStatistics(final Slot slot, final MC3StatisticsMessage message)
+    {
+        if (isStatisticReply(slot, message.getVariableName()))
+        {
+            slot.run.getStatistics().put(message.getVariableName(), message.getVariableValue());
+            slot.statisticIndex++;
+            advance(slot);
+        }
+    }
+
+    /**
+     * Process the MC.4 reply to an FM.6 message; the run continues with the next variable.
+     * @param slot the run
+     * @param message the MC.4 message
+     */
+    private void processStatisticsError(final Slot slot, final MC4StatisticsErrorMessage message)
+    {
+        if (isStatisticReply(slot, message.getVariableName()))
+        {
+            slot.run.getStatisticsErrors().put(message.getVariableName(), message.getError());
+            slot.statisticIndex++;
+            advance(slot);
+        }
+    }
+
+    /**
+     * Process the MC.5 reply to an FM.13 message, which contains all statistics of the run.
+     * @param slot the run
+     * @param message the MC.5 message
+     */
+    private void processStatisticsList(final Slot slot, final MC5StatisticsListMessage message)
+    {
+        if (isReply(slot, message.getReplyToId()) && slot.run.getState() == ModelState.SIMULATORENDED)
+        {
+            slot.run.getStatistics().putAll(message.getValueMap());
+            slot.run.getStatisticsErrors().putAll(message.getErrorMap());
+            slot.statisticIndex = slot.run.getStatisticNames().size();
+            advance(slot);
+        }
+    }
+
+    /**
+     * @param slot the run
+     * @param replyToId the message id to which a reply refers
+     * @return whether the reply answers the outstanding request of the run, and the run is still active
+     */
+    private boolean isReply(final Slot slot, final Object replyToId)
+    {
+        return !slot.killing && replyToId instanceof Number && ((Number) replyToId).longValue() == slot.outstanding;
+    }
+
+    /**
+     * @param slot the run
+     * @param variableName the variable name of an MC.3 or MC.4 message
+     * @return whether the message answers the outstanding FM.6 request of the run
+     */
+    private boolean isStatisticReply(final Slot slot, final String variableName)
+    {
+        ModelRun run = slot.run;
+        return !slot.killing && run.getState() == ModelState.SIMULATORENDED
+                && slot.statisticIndex < run.getStatisticNames().size()
+                && run.getStatisticNames().get(slot.statisticIndex).equals(variableName);
+    }
+
+    /**
+     * Let a run fail: kill its model when it has been started, and complete the run otherwise.
+     * @param slot the run
+     * @param error the error
+     */
+    private void fail(final Slot slot, final String error)
+    {
+        System.err.println(error);
+        ModelRun run = slot.run;
+        run.setError(error);
+        run.setState(ModelState.ERROR);
+        stopTimers(slot);
+        if (!slot.killing && run.getModelPort() > 0)
+        {
+            try
+            {
+                sendKillFederate(slot);
+                return;
+            }
+            catch (Sim0MQException | SerializationException | ZMQException exception)
+            {
+                System.err.println("could not kill model " + run.getInstanceId() + ": " + exception.getMessage());
+            }
+        }
+        complete(slot);
+    }
+
+    /**
+     * Complete a run: disconnect from its model controller, and complete its future.
+     * @param slot the run
+     */
+    private void complete(final Slot slot)
+    {
+        if (this.slotMap.get(slot.run.getInstanceId()) == slot)
+        {
+            this.slotMap.remove(slot.run.getInstanceId());
+            this.stateTable.remove(slot.run.getInstanceId());
+            slot.run.setStateTable(null, -1);
+        }
+        stopTimers(slot);
+        disconnect(slot);
+        if (slot.run.getState() == ModelState.TERMINATED)
+        {
+            ResultCache cache = this.resultCache;
+            // a run of which some statistics could not be gathered is not cached, so it is run again the next time
+            if (cache != null && slot.cacheKey != null && !slot.run.isCached() && slot.run.getStatisticsErrors().isEmpty())
+            {
+                // the statistics are copied before the aggregator takes them from the run; the entry is written on the
+                // thread of the cache
+                String key = slot.cacheKey;
+                Map<String, Object> statistics;
+                synchronized (slot.run.getStatistics())
+                {
+                    statistics = new LinkedHashMap<>(slot.run.getStatistics());
+                }
+                this.cacheExecutor.execute(() -> cache.put(key, statistics, new LinkedHashMap<>()));
+            }
+            slot.run.aggregate();
+        }
+        this.numberActive.decrementAndGet();
+        slot.run.getCompletion().complete(slot.run);
+    }
+
+    /**
+     * Schedule an action on the thread of the event loop.
+     * @param delay the delay in ms
+     * @param action the action
+     * @return the timer, which can be cancelled
+     */
+    private TimerWheel.Timeout schedule(final long delay, final Runnable action)
+    {
+        return this.timers.schedule(now() + delay, action);
+    }
+
+    /**
+     * Return the time of the clock of the timers: a monotonic clock, which does not jump when the wall clock is set, so a
+     * change of the system time neither fires all deadlines at once nor holds them up.
+     * @return the time in ms since the FederationManager was created
+     */
+    private long now()
+    {
+        return (System.nanoTime() - this.clockOrigin) / 1_000_000L;
+    }
+
+    /**
+     * Set the deadline of the request that a run has just sent, replacing the deadline of its previous request.
+     * @param slot the run
+     * @param interaction the kind of interaction of the request
+     * @param resend the action that sends the request again, with the same message id
+     */
+    private void expect(final Slot slot, final Interaction interaction, final Runnable resend)
+    {
+        settle(slot);
+        slot.request = new Request(interaction, this.timeoutPolicies.get(interaction), resend);
+        arm(slot, slot.request);
+    }
+
+    /**
+     * Remove the deadline of the request of a run, e.g., because the run waits for a timer instead of a reply.
+     * @param slot the run
+     */
+    private void settle(final Slot slot)
+    {
+        if (slot.request != null)
+        {
+            slot.request.cancel();
+            slot.request = null;
+        }
+    }
+
+    /**
+     * Schedule the deadline of a request.
+     * @param slot the run
+     * @param request the request
+     */
+    private void arm(final Slot slot, final Request request)
+    {
+        if (request.policy.getTimeout() > 0)
+        {
+            request.deadline = schedule(request.policy.getTimeout(), () -> timeout(slot, request));
+        }
+    }
+
+    /**
+     * Handle a request that has not been answered before its deadline: send it again when it has retries left, and restart
+     * the run or let it fail otherwise.
+     * @param slot the run
+     * @param request the request
+     */
+    private void timeout(final Slot slot, final Request request)
+    {
+        request.deadline = null;
+        if (request != slot.request && request != slot.heartbeat)
+        {
+            return;
+        }
+        if (request.retries < request.policy.getMaxRetries())
+        {
+            request.retries++;
+            this.numberRetries++;
+            try
+            {
+                request.resend.run();
+            }
+            catch (ZMQException exception)
+            {
+                System.err.println("could not send message to " + slot.run.getInstanceId() + ": " + exception.getMessage());
+            }
+            arm(slot, request);
+            return;
+        }
+        this.numberTimeouts++;
+        ModelRun run = slot.run;
+        String error = "model " + run.getInstanceId() + " did not answer a " + request.interaction + " request within "
+                + request.policy.getTimeout() + " ms" + (request.retries > 0 ? " after " + request.retries + " retries" : "");
+        if (request.interaction == Interaction.KILL)
+        {
+            // the FederateStarter does not confirm the kill; give up on the model
+            System.err.println(error);
+            if (run.getError() == null)
+            {
+                run.setError(error);
+            }
+            run.setState(ModelState.ERROR);
+            complete(slot);
+        }
+        else if (!slot.cancelled && run.getNumberRestarts() < request.policy.getMaxRestarts())
+        {
+            System.err.println(error + "; restarting the model");
+            this.numberRestarts++;
+            slot.restarting = true;
+            kill(slot);
+        }
+        else if (request.interaction == Interaction.START)
+        {
+            // the FederateStarter might still start the model, so it is asked to kill it
+            System.err.println(error);
+            run.setError(error);
+            run.setState(ModelState.ERROR);
+            kill(slot);
+        }
+        else
+        {
+            fail(slot, error);
+        }
+    }
+
+    /**
+     * Kill the model of a run, whatever its state, e.g., because it did not answer in time; the run completes or restarts when
+     * the FederateStarter confirms the kill with FS.4.
+     * @param slot the run
+     */
+    private void kill(final Slot slot)
+    {
+        stopTimers(slot);
+        try
+        {
+            sendKillFederate(slot);
+        }
+        catch (Sim0MQException | SerializationException | ZMQException exception)
+        {
+            System.err.println("could not kill model " + slot.run.getInstanceId() + ": " + exception.getMessage());
+            if (slot.restarting)
+            {
+                restartRun(slot);
+            }
+            else
+            {
+                complete(slot);
+            }
+        }
+    }
+
+    /**
+     * Start a run again with a new model, after its previous model has been killed.
+     * @param slot the run
+     */
+    private void restartRun(final Slot slot)
+    {
+        ModelRun run = slot.run;
+        stopTimers(slot);
+        disconnect(slot);
+        slot.killing = false;
+        slot.restarting = false;
+        slot.parameterIndex = 0;
+        slot.parameterSent = 0;
+        slot.statisticIndex = 0;
+        slot.outstanding = -1L;
+        slot.heartbeatId = -1L;
+        slot.cacheKey = null;
+        slot.modelId = run.getInstanceId();
+        this.stateTable.remove(run.getInstanceId());
+        run.setStateTable(null, -1);
+        run.reset();
+        run.setStateTable(this.stateTable, this.stateTable.add(run.getInstanceId()));
+        advance(slot);
+    }
+
+    /**
+     * Send an HB.1 message to the model controller of a run, and set the deadline of its HB.2 reply.
+     * @param slot the run
+     */
+    private void sendHeartbeat(final Slot slot)
+    {
+        slot.heartbeatTimer = null;
+        if (slot.killing || slot.modelEndpoint == null || this.heartbeatInterval <= 0)
+        {
+            return;
+        }
+        try
+        {
+            String routingId = MC_PREFIX + slot.run.getInstanceId();
+            byte[] bytes = new HB1HeartbeatMessage(this.federationId, this.senderId, slot.modelId,
+                    ++this.messageCount).createByteArray();
+            slot.heartbeatId = this.messageCount;
+            send(routingId, bytes);
+            slot.heartbeat = new Request(Interaction.HEARTBEAT, this.timeoutPolicies.get(Interaction.HEARTBEAT),
+                    () -> send(routingId, bytes));
+            arm(slot, slot.heartbeat);
+        }
+        catch (Sim0MQException | SerializationException | ZMQException exception)
+        {
+            System.err.println("could not send heartbeat to " + slot.run.getInstanceId() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Process the HB.2 reply to an HB.1 message, and schedule the next heartbeat.
+     * @param slot the run
+     * @param message the HB.2 message
+     */
+    private void processAlive(final Slot slot, final HB2AliveMessage message)
+    {
+        if (slot.killing || slot.heartbeat == null || !(message.getReplyToId() instanceof Number)
+                || ((Number) message.getReplyToId()).longValue() != slot.heartbeatId)
+        {
+            return;
+        }
+        slot.heartbeat.cancel();
+        slot.heartbeat = null;
+        slot.heartbeatTimer = schedule(this.heartbeatInterval, () -> sendHeartbeat(slot));
+    }
+
+    /**
+     * Cancel the deadlines and timers of a run.
+     * @param slot the run
+     */
+    private void stopTimers(final Slot slot)
+    {
+        settle(slot);
+        if (slot.heartbeat != null)
+        {
+            slot.heartbeat.cancel();
+            slot.heartbeat = null;
+        }
+        if (slot.heartbeatTimer != null)
+        {
+            slot.heartbeatTimer.cancel();
+            slot.heartbeatTimer = null;
+        }
+        if (slot.wakeup != null)
+        {
+            slot.wakeup.cancel();
+            slot.wakeup = null;
+        }
+    }
+
+    /**
+     * Disconnect from the model controller of a run.
+     * @param slot the run
+     */
+    private void disconnect(final Slot slot)
+    {
+        if (slot.modelEndpoint != null)
+        {
+            try
+            {
+                this.socket.disconnect(slot.modelEndpoint);
+            }
+            catch (ZMQException exception)
+            {
+                // the connection is already gone
+            }
+            slot.modelEndpoint = null;
+        }
+    }
+
+    /**
+     * The progress of a run that is only known to the event loop.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Slot
+    {
+        /** the run. */
+        private final ModelRun run;
+
+        /** the names of the parameters, in the order in which they are sent. */
+        private final String[] parameterNames;
+
+        /** the number of parameters that have been acknowledged. */
+        private int parameterIndex = 0;
+
+        /** the number of parameters for which an FM.3 message has been sent. */
+        private int parameterSent = 0;
+
+        /** the message ids of the FM.3 messages, per parameter. */
+        private final long[] parameterIds;
+
+        /** the index of the next variable to request. */
+        private int statisticIndex = 0;
+
+        /** the message id of the request to the model controller that has not been answered. */
+        private long outstanding = -1L;
+
+        /** the endpoint of the model controller, or null when not connected. */
+        private String modelEndpoint = null;
+
+        /** the id that the model uses as the receiver id of the messages to the model controller. */
+        private Object modelId;
+
+        /** whether the model is being killed, or is gone, so replies of the model controller are ignored. */
+        private boolean killing = false;
+
+        /** whether the run has been cancelled. */
+        private boolean cancelled = false;
+
+        /** the key of the run in the result cache, or null. */
+        private String cacheKey = null;
+
+        /** the request that waits for a reply, with its deadline, or null. */
+        private Request request = null;
+
+        /** the HB.1 request that waits for an HB.2 reply, or null. */
+        private Request heartbeat = null;
+
+        /** the message id of the last HB.1 message. */
+        private long heartbeatId = -1L;
+
+        /** the timer of the next HB.1 message, or null. */
+        private TimerWheel.Timeout heartbeatTimer = null;
+
+        /** the timer after which the run asks again, e.g., for the status of its simulation, or null. */
+        private TimerWheel.Timeout wakeup = null;
+
+        /** whether the model is being killed to restart the run with a new model. */
+        private boolean restarting = false;
+
+        /**
+         * @param run the run
+         */
+        Slot(final ModelRun run)
+        {
+            this.run = run;
+            this.modelId = run.getInstanceId();
+            this.parameterNames = run.getParameters().keySet().toArray(new String[0]);
+            this.parameterIds = new long[this.parameterNames.length];
+        }
+    }
+
+    /**
+     * A request that waits for a reply, with its deadline and the number of times that it has been sent again.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Request
+    {
+        /** the kind of interaction of the request. */
+        private final Interaction interaction;
+
+        /** the timeout policy of the request. */
+        private final TimeoutPolicy policy;
+
+        /** the action that sends the request again, with the same message id. */
+        private final Runnable resend;
+
+        /** the number of times that the request has been sent again. */
+        private int retries = 0;
+
+        /** the deadline of the request, or null. */
+        private TimerWheel.Timeout deadline = null;
+
+        /**
+         * @param interaction the kind of interaction of the request
+         * @param policy the timeout policy of the request
+         * @param resend the action that sends the request again, with the same message id
+         */
+        Request(final Interaction interaction, final TimeoutPolicy policy, final Runnable resend)
+        {
+            this.interaction = interaction;
+            this.policy = policy;
+            this.resend = resend;
+        }
+
+        /**
+         * Cancel the deadline of the request.
+         */
+        void cancel()
+        {
+            if (this.deadline != null)
+            {
+                this.deadline.cancel();
+                this.deadline = null;
+            }
+        }
+    }
+
+}
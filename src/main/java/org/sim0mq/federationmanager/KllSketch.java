@@ -0,0 +1,286 @@
+package org.sim0mq.federationmanager;
+
+import java.util.Arrays;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * KllSketch is a mergeable quantile sketch after Karnin, Lang and Liberty (2016), "Optimal Quantile Approximation in Streams".
+ * It keeps a hierarchy of compactors; an item in compactor h stands for 2<sup>h</sup> items of the stream. When a compactor is
+ * full, its items are sorted, and every other item, starting at a random offset, moves to the next compactor. With parameter
+ * k, the sketch keeps O(k) items, whatever the length of the stream, and the rank error of a quantile is about 1.7 / k. Two
+ * sketches of parts of a stream merge into a sketch of the whole stream, so sketches of replications or of FederationManagers
+ * can be combined.
+ * <p>
+ * The random offsets come from a generator with a fixed seed, so the same stream gives the same sketch. The sketch is not
+ * thread-safe.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class KllSketch
+{
+    /** the parameter of the sketch, i.e., the capacity of the top compactor. */
+    private final int k;
+
+    /** the items per compactor; compactor h holds items of weight 2^h. */
+    private double[][] compactors = new double[0][];
+
+    /** the number of items per compactor. */
+    private int[] sizes = new int[0];
+
+    /** the number of items in all compactors. */
+    private int size = 0;
+
+    /** the number of items the compactors can hold together before one of them is compacted. */
+    private int maxSize = 0;
+
+    /** the number of items of the stream. */
+    private long count = 0;
+
+    /** the state of the generator of the random offsets. */
+    private long random = 0x5DEECE66DL;
+
+    /** the factor by which the capacity of a compactor shrinks per level below the top. */
+    private static final double SHRINK = 2.0 / 3.0;
+
+    /**
+     * Create a sketch.
+     * @param k the parameter of the sketch, at least 8; the rank error is about 1.7 / k
+     * @throws IllegalArgumentException when k is less than 8
+     */
+    public KllSketch(final int k)
+    {
+        Throw.when(k < 8, IllegalArgumentException.class, "k should be at least 8");
+        this.k = k;
+        grow();
+    }
+
+    /**
+     * Add an item of the stream.
+     * @param value the item
+     */
+    public void add(final double value)
+    {
+        append(0, value);
+        this.count++;
+        if (this.size >= this.maxSize)
+        {
+            compress();
+        }
+    }
+
+    /**
+     * Merge another sketch into this one, which then describes both streams. The other sketch is not changed. A sketch that is
+     * merged into itself describes its stream twice.
+     * @param other the other sketch
+     */
+    public void merge(final KllSketch other)
+    {
+        if (other == this)
+        {
+            // appending to the compactors that are being read would never end
+            merge(copy());
+            return;
+        }
+        while (this.compactors.length < other.compactors.length)
+        {
+            grow();
+        }
+        for (int h = 0; h < other.compactors.length; h++)
+        {
+            for (int i = 0; i < other.sizes[h]; i++)
+            {
+                append(h, other.compactors[h][i]);
+            }
+        }
+        this.count += other.count;
+        while (this.size >= this.maxSize)
+        {
+            compress();
+        }
+    }
+
+    /**
+     * @return a copy of this sketch
+     */
+    public KllSketch copy()
+    {
+        KllSketch copy = new KllSketch(this.k);
+        copy.merge(this);
+        copy.random = this.random;
+        return copy;
+    }
+
+    /**
+     * @return the number of items of the stream
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Return the approximate quantile of the stream.
+     * @param q the fraction, between 0 and 1
+     * @return the item of which about a fraction q of the stream is smaller, or NaN when the stream is empty
+     */
+    public double getQuantile(final double q)
+    {
+        Throw.when(!(q >= 0.0 && q <= 1.0), IllegalArgumentException.class, "q should be between 0 and 1");
+        if (this.size == 0)
+        {
+            return Double.NaN;
+        }
+        double[] values = new double[this.size];
+        long[] weights = new long[this.size];
+        Integer[] order = new Integer[this.size];
+        int n = 0;
+        long total = 0;
+        for (int h = 0; h < this.compactors.length; h++)
+        {
+            for (int i = 0; i < this.sizes[h]; i++)
+            {
+                values[n] = this.compactors[h][i];
+                weights[n] = 1L << h;
+                order[n] = n;
+                total += weights[n];
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double target = q * total;
+        long cumulative = 0;
+        for (int i = 0; i < n; i++)
+        {
+            cumulative += weights[order[i]];
+            if (cumulative >= target)
+            {
+                return values[order[i]];
+            }
+        }
+        return values[order[n - 1]];
+    }
+
+    /**
+     * Add a compactor at the top, which lowers the capacity of all compactors below it.
+     */
+    private void grow()
+    {
+        int height = this.compactors.length + 1;
+        this.compactors = Arrays.copyOf(this.compactors, height);
+        this.compactors[height - 1] = new double[capacity(height - 1, height)];
+        this.sizes = Arrays.copyOf(this.sizes, height);
+        this.maxSize = 0;
+        for (int h = 0; h < height; h++)
+        {
+            this.maxSize += capacity(h, height);
+        }
+    }
+
+    /**
+     * @param h the level of the compactor
+     * @param height the number of compactors
+     * @return the capacity of the compactor
+     */
+    private int capacity(final int h, final int height)
+    {
+        return (int) Math.ceil(Math.pow(SHRINK, height - h - 1) * this.k) + 1;
+    }
+
+    /**
+     * Append an item to a compactor, and make room when it is full.
+     * @param h the level of the compactor
+     * @param value the item
+     */
+    private void append(final int h, final double value)
+    {
+        if (this.sizes[h] == this.compactors[h].length)
+        {
+            this.compactors[h] = Arrays.copyOf(this.compactors[h], Math.max(4, 2 * this.compactors[h].length));
+        }
+        this.compactors[h][this.sizes[h]++] = value;
+        this.size++;
+    }
+
+    /**
+     * Compact the lowest compactor that is at or over its capacity: sort it, and move every other item, starting at a random
+     * offset, to the compactor above it. Of an odd number of items, a randomly chosen one stays, so the largest item is not
+     * favored.
+     */
+    private void compress()
+    {
+        for (int h = 0; h < this.compactors.length; h++)
+        {
+            if (this.sizes[h] >= capacity(h, this.compactors.length))
+            {
+                if (h + 1 >= this.compactors.length)
+                {
+                    grow();
+                }
+                double[] items = this.compactors[h];
+                int n = this.sizes[h];
+                Arrays.sort(items, 0, n);
+                int keep = n % 2;
+                double odd = 0.0;
+                if (keep == 1)
+                {
+                    // take a random item out, and close the gap, so the other items stay sorted
+                    int r = nextInt(n);
+                    odd = items[r];
+                    System.arraycopy(items, r + 1, items, r, n - 1 - r);
+                }
+                int offset = nextBit();
+                for (int i = offset; i < n - keep; i += 2)
+                {
+                    append(h + 1, items[i]);
+                }
+                this.size -= n - keep;
+                this.sizes[h] = keep;
+                if (keep == 1)
+                {
+                    items[0] = odd;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return a random bit from a xorshift generator
+     */
+    private int nextBit()
+    {
+        return (int) (nextLong() >>> 63);
+    }
+
+    /**
+     * @param bound the number of possible values, at least 1
+     * @return a random number between 0 (inclusive) and bound (exclusive) from a xorshift generator
+     */
+    private int nextInt(final int bound)
+    {
+        return (int) ((nextLong() >>> 1) % bound);
+    }
+
+    /**
+     * @return the next state of the xorshift generator
+     */
+    private long nextLong()
+    {
+        this.random ^= this.random << 13;
+        this.random ^= this.random >>> 7;
+        this.random ^= this.random << 17;
+        return this.random;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "KllSketch [k=" + this.k + ", count=" + this.count + ", retained=" + this.size + "]";
+    }
+
+}
@@ -0,0 +1,609 @@
+package org.sim0mq.federationmanager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+
+/**
+ * ModelRun describes one execution of a model by a FederationManager: the FederateStarter that starts it, the FM.1 and FM.2
+ * messages, the parameters to set with FM.3, and the statistics to gather with FM.6. The FederationManager moves the run
+ * through the successive {@link ModelState}s, and stores the progress and the results in it. The builders of the messages are
+ * used by the FederationManager when the messages are sent; the federation id, sender id, receiver id and message id are set
+ * by the FederationManager, as is the instance id of the FM.1 message. The run should not be changed after it has been
+ * submitted.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ModelRun
+{
+    /** the instance id of the model, which is also the receiver id of the messages to the model. */
+    private final String instanceId;
+
+    /** the name of the FederateStarter that starts the model. */
+    private final String federateStarter;
+
+    /** the builder of the FM.1 message. */
+    private final FM1StartFederateMessage.Builder startBuilder;
+
+    /** the builder of the FM.2 message, or null when no run control is sent. */
+    private FM2SimRunControlMessage.Builder runControlBuilder = null;
+
+    /** the seeds of the random streams that replace the stream map of the FM.2 message, or null. */
+    private Map<Object, Long> streamMap = null;
+
+    /** the parameters to set with FM.3 or FM.14, in the order in which they are sent. */
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    /** the variables to request with FM.6 or FM.13, in the order in which they are requested. */
+    private final List<String> statisticNames = new ArrayList<>();
+
+    /** whether the parameters are set with one FM.14 message instead of an FM.3 message per parameter. */
+    private boolean parameterList = false;
+
+    /** the maximum number of FM.3 messages that have been sent, but have not been acknowledged. */
+    private int parameterWindow = 32;
+
+    /** whether the statistics are requested with one FM.13 message instead of an FM.6 message per variable. */
+    private boolean statisticsList = false;
+
+    /** the time in ms between two FM.5 messages while the simulation runs. */
+    private long statusInterval = 100L;
+
+    /** the state of the run; only changed by the thread of the FederationManager. */
+    private volatile ModelState state = ModelState.NOT_STARTED;
+
+    /** the table in which the state is published while the run is active, or null. */
+    private ModelStateTable stateTable = null;
+
+    /** the key of the run in the state table. */
+    private long stateKey = -1L;
+
+    /** the port of the model controller, or 0 when the model has not been started. */
+    private volatile int modelPort = 0;
+
+    /** the values of the statistics that were gathered. */
+    private final Map<String, Object> statistics = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the errors of the statistics that could not be gathered, from MC.4 messages. */
+    private final Map<String, String> statisticsErrors = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the time in ms at which the simulator started, or 0 when it has not started. */
+    private volatile long simulatorStartTime = 0L;
+
+    /** the time in ms at which the model reported that the simulation ended, or 0 when it has not ended. */
+    private volatile long simulatorEndTime = 0L;
+
+    /** the aggregator into which the statistics are folded when the run terminates, or null. */
+    private StatisticsAggregator aggregator = null;
+
+    /** the store to which the statistics are appended when the run terminates, or null. */
+    private ResultStore resultStore = null;
+
+    /** the id of the parameter point of the run in the result store. */
+    private Object pointId = null;
+
+    /** the replication number of the run in the result store. */
+    private long replication = 0L;
+
+    /** whether the statistics of this run or of a copy of it have been folded into the aggregator; shared by the copies. */
+    private AtomicBoolean aggregated = new AtomicBoolean(false);
+
+    /** whether the statistics come from the result cache, and the model has not been started. */
+    private volatile boolean cached = false;
+
+    /** the error that ended the run, or null. */
+    private volatile String error = null;
+
+    /** the number of times that the run has been restarted with a new model after a timeout. */
+    private volatile int numberRestarts = 0;
+
+    /** the future that completes with this run when the model has been terminated, or has failed. */
+    private final CompletableFuture<ModelRun> completion = new CompletableFuture<>();
+
+    /**
+     * Create the description of a model run.
+     * @param instanceId the instance id of the model, unique within the FederationManager
+     * @param federateStarter the name of the FederateStarter that starts the model
+     * @param startBuilder the builder of the FM.1 message
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public ModelRun(final String instanceId, final String federateStarter, final FM1StartFederateMessage.Builder startBuilder)
+    {
+        Throw.whenNull(instanceId, "instanceId cannot be null");
+        Throw.whenNull(federateStarter, "federateStarter cannot be null");
+        Throw.whenNull(startBuilder, "startBuilder cannot be null");
+        this.instanceId = instanceId;
+        this.federateStarter = federateStarter;
+        this.startBuilder = startBuilder;
+    }
+
+    /**
+     * Set the FM.2 message that is sent when the model has started; without it, no run control is sent.
+     * @param newRunControlBuilder the builder of the FM.2 message
+     * @return the run for chaining
+     */
+    public ModelRun setRunControl(final FM2SimRunControlMessage.Builder newRunControlBuilder)
+    {
+        this.runControlBuilder = newRunControlBuilder;
+        return this;
+    }
+
+    /**
+     * Set the seeds of the random streams of this run, which replace the stream map of the FM.2 builder in the FM.2 message of
+     * this run. The builder itself is not changed, so runs can share one FM.2 builder, and still get their own seeds.
+     * @param newStreamMap the seed per stream id
+     * @return the run for chaining
+     */
+    public ModelRun setStreamMap(final Map<Object, Long> newStreamMap)
+    {
+        this.streamMap = newStreamMap;
+        return this;
+    }
+
+    /**
+     * Set the aggregator into which the statistics of the run are folded when the run has terminated successfully. The
+     * statistics are then removed from the run, so the memory of an experiment does not grow with the number of runs. Of a run
+     * and its copies, only the first one that terminates is folded into the aggregator.
+     * @param newAggregator the aggregator, or null to keep the statistics in the run
+     * @return the run for chaining
+     */
+    public ModelRun setAggregator(final StatisticsAggregator newAggregator)
+    {
+        this.aggregator = newAggregator;
+        return this;
+    }
+
+    /**
+     * Set the store to which the statistics of the run are appended as one row when the run has terminated successfully. The
+     * statistics are then removed from the run, as with an aggregator. Of a run and its copies, only the first one that
+     * terminates is appended to the store.
+     * @param newResultStore the store, or null to keep the statistics in the run
+     * @param newPointId the id of the parameter point of the run
+     * @param newReplication the replication number of the run
+     * @return the run for chaining
+     */
+    public ModelRun setResultStore(final ResultStore newResultStore, final Object newPointId, final long newReplication)
+    {
+        Throw.when(newResultStore != null && newPointId == null, NullPointerException.class, "pointId cannot be null");
+        this.resultStore = newResultStore;
+        this.pointId = newPointId;
+        this.replication = newReplication;
+        return this;
+    }
+
+    /**
+     * Add a parameter that is set with an FM.3 message before the simulator is started.
+     * @param name the name of the parameter
+     * @param value the value of the parameter
+     * @return the run for chaining
+     */
+    public ModelRun addParameter(final String name, final Object value)
+    {
+        Throw.whenNull(name, "name cannot be null");
+        Throw.whenNull(value, "value cannot be null");
+        this.parameters.put(name, value);
+        return this;
+    }
+
+    /**
+     * Add a variable that is requested with an FM.6 message when the simulation has ended.
+     * @param variableName the name of the variable
+     * @return the run for chaining
+     */
+    public ModelRun addStatistic(final String variableName)
+    {
+        Throw.whenNull(variableName, "variableName cannot be null");
+        this.statisticNames.add(variableName);
+        return this;
+    }
+
+    /**
+     * Set all parameters with one FM.14 message, answered by one MC.2 message, instead of an FM.3 message per parameter. The
+     * model should support FM.14.
+     * @param newParameterList whether to set the parameters with one FM.14 message
+     * @return the run for chaining
+     */
+    public ModelRun setParameterList(final boolean newParameterList)
+    {
+        this.parameterList = newParameterList;
+        return this;
+    }
+
+    /**
+     * Set the number of FM.3 messages that are sent ahead of their acknowledgements. The model handles the messages in order,
+     * so an MC.2 acknowledgement of an FM.3 message also acknowledges the FM.3 messages before it. A window of 1 sends the
+     * next FM.3 message only when the previous one has been acknowledged.
+     * @param newParameterWindow the number of FM.3 messages that can be unacknowledged, at least 1
+     * @return the run for chaining
+     */
+    public ModelRun setParameterWindow(final int newParameterWindow)
+    {
+        Throw.when(newParameterWindow < 1, IllegalArgumentException.class, "parameterWindow should be at least 1");
+        this.parameterWindow = newParameterWindow;
+        return this;
+    }
+
+    /**
+     * Request all statistics with one FM.13 message, answered by one MC.5 message, instead of an FM.6 message per variable.
+     * The names of the statistics can then also be patterns, such as "queue1.*". The model should support FM.13.
+     * @param newStatisticsList whether to request the statistics with one FM.13 message
+     * @return the run for chaining
+     */
+    public ModelRun setStatisticsList(final boolean newStatisticsList)
+    {
+        this.statisticsList = newStatisticsList;
+        return this;
+    }
+
+    /**
+     * Set the time between two FM.5 messages while the simulation runs.
+     * @param newStatusInterval the time in ms, at least 1
+     * @return the run for chaining
+     */
+    public ModelRun setStatusInterval(final long newStatusInterval)
+    {
+        Throw.when(newStatusInterval < 1, IllegalArgumentException.class, "statusInterval should be at least 1 ms");
+        this.statusInterval = newStatusInterval;
+        return this;
+    }
+
+    /**
+     * @return instanceId
+     */
+    public String getInstanceId()
+    {
+        return this.instanceId;
+    }
+
+    /**
+     * @return federateStarter
+     */
+    public String getFederateStarter()
+    {
+        return this.federateStarter;
+    }
+
+    /**
+     * @return startBuilder
+     */
+    public FM1StartFederateMessage.Builder getStartBuilder()
+    {
+        return this.startBuilder;
+    }
+
+    /**
+     * @return runControlBuilder, or null when no run control is sent
+     */
+    public FM2SimRunControlMessage.Builder getRunControlBuilder()
+    {
+        return this.runControlBuilder;
+    }
+
+    /**
+     * @return the seed per stream id that replaces the stream map of the FM.2 builder, or null
+     */
+    public Map<Object, Long> getStreamMap()
+    {
+        return this.streamMap;
+    }
+
+    /**
+     * @return the aggregator into which the statistics are folded, or null
+     */
+    public StatisticsAggregator getAggregator()
+    {
+        return this.aggregator;
+    }
+
+    /**
+     * @return the store to which the statistics are appended, or null
+     */
+    public ResultStore getResultStore()
+    {
+        return this.resultStore;
+    }
+
+    /**
+     * @return the id of the parameter point of the run in the result store
+     */
+    public Object getPointId()
+    {
+        return this.pointId;
+    }
+
+    /**
+     * @return the replication number of the run in the result store
+     */
+    public long getReplication()
+    {
+        return this.replication;
+    }
+
+    /**
+     * Fold the statistics into the aggregator, append them to the result store, and remove them from the run, unless the
+     * statistics of the run or of a copy have been folded already. When the statistics cannot be stored, they are kept in the
+     * run.
+     */
+    void aggregate()
+    {
+        if ((this.aggregator != null || this.resultStore != null) && this.aggregated.compareAndSet(false, true))
+        {
+            synchronized (this.statistics)
+            {
+                if (this.aggregator != null)
+                {
+                    this.aggregator.addAll(this.statistics);
+                }
+                if (this.resultStore != null)
+                {
+                    try
+                    {
+                        this.resultStore.append(this.pointId, this.replication, this.statistics);
+                    }
+                    catch (IOException | RuntimeException exception)
+                    {
+                        System.err.println("ModelRun " + this.instanceId + ": cannot store the statistics: "
+                                + exception.getMessage());
+                        return;
+                    }
+                }
+                this.statistics.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the parameters to set, in the order in which they are sent
+     */
+    public Map<String, Object> getParameters()
+    {
+        return Collections.unmodifiableMap(this.parameters);
+    }
+
+    /**
+     * @return the names of the variables to request, in the order in which they are requested
+     */
+    public List<String> getStatisticNames()
+    {
+        return Collections.unmodifiableList(this.statisticNames);
+    }
+
+    /**
+     * @return whether the parameters are set with one FM.14 message
+     */
+    public boolean isParameterList()
+    {
+        return this.parameterList;
+    }
+
+    /**
+     * @return the number of FM.3 messages that can be unacknowledged
+     */
+    public int getParameterWindow()
+    {
+        return this.parameterWindow;
+    }
+
+    /**
+     * @return whether the statistics are requested with one FM.13 message
+     */
+    public boolean isStatisticsList()
+    {
+        return this.statisticsList;
+    }
+
+    /**
+     * @return statusInterval in ms
+     */
+    public long getStatusInterval()
+    {
+        return this.statusInterval;
+    }
+
+    /**
+     * @return state
+     */
+    public ModelState getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * @param newState the new state
+     */
+    void setState(final ModelState newState)
+    {
+        this.state = newState;
+        if (this.stateTable != null && !this.stateTable.setState(this.stateKey, newState))
+        {
+            System.err.println("ModelRun " + this.instanceId + ": illegal state change to " + newState);
+        }
+    }
+
+    /**
+     * Reset the run to the state NOT_STARTED, to restart it with a new model, and forget what the previous model reported.
+     * The run should not be in a state table.
+     */
+    void reset()
+    {
+        this.state = ModelState.NOT_STARTED;
+        this.modelPort = 0;
+        this.simulatorStartTime = 0L;
+        this.simulatorEndTime = 0L;
+        this.statistics.clear();
+        this.statisticsErrors.clear();
+        this.error = null;
+        this.numberRestarts++;
+    }
+
+    /**
+     * @return the number of times that the run has been restarted with a new model after a timeout
+     */
+    public int getNumberRestarts()
+    {
+        return this.numberRestarts;
+    }
+
+    /**
+     * Publish the state of the run in a state table while the run is active.
+     * @param newStateTable the table, or null when the run is no longer in a table
+     * @param newStateKey the key of the run in the table
+     */
+    void setStateTable(final ModelStateTable newStateTable, final long newStateKey)
+    {
+        this.stateTable = newStateTable;
+        this.stateKey = newStateKey;
+    }
+
+    /**
+     * @return modelPort, or 0 when the model has not been started
+     */
+    public int getModelPort()
+    {
+        return this.modelPort;
+    }
+
+    /**
+     * @param newModelPort the port of the model controller
+     */
+    void setModelPort(final int newModelPort)
+    {
+        this.modelPort = newModelPort;
+    }
+
+    /**
+     * @return the time in ms at which the simulator started, or 0 when it has not started
+     */
+    public long getSimulatorStartTime()
+    {
+        return this.simulatorStartTime;
+    }
+
+    /**
+     * @param newSimulatorStartTime the time in ms at which the simulator started
+     */
+    void setSimulatorStartTime(final long newSimulatorStartTime)
+    {
+        this.simulatorStartTime = newSimulatorStartTime;
+    }
+
+    /**
+     * @return the time in ms at which the model reported that the simulation ended, or 0 when it has not ended
+     */
+    public long getSimulatorEndTime()
+    {
+        return this.simulatorEndTime;
+    }
+
+    /**
+     * @param newSimulatorEndTime the time in ms at which the model reported that the simulation ended
+     */
+    void setSimulatorEndTime(final long newSimulatorEndTime)
+    {
+        this.simulatorEndTime = newSimulatorEndTime;
+    }
+
+    /**
+     * @return the values of the statistics that were gathered, per variable name
+     */
+    public Map<String, Object> getStatistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * @return the errors of the statistics that could not be gathered, per variable name
+     */
+    public Map<String, String> getStatisticsErrors()
+    {
+        return this.statisticsErrors;
+    }
+
+    /**
+     * @return whether the statistics come from the result cache of the FederationManager, and the model has not been started
+     */
+    public boolean isCached()
+    {
+        return this.cached;
+    }
+
+    /**
+     * @param newCached whether the statistics come from the result cache
+     */
+    void setCached(final boolean newCached)
+    {
+        this.cached = newCached;
+    }
+
+    /**
+     * @return the error that ended the run, or null when the run did not fail
+     */
+    public String getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @param newError the error that ended the run
+     */
+    void setError(final String newError)
+    {
+        this.error = newError;
+    }
+
+    /**
+     * Return the future that completes with this run when the model has been terminated, or has failed. Actions that are
+     * chained to the future without an executor run on the thread of the FederationManager, and should not block.
+     * @return the future that completes with this run
+     */
+    public CompletableFuture<ModelRun> getCompletion()
+    {
+        return this.completion;
+    }
+
+    /**
+     * Create a new run of the same model with the same messages, parameters, seeds and statistics, e.g., to run a copy of this
+     * run on another FederateStarter.
+     * @param newInstanceId the instance id of the copy
+     * @param newFederateStarter the name of the FederateStarter that starts the copy
+     * @return the copy, which has not been submitted
+     */
+    public ModelRun copy(final String newInstanceId, final String newFederateStarter)
+    {
+        ModelRun copy = new ModelRun(newInstanceId, newFederateStarter, this.startBuilder);
+        copy.runControlBuilder = this.runControlBuilder;
+        copy.streamMap = this.streamMap;
+        copy.parameters.putAll(this.parameters);
+        copy.statisticNames.addAll(this.statisticNames);
+        copy.parameterList = this.parameterList;
+        copy.parameterWindow = this.parameterWindow;
+        copy.statisticsList = this.statisticsList;
+        copy.statusInterval = this.statusInterval;
+        copy.aggregator = this.aggregator;
+        copy.resultStore = this.resultStore;
+        copy.pointId = this.pointId;
+        copy.replication = this.replication;
+        copy.aggregated = this.aggregated;
+        return copy;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ModelRun [instanceId=" + this.instanceId + ", federateStarter=" + this.federateStarter + ", state="
+                + this.state + ", error=" + this.error + "]";
+    }
+
+}
@@ -120,4 +120,20 @@ public enum ModelState
         return this.equals(ERROR);
     }
 
+    /**
+     * Return whether a model can move from this state to another state. A model only moves forward in the order of the states,
+     * possibly skipping states, e.g., when no parameters are set; and it can move to ERROR from any state but TERMINATED and
+     * ERROR.
+     * @param next ModelState; the state to move to
+     * @return boolean; whether the model can move from this state to the next state
+     */
+    public boolean canChangeTo(final ModelState next)
+    {
+        if (next.equals(ERROR))
+        {
+            return !this.equals(TERMINATED) && !this.equals(ERROR);
+        }
+        return !this.equals(ERROR) && next.ordinal() > this.ordinal();
+    }
+
 }
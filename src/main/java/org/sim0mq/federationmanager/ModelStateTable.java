@@ -0,0 +1,428 @@
+package org.sim0mq.federationmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * ModelStateTable keeps the {@link ModelState} of many models, so that schedulers and dashboards can look up the state of a
+ * model, or count the models per state, from any thread without locks. Every model id gets a slot in an array of state
+ * ordinals, which grows in chunks. A change of state is a compare-and-set of the ordinal, which only succeeds for a legal
+ * transition according to {@link ModelState#canChangeTo}, so two threads cannot move a model in conflicting directions. The
+ * count per state is kept in a LongAdder, so counting does not scan the table.
+ * <p>
+ * The slot of a removed model is reused for a model that is added later. Each slot therefore has a generation, which goes up
+ * when its model is removed, and which is part of the compare-and-set. A model is addressed by a key with the index of its
+ * slot and its generation, so a thread that changes the state of a model that has been removed in the meantime fails, and does
+ * not change the state of the model that reuses the slot.
+ * </p>
+ * <p>
+ * Reads are weakly consistent: a count or an iteration that runs while other threads change states reflects some of the
+ * changes, but never blocks them.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ModelStateTable
+{
+    /** the key per model id. */
+    private final ConcurrentHashMap<String, Long> keyMap = new ConcurrentHashMap<>();
+
+    /** the chunks of the table; a chunk is created when it is first needed. */
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    /** the number of slots that have been handed out, including the ones that are free again. */
+    private final AtomicInteger numberIndices = new AtomicInteger();
+
+    /** the indices of the slots of the models that have been removed, to be reused. */
+    private final Queue<Integer> freeIndices = new ConcurrentLinkedQueue<>();
+
+    /** the number of models per state ordinal. */
+    private final LongAdder[] counts = new LongAdder[STATES.length];
+
+    /** the states, per ordinal. */
+    private static final ModelState[] STATES = ModelState.values();
+
+    /** the ordinal of a slot that is not in use. */
+    private static final int FREE = -1;
+
+    /** the number of models per chunk. */
+    private static final int CHUNK_SIZE = 1024;
+
+    /** the maximum number of chunks, which limits the table to 64 million models at the same time. */
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    /**
+     * Create an empty table.
+     */
+    public ModelStateTable()
+    {
+        for (int i = 0; i < this.counts.length; i++)
+        {
+            this.counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Add a model in the state NOT_STARTED. The model is only published in its slot after its id has been claimed, so a
+     * duplicate is never visible, and is not counted.
+     * @param modelId the id of the model
+     * @return the key of the model in the table
+     * @throws IllegalArgumentException when the model is already in the table
+     * @throws IllegalStateException when the table is full
+     */
+    public long add(final String modelId)
+    {
+        Throw.whenNull(modelId, "modelId cannot be null");
+        Integer free = this.freeIndices.poll();
+        int index = free != null ? free : this.numberIndices.getAndIncrement();
+        Throw.when(index >= CHUNK_SIZE * MAX_CHUNKS, IllegalStateException.class, "ModelStateTable is full");
+        Chunk chunk = chunk(index);
+        int i = index % CHUNK_SIZE;
+        // the slot is free, so the id is not read before the state is published
+        long freeWord = chunk.states.get(i);
+        long key = key(generation(freeWord), index);
+        chunk.ids.set(i, modelId);
+        if (this.keyMap.putIfAbsent(modelId, key) != null)
+        {
+            chunk.ids.set(i, null);
+            this.freeIndices.add(index);
+            throw new IllegalArgumentException("model " + modelId + " is already in the table");
+        }
+        // a remove of the model that has overtaken this add has moved the slot to the next generation
+        if (chunk.states.compareAndSet(i, freeWord, word(generation(freeWord), ModelState.NOT_STARTED.ordinal())))
+        {
+            this.counts[ModelState.NOT_STARTED.ordinal()].increment();
+        }
+        return key;
+    }
+
+    /**
+     * Remove a model from the table; it no longer counts for its state, and its key no longer refers to a model.
+     * @param modelId the id of the model
+     * @return whether the model was in the table
+     */
+    public boolean remove(final String modelId)
+    {
+        Long key = this.keyMap.remove(modelId);
+        if (key == null)
+        {
+            return false;
+        }
+        int index = index(key);
+        Chunk chunk = chunk(index);
+        int i = index % CHUNK_SIZE;
+        long word;
+        do
+        {
+            word = chunk.states.get(i);
+        }
+        while (!chunk.states.compareAndSet(i, word, word(nextGeneration(generation(word)), FREE)));
+        chunk.ids.set(i, null);
+        if (ordinal(word) != FREE)
+        {
+            this.counts[ordinal(word)].decrement();
+        }
+        this.freeIndices.add(index);
+        return true;
+    }
+
+    /**
+     * Move a model to a new state, when this is a legal transition from its current state.
+     * @param key the key of the model
+     * @param newState the new state
+     * @return whether the model is in the new state, i.e., whether the transition was legal, or the model was already in the
+     *         new state; false when the model has been removed
+     */
+    public boolean setState(final long key, final ModelState newState)
+    {
+        Throw.whenNull(newState, "newState cannot be null");
+        Chunk chunk = existingChunk(key);
+        if (chunk == null)
+        {
+            return false;
+        }
+        int i = index(key) % CHUNK_SIZE;
+        while (true)
+        {
+            long word = chunk.states.get(i);
+            int ordinal = ordinal(word);
+            if (generation(word) != generation(key) || ordinal == FREE)
+            {
+                return false;
+            }
+            if (ordinal == newState.ordinal())
+            {
+                return true;
+            }
+            if (!STATES[ordinal].canChangeTo(newState))
+            {
+                return false;
+            }
+            if (chunk.states.compareAndSet(i, word, word(generation(key), newState.ordinal())))
+            {
+                this.counts[ordinal].decrement();
+                this.counts[newState.ordinal()].increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Move a model to a new state, when this is a legal transition from its current state.
+     * @param modelId the id of the model
+     * @param newState the new state
+     * @return whether the model is in the new state; false when the transition is not legal, or the model is not in the table
+     */
+    public boolean setState(final String modelId, final ModelState newState)
+    {
+        long key = keyOf(modelId);
+        return key >= 0 && setState(key, newState);
+    }
+
+    /**
+     * Move a model to a new state, only when it is in the expected state.
+     * @param key the key of the model
+     * @param expectedState the state in which the model should be
+     * @param newState the new state
+     * @return whether the model was in the expected state, and the transition was legal; false when the model has been
+     *         removed
+     */
+    public boolean compareAndSetState(final long key, final ModelState expectedState, final ModelState newState)
+    {
+        Throw.whenNull(expectedState, "expectedState cannot be null");
+        Throw.whenNull(newState, "newState cannot be null");
+        Chunk chunk = existingChunk(key);
+        if (chunk == null || !expectedState.canChangeTo(newState) || !chunk.states.compareAndSet(index(key) % CHUNK_SIZE,
+                word(generation(key), expectedState.ordinal()), word(generation(key), newState.ordinal())))
+        {
+            return false;
+        }
+        this.counts[expectedState.ordinal()].decrement();
+        this.counts[newState.ordinal()].increment();
+        return true;
+    }
+
+    /**
+     * @param modelId the id of a model
+     * @return the key of the model, or -1 when the model is not in the table
+     */
+    public long keyOf(final String modelId)
+    {
+        Long key = this.keyMap.get(modelId);
+        return key == null ? -1L : key;
+    }
+
+    /**
+     * @param key the key of a model
+     * @return the state of the model, or null when the model has been removed
+     */
+    public ModelState getState(final long key)
+    {
+        Chunk chunk = existingChunk(key);
+        long word = chunk == null ? word(0, FREE) : chunk.states.get(index(key) % CHUNK_SIZE);
+        return generation(word) != generation(key) || ordinal(word) == FREE ? null : STATES[ordinal(word)];
+    }
+
+    /**
+     * @param modelId the id of a model
+     * @return the state of the model, or null when the model is not in the table
+     */
+    public ModelState getState(final String modelId)
+    {
+        long key = keyOf(modelId);
+        return key < 0 ? null : getState(key);
+    }
+
+    /**
+     * @param state a state
+     * @return the number of models in the state
+     */
+    public long getCount(final ModelState state)
+    {
+        return this.counts[state.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of models in the table
+     */
+    public int size()
+    {
+        return this.keyMap.size();
+    }
+
+    /**
+     * Carry out an action for the id of every model in a state.
+     * @param state the state
+     * @param action the action
+     */
+    public void forEach(final ModelState state, final Consumer<String> action)
+    {
+        int n = this.numberIndices.get();
+        for (int c = 0; c * CHUNK_SIZE < n; c++)
+        {
+            Chunk chunk = this.chunks.get(c);
+            if (chunk == null)
+            {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_SIZE; i++)
+            {
+                if (ordinal(chunk.states.get(i)) == state.ordinal())
+                {
+                    String modelId = chunk.ids.get(i);
+                    if (modelId != null)
+                    {
+                        action.accept(modelId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param state a state
+     * @return the ids of the models in the state
+     */
+    public List<String> getModelIds(final ModelState state)
+    {
+        List<String> modelIds = new ArrayList<>();
+        forEach(state, modelIds::add);
+        return modelIds;
+    }
+
+    /**
+     * @param generation the generation of a slot, between 0 and 2^31 - 1
+     * @param index the index of the slot
+     * @return the key of the model in the slot, which is not negative
+     */
+    private static long key(final int generation, final int index)
+    {
+        return ((long) generation << 32) | index;
+    }
+
+    /**
+     * @param key the key of a model, or the word of a slot
+     * @return the generation of the slot
+     */
+    private static int generation(final long key)
+    {
+        return (int) (key >>> 32);
+    }
+
+    /**
+     * @param key the key of a model
+     * @return the index of the slot of the model, or a negative number for an invalid key
+     */
+    private static int index(final long key)
+    {
+        return key < 0 ? -1 : (int) key;
+    }
+
+    /**
+     * @param generation the generation of a slot
+     * @param ordinal the state ordinal of the slot, or FREE
+     * @return the word of the slot, with the generation in the upper 32 bits and the ordinal in the lower ones
+     */
+    private static long word(final int generation, final int ordinal)
+    {
+        return ((long) generation << 32) | (ordinal & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param word the word of a slot
+     * @return the state ordinal of the slot, or FREE
+     */
+    private static int ordinal(final long word)
+    {
+        return (int) word;
+    }
+
+    /**
+     * @param generation the generation of a slot
+     * @return the next generation, which wraps around after 2^31 - 1, so keys stay positive
+     */
+    private static int nextGeneration(final int generation)
+    {
+        return (generation + 1) & Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param index an index
+     * @return the chunk of the index, which is created when it does not exist
+     */
+    private Chunk chunk(final int index)
+    {
+        int c = index / CHUNK_SIZE;
+        Chunk chunk = this.chunks.get(c);
+        if (chunk == null)
+        {
+            this.chunks.compareAndSet(c, null, new Chunk());
+            chunk = this.chunks.get(c);
+        }
+        return chunk;
+    }
+
+    /**
+     * @param key the key of a model
+     * @return the chunk of the slot of the model, or null when the slot has never been handed out
+     */
+    private Chunk existingChunk(final long key)
+    {
+        int index = index(key);
+        return index < 0 || index >= CHUNK_SIZE * MAX_CHUNKS ? null : this.chunks.get(index / CHUNK_SIZE);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder("ModelStateTable [");
+        for (int i = 0; i < STATES.length; i++)
+        {
+            s.append(i == 0 ? "" : ", ").append(STATES[i]).append('=').append(this.counts[i].sum());
+        }
+        return s.append(']').toString();
+    }
+
+    /**
+     * A chunk of the table, with the generations and state ordinals and the ids of CHUNK_SIZE models.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Chunk
+    {
+        /** the word per slot: the generation in the upper 32 bits, and the state ordinal or FREE in the lower ones. */
+        private final AtomicLongArray states = new AtomicLongArray(CHUNK_SIZE);
+
+        /** the model ids. */
+        private final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+        /**
+         * Create a chunk in which no slot is in use.
+         */
+        Chunk()
+        {
+            for (int i = 0; i < CHUNK_SIZE; i++)
+            {
+                this.states.set(i, word(0, FREE));
+            }
+        }
+    }
+
+}
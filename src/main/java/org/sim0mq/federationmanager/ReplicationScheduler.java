@@ -0,0 +1,668 @@
+package org.sim0mq.federationmanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * ReplicationScheduler runs the replications of an experiment, i.e., many parameter points times many replications, on the
+ * nodes of a {@link FederationManager}, where a node is a FederateStarter with a limit on the number of models that run on it
+ * at the same time. The pending replications form one queue, which is kept as a deque per node: the replications of a
+ * parameter point are dealt to the nodes in contiguous blocks, in proportion to their limits, so a node runs the same
+ * configuration over and over, and can reuse its processes, templates and class archives. A node that has room takes the next
+ * replication from the head of its own deque; when its deque is empty, it steals the last replication of the node with the
+ * most pending work. Nodes that finish early therefore keep working till the whole experiment is done, instead of idling at
+ * its tail.
+ * <p>
+ * The seeds of the random streams of a replication are derived from the base seed, the parameter point, the replication
+ * number and the stream id only, and not from the node or the order of execution, so every replication gets the same seeds in
+ * every run of the experiment.
+ * </p>
+ * <p>
+ * Speculative execution, which is off by default, attacks the stragglers at the end of an experiment: replications that run
+ * far longer than the others, e.g., because of a slow node or a pathological seed. Once no replication is pending, a running
+ * replication whose simulation has taken longer than a factor times the median simulation time of the completed replications
+ * of its parameter point gets a backup copy, with the same seeds, on another node with room. The first copy that completes
+ * wins, and the other one is cancelled, which kills its model with FM.8. Since MC.1 only reports whether a model runs, the
+ * progress of a replication is the time since its simulator was started.
+ * </p>
+ * <p>
+ * The scheduler is thread-safe. Experiments can be submitted from any thread; replications are started from the thread that
+ * submits them, and from the thread of the FederationManager when a run completes.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ReplicationScheduler
+{
+    /** the FederationManager that executes the runs. */
+    private final FederationManager federationManager;
+
+    /** the seed from which the seeds of all replications are derived. */
+    private final long baseSeed;
+
+    /** the nodes, per name of the FederateStarter, in the order in which they were added. */
+    private final Map<String, Node> nodeMap = new LinkedHashMap<>();
+
+    /** the number of replications that were started by another node than the one they were dealt to. */
+    private int numberStolen = 0;
+
+    /** the replications that have been started and have not completed. */
+    private final Set<Replication> runningSet = new LinkedHashSet<>();
+
+    /** whether stragglers get a backup copy on another node. */
+    private boolean speculation = false;
+
+    /** the factor of the median simulation time of a parameter point beyond which a replication is a straggler. */
+    private double stragglerFactor = 2.0;
+
+    /** the number of completed replications of a parameter point before its stragglers are recognized. */
+    private int minSamples = 5;
+
+    /** the time in ms between two searches for stragglers. */
+    private long speculationInterval = 1000L;
+
+    /** whether a search for stragglers has been scheduled. */
+    private boolean speculating = false;
+
+    /** the simulation times in ms of the completed replications, per parameter point. */
+    private final Map<Object, List<Long>> durationMap = new HashMap<>();
+
+    /** the number of backup copies that were started. */
+    private int numberBackups = 0;
+
+    /** the number of replications of which the backup copy completed first. */
+    private int numberBackupWins = 0;
+
+    /**
+     * Create a scheduler.
+     * @param federationManager the FederationManager that executes the runs, to which the FederateStarters of the nodes have
+     *            been added
+     * @param baseSeed the seed from which the seeds of all replications are derived
+     * @throws NullPointerException when federationManager is null
+     */
+    public ReplicationScheduler(final FederationManager federationManager, final long baseSeed)
+    {
+        Throw.whenNull(federationManager, "federationManager cannot be null");
+        this.federationManager = federationManager;
+        this.baseSeed = baseSeed;
+    }
+
+    /**
+     * Add a node on which replications can run.
+     * @param federateStarter the name of the FederateStarter, as added to the FederationManager
+     * @param maxConcurrent the maximum number of models that run on the node at the same time
+     * @throws IllegalArgumentException when maxConcurrent is less than 1, or the node has already been added
+     */
+    public synchronized void addNode(final String federateStarter, final int maxConcurrent)
+    {
+        Throw.whenNull(federateStarter, "federateStarter cannot be null");
+        Throw.when(maxConcurrent < 1, IllegalArgumentException.class, "maxConcurrent should be at least 1");
+        Throw.when(this.nodeMap.containsKey(federateStarter), IllegalArgumentException.class,
+                "node " + federateStarter + " has already been added");
+        this.nodeMap.put(federateStarter, new Node(federateStarter, maxConcurrent));
+        dispatch();
+    }
+
+    /**
+     * Turn speculative execution of stragglers on or off; it is off by default.
+     * @param newSpeculation whether stragglers get a backup copy on another node
+     */
+    public synchronized void setSpeculation(final boolean newSpeculation)
+    {
+        this.speculation = newSpeculation;
+        scheduleSpeculation();
+    }
+
+    /**
+     * Set the factor of the median simulation time of a parameter point beyond which a running replication is a straggler.
+     * @param newStragglerFactor the factor, at least 1; default 2
+     */
+    public synchronized void setStragglerFactor(final double newStragglerFactor)
+    {
+        Throw.when(!(newStragglerFactor >= 1.0), IllegalArgumentException.class, "stragglerFactor should be at least 1");
+        this.stragglerFactor = newStragglerFactor;
+    }
+
+    /**
+     * Set the number of completed replications of a parameter point that is needed before its stragglers are recognized.
+     * @param newMinSamples the number of completed replications, at least 1; default 5
+     */
+    public synchronized void setMinSamples(final int newMinSamples)
+    {
+        Throw.when(newMinSamples < 1, IllegalArgumentException.class, "minSamples should be at least 1");
+        this.minSamples = newMinSamples;
+    }
+
+    /**
+     * Set the time between two searches for stragglers.
+     * @param newSpeculationInterval the time in ms, at least 1; default 1000
+     */
+    public synchronized void setSpeculationInterval(final long newSpeculationInterval)
+    {
+        Throw.when(newSpeculationInterval < 1, IllegalArgumentException.class, "speculationInterval should be at least 1");
+        this.speculationInterval = newSpeculationInterval;
+    }
+
+    /**
+     * Submit the replications of a parameter point. The runs are created by the factory when the replications are started,
+     * and get the seeds of their replication in the stream map of their FM.2 message.
+     * @param pointId the id of the parameter point, which distinguishes its seeds from those of other points
+     * @param numberReplications the number of replications
+     * @param streamIds the ids of the random streams of the model
+     * @param factory the factory that creates the run of a replication on a node
+     * @return the futures of the replications, in the order of their replication number, which complete with their run
+     * @throws IllegalStateException when no node has been added
+     */
+    public synchronized List<CompletableFuture<ModelRun>> submit(final Object pointId, final int numberReplications,
+            final List<Object> streamIds, final ReplicationFactory factory)
+    {
+        Throw.whenNull(pointId, "pointId cannot be null");
+        Throw.whenNull(streamIds, "streamIds cannot be null");
+        Throw.whenNull(factory, "factory cannot be null");
+        Throw.when(numberReplications < 0, IllegalArgumentException.class, "numberReplications should be >= 0");
+        Throw.when(this.nodeMap.isEmpty(), IllegalStateException.class, "no node has been added");
+
+        List<Replication> replications = new ArrayList<>();
+        List<CompletableFuture<ModelRun>> futures = new ArrayList<>();
+        for (int number = 0; number < numberReplications; number++)
+        {
+            Map<Object, Long> streamMap = new LinkedHashMap<>();
+            for (Object streamId : streamIds)
+            {
+                streamMap.put(streamId, seed(this.baseSeed, pointId, number, streamId));
+            }
+            Replication replication = new Replication(pointId, number, streamMap, factory);
+            replications.add(replication);
+            futures.add(replication.future);
+        }
+
+        // deal the replications in contiguous blocks, in proportion to the limits of the nodes
+        int totalConcurrent = 0;
+        for (Node node : this.nodeMap.values())
+        {
+            totalConcurrent += node.maxConcurrent;
+        }
+        int dealt = 0;
+        int cumulative = 0;
+        for (Node node : this.nodeMap.values())
+        {
+            cumulative += node.maxConcurrent;
+            int end = (int) ((long) numberReplications * cumulative / totalConcurrent);
+            for (; dealt < end; dealt++)
+            {
+                Replication replication = replications.get(dealt);
+                replication.dealtTo = node;
+                node.pending.addLast(replication);
+            }
+        }
+
+        dispatch();
+        return futures;
+    }
+
+    /**
+     * Start replications on the nodes that have room, from their own deque first, and otherwise from the deque of the node
+     * with the most pending replications.
+     */
+    private synchronized void dispatch()
+    {
+        for (Node node : this.nodeMap.values())
+        {
+            while (node.running < node.maxConcurrent)
+            {
+                Replication replication = node.pending.pollFirst();
+                if (replication == null)
+                {
+                    Node victim = null;
+                    for (Node other : this.nodeMap.values())
+                    {
+                        if (other.pending.size() > 0 && (victim == null || other.pending.size() > victim.pending.size()))
+                        {
+                            victim = other;
+                        }
+                    }
+                    if (victim == null)
+                    {
+                        break;
+                    }
+                    replication = victim.pending.pollLast();
+                    this.numberStolen++;
+                }
+                start(node, replication);
+            }
+        }
+        scheduleSpeculation();
+    }
+
+    /**
+     * Start a replication on a node.
+     * @param node the node
+     * @param replication the replication
+     */
+    private void start(final Node node, final Replication replication)
+    {
+        ModelRun run;
+        try
+        {
+            run = replication.factory.createRun(replication, node.federateStarter);
+            run.setStreamMap(replication.streamMap);
+        }
+        catch (RuntimeException exception)
+        {
+            replication.future.completeExceptionally(exception);
+            return;
+        }
+        replication.primary = run;
+        replication.primaryNode = node;
+        this.runningSet.add(replication);
+        submit(node, replication, run);
+    }
+
+    /**
+     * Submit a copy of a replication to the FederationManager.
+     * @param node the node on which the copy runs
+     * @param replication the replication
+     * @param run the run of the copy
+     */
+    private void submit(final Node node, final Replication replication, final ModelRun run)
+    {
+        node.running++;
+        replication.active++;
+        this.federationManager.submit(run).whenComplete((completed, exception) -> completed(node, replication, run, exception));
+    }
+
+    /**
+     * Handle the completion of a copy of a replication. The first copy that terminates successfully completes the replication,
+     * and the other copy is cancelled; when all copies failed, the replication completes with the last failure.
+     * @param node the node on which the copy ran
+     * @param replication the replication
+     * @param run the run of the copy
+     * @param exception the exception with which the run completed, or null
+     */
+    private void completed(final Node node, final Replication replication, final ModelRun run, final Throwable exception)
+    {
+        ModelRun loser = null;
+        boolean finish = false;
+        synchronized (this)
+        {
+            node.running--;
+            node.completed++;
+            replication.active--;
+            boolean success = exception == null && run.getState() == ModelState.TERMINATED;
+            if (!replication.done && (success || replication.active == 0))
+            {
+                replication.done = true;
+                finish = true;
+                this.runningSet.remove(replication);
+                if (success && run.getSimulatorStartTime() > 0 && run.getSimulatorEndTime() > 0)
+                {
+                    this.durationMap.computeIfAbsent(replication.pointId, p -> new ArrayList<>())
+                            .add(run.getSimulatorEndTime() - run.getSimulatorStartTime());
+                }
+                if (success && run == replication.backup)
+                {
+                    this.numberBackupWins++;
+                }
+                if (replication.active > 0)
+                {
+                    loser = run == replication.backup ? replication.primary : replication.backup;
+                }
+            }
+        }
+        if (loser != null)
+        {
+            this.federationManager.cancel(loser);
+        }
+        if (finish)
+        {
+            if (exception != null)
+            {
+                replication.future.completeExceptionally(exception);
+            }
+            else
+            {
+                replication.future.complete(run);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Schedule a search for stragglers when speculation is on and replications are running.
+     */
+    private synchronized void scheduleSpeculation()
+    {
+        if (this.speculation && !this.speculating && !this.runningSet.isEmpty())
+        {
+            this.speculating = true;
+            this.federationManager.runLater(this.speculationInterval, this::speculate);
+        }
+    }
+
+    /**
+     * Start a backup copy of the stragglers on the nodes with room, when no replication is pending.
+     */
+    private synchronized void speculate()
+    {
+        this.speculating = false;
+        if (!this.speculation || getNumberPending() > 0)
+        {
+            scheduleSpeculation();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<Object, Long> medianMap = new HashMap<>();
+        for (Replication replication : this.runningSet)
+        {
+            long start = replication.primary.getSimulatorStartTime();
+            List<Long> durations = this.durationMap.get(replication.pointId);
+            if (replication.backup != null || start == 0L || durations == null || durations.size() < this.minSamples)
+            {
+                continue;
+            }
+            long median = medianMap.computeIfAbsent(replication.pointId, p ->
+            {
+                List<Long> sorted = new ArrayList<>(durations);
+                Collections.sort(sorted);
+                return sorted.get(sorted.size() / 2);
+            });
+            if (now - start <= this.stragglerFactor * Math.max(1L, median))
+            {
+                continue;
+            }
+            Node backupNode = null;
+            for (Node node : this.nodeMap.values())
+            {
+                if (node != replication.primaryNode && node.running < node.maxConcurrent && (backupNode == null
+                        || node.maxConcurrent - node.running > backupNode.maxConcurrent - backupNode.running))
+                {
+                    backupNode = node;
+                }
+            }
+            if (backupNode == null)
+            {
+                break;
+            }
+            replication.backup = replication.primary.copy(replication.primary.getInstanceId() + ".backup",
+                    backupNode.federateStarter);
+            this.numberBackups++;
+            submit(backupNode, replication, replication.backup);
+        }
+        scheduleSpeculation();
+    }
+
+    /**
+     * @return the number of replications that have not been started
+     */
+    public synchronized int getNumberPending()
+    {
+        int pending = 0;
+        for (Node node : this.nodeMap.values())
+        {
+            pending += node.pending.size();
+        }
+        return pending;
+    }
+
+    /**
+     * @return the number of replications that are running
+     */
+    public synchronized int getNumberRunning()
+    {
+        int running = 0;
+        for (Node node : this.nodeMap.values())
+        {
+            running += node.running;
+        }
+        return running;
+    }
+
+    /**
+     * @return the number of replications that were started by another node than the one they were dealt to
+     */
+    public synchronized int getNumberStolen()
+    {
+        return this.numberStolen;
+    }
+
+    /**
+     * @return the number of backup copies of stragglers that were started
+     */
+    public synchronized int getNumberBackups()
+    {
+        return this.numberBackups;
+    }
+
+    /**
+     * @return the number of replications of which the backup copy completed first
+     */
+    public synchronized int getNumberBackupWins()
+    {
+        return this.numberBackupWins;
+    }
+
+    /**
+     * @return the number of runs, including cancelled copies, that completed per node
+     */
+    public synchronized Map<String, Integer> getNumberCompleted()
+    {
+        Map<String, Integer> completed = new LinkedHashMap<>();
+        for (Node node : this.nodeMap.values())
+        {
+            completed.put(node.federateStarter, node.completed);
+        }
+        return Collections.unmodifiableMap(completed);
+    }
+
+    /**
+     * Return the seed of a random stream of a replication: a SplitMix64 mix of the base seed, the parameter point, the
+     * replication number, and the stream id. The ids are hashed with FNV-1a over their UTF-8 string, so the seed does not
+     * depend on the JVM.
+     * @param baseSeed the seed of the experiment
+     * @param pointId the id of the parameter point
+     * @param replication the replication number
+     * @param streamId the id of the random stream
+     * @return the seed, which is not negative
+     */
+    public static long seed(final long baseSeed, final Object pointId, final int replication, final Object streamId)
+    {
+        long seed = mix(baseSeed);
+        seed = mix(seed ^ hash(pointId.toString()));
+        seed = mix(seed ^ replication);
+        seed = mix(seed ^ hash(streamId.toString()));
+        return seed & Long.MAX_VALUE;
+    }
+
+    /**
+     * @param value the value to mix
+     * @return the SplitMix64 mix of the value
+     */
+    private static long mix(final long value)
+    {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param text the text to hash
+     * @return the 64-bit FNV-1a hash of the UTF-8 bytes of the text
+     */
+    private static long hash(final String text)
+    {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : text.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Factory that creates the run of a replication on a node. The instance id of the run should be unique within the
+     * FederationManager, e.g., the point id followed by the replication number.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    @FunctionalInterface
+    public interface ReplicationFactory
+    {
+        /**
+         * Create the run of a replication.
+         * @param replication the replication
+         * @param federateStarter the name of the FederateStarter on which the replication runs
+         * @return the run
+         */
+        ModelRun createRun(Replication replication, String federateStarter);
+    }
+
+    /**
+     * One replication of a parameter point.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class Replication
+    {
+        /** the id of the parameter point. */
+        private final Object pointId;
+
+        /** the replication number, starting at 0. */
+        private final int number;
+
+        /** the seed per stream id. */
+        private final Map<Object, Long> streamMap;
+
+        /** the factory that creates the run. */
+        private final ReplicationFactory factory;
+
+        /** the future that completes with the run. */
+        private final CompletableFuture<ModelRun> future = new CompletableFuture<>();
+
+        /** the node to which the replication was dealt. */
+        private Node dealtTo = null;
+
+        /** the run of the replication, or null when it has not been started. */
+        private ModelRun primary = null;
+
+        /** the node on which the run of the replication was started. */
+        private Node primaryNode = null;
+
+        /** the backup copy of the run of a straggler, or null. */
+        private ModelRun backup = null;
+
+        /** the number of copies of the replication that run. */
+        private int active = 0;
+
+        /** whether the future of the replication has been completed. */
+        private boolean done = false;
+
+        /**
+         * @param pointId the id of the parameter point
+         * @param number the replication number, starting at 0
+         * @param streamMap the seed per stream id
+         * @param factory the factory that creates the run
+         */
+        Replication(final Object pointId, final int number, final Map<Object, Long> streamMap,
+                final ReplicationFactory factory)
+        {
+            this.pointId = pointId;
+            this.number = number;
+            this.streamMap = Collections.unmodifiableMap(streamMap);
+            this.factory = factory;
+        }
+
+        /**
+         * @return pointId
+         */
+        public Object getPointId()
+        {
+            return this.pointId;
+        }
+
+        /**
+         * @return the replication number, starting at 0
+         */
+        public int getNumber()
+        {
+            return this.number;
+        }
+
+        /**
+         * @return the seed per stream id
+         */
+        public Map<Object, Long> getStreamMap()
+        {
+            return this.streamMap;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Replication [pointId=" + this.pointId + ", number=" + this.number + ", dealtTo="
+                    + (this.dealtTo == null ? null : this.dealtTo.federateStarter) + "]";
+        }
+    }
+
+    /**
+     * A FederateStarter with its limit and its pending replications.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Node
+    {
+        /** the name of the FederateStarter. */
+        private final String federateStarter;
+
+        /** the maximum number of models that run on the node at the same time. */
+        private final int maxConcurrent;
+
+        /** the replications that were dealt to the node and have not been started. */
+        private final Deque<Replication> pending = new ArrayDeque<>();
+
+        /** the number of replications that run on the node. */
+        private int running = 0;
+
+        /** the number of replications that completed on the node. */
+        private int completed = 0;
+
+        /**
+         * @param federateStarter the name of the FederateStarter
+         * @param maxConcurrent the maximum number of models that run on the node at the same time
+         */
+        Node(final String federateStarter, final int maxConcurrent)
+        {
+            this.federateStarter = federateStarter;
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+}
@@ -0,0 +1,348 @@
+package org.sim0mq.federationmanager;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.djutils.exceptions.Throw;
+import org.djutils.serialization.Endianness;
+import org.djutils.serialization.SerializationException;
+import org.djutils.serialization.TypedMessage;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+import org.sim0mq.message.modelcontroller.MC5StatisticsListMessage;
+
+/**
+ * ResultCache keeps the statistics of terminated runs on disk, keyed by a hash of everything that determines the outcome of a
+ * run: the software, model and arguments of the FM.1 message, the run control and the seeds of the FM.2 message, the
+ * parameters of the FM.3 messages, and the statistics that are requested. When a FederationManager with a cache gets a run
+ * with the same inputs as a run that has been executed before, it completes the run with the cached statistics, without
+ * starting the model. This assumes that a model gives the same results for the same inputs and seeds.
+ * <p>
+ * Each entry is a file with an MC.5 message in the directory of the cache, so the cache survives a restart. When the files
+ * take more than the maximum number of bytes, the least recently used entries are removed. The cache is thread-safe; errors
+ * while reading or writing an entry are reported, and make the entry a miss. Since {@link #get} and {@link #put} read and
+ * write files, a FederationManager calls them on a thread of its own, not on the thread of its event loop.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ResultCache
+{
+    /** the directory of the entries. */
+    private final Path directory;
+
+    /** the maximum number of bytes of the entries together. */
+    private final long maxBytes;
+
+    /** the size of the entries per key, from the least to the most recently used. */
+    private final Map<String, Long> entryMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the number of bytes of the entries together. */
+    private long size = 0L;
+
+    /** the number of lookups that found an entry. */
+    private long hits = 0L;
+
+    /** the number of lookups that did not find an entry. */
+    private long misses = 0L;
+
+    /** the extension of the files of the entries. */
+    private static final String EXTENSION = ".result";
+
+    /** the version of the key; a change of the key or of the entries should change the version. */
+    private static final String VERSION = "sim0mq-result-cache/1";
+
+    /**
+     * Open a cache, and load the entries that are in its directory.
+     * @param directory the directory of the entries, which is created when it does not exist
+     * @param maxBytes the maximum number of bytes of the entries together
+     * @throws IOException when the directory cannot be created or read
+     * @throws IllegalArgumentException when maxBytes is not positive
+     */
+    public ResultCache(final Path directory, final long maxBytes) throws IOException
+    {
+        Throw.whenNull(directory, "directory cannot be null");
+        Throw.when(maxBytes <= 0, IllegalArgumentException.class, "maxBytes should be positive");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION))
+        {
+            stream.forEach(files::add);
+        }
+        Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path file : files)
+        {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+        for (Path file : files)
+        {
+            String name = file.getFileName().toString();
+            long fileSize = Files.size(file);
+            this.entryMap.put(name.substring(0, name.length() - EXTENSION.length()), fileSize);
+            this.size += fileSize;
+        }
+        evict();
+    }
+
+    /**
+     * Compute the key of a run: the SHA-256 hash of a canonical encoding of its inputs. The fields of the FM.1 message that do
+     * not change the outcome, such as the instance id, the working directory and the redirects, are left out; the seeds and
+     * the parameters are sorted, so their order does not matter.
+     * @param startMessage the FM.1 message of the run
+     * @param runControlMessage the FM.2 message of the run, with the seeds of the run, or null when no FM.2 message is sent
+     * @param parameters the parameters that are set with FM.3 or FM.14
+     * @param statisticNames the names of the statistics that are requested with FM.6 or FM.13
+     * @param statisticsList whether the statistics are requested with FM.13, in which case the names can be patterns
+     * @return the key, as a hexadecimal string
+     * @throws SerializationException when a value cannot be serialized
+     */
+    public static String key(final FM1StartFederateMessage startMessage, final FM2SimRunControlMessage runControlMessage,
+            final Map<String, Object> parameters, final List<String> statisticNames, final boolean statisticsList)
+            throws SerializationException
+    {
+        List<Object> content = new ArrayList<>();
+        content.add(VERSION);
+        content.add(startMessage.getSoftwareCode());
+        content.add(startMessage.getArgsBefore());
+        content.add(startMessage.getModelPath());
+        content.add(startMessage.getArgsAfter());
+        content.add(startMessage.getTemplate());
+        content.add(runControlMessage != null);
+        if (runControlMessage != null)
+        {
+            // the run duration, warmup duration and offset time as they are sent
+            Object[] fields = runControlMessage.createObjectArray();
+            content.add(fields[8]);
+            content.add(fields[9]);
+            content.add(fields[10]);
+            content.add(runControlMessage.getSpeed());
+            content.add(runControlMessage.getNumberReplications());
+            Map<String, Map.Entry<Object, Long>> streams = new TreeMap<>();
+            for (Map.Entry<Object, Long> entry : runControlMessage.getStreamMap().entrySet())
+            {
+                streams.put(String.valueOf(entry.getKey()), entry);
+            }
+            content.add(streams.size());
+            for (Map.Entry<Object, Long> entry : streams.values())
+            {
+                content.add(entry.getKey());
+                content.add(entry.getValue());
+            }
+        }
+        Map<String, Object> sortedParameters = new TreeMap<>(parameters);
+        content.add(sortedParameters.size());
+        for (Map.Entry<String, Object> entry : sortedParameters.entrySet())
+        {
+            content.add(entry.getKey());
+            content.add(entry.getValue());
+        }
+        content.add(statisticsList);
+        content.add(statisticNames.size());
+        content.addAll(statisticNames);
+        byte[] bytes = TypedMessage.encodeUTF8(Endianness.BIG_ENDIAN, content.toArray());
+        try
+        {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+            {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Look up the statistics of a run.
+     * @param key the key of the run
+     * @return the statistics, as the MC.5 message that the model could have sent, or null when the run is not in the cache
+     */
+    public synchronized MC5StatisticsListMessage get(final String key)
+    {
+        if (!this.entryMap.containsKey(key))
+        {
+            this.misses++;
+            return null;
+        }
+        Path file = file(key);
+        try
+        {
+            MC5StatisticsListMessage message =
+                    new MC5StatisticsListMessage(Sim0MQMessage.decodeToArray(Files.readAllBytes(file)));
+            // mark the entry as the most recently used one
+            this.entryMap.get(key);
+            // keep the order of use when the cache is opened again
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            this.hits++;
+            return message;
+        }
+        catch (IOException | Sim0MQException | SerializationException | RuntimeException exception)
+        {
+            System.err.println("ResultCache: cannot read entry " + key + ": " + exception.getMessage());
+            remove(key);
+            this.misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Store the statistics of a run, and remove the least recently used entries when the cache is full.
+     * @param key the key of the run
+     * @param statistics the values of the statistics per variable name
+     * @param statisticsErrors the errors of the statistics that could not be gathered, per variable name
+     */
+    public synchronized void put(final String key, final Map<String, Object> statistics,
+            final Map<String, String> statisticsErrors)
+    {
+        Path file = file(key);
+        Path temporary = this.directory.resolve(key + ".tmp");
+        try
+        {
+            byte[] bytes = new MC5StatisticsListMessage("cache", "cache", "FM", 0L, key, statistics, statisticsErrors)
+                    .createByteArray();
+            Files.write(temporary, bytes);
+            try
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException exception)
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Long previous = this.entryMap.put(key, (long) bytes.length);
+            this.size += bytes.length - (previous == null ? 0L : previous);
+            evict();
+        }
+        catch (IOException | Sim0MQException | SerializationException | RuntimeException exception)
+        {
+            System.err.println("ResultCache: cannot write entry " + key + ": " + exception.getMessage());
+            try
+            {
+                Files.deleteIfExists(temporary);
+            }
+            catch (IOException ioException)
+            {
+                // nothing more to do
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used entries till the entries fit in the maximum number of bytes.
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> iterator = this.entryMap.entrySet().iterator();
+        while (this.size > this.maxBytes && iterator.hasNext())
+        {
+            Map.Entry<String, Long> entry = iterator.next();
+            this.size -= entry.getValue();
+            iterator.remove();
+            delete(entry.getKey());
+        }
+    }
+
+    /**
+     * Remove an entry.
+     * @param key the key of the entry
+     */
+    private void remove(final String key)
+    {
+        Long entrySize = this.entryMap.remove(key);
+        if (entrySize != null)
+        {
+            this.size -= entrySize;
+        }
+        delete(key);
+    }
+
+    /**
+     * Delete the file of an entry.
+     * @param key the key of the entry
+     */
+    private void delete(final String key)
+    {
+        try
+        {
+            Files.deleteIfExists(file(key));
+        }
+        catch (IOException exception)
+        {
+            System.err.println("ResultCache: cannot delete entry " + key + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * @param key the key of an entry
+     * @return the file of the entry
+     */
+    private Path file(final String key)
+    {
+        return this.directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int getNumberEntries()
+    {
+        return this.entryMap.size();
+    }
+
+    /**
+     * @return the number of bytes of the entries together
+     */
+    public synchronized long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the number of lookups that found an entry
+     */
+    public synchronized long getNumberHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of lookups that did not find an entry
+     */
+    public synchronized long getNumberMisses()
+    {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "ResultCache [directory=" + this.directory + ", entries=" + this.entryMap.size() + ", size=" + this.size
+                + ", hits=" + this.hits + ", misses=" + this.misses + "]";
+    }
+
+}
@@ -0,0 +1,689 @@
+package org.sim0mq.federationmanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.scalar.base.DoubleScalar;
+import org.djunits.value.vfloat.scalar.base.FloatScalar;
+import org.djutils.exceptions.Throw;
+
+/**
+ * ResultStore keeps the statistics of the runs of an experiment in a directory of memory-mapped column files: one column per
+ * output variable, and one row per run, with the parameter point and the replication number of the run. The store is
+ * append-only, and the values are stored as primitives in files that are mapped into memory outside the heap, so an
+ * experiment with millions of runs does not need the heap to hold its results. Columns of long values hold integral values
+ * exactly; all other numeric values, including booleans and values with a unit (in SI units), are stored in columns of double
+ * values. A column of long values that gets a value that is not integral becomes a column of double values. An array, a vector
+ * or a matrix is stored element-wise, in the columns "name[0]", "name[1]", etc.
+ * <p>
+ * A run appends its statistics when it has terminated successfully, see {@link ModelRun#setResultStore}. The values of a column
+ * can be scanned, and summarized per parameter point in a {@link StatisticSummary}. A store can be reopened after a restart;
+ * the rows that were appended before are kept. The store is thread-safe.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class ResultStore implements AutoCloseable
+{
+    /** the directory of the store. */
+    private final Path directory;
+
+    /** the mapped file with the number of rows. */
+    private final MappedByteBuffer meta;
+
+    /** the channel of the file with the number of rows. */
+    private final FileChannel metaChannel;
+
+    /** the number of rows. */
+    private volatile long numberRows;
+
+    /** the column with the index of the parameter point per row. */
+    private final Column pointColumn;
+
+    /** the column with the replication number per row. */
+    private final Column replicationColumn;
+
+    /** the columns of the variables, per variable name, in the order of creation. */
+    private final Map<String, Column> columnMap = new LinkedHashMap<>();
+
+    /** the ids of the parameter points, per index. */
+    private final List<String> pointIds = new ArrayList<>();
+
+    /** the index of the parameter points, per id. */
+    private final Map<String, Integer> pointIndexMap = new HashMap<>();
+
+    /** whether the store has been closed. */
+    private boolean closed = false;
+
+    /** the number of rows per mapped segment of a column. */
+    static final int SEGMENT_ROWS = 1 << 16;
+
+    /** the value that marks a missing long value. */
+    public static final long MISSING_LONG = Long.MIN_VALUE;
+
+    /** the magic number at the start of the file with the number of rows. */
+    private static final long MAGIC = 0x53494D304D515253L;
+
+    /**
+     * Open a store, or create it when the directory does not contain a store.
+     * @param directory the directory of the store, which is created when it does not exist
+     * @throws IOException when the files of the store cannot be created or read
+     */
+    public ResultStore(final Path directory) throws IOException
+    {
+        Throw.whenNull(directory, "directory cannot be null");
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.metaChannel = FileChannel.open(directory.resolve("rows.meta"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean created = this.metaChannel.size() == 0;
+        this.meta = this.metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        this.meta.order(ByteOrder.BIG_ENDIAN);
+        if (created)
+        {
+            this.meta.putLong(0, MAGIC);
+            this.meta.putLong(8, 0L);
+        }
+        Throw.when(this.meta.getLong(0) != MAGIC, IOException.class, "directory %s does not contain a ResultStore", directory);
+        this.numberRows = this.meta.getLong(8);
+        this.pointColumn = new Column(directory.resolve("point.col"), true);
+        this.replicationColumn = new Column(directory.resolve("replication.col"), true);
+        Path points = directory.resolve("points.txt");
+        if (Files.exists(points))
+        {
+            for (String pointId : Files.readAllLines(points, StandardCharsets.UTF_8))
+            {
+                this.pointIndexMap.put(pointId, this.pointIds.size());
+                this.pointIds.add(pointId);
+            }
+        }
+        Path columns = directory.resolve("columns.txt");
+        if (Files.exists(columns))
+        {
+            for (String line : Files.readAllLines(columns, StandardCharsets.UTF_8))
+            {
+                this.columnMap.put(line.substring(2),
+                        new Column(directory.resolve("c" + this.columnMap.size() + ".col"), line.charAt(0) == 'L'));
+            }
+        }
+    }
+
+    /**
+     * Append a row for a run.
+     * @param pointId the id of the parameter point of the run
+     * @param replication the replication number of the run
+     * @return the index of the row
+     * @throws IOException when the files of the store cannot be extended
+     */
+    public synchronized long appendRow(final Object pointId, final long replication) throws IOException
+    {
+        Throw.whenNull(pointId, "pointId cannot be null");
+        Throw.when(this.closed, IllegalStateException.class, "ResultStore has been closed");
+        String id = pointId.toString();
+        Throw.when(id.indexOf('\n') >= 0, IllegalArgumentException.class, "pointId cannot contain a newline");
+        Integer index = this.pointIndexMap.get(id);
+        if (index == null)
+        {
+            index = this.pointIds.size();
+            Files.writeString(this.directory.resolve("points.txt"), id + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.pointIds.add(id);
+            this.pointIndexMap.put(id, index);
+        }
+        long row = this.numberRows;
+        this.pointColumn.putLong(row, index);
+        this.replicationColumn.putLong(row, replication);
+        this.numberRows = row + 1;
+        this.meta.putLong(8, this.numberRows);
+        return row;
+    }
+
+    /**
+     * Append a row for a run with the values of its statistics.
+     * @param pointId the id of the parameter point of the run
+     * @param replication the replication number of the run
+     * @param statistics the values per variable name, e.g., the statistics of a run; values that are not numeric are skipped
+     * @return the index of the row
+     * @throws IOException when the files of the store cannot be extended
+     */
+    public synchronized long append(final Object pointId, final long replication, final Map<String, Object> statistics)
+            throws IOException
+    {
+        long row = appendRow(pointId, replication);
+        for (Map.Entry<String, Object> entry : statistics.entrySet())
+        {
+            put(row, entry.getKey(), entry.getValue());
+        }
+        return row;
+    }
+
+    /**
+     * Store a value, e.g., the variable value of an MC.3 message. An integral number is stored in a column of long values when
+     * the column is new; other numeric values are stored as double values, and arrays, vectors and matrices element-wise.
+     * @param row the index of the row
+     * @param variableName the name of the variable
+     * @param value the value
+     * @return whether the value was numeric, and has been stored
+     * @throws IOException when the files of the store cannot be extended
+     */
+    public synchronized boolean put(final long row, final String variableName, final Object value) throws IOException
+    {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            Column column = this.columnMap.get(variableName);
+            if (column == null || column.isLong)
+            {
+                putLong(row, variableName, ((Number) value).longValue());
+                return true;
+            }
+        }
+        double[] values = StatisticsAggregator.toDoubles(value);
+        if (values == null)
+        {
+            return false;
+        }
+        boolean scalar = value instanceof Number || value instanceof Boolean || value instanceof DoubleScalar
+                || value instanceof FloatScalar;
+        for (int i = 0; i < values.length; i++)
+        {
+            putDouble(row, scalar ? variableName : variableName + "[" + i + "]", values[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Store a double value. A column of long values gets an integral value as a long; a value that is not integral, or that is
+     * out of the range of a long, turns the column into a column of double values first, see {@link #promote}.
+     * @param row the index of the row
+     * @param variableName the name of the variable
+     * @param value the value; NaN means a missing value
+     * @throws IOException when the files of the store cannot be extended
+     */
+    public synchronized void putDouble(final long row, final String variableName, final double value) throws IOException
+    {
+        Column column = column(row, variableName, false);
+        if (column.isLong)
+        {
+            if (Double.isNaN(value))
+            {
+                column.putLong(row, MISSING_LONG);
+                return;
+            }
+            // -2^63 is the missing value, and 2^63 does not fit
+            if (value == Math.rint(value) && value > -0x1p63 && value < 0x1p63)
+            {
+                column.putLong(row, (long) value);
+                return;
+            }
+            promote(variableName, column);
+        }
+        column.putDouble(row, value);
+    }
+
+    /**
+     * Store a long value. A column of double values gets the value as a double.
+     * @param row the index of the row
+     * @param variableName the name of the variable
+     * @param value the value; {@link #MISSING_LONG} means a missing value
+     * @throws IOException when the files of the store cannot be extended
+     */
+    public synchronized void putLong(final long row, final String variableName, final long value) throws IOException
+    {
+        Column column = column(row, variableName, true);
+        if (column.isLong)
+        {
+            column.putLong(row, value);
+        }
+        else
+        {
+            column.putDouble(row, value == MISSING_LONG ? Double.NaN : value);
+        }
+    }
+
+    /**
+     * Return the column of a variable, and create it when it does not exist.
+     * @param row the index of the row that is written, which should exist
+     * @param variableName the name of the variable
+     * @param isLong whether a new column holds long values
+     * @return the column
+     * @throws IOException when the file of the column cannot be created
+     */
+    private Column column(final long row, final String variableName, final boolean isLong) throws IOException
+    {
+        Throw.when(this.closed, IllegalStateException.class, "ResultStore has been closed");
+        Throw.when(row < 0 || row >= this.numberRows, IndexOutOfBoundsException.class, "row %d does not exist", row);
+        Throw.whenNull(variableName, "variableName cannot be null");
+        Column column = this.columnMap.get(variableName);
+        if (column == null)
+        {
+            Throw.when(variableName.indexOf('\n') >= 0, IllegalArgumentException.class,
+                    "variableName cannot contain a newline");
+            column = new Column(this.directory.resolve("c" + this.columnMap.size() + ".col"), isLong);
+            Files.writeString(this.directory.resolve("columns.txt"), (isLong ? "L " : "D ") + variableName + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            this.columnMap.put(variableName, column);
+        }
+        return column;
+    }
+
+    /**
+     * Turn a column of long values into a column of double values, for a value that a long cannot hold. The values are
+     * converted in place, and written to the storage device before the type of the column changes in "columns.txt", which is
+     * replaced as a whole. Long values beyond 2<sup>53</sup> in magnitude lose their lowest bits.
+     * @param variableName the name of the variable
+     * @param column the column of the variable, which holds long values
+     * @throws IOException when "columns.txt" cannot be written
+     */
+    private void promote(final String variableName, final Column column) throws IOException
+    {
+        column.toDouble();
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, Column> entry : this.columnMap.entrySet())
+        {
+            lines.append(entry.getValue().isLong ? "L " : "D ").append(entry.getKey()).append('\n');
+        }
+        Path columns = this.directory.resolve("columns.txt");
+        Path temporary = this.directory.resolve("columns.tmp");
+        Files.writeString(temporary, lines, StandardCharsets.UTF_8);
+        try
+        {
+            Files.move(temporary, columns, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException exception)
+        {
+            Files.move(temporary, columns, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public long getNumberRows()
+    {
+        return this.numberRows;
+    }
+
+    /**
+     * @return the names of the variables, in the order in which their columns were created
+     */
+    public synchronized List<String> getVariableNames()
+    {
+        return new ArrayList<>(this.columnMap.keySet());
+    }
+
+    /**
+     * @return the ids of the parameter points, in the order in which they were appended
+     */
+    public synchronized List<String> getPointIds()
+    {
+        return new ArrayList<>(this.pointIds);
+    }
+
+    /**
+     * @param variableName the name of a variable
+     * @return whether the column of the variable holds long values
+     */
+    public synchronized boolean isLong(final String variableName)
+    {
+        return getColumn(variableName).isLong;
+    }
+
+    /**
+     * @param row the index of the row
+     * @return the id of the parameter point of the row
+     */
+    public synchronized String getPointId(final long row)
+    {
+        checkRow(row);
+        return this.pointIds.get((int) this.pointColumn.getLong(row));
+    }
+
+    /**
+     * @param row the index of the row
+     * @return the replication number of the row
+     */
+    public synchronized long getReplication(final long row)
+    {
+        checkRow(row);
+        return this.replicationColumn.getLong(row);
+    }
+
+    /**
+     * @param row the index of the row
+     * @param variableName the name of the variable
+     * @return the value as a double, or NaN when the row has no value for the variable
+     */
+    public synchronized double getDouble(final long row, final String variableName)
+    {
+        checkRow(row);
+        return getColumn(variableName).getDouble(row);
+    }
+
+    /**
+     * @param row the index of the row
+     * @param variableName the name of the variable
+     * @return the value as a long, or {@link #MISSING_LONG} when the row has no value for the variable
+     */
+    public synchronized long getLong(final long row, final String variableName)
+    {
+        checkRow(row);
+        Column column = getColumn(variableName);
+        if (column.isLong)
+        {
+            return column.getLong(row);
+        }
+        double value = column.getDouble(row);
+        return Double.isNaN(value) ? MISSING_LONG : Math.round(value);
+    }
+
+    /**
+     * Visit the values of a variable in the order of the rows; rows without a value are skipped.
+     * @param variableName the name of the variable
+     * @param visitor the visitor
+     */
+    public synchronized void scan(final String variableName, final ValueVisitor visitor)
+    {
+        Column column = getColumn(variableName);
+        for (long row = 0; row < this.numberRows; row++)
+        {
+            double value = column.getDouble(row);
+            if (!Double.isNaN(value))
+            {
+                visitor.visit(row, value);
+            }
+        }
+    }
+
+    /**
+     * Summarize the values of a variable over all rows.
+     * @param variableName the name of the variable
+     * @return the summary of the values
+     */
+    public synchronized StatisticSummary summarize(final String variableName)
+    {
+        StatisticSummary summary = new StatisticSummary(StatisticsAggregator.DEFAULT_SKETCH_SIZE);
+        scan(variableName, (row, value) -> summary.add(value));
+        return summary;
+    }
+
+    /**
+     * Summarize the values of a variable per parameter point.
+     * @param variableName the name of the variable
+     * @return the summary of the values per point id, in the order in which the points were appended
+     */
+    public synchronized Map<String, StatisticSummary> summarizeByPoint(final String variableName)
+    {
+        StatisticSummary[] summaries = new StatisticSummary[this.pointIds.size()];
+        scan(variableName, (row, value) ->
+        {
+            int point = (int) this.pointColumn.getLong(row);
+            if (summaries[point] == null)
+            {
+                summaries[point] = new StatisticSummary(StatisticsAggregator.DEFAULT_SKETCH_SIZE);
+            }
+            summaries[point].add(value);
+        });
+        Map<String, StatisticSummary> summaryMap = new LinkedHashMap<>();
+        for (int point = 0; point < summaries.length; point++)
+        {
+            if (summaries[point] != null)
+            {
+                summaryMap.put(this.pointIds.get(point), summaries[point]);
+            }
+        }
+        return summaryMap;
+    }
+
+    /**
+     * @param variableName the name of a variable
+     * @return the column of the variable
+     * @throws IllegalArgumentException when the variable has no column
+     */
+    private Column getColumn(final String variableName)
+    {
+        Column column = this.columnMap.get(variableName);
+        Throw.when(column == null, IllegalArgumentException.class, "variable %s is not in the store", variableName);
+        return column;
+    }
+
+    /**
+     * @param row the index of a row
+     * @throws IndexOutOfBoundsException when the row does not exist
+     */
+    private void checkRow(final long row)
+    {
+        Throw.when(row < 0 || row >= this.numberRows, IndexOutOfBoundsException.class, "row %d does not exist", row);
+    }
+
+    /**
+     * Write the changes of the mapped files to the storage device.
+     */
+    public synchronized void flush()
+    {
+        this.meta.force();
+        this.pointColumn.force();
+        this.replicationColumn.force();
+        for (Column column : this.columnMap.values())
+        {
+            column.force();
+        }
+    }
+
+    /**
+     * Flush and close the store. The mapped memory is released when the buffers are garbage collected.
+     * @throws IOException when a file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (this.closed)
+        {
+            return;
+        }
+        flush();
+        this.closed = true;
+        this.metaChannel.close();
+        this.pointColumn.channel.close();
+        this.replicationColumn.channel.close();
+        for (Column column : this.columnMap.values())
+        {
+            column.channel.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ResultStore [directory=" + this.directory + ", rows=" + this.numberRows + "]";
+    }
+
+    /**
+     * Visitor of the values of a column.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    @FunctionalInterface
+    public interface ValueVisitor
+    {
+        /**
+         * Visit a value.
+         * @param row the index of the row
+         * @param value the value, as a double
+         */
+        void visit(long row, double value);
+    }
+
+    /**
+     * A file of 8-byte values, one per row, that is mapped into memory in segments of {@link #SEGMENT_ROWS} rows. New segments
+     * are written filled with the missing value before they are mapped, so a row in the file never holds a zero that was not
+     * stored.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class Column
+    {
+        /** the channel of the file. */
+        private final FileChannel channel;
+
+        /** whether the column holds long values; otherwise, it holds double values. */
+        private boolean isLong;
+
+        /** the mapped segments of the file. */
+        private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        /**
+         * Open or create the file of a column, and map its segments.
+         * @param file the file
+         * @param isLong whether the column holds long values
+         * @throws IOException when the file cannot be opened or mapped
+         */
+        Column(final Path file, final boolean isLong) throws IOException
+        {
+            this.channel =
+                    FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.isLong = isLong;
+            long segmentBytes = 8L * SEGMENT_ROWS;
+            int existing = (int) (this.channel.size() / segmentBytes);
+            this.segments = new MappedByteBuffer[existing];
+            for (int i = 0; i < existing; i++)
+            {
+                this.segments[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            }
+        }
+
+        /**
+         * @param row the index of a row
+         * @return the segment of the row, which is mapped when it does not exist yet
+         * @throws IOException when the file cannot be extended
+         */
+        private MappedByteBuffer segment(final long row) throws IOException
+        {
+            int index = (int) (row / SEGMENT_ROWS);
+            while (index >= this.segments.length)
+            {
+                // mapping beyond the end of the file would extend it with zeros; write the missing values first
+                long segmentBytes = 8L * SEGMENT_ROWS;
+                long position = this.segments.length * segmentBytes;
+                ByteBuffer fill = ByteBuffer.allocate((int) segmentBytes);
+                long missing = this.isLong ? MISSING_LONG : Double.doubleToRawLongBits(Double.NaN);
+                for (int i = 0; i < SEGMENT_ROWS; i++)
+                {
+                    fill.putLong(missing);
+                }
+                fill.flip();
+                while (fill.hasRemaining())
+                {
+                    this.channel.write(fill, position + fill.position());
+                }
+                MappedByteBuffer segment = this.channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes);
+                MappedByteBuffer[] extended = Arrays.copyOf(this.segments, this.segments.length + 1);
+                extended[this.segments.length] = segment;
+                this.segments = extended;
+            }
+            return this.segments[index];
+        }
+
+        /**
+         * @param row the index of the row
+         * @param value the value
+         * @throws IOException when the file cannot be extended
+         */
+        void putLong(final long row, final long value) throws IOException
+        {
+            segment(row).putLong(8 * (int) (row % SEGMENT_ROWS), value);
+        }
+
+        /**
+         * @param row the index of the row
+         * @param value the value
+         * @throws IOException when the file cannot be extended
+         */
+        void putDouble(final long row, final double value) throws IOException
+        {
+            segment(row).putDouble(8 * (int) (row % SEGMENT_ROWS), value);
+        }
+
+        /**
+         * @param row the index of the row
+         * @return the long value, or the missing value when the row is beyond the mapped segments
+         */
+        long getLong(final long row)
+        {
+            int index = (int) (row / SEGMENT_ROWS);
+            return index < this.segments.length ? this.segments[index].getLong(8 * (int) (row % SEGMENT_ROWS))
+                    : MISSING_LONG;
+        }
+
+        /**
+         * @param row the index of the row
+         * @return the value as a double, or NaN when the value is missing
+         */
+        double getDouble(final long row)
+        {
+            if (this.isLong)
+            {
+                long value = getLong(row);
+                return value == MISSING_LONG ? Double.NaN : value;
+            }
+            int index = (int) (row / SEGMENT_ROWS);
+            return index < this.segments.length ? this.segments[index].getDouble(8 * (int) (row % SEGMENT_ROWS))
+                    : Double.NaN;
+        }
+
+        /**
+         * Convert the long values of the column to double values in place, the missing value to NaN, and write them to the
+         * storage device.
+         */
+        void toDouble()
+        {
+            for (MappedByteBuffer segment : this.segments)
+            {
+                for (int i = 0; i < SEGMENT_ROWS; i++)
+                {
+                    long value = segment.getLong(8 * i);
+                    segment.putDouble(8 * i, value == MISSING_LONG ? Double.NaN : value);
+                }
+                segment.force();
+            }
+            this.isLong = false;
+        }
+
+        /**
+         * Write the changes of the mapped segments to the storage device.
+         */
+        void force()
+        {
+            for (MappedByteBuffer segment : this.segments)
+            {
+                segment.force();
+            }
+        }
+    }
+
+}
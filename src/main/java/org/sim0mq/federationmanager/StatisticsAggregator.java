@@ -0,0 +1,280 @@
+package org.sim0mq.federationmanager;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.djunits.value.vdouble.matrix.base.DoubleMatrix;
+import org.djunits.value.vdouble.scalar.base.DoubleScalar;
+import org.djunits.value.vdouble.vector.base.DoubleVector;
+import org.djunits.value.vfloat.matrix.base.FloatMatrix;
+import org.djunits.value.vfloat.scalar.base.FloatScalar;
+import org.djunits.value.vfloat.vector.base.FloatVector;
+import org.djutils.exceptions.Throw;
+
+/**
+ * StatisticsAggregator folds the values of the output variables of many replications into one {@link StatisticSummary} per
+ * variable, as the values arrive, so the memory use depends on the number of variables, and not on the number of replications,
+ * and the results are available while the experiment runs. A value that is an array, a vector or a matrix is aggregated
+ * element-wise, with a summary per element; a matrix is aggregated row by row. Numbers, booleans, and scalars, vectors and
+ * matrices with a unit (in SI units) are numeric values; other values, such as strings, are not aggregated.
+ * <p>
+ * A run folds its statistics into an aggregator when it has terminated successfully, see {@link ModelRun#setAggregator}. Use
+ * an aggregator per parameter point to compare the points. Aggregators of parts of an experiment can be merged. The
+ * aggregator is thread-safe; it returns copies of its summaries.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class StatisticsAggregator
+{
+    /** the parameter k of the quantile sketches. */
+    private final int sketchSize;
+
+    /** the summaries per variable name, with one summary per element; scalars have one element. */
+    private final Map<String, StatisticSummary[]> summaryMap = new LinkedHashMap<>();
+
+    /** the default parameter k of the quantile sketches, which gives a rank error below 1%. */
+    public static final int DEFAULT_SKETCH_SIZE = 200;
+
+    /**
+     * Create an aggregator with quantile sketches of the default size.
+     */
+    public StatisticsAggregator()
+    {
+        this(DEFAULT_SKETCH_SIZE);
+    }
+
+    /**
+     * Create an aggregator.
+     * @param sketchSize the parameter k of the quantile sketches, at least 8; the rank error of a quantile is about 1.7 / k
+     */
+    public StatisticsAggregator(final int sketchSize)
+    {
+        Throw.when(sketchSize < 8, IllegalArgumentException.class, "sketchSize should be at least 8");
+        this.sketchSize = sketchSize;
+    }
+
+    /**
+     * Fold a value of a variable into its summary.
+     * @param variableName the name of the variable
+     * @param value the value, e.g., the variable value of an MC.3 message
+     * @return whether the value was numeric, and has been aggregated
+     */
+    public synchronized boolean add(final String variableName, final Object value)
+    {
+        Throw.whenNull(variableName, "variableName cannot be null");
+        double[] values = toDoubles(value);
+        if (values == null)
+        {
+            return false;
+        }
+        StatisticSummary[] summaries = summaries(variableName, values.length);
+        for (int i = 0; i < values.length; i++)
+        {
+            summaries[i].add(values[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Fold the values of several variables into their summaries.
+     * @param statistics the values per variable name, e.g., the statistics of a run; values that are not numeric are skipped
+     */
+    public synchronized void addAll(final Map<String, Object> statistics)
+    {
+        for (Map.Entry<String, Object> entry : statistics.entrySet())
+        {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Merge the summaries of another aggregator into this one. The other aggregator is not changed.
+     * @param other the other aggregator
+     */
+    public void merge(final StatisticsAggregator other)
+    {
+        Map<String, StatisticSummary[]> otherMap = other.getSummaryMap();
+        synchronized (this)
+        {
+            for (Map.Entry<String, StatisticSummary[]> entry : otherMap.entrySet())
+            {
+                StatisticSummary[] others = entry.getValue();
+                StatisticSummary[] summaries = summaries(entry.getKey(), others.length);
+                for (int i = 0; i < others.length; i++)
+                {
+                    summaries[i].merge(others[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the summaries of a variable, with at least the given number of elements; new elements start empty.
+     * @param variableName the name of the variable
+     * @param length the number of elements
+     * @return the summaries of the elements
+     */
+    private StatisticSummary[] summaries(final String variableName, final int length)
+    {
+        StatisticSummary[] summaries = this.summaryMap.get(variableName);
+        if (summaries == null || summaries.length < length)
+        {
+            int from = summaries == null ? 0 : summaries.length;
+            summaries = summaries == null ? new StatisticSummary[length] : Arrays.copyOf(summaries, length);
+            for (int i = from; i < length; i++)
+            {
+                summaries[i] = new StatisticSummary(this.sketchSize);
+            }
+            this.summaryMap.put(variableName, summaries);
+        }
+        return summaries;
+    }
+
+    /**
+     * @return the names of the variables that have been aggregated
+     */
+    public synchronized List<String> getVariableNames()
+    {
+        return new ArrayList<>(this.summaryMap.keySet());
+    }
+
+    /**
+     * Return the summary of a scalar variable, or of the first element of an array variable.
+     * @param variableName the name of the variable
+     * @return a copy of the summary, or null when the variable has not been aggregated
+     */
+    public synchronized StatisticSummary getSummary(final String variableName)
+    {
+        StatisticSummary[] summaries = this.summaryMap.get(variableName);
+        return summaries == null ? null : summaries[0].copy();
+    }
+
+    /**
+     * Return the summaries of the elements of an array variable.
+     * @param variableName the name of the variable
+     * @return copies of the summaries per element, or null when the variable has not been aggregated
+     */
+    public synchronized StatisticSummary[] getSummaries(final String variableName)
+    {
+        StatisticSummary[] summaries = this.summaryMap.get(variableName);
+        if (summaries == null)
+        {
+            return null;
+        }
+        StatisticSummary[] copies = new StatisticSummary[summaries.length];
+        for (int i = 0; i < summaries.length; i++)
+        {
+            copies[i] = summaries[i].copy();
+        }
+        return copies;
+    }
+
+    /**
+     * @return copies of all summaries per variable name
+     */
+    private synchronized Map<String, StatisticSummary[]> getSummaryMap()
+    {
+        Map<String, StatisticSummary[]> copy = new LinkedHashMap<>();
+        for (String variableName : this.summaryMap.keySet())
+        {
+            copy.put(variableName, getSummaries(variableName));
+        }
+        return copy;
+    }
+
+    /**
+     * Convert a value to its numeric elements.
+     * @param value the value
+     * @return the elements of the value, or null when it is not numeric
+     */
+    static double[] toDoubles(final Object value)
+    {
+        if (value instanceof Number)
+        {
+            return new double[] {((Number) value).doubleValue()};
+        }
+        if (value instanceof Boolean)
+        {
+            return new double[] {((Boolean) value).booleanValue() ? 1.0 : 0.0};
+        }
+        if (value instanceof DoubleScalar)
+        {
+            return new double[] {((DoubleScalar<?, ?>) value).getSI()};
+        }
+        if (value instanceof FloatScalar)
+        {
+            return new double[] {((FloatScalar<?, ?>) value).getSI()};
+        }
+        if (value instanceof DoubleVector)
+        {
+            return ((DoubleVector<?, ?, ?>) value).getValuesSI();
+        }
+        if (value instanceof FloatVector)
+        {
+            return toDoubles(((FloatVector<?, ?, ?>) value).getValuesSI());
+        }
+        if (value instanceof DoubleMatrix)
+        {
+            return toDoubles(((DoubleMatrix<?, ?, ?, ?>) value).getValuesSI());
+        }
+        if (value instanceof FloatMatrix)
+        {
+            return toDoubles(((FloatMatrix<?, ?, ?, ?>) value).getValuesSI());
+        }
+        if (value instanceof double[])
+        {
+            return ((double[]) value).clone();
+        }
+        if (value instanceof float[] || value instanceof long[] || value instanceof int[] || value instanceof short[]
+                || value instanceof byte[] || value instanceof Number[])
+        {
+            int length = Array.getLength(value);
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++)
+            {
+                values[i] = ((Number) Array.get(value, i)).doubleValue();
+            }
+            return values;
+        }
+        if (value instanceof Object[] && value.getClass().getComponentType().isArray())
+        {
+            // a matrix, row by row
+            List<double[]> rows = new ArrayList<>();
+            int length = 0;
+            for (Object row : (Object[]) value)
+            {
+                double[] values = toDoubles(row);
+                if (values == null)
+                {
+                    return null;
+                }
+                rows.add(values);
+                length += values.length;
+            }
+            double[] values = new double[length];
+            int i = 0;
+            for (double[] row : rows)
+            {
+                System.arraycopy(row, 0, values, i, row.length);
+                i += row.length;
+            }
+            return values;
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "StatisticsAggregator [variables=" + this.summaryMap.keySet() + "]";
+    }
+
+}
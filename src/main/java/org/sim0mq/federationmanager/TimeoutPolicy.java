@@ -0,0 +1,110 @@
+package org.sim0mq.federationmanager;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * TimeoutPolicy tells a FederationManager how long to wait for the reply to a request of one kind of {@link Interaction}, how
+ * often to send the request again, and whether to restart the model when the retries have been used up. A request is sent
+ * again with the same message id, so a FederateStarter or model controller that has seen the message id before can answer
+ * again without carrying out the request twice. When no retries are left, the run is restarted with a new model when it has
+ * restarts left; otherwise it fails, and its model is killed with FM.8.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TimeoutPolicy
+{
+    /** the time in ms to wait for a reply, or 0 to wait forever. */
+    private final long timeout;
+
+    /** the number of times that the request is sent again. */
+    private final int maxRetries;
+
+    /** the number of times that a run is restarted, over all its interactions. */
+    private final int maxRestarts;
+
+    /** the policy that waits forever. */
+    public static final TimeoutPolicy NONE = new TimeoutPolicy(0L, 0, 0);
+
+    /**
+     * Create a policy.
+     * @param timeout the time in ms to wait for a reply, or 0 to wait forever
+     * @param maxRetries the number of times that the request is sent again, each time with the same timeout
+     * @param maxRestarts the number of times that a run is restarted with a new model, counted over all its interactions,
+     *            before it fails
+     * @throws IllegalArgumentException when one of the parameters is negative
+     */
+    public TimeoutPolicy(final long timeout, final int maxRetries, final int maxRestarts)
+    {
+        Throw.when(timeout < 0, IllegalArgumentException.class, "timeout should be >= 0");
+        Throw.when(maxRetries < 0, IllegalArgumentException.class, "maxRetries should be >= 0");
+        Throw.when(maxRestarts < 0, IllegalArgumentException.class, "maxRestarts should be >= 0");
+        this.timeout = timeout;
+        this.maxRetries = maxRetries;
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * @return the time in ms to wait for a reply, or 0 to wait forever
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * @return the number of times that the request is sent again
+     */
+    public int getMaxRetries()
+    {
+        return this.maxRetries;
+    }
+
+    /**
+     * @return the number of times that a run is restarted with a new model before it fails
+     */
+    public int getMaxRestarts()
+    {
+        return this.maxRestarts;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TimeoutPolicy [timeout=" + this.timeout + ", maxRetries=" + this.maxRetries + ", maxRestarts="
+                + this.maxRestarts + "]";
+    }
+
+    /**
+     * The kinds of request of a FederationManager that wait for a reply, each with its own policy.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public enum Interaction
+    {
+        /** FM.1 StartFederate, answered by FS.2 FederateStarted. */
+        START,
+
+        /** FM.2 SimRunControl, FM.3 SetParameter, FM.4 SimStart and FM.14 SetParameters, answered by MC.2 AckNak. */
+        CONTROL,
+
+        /** FM.5 RequestStatus, answered by MC.1 Status. */
+        STATUS,
+
+        /** FM.6 RequestStatistics, answered by MC.3 or MC.4, and FM.13 RequestStatisticsList, answered by MC.5. */
+        STATISTICS,
+
+        /** FM.8 KillFederate, answered by FS.4 FederateKilled. */
+        KILL,
+
+        /** HB.1 Heartbeat, answered by HB.2 Alive. */
+        HEARTBEAT;
+    }
+
+}
@@ -0,0 +1,305 @@
+package org.sim0mq.federationmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+
+/**
+ * TimerWheel is a hashed timing wheel: a ring of buckets, one per tick, in which a timer is linked into the bucket of the tick
+ * at which it is due. Scheduling and cancelling a timer take constant time, whatever the number of timers, so every
+ * outstanding request of a FederationManager can get its own deadline. A timer that is due more than one revolution ahead
+ * stays in its bucket until the wheel reaches its tick in the right revolution. Timers fire at the first tick at or after the
+ * time at which they are due, in the order in which they were scheduled when they are due at the same tick.
+ * <p>
+ * The wheel is not thread-safe; it is meant to be used by the thread of an event loop, which calls {@link #advance} in every
+ * iteration.
+ * </p>
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TimerWheel
+{
+    /** the duration of a tick in ms. */
+    private final long tickDuration;
+
+    /** the first timer per bucket. */
+    private final Timeout[] heads;
+
+    /** the last timer per bucket. */
+    private final Timeout[] tails;
+
+    /** the mask to compute the bucket of a tick; the number of buckets is a power of two. */
+    private final int mask;
+
+    /** the last tick that has been processed. */
+    private long tick;
+
+    /** the number of timers that have been scheduled, and have not fired or been cancelled. */
+    private int size = 0;
+
+    /**
+     * Create a timer wheel.
+     * @param tickDuration the duration of a tick in ms, which is the resolution of the timers
+     * @param numberBuckets the number of buckets, which is rounded up to a power of two; one revolution of the wheel takes
+     *            numberBuckets ticks
+     * @param now the current time in ms
+     * @throws IllegalArgumentException when tickDuration or numberBuckets is not positive
+     */
+    public TimerWheel(final long tickDuration, final int numberBuckets, final long now)
+    {
+        Throw.when(tickDuration <= 0, IllegalArgumentException.class, "tickDuration should be positive");
+        Throw.when(numberBuckets <= 0 || numberBuckets > 1 << 30, IllegalArgumentException.class,
+                "numberBuckets should be between 1 and 2^30");
+        this.tickDuration = tickDuration;
+        int n = Integer.highestOneBit(numberBuckets);
+        n = n < numberBuckets ? n << 1 : n;
+        this.heads = new Timeout[n];
+        this.tails = new Timeout[n];
+        this.mask = n - 1;
+        this.tick = now / tickDuration;
+    }
+
+    /**
+     * Schedule an action.
+     * @param due the time in ms at which the action is due; a time in the past lets it fire at the next tick
+     * @param action the action
+     * @return the timer, which can be cancelled
+     */
+    public Timeout schedule(final long due, final Runnable action)
+    {
+        Throw.whenNull(action, "action cannot be null");
+        Timeout timeout = new Timeout(this, Math.max(this.tick + 1, (due + this.tickDuration - 1) / this.tickDuration), action);
+        int bucket = (int) (timeout.dueTick & this.mask);
+        timeout.bucket = bucket;
+        timeout.previous = this.tails[bucket];
+        if (this.tails[bucket] == null)
+        {
+            this.heads[bucket] = timeout;
+        }
+        else
+        {
+            this.tails[bucket].next = timeout;
+        }
+        this.tails[bucket] = timeout;
+        this.size++;
+        return timeout;
+    }
+
+    /**
+     * Fire the timers that are due at the ticks up to the current time.
+     * @param now the current time in ms
+     * @return the number of timers that fired
+     */
+    public int advance(final long now)
+    {
+        long nowTick = now / this.tickDuration;
+        int fired = 0;
+        if (nowTick - this.tick > this.mask)
+        {
+            // more than one revolution has passed: visit every bucket once, from the oldest tick onwards
+            long first = this.tick + 1;
+            this.tick = nowTick;
+            for (long t = first; t <= first + this.mask; t++)
+            {
+                fired += fire((int) (t & this.mask), nowTick);
+            }
+            return fired;
+        }
+        while (this.tick < nowTick)
+        {
+            this.tick++;
+            fired += fire((int) (this.tick & this.mask), this.tick);
+        }
+        return fired;
+    }
+
+    /**
+     * Fire the timers in a bucket that are due at or before a tick. The due timers are unlinked first, so their actions can
+     * schedule and cancel timers, including the ones in this bucket. Since the timers have been unlinked, an action that
+     * throws a RuntimeException is logged, and the other timers still fire.
+     * @param bucket the bucket
+     * @param dueTick the last tick at which a timer that fires is due
+     * @return the number of timers that fired
+     */
+    private int fire(final int bucket, final long dueTick)
+    {
+        List<Timeout> due = null;
+        Timeout timeout = this.heads[bucket];
+        while (timeout != null)
+        {
+            Timeout next = timeout.next;
+            if (timeout.dueTick <= dueTick)
+            {
+                unlink(timeout);
+                if (due == null)
+                {
+                    due = new ArrayList<>();
+                }
+                due.add(timeout);
+            }
+            timeout = next;
+        }
+        if (due == null)
+        {
+            return 0;
+        }
+        int fired = 0;
+        for (Timeout t : due)
+        {
+            // an earlier action in this bucket can have cancelled the timer
+            if (!t.cancelled)
+            {
+                t.cancelled = true;
+                fired++;
+                try
+                {
+                    t.action.run();
+                }
+                catch (RuntimeException exception)
+                {
+                    System.err.println("TimerWheel caught " + exception + " in the action of a timer");
+                    exception.printStackTrace();
+                }
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Remove a timer from its bucket.
+     * @param timeout the timer, which is in a bucket
+     */
+    private void unlink(final Timeout timeout)
+    {
+        if (timeout.previous == null)
+        {
+            this.heads[timeout.bucket] = timeout.next;
+        }
+        else
+        {
+            timeout.previous.next = timeout.next;
+        }
+        if (timeout.next == null)
+        {
+            this.tails[timeout.bucket] = timeout.previous;
+        }
+        else
+        {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        this.size--;
+    }
+
+    /**
+     * Return an upper bound of the time till the next timer can fire, to limit the time that an event loop waits: the time
+     * till the first tick with a scheduled timer, looking at most maxDelay ms ahead.
+     * @param now the current time in ms
+     * @param maxDelay the maximum delay in ms
+     * @return the time in ms till the next timer can fire, or maxDelay when no timer can fire earlier
+     */
+    public long delay(final long now, final long maxDelay)
+    {
+        long lastTick = (now + maxDelay) / this.tickDuration;
+        for (long t = this.tick + 1; t <= lastTick && t <= this.tick + 1 + this.mask; t++)
+        {
+            if (this.heads[(int) (t & this.mask)] != null)
+            {
+                return Math.max(0L, Math.min(maxDelay, t * this.tickDuration - now));
+            }
+        }
+        return maxDelay;
+    }
+
+    /**
+     * @return the number of timers that have been scheduled, and have not fired or been cancelled
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TimerWheel [tickDuration=" + this.tickDuration + ", buckets=" + this.heads.length + ", size=" + this.size + "]";
+    }
+
+    /**
+     * A timer in the wheel.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class Timeout
+    {
+        /** the wheel of the timer. */
+        private final TimerWheel wheel;
+
+        /** the tick at which the timer is due. */
+        private final long dueTick;
+
+        /** the action. */
+        private final Runnable action;
+
+        /** the bucket in which the timer is linked, or -1 when it is not linked. */
+        private int bucket = -1;
+
+        /** the previous timer in the bucket. */
+        private Timeout previous = null;
+
+        /** the next timer in the bucket. */
+        private Timeout next = null;
+
+        /** whether the timer has fired or has been cancelled. */
+        private boolean cancelled = false;
+
+        /**
+         * @param wheel the wheel of the timer
+         * @param dueTick the tick at which the timer is due
+         * @param action the action
+         */
+        Timeout(final TimerWheel wheel, final long dueTick, final Runnable action)
+        {
+            this.wheel = wheel;
+            this.dueTick = dueTick;
+            this.action = action;
+        }
+
+        /**
+         * Cancel the timer, unless it has fired already.
+         * @return whether the timer was cancelled before it fired
+         */
+        public boolean cancel()
+        {
+            if (this.cancelled)
+            {
+                return false;
+            }
+            this.cancelled = true;
+            if (this.bucket >= 0)
+            {
+                this.wheel.unlink(this);
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the timer has fired or has been cancelled
+         */
+        public boolean isDone()
+        {
+            return this.cancelled;
+        }
+    }
+
+}
@@ -1,7 +1,7 @@
 /**
- * The FederationManager is an example class that sends messages to FederateStarters to start model components, loggers, data
- * collectors, etc. It can start a federation as soon as all required model components are on-line. It might kill model
- * components that take too long to finish.
+ * The FederationManager sends messages to FederateStarters to start model components, loggers, data collectors, etc. It moves
+ * every model run through the states of model execution, from the start of the model to the gathering of its statistics, and
+ * kills the model when it is done. One event loop handles the runs of many models at the same time.
  * <p>
  * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
  * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
@@ -1,11 +1,16 @@
 package org.sim0mq.message.federatestarter;
 
+import org.djunits.value.vdouble.scalar.Duration;
 import org.djutils.exceptions.Throw;
 import org.sim0mq.Sim0MQException;
 import org.sim0mq.message.Sim0MQMessage;
 
 /**
- * FederateStarted, FS.2. Message sent by the Federate Starter to the Federation Manager in response to message FM.1.
+ * FederateStarted, FS.2. Message sent by the Federate Starter to the Federation Manager in response to message FM.1. When the
+ * Federate Starter queues the start because the node is overloaded, the status is "queued", and an optional fifth field gives
+ * the estimated wait till the start. The Federation Manager can then send the same FM.1 message again to learn the outcome.
+ * When the Federate Starter hands out the process of an earlier instance again, an optional sixth field gives the id that the
+ * model uses, which the Federation Manager should use as the receiver id of its messages to the model.
  * <p>
  * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
  * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
@@ -23,7 +28,7 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
      */
     private final Object instanceId;
 
-    /** A string that refers to the model status. Four options: "started", "running", "ended", "error". */
+    /** A string that refers to the model status. Five options: "started", "running", "ended", "error", "queued". */
     private final String status;
 
     /** The model port number. We use an int in Java due to the fact there is no unsigned short. */
@@ -32,6 +37,12 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
     /** Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string. */
     private final String error;
 
+    /** Optional. The estimated wait till a queued start; zero when the field is not part of the message. */
+    private final Duration estimatedWait;
+
+    /** Optional. The id that the model uses, when it differs from the instanceId; else the instanceId. */
+    private final Object modelId;
+
     /** the unique message id. */
     private static final String MESSAGETYPE = "FS.2";
 
@@ -46,7 +57,7 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
      *            correctly. The number is unique for the sender, so not globally within the federation.
      * @param instanceId The sender id of the model that was started or had an error while starting. This is exactly the same as
      *            the instanceId sent by the Federation Manager in the StartFederate message.
-     * @param status A string that refers to the model status. Four options: "started", "running", "ended", "error".
+     * @param status A string that refers to the model status. Five options: "started", "running", "ended", "error", "queued".
      * @param modelPort The model port number. We use an int in Java due to the fact there is no unsigned short.
      * @param error Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string.
      * @throws Sim0MQException on unknown data type
@@ -61,6 +72,61 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
                 instanceId, status, modelPort, error});
     }
 
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId The sender id of the model that was started or had an error while starting. This is exactly the same as
+     *            the instanceId sent by the Federation Manager in the StartFederate message.
+     * @param status A string that refers to the model status. Five options: "started", "running", "ended", "error", "queued".
+     * @param modelPort The model port number. We use an int in Java due to the fact there is no unsigned short.
+     * @param error Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string.
+     * @param estimatedWait The estimated wait till a queued start.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FS2FederateStartedMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final String status, final int modelPort, final String error,
+            final Duration estimatedWait) throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 5,
+                instanceId, status, modelPort, error, estimatedWait});
+    }
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId The sender id of the model that was started or had an error while starting. This is exactly the same as
+     *            the instanceId sent by the Federation Manager in the StartFederate message.
+     * @param status A string that refers to the model status. Five options: "started", "running", "ended", "error", "queued".
+     * @param modelPort The model port number. We use an int in Java due to the fact there is no unsigned short.
+     * @param error Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string.
+     * @param estimatedWait The estimated wait till a queued start, zero when the start was not queued.
+     * @param modelId The id that the model uses, e.g., the instanceId of the earlier instance of a reused process.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FS2FederateStartedMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final String status, final int modelPort, final String error,
+            final Duration estimatedWait, final Object modelId) throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 6,
+                instanceId, status, modelPort, error, estimatedWait, modelId});
+    }
+
     /**
      * @param objectArray Object[]; the fields that constitute the message
      * @throws Sim0MQException on unknown data type
@@ -68,7 +134,7 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
      */
     public FS2FederateStartedMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
     {
-        super(objectArray, 4, MESSAGETYPE);
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
 
         this.instanceId = objectArray[8];
         Throw.when(!(objectArray[9] instanceof String), Sim0MQException.class, "status (field 9) should be a String");
@@ -76,14 +142,39 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
         Throw.when(this.status.isEmpty(), Sim0MQException.class, "status cannot be empty");
         Throw.when(
                 !this.status.equals("started") && !this.status.equals("running") && !this.status.equals("ended")
-                        && !this.status.equals("error"),
-                Sim0MQException.class, "status should be one of 'started', 'running', 'ended', 'error'");
+                        && !this.status.equals("error") && !this.status.equals("queued"),
+                Sim0MQException.class, "status should be one of 'started', 'running', 'ended', 'error', 'queued'");
         Throw.when(!(objectArray[10] instanceof Integer), Sim0MQException.class, "modelPort (field 10) should be an Integer");
         this.modelPort = (Integer) objectArray[10];
         Throw.when(this.modelPort < 0 || this.modelPort > 65535, Sim0MQException.class,
                 "modelPort should be between 0 and 65535");
         Throw.when(!(objectArray[11] instanceof String), Sim0MQException.class, "error (field 11) should be a String");
         this.error = objectArray[11].toString();
+        if (objectArray.length > 12)
+        {
+            Throw.when(!(objectArray[12] instanceof Duration), Sim0MQException.class,
+                    "estimatedWait (field 12) should be a Duration");
+            this.estimatedWait = (Duration) objectArray[12];
+        }
+        else
+        {
+            this.estimatedWait = Duration.ZERO;
+        }
+        this.modelId = objectArray.length > 13 ? objectArray[13] : this.instanceId;
+    }
+
+    /**
+     * Calculate the number of payload fields, which is 4 without, 5 with the optional estimatedWait field, and 6 with the
+     * optional modelId field as well.
+     * @param objectArray the array with the fields of the message
+     * @return the number of payload fields
+     * @throws Sim0MQException when the number of fields is not 4, 5 or 6
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 12 || objectArray.length > 14, Sim0MQException.class,
+                "FS2FederateStartedMessage should have 4, 5 or 6 fields but has " + (objectArray.length - 8) + " fields");
+        return objectArray.length - 8;
     }
 
     /**
@@ -118,6 +209,23 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
         return this.error;
     }
 
+    /**
+     * @return estimatedWait
+     */
+    public Duration getEstimatedWait()
+    {
+        return this.estimatedWait;
+    }
+
+    /**
+     * @return modelId, the id that the model uses; the same as the instanceId unless the process of an earlier instance was
+     *         reused
+     */
+    public Object getModelId()
+    {
+        return this.modelId;
+    }
+
     /**
      * Builder for the FederateStarted Message. Can string setters together, and call build() at the end to build the actual
      * message.
@@ -136,7 +244,7 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
          */
         private Object instanceId;
 
-        /** A string that refers to the model status. Four options: "started", "running", "ended", "error". */
+        /** A string that refers to the model status. Five options: "started", "running", "ended", "error", "queued". */
         private String status;
 
         /** The model port number. We use an int in Java due to the fact there is no unsigned short. */
@@ -145,6 +253,12 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
         /** Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string. */
         private String error;
 
+        /** Optional. The estimated wait till a queued start; when null, the field is not part of the message. */
+        private Duration estimatedWait = null;
+
+        /** Optional. The id that the model uses; when null, the field is not part of the message. */
+        private Object modelId = null;
+
         /**
          * Empty constructor.
          */
@@ -193,9 +307,40 @@ public class FS2FederateStartedMessage extends Sim0MQMessage
             return this;
         }
 
+        /**
+         * @param newEstimatedWait set estimatedWait
+         * @return the original object for chaining
+         */
+        public final Builder setEstimatedWait(final Duration newEstimatedWait)
+        {
+            this.estimatedWait = newEstimatedWait;
+            return this;
+        }
+
+        /**
+         * @param newModelId set modelId, the id that the model uses when it differs from the instanceId
+         * @return the original object for chaining
+         */
+        public final Builder setModelId(final Object newModelId)
+        {
+            this.modelId = newModelId;
+            return this;
+        }
+
         @Override
         public FS2FederateStartedMessage build() throws Sim0MQException, NullPointerException
         {
+            if (this.modelId != null)
+            {
+                return new FS2FederateStartedMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                        this.instanceId, this.status, this.modelPort, this.error,
+                        this.estimatedWait == null ? Duration.ZERO : this.estimatedWait, this.modelId);
+            }
+            if (this.estimatedWait != null)
+            {
+                return new FS2FederateStartedMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                        this.instanceId, this.status, this.modelPort, this.error, this.estimatedWait);
+            }
             return new FS2FederateStartedMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
                     this.instanceId, this.status, this.modelPort, this.error);
         }
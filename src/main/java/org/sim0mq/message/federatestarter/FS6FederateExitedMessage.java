@@ -0,0 +1,174 @@
+package org.sim0mq.message.federatestarter;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * FederateExited, FS.6. Unsolicited message sent by the Federate Starter to the Federation Manager that started a federate,
+ * when the process of the federate exits or crashes on its own, i.e., without an FM.8 or FM.9 message. Since the message is not
+ * a reply, the Federation Manager should use a DEALER socket to receive it.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FS6FederateExitedMessage extends Sim0MQMessage
+{
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /** The instance id of the federate that exited, exactly the same as the instanceId of the StartFederate message. */
+    private final Object instanceId;
+
+    /** The exit code of the process; by convention, 0 indicates a normal termination. */
+    private final int exitCode;
+
+    /** The time that the federate ran, from the start of the process till its exit. */
+    private final Duration runtime;
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FS.6";
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId The instance id of the federate that exited. This is exactly the same as the instanceId sent by the
+     *            Federation Manager in the StartFederate message.
+     * @param exitCode The exit code of the process; by convention, 0 indicates a normal termination.
+     * @param runtime The time that the federate ran, from the start of the process till its exit.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FS6FederateExitedMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final int exitCode, final Duration runtime)
+            throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 3,
+                instanceId, exitCode, runtime});
+    }
+
+    /**
+     * @param objectArray Object[]; the fields that constitute the message
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FS6FederateExitedMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, 3, MESSAGETYPE);
+        this.instanceId = objectArray[8];
+        Throw.when(!(objectArray[9] instanceof Integer), Sim0MQException.class, "exitCode (field 9) should be an Integer");
+        this.exitCode = ((Integer) objectArray[9]).intValue();
+        Throw.when(!(objectArray[10] instanceof Duration), Sim0MQException.class, "runtime (field 10) should be a Duration");
+        this.runtime = (Duration) objectArray[10];
+    }
+
+    /**
+     * @return instanceId
+     */
+    public Object getInstanceId()
+    {
+        return this.instanceId;
+    }
+
+    /**
+     * @return exitCode
+     */
+    public int getExitCode()
+    {
+        return this.exitCode;
+    }
+
+    /**
+     * @return runtime
+     */
+    public Duration getRuntime()
+    {
+        return this.runtime;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the FederateExited Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FS6FederateExitedMessage.Builder>
+    {
+        /** The instance id of the federate that exited. */
+        private Object instanceId;
+
+        /** The exit code of the process. */
+        private int exitCode;
+
+        /** The time that the federate ran. */
+        private Duration runtime;
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newInstanceId set instanceId
+         * @return the original object for chaining
+         */
+        public final Builder setInstanceId(final Object newInstanceId)
+        {
+            this.instanceId = newInstanceId;
+            return this;
+        }
+
+        /**
+         * @param newExitCode set exitCode
+         * @return the original object for chaining
+         */
+        public final Builder setExitCode(final int newExitCode)
+        {
+            this.exitCode = newExitCode;
+            return this;
+        }
+
+        /**
+         * @param newRuntime set runtime
+         * @return the original object for chaining
+         */
+        public final Builder setRuntime(final Duration newRuntime)
+        {
+            this.runtime = newRuntime;
+            return this;
+        }
+
+        @Override
+        public FS6FederateExitedMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FS6FederateExitedMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.instanceId, this.exitCode, this.runtime);
+        }
+
+    }
+}
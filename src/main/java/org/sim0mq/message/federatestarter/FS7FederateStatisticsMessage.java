@@ -0,0 +1,314 @@
+package org.sim0mq.message.federatestarter;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * FederateStatistics, FS.7. Message sent by the Federate Starter to the Federation Manager in response to message FM.10. The
+ * message contains the time series of the resource usage of the federate, sampled from /proc at a fixed interval, oldest sample
+ * first. All arrays have the same length, which is 0 when no samples are available.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FS7FederateStatisticsMessage extends Sim0MQMessage
+{
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /** The instance id of the federate, exactly the same as the instanceId of the RequestFederateStatistics message. */
+    private final Object instanceId;
+
+    /** Whether the statistics of the federate are available. */
+    private final boolean status;
+
+    /** If the statistics are not available, the error message. Otherwise this field is an empty string. */
+    private final String error;
+
+    /** The times of the samples in ms since the epoch (System.currentTimeMillis). */
+    private final Long[] sampleTimes;
+
+    /** The CPU load of the federate per sample, as a fraction of one core, over the interval since the previous sample. */
+    private final Double[] cpuLoad;
+
+    /** The resident memory (RSS) of the federate per sample in bytes. */
+    private final Long[] residentMemory;
+
+    /** The cumulative number of bytes read from storage by the federate per sample, or -1 when unknown. */
+    private final Long[] readBytes;
+
+    /** The cumulative number of bytes written to storage by the federate per sample, or -1 when unknown. */
+    private final Long[] writeBytes;
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FS.7";
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId The instance id of the federate, exactly the same as the instanceId of the RequestFederateStatistics
+     *            message.
+     * @param status Whether the statistics of the federate are available.
+     * @param error If the statistics are not available, the error message. Otherwise this field is an empty string.
+     * @param sampleTimes The times of the samples in ms since the epoch.
+     * @param cpuLoad The CPU load of the federate per sample, as a fraction of one core.
+     * @param residentMemory The resident memory (RSS) of the federate per sample in bytes.
+     * @param readBytes The cumulative number of bytes read from storage by the federate per sample, or -1 when unknown.
+     * @param writeBytes The cumulative number of bytes written to storage by the federate per sample, or -1 when unknown.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FS7FederateStatisticsMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final boolean status, final String error, final Long[] sampleTimes,
+            final Double[] cpuLoad, final Long[] residentMemory, final Long[] readBytes, final Long[] writeBytes)
+            throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 8,
+                instanceId, status, error, sampleTimes, cpuLoad, residentMemory, readBytes, writeBytes});
+    }
+
+    /**
+     * @param objectArray Object[]; the fields that constitute the message
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FS7FederateStatisticsMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, 8, MESSAGETYPE);
+        this.instanceId = objectArray[8];
+        Throw.when(!(objectArray[9] instanceof Boolean), Sim0MQException.class, "status (field 9) should be a Boolean");
+        this.status = ((Boolean) objectArray[9]).booleanValue();
+        Throw.when(!(objectArray[10] instanceof String), Sim0MQException.class, "error (field 10) should be a String");
+        this.error = objectArray[10].toString();
+        Throw.when(!(objectArray[11] instanceof Long[]), Sim0MQException.class, "sampleTimes (field 11) should be a Long[]");
+        this.sampleTimes = (Long[]) objectArray[11];
+        Throw.when(!(objectArray[12] instanceof Double[]), Sim0MQException.class, "cpuLoad (field 12) should be a Double[]");
+        this.cpuLoad = (Double[]) objectArray[12];
+        Throw.when(!(objectArray[13] instanceof Long[]), Sim0MQException.class,
+                "residentMemory (field 13) should be a Long[]");
+        this.residentMemory = (Long[]) objectArray[13];
+        Throw.when(!(objectArray[14] instanceof Long[]), Sim0MQException.class, "readBytes (field 14) should be a Long[]");
+        this.readBytes = (Long[]) objectArray[14];
+        Throw.when(!(objectArray[15] instanceof Long[]), Sim0MQException.class, "writeBytes (field 15) should be a Long[]");
+        this.writeBytes = (Long[]) objectArray[15];
+        int n = this.sampleTimes.length;
+        Throw.when(this.cpuLoad.length != n || this.residentMemory.length != n || this.readBytes.length != n
+                || this.writeBytes.length != n, Sim0MQException.class, "all sample arrays should have the same length");
+    }
+
+    /**
+     * @return instanceId
+     */
+    public Object getInstanceId()
+    {
+        return this.instanceId;
+    }
+
+    /**
+     * @return status
+     */
+    public boolean isStatus()
+    {
+        return this.status;
+    }
+
+    /**
+     * @return error
+     */
+    public String getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @return sampleTimes
+     */
+    public Long[] getSampleTimes()
+    {
+        return this.sampleTimes;
+    }
+
+    /**
+     * @return cpuLoad
+     */
+    public Double[] getCpuLoad()
+    {
+        return this.cpuLoad;
+    }
+
+    /**
+     * @return residentMemory
+     */
+    public Long[] getResidentMemory()
+    {
+        return this.residentMemory;
+    }
+
+    /**
+     * @return readBytes
+     */
+    public Long[] getReadBytes()
+    {
+        return this.readBytes;
+    }
+
+    /**
+     * @return writeBytes
+     */
+    public Long[] getWriteBytes()
+    {
+        return this.writeBytes;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the FederateStatistics Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FS7FederateStatisticsMessage.Builder>
+    {
+        /** The instance id of the federate. */
+        private Object instanceId;
+
+        /** Whether the statistics of the federate are available. */
+        private boolean status;
+
+        /** If the statistics are not available, the error message. */
+        private String error;
+
+        /** The times of the samples in ms since the epoch. */
+        private Long[] sampleTimes;
+
+        /** The CPU load of the federate per sample, as a fraction of one core. */
+        private Double[] cpuLoad;
+
+        /** The resident memory (RSS) of the federate per sample in bytes. */
+        private Long[] residentMemory;
+
+        /** The cumulative number of bytes read from storage per sample. */
+        private Long[] readBytes;
+
+        /** The cumulative number of bytes written to storage per sample. */
+        private Long[] writeBytes;
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newInstanceId set instanceId
+         * @return the original object for chaining
+         */
+        public final Builder setInstanceId(final Object newInstanceId)
+        {
+            this.instanceId = newInstanceId;
+            return this;
+        }
+
+        /**
+         * @param newStatus set status
+         * @return the original object for chaining
+         */
+        public final Builder setStatus(final boolean newStatus)
+        {
+            this.status = newStatus;
+            return this;
+        }
+
+        /**
+         * @param newError set error
+         * @return the original object for chaining
+         */
+        public final Builder setError(final String newError)
+        {
+            this.error = newError;
+            return this;
+        }
+
+        /**
+         * @param newSampleTimes set sampleTimes
+         * @return the original object for chaining
+         */
+        public final Builder setSampleTimes(final Long[] newSampleTimes)
+        {
+            this.sampleTimes = newSampleTimes;
+            return this;
+        }
+
+        /**
+         * @param newCpuLoad set cpuLoad
+         * @return the original object for chaining
+         */
+        public final Builder setCpuLoad(final Double[] newCpuLoad)
+        {
+            this.cpuLoad = newCpuLoad;
+            return this;
+        }
+
+        /**
+         * @param newResidentMemory set residentMemory
+         * @return the original object for chaining
+         */
+        public final Builder setResidentMemory(final Long[] newResidentMemory)
+        {
+            this.residentMemory = newResidentMemory;
+            return this;
+        }
+
+        /**
+         * @param newReadBytes set readBytes
+         * @return the original object for chaining
+         */
+        public final Builder setReadBytes(final Long[] newReadBytes)
+        {
+            this.readBytes = newReadBytes;
+            return this;
+        }
+
+        /**
+         * @param newWriteBytes set writeBytes
+         * @return the original object for chaining
+         */
+        public final Builder setWriteBytes(final Long[] newWriteBytes)
+        {
+            this.writeBytes = newWriteBytes;
+            return this;
+        }
+
+        @Override
+        public FS7FederateStatisticsMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FS7FederateStatisticsMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.instanceId, this.status, this.error, this.sampleTimes, this.cpuLoad, this.residentMemory,
+                    this.readBytes, this.writeBytes);
+        }
+
+    }
+}
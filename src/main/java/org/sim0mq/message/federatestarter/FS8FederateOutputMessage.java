@@ -0,0 +1,254 @@
+package org.sim0mq.message.federatestarter;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * FederateOutput, FS.8. Message sent by the Federate Starter to the Federation Manager in response to message FM.11. The
+ * message contains the tail of the captured stdout or stderr of the federate, and the total number of bytes that the federate
+ * wrote to the stream, so the Federation Manager can see how much output was not returned.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FS8FederateOutputMessage extends Sim0MQMessage
+{
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /** The instance id of the federate, exactly the same as the instanceId of the RequestFederateOutput message. */
+    private final Object instanceId;
+
+    /** The stream of the output, exactly the same as the stream of the RequestFederateOutput message. */
+    private final String stream;
+
+    /** Whether the output of the federate is available. */
+    private final boolean status;
+
+    /** If the output is not available, the error message. Otherwise this field is an empty string. */
+    private final String error;
+
+    /** The total number of bytes that the federate wrote to the stream. */
+    private final long totalBytes;
+
+    /** The tail of the captured output, decoded as UTF-8. */
+    private final String output;
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FS.8";
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId The instance id of the federate, exactly the same as the instanceId of the RequestFederateOutput
+     *            message.
+     * @param stream The stream of the output, "stdout" or "stderr".
+     * @param status Whether the output of the federate is available.
+     * @param error If the output is not available, the error message. Otherwise this field is an empty string.
+     * @param totalBytes The total number of bytes that the federate wrote to the stream.
+     * @param output The tail of the captured output, decoded as UTF-8.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FS8FederateOutputMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final String stream, final boolean status, final String error,
+            final long totalBytes, final String output) throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 6,
+                instanceId, stream, status, error, totalBytes, output});
+    }
+
+    /**
+     * @param objectArray Object[]; the fields that constitute the message
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FS8FederateOutputMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, 6, MESSAGETYPE);
+        this.instanceId = objectArray[8];
+        Throw.when(!(objectArray[9] instanceof String), Sim0MQException.class, "stream (field 9) should be a String");
+        this.stream = objectArray[9].toString();
+        Throw.when(!(objectArray[10] instanceof Boolean), Sim0MQException.class, "status (field 10) should be a Boolean");
+        this.status = ((Boolean) objectArray[10]).booleanValue();
+        Throw.when(!(objectArray[11] instanceof String), Sim0MQException.class, "error (field 11) should be a String");
+        this.error = objectArray[11].toString();
+        Throw.when(!(objectArray[12] instanceof Long), Sim0MQException.class, "totalBytes (field 12) should be a Long");
+        this.totalBytes = ((Long) objectArray[12]).longValue();
+        Throw.when(!(objectArray[13] instanceof String), Sim0MQException.class, "output (field 13) should be a String");
+        this.output = objectArray[13].toString();
+    }
+
+    /**
+     * @return instanceId
+     */
+    public Object getInstanceId()
+    {
+        return this.instanceId;
+    }
+
+    /**
+     * @return stream
+     */
+    public String getStream()
+    {
+        return this.stream;
+    }
+
+    /**
+     * @return status
+     */
+    public boolean isStatus()
+    {
+        return this.status;
+    }
+
+    /**
+     * @return error
+     */
+    public String getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @return totalBytes
+     */
+    public long getTotalBytes()
+    {
+        return this.totalBytes;
+    }
+
+    /**
+     * @return output
+     */
+    public String getOutput()
+    {
+        return this.output;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the FederateOutput Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FS8FederateOutputMessage.Builder>
+    {
+        /** The instance id of the federate. */
+        private Object instanceId;
+
+        /** The stream of the output. */
+        private String stream;
+
+        /** Whether the output of the federate is available. */
+        private boolean status;
+
+        /** If the output is not available, the error message. */
+        private String error;
+
+        /** The total number of bytes that the federate wrote to the stream. */
+        private long totalBytes;
+
+        /** The tail of the captured output. */
+        private String output;
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newInstanceId set instanceId
+         * @return the original object for chaining
+         */
+        public final Builder setInstanceId(final Object newInstanceId)
+        {
+            this.instanceId = newInstanceId;
+            return this;
+        }
+
+        /**
+         * @param newStream set stream
+         * @return the original object for chaining
+         */
+        public final Builder setStream(final String newStream)
+        {
+            this.stream = newStream;
+            return this;
+        }
+
+        /**
+         * @param newStatus set status
+         * @return the original object for chaining
+         */
+        public final Builder setStatus(final boolean newStatus)
+        {
+            this.status = newStatus;
+            return this;
+        }
+
+        /**
+         * @param newError set error
+         * @return the original object for chaining
+         */
+        public final Builder setError(final String newError)
+        {
+            this.error = newError;
+            return this;
+        }
+
+        /**
+         * @param newTotalBytes set totalBytes
+         * @return the original object for chaining
+         */
+        public final Builder setTotalBytes(final long newTotalBytes)
+        {
+            this.totalBytes = newTotalBytes;
+            return this;
+        }
+
+        /**
+         * @param newOutput set output
+         * @return the original object for chaining
+         */
+        public final Builder setOutput(final String newOutput)
+        {
+            this.output = newOutput;
+            return this;
+        }
+
+        @Override
+        public FS8FederateOutputMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FS8FederateOutputMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.instanceId, this.stream, this.status, this.error, this.totalBytes, this.output);
+        }
+
+    }
+}
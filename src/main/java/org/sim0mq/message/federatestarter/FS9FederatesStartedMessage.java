@@ -0,0 +1,319 @@
+package org.sim0mq.message.federatestarter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * FederatesStarted, FS.9. Message sent by the Federate Starter to the Federation Manager in response to message FM.12. The
+ * message contains the instance id, the status, the model port, the error message and the model id for every instance of the
+ * FM.12 message, in the same order. The model id is the id that the model uses; it differs from the instance id when the
+ * process of an earlier instance was reused. The status is "started" when the model has started, "queued" when the start of the instance waits for
+ * admission, and "error" when the instance could not be started. The Federation Manager can send the FM.12 message again to
+ * learn the status of the queued instances.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FS9FederatesStartedMessage extends Sim0MQMessage
+{
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /** Number of instances that follow. */
+    private final int numberInstances;
+
+    /** The status per instance, in the order of the FM.12 message. */
+    private final List<InstanceStatus> instanceStatusList = new ArrayList<>();
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FS.9";
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param numberInstances Number of instances that follow.
+     * @param instanceStatusList The status per instance, in the order of the FM.12 message.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FS9FederatesStartedMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final int numberInstances, final List<InstanceStatus> instanceStatusList)
+            throws Sim0MQException, NullPointerException
+    {
+        super(true, federationId, senderId, receiverId, MESSAGETYPE, messageId,
+                createPayloadArray(numberInstances, instanceStatusList));
+        this.numberInstances = numberInstances;
+        this.instanceStatusList.addAll(instanceStatusList);
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FS9FederatesStartedMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
+        this.numberInstances = ((Integer) objectArray[8]).intValue();
+        for (int i = 0; i < this.numberInstances; i++)
+        {
+            int field = 9 + 5 * i;
+            Throw.when(!(objectArray[field + 1] instanceof String), Sim0MQException.class,
+                    "status (field " + (field + 1) + ") should be a String");
+            Throw.when(!(objectArray[field + 2] instanceof Integer), Sim0MQException.class,
+                    "modelPort (field " + (field + 2) + ") should be an Integer");
+            Throw.when(!(objectArray[field + 3] instanceof String), Sim0MQException.class,
+                    "error (field " + (field + 3) + ") should be a String");
+            this.instanceStatusList.add(new InstanceStatus(objectArray[field], objectArray[field + 1].toString(),
+                    ((Integer) objectArray[field + 2]).intValue(), objectArray[field + 3].toString(), objectArray[field + 4]));
+        }
+    }
+
+    /**
+     * Check and make the payload for this message.
+     * @param numberInstances Number of instances that follow.
+     * @param instanceStatusList The status per instance.
+     * @return the object array for the payload
+     * @throws Sim0MQException when numberInstances and the size of the list are different
+     * @throws NullPointerException when one of the parameters is null
+     */
+    private static Object[] createPayloadArray(final int numberInstances, final List<InstanceStatus> instanceStatusList)
+            throws Sim0MQException, NullPointerException
+    {
+        Throw.whenNull(instanceStatusList, "instanceStatusList cannot be null");
+        Throw.when(numberInstances != instanceStatusList.size(), Sim0MQException.class,
+                "numberInstances as given and in list are different");
+        Object[] array = new Object[1 + 5 * numberInstances];
+        array[0] = numberInstances;
+        int i = 1;
+        for (InstanceStatus instanceStatus : instanceStatusList)
+        {
+            array[i++] = instanceStatus.getInstanceId();
+            array[i++] = instanceStatus.getStatus();
+            array[i++] = instanceStatus.getModelPort();
+            array[i++] = instanceStatus.getError();
+            array[i++] = instanceStatus.getModelId();
+        }
+        return array;
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @return the number of payload fields
+     * @throws Sim0MQException when the array is too short or the number of instances is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 9, Sim0MQException.class, "objectArray too short -- length < 9");
+        Throw.when(!(objectArray[8] instanceof Integer), Sim0MQException.class,
+                "numberInstances (field 8) should be an Integer");
+        int numberInstances = ((Integer) objectArray[8]).intValue();
+        Throw.when(numberInstances < 0, Sim0MQException.class, "numberInstances should be >= 0");
+        return 1 + 5 * numberInstances;
+    }
+
+    /**
+     * @return numberInstances
+     */
+    public int getNumberInstances()
+    {
+        return this.numberInstances;
+    }
+
+    /**
+     * @return instanceStatusList
+     */
+    public List<InstanceStatus> getInstanceStatusList()
+    {
+        return this.instanceStatusList;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * The result of the start of one instance of an FM.12 message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class InstanceStatus implements Serializable
+    {
+        /** */
+        private static final long serialVersionUID = 20261019L;
+
+        /** The instance id of the federate. */
+        private final Object instanceId;
+
+        /** "started", "queued" or "error". */
+        private final String status;
+
+        /** The port number on which the model listens, or 0 when it has not been started. */
+        private final int modelPort;
+
+        /** If the status is "error", the error message. Otherwise this field is an empty string. */
+        private final String error;
+
+        /** The id that the model uses, which is the instance id unless the process of an earlier instance was reused. */
+        private final Object modelId;
+
+        /**
+         * @param instanceId The instance id of the federate, which is also the id that the model uses.
+         * @param status "started", "queued" or "error".
+         * @param modelPort The port number on which the model listens, or 0 when it has not been started.
+         * @param error If the status is "error", the error message. Otherwise this field is an empty string.
+         */
+        public InstanceStatus(final Object instanceId, final String status, final int modelPort, final String error)
+        {
+            this(instanceId, status, modelPort, error, instanceId);
+        }
+
+        /**
+         * @param instanceId The instance id of the federate.
+         * @param status "started", "queued" or "error".
+         * @param modelPort The port number on which the model listens, or 0 when it has not been started.
+         * @param error If the status is "error", the error message. Otherwise this field is an empty string.
+         * @param modelId The id that the model uses, which is the instance id unless the process of an earlier instance was
+         *            reused.
+         */
+        public InstanceStatus(final Object instanceId, final String status, final int modelPort, final String error,
+                final Object modelId)
+        {
+            this.instanceId = instanceId;
+            this.status = status;
+            this.modelPort = modelPort;
+            this.error = error;
+            this.modelId = modelId;
+        }
+
+        /**
+         * @return instanceId
+         */
+        public Object getInstanceId()
+        {
+            return this.instanceId;
+        }
+
+        /**
+         * @return status
+         */
+        public String getStatus()
+        {
+            return this.status;
+        }
+
+        /**
+         * @return modelPort
+         */
+        public int getModelPort()
+        {
+            return this.modelPort;
+        }
+
+        /**
+         * @return error
+         */
+        public String getError()
+        {
+            return this.error;
+        }
+
+        /**
+         * @return modelId
+         */
+        public Object getModelId()
+        {
+            return this.modelId;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "InstanceStatus [instanceId=" + this.instanceId + ", status=" + this.status + ", modelPort="
+                    + this.modelPort + ", error=" + this.error + ", modelId=" + this.modelId + "]";
+        }
+    }
+
+    /**
+     * Builder for the FederatesStarted Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FS9FederatesStartedMessage.Builder>
+    {
+        /** The status per instance. */
+        private final List<InstanceStatus> instanceStatusList = new ArrayList<>();
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param instanceId The instance id of the federate.
+         * @param status "started", "queued" or "error".
+         * @param modelPort The port number on which the model listens, or 0 when it has not been started.
+         * @param error If the status is "error", the error message. Otherwise an empty string.
+         * @return the original object for chaining
+         */
+        public final Builder addInstanceStatus(final Object instanceId, final String status, final int modelPort,
+                final String error)
+        {
+            this.instanceStatusList.add(new InstanceStatus(instanceId, status, modelPort, error));
+            return this;
+        }
+
+        /**
+         * @param instanceId The instance id of the federate.
+         * @param status "started", "queued" or "error".
+         * @param modelPort The port number on which the model listens, or 0 when it has not been started.
+         * @param error If the status is "error", the error message. Otherwise an empty string.
+         * @param modelId The id that the model uses, which is the instance id unless the process of an earlier instance was
+         *            reused.
+         * @return the original object for chaining
+         */
+        public final Builder addInstanceStatus(final Object instanceId, final String status, final int modelPort,
+                final String error, final Object modelId)
+        {
+            this.instanceStatusList.add(new InstanceStatus(instanceId, status, modelPort, error, modelId));
+            return this;
+        }
+
+        @Override
+        public FS9FederatesStartedMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FS9FederatesStartedMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.instanceStatusList.size(), this.instanceStatusList);
+        }
+
+    }
+}
@@ -0,0 +1,173 @@
+package org.sim0mq.message.federationmanager;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * RequestFederateOutput, FM.11. Request the tail of the captured stdout or stderr of the given federate. The output of a
+ * federate is only captured by the FederateStarter when the FM.1 message used %CAPTURE% as the redirect for that stream. This
+ * message is sent to the FederateStarter, which replies with an FS.8 message.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FM11RequestFederateOutputMessage extends Sim0MQMessage
+{
+    /** Id to identify the federate instance for which the output is requested. */
+    private final Object instanceId;
+
+    /** The stream for which the output is requested: "stdout" or "stderr". */
+    private final String stream;
+
+    /** The maximum number of bytes to return from the end of the captured output. */
+    private final int maxBytes;
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FM.11";
+
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId Id to identify the federate instance for which the output is requested
+     * @param stream The stream for which the output is requested: "stdout" or "stderr"
+     * @param maxBytes The maximum number of bytes to return from the end of the captured output
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM11RequestFederateOutputMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object instanceId, final String stream, final int maxBytes)
+            throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 3,
+                instanceId, stream, maxBytes});
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM11RequestFederateOutputMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, 3, MESSAGETYPE);
+        this.instanceId = objectArray[8];
+        Throw.when(!(objectArray[9] instanceof String), Sim0MQException.class, "stream (field 9) should be a String");
+        this.stream = objectArray[9].toString();
+        Throw.when(!this.stream.equals("stdout") && !this.stream.equals("stderr"), Sim0MQException.class,
+                "stream (field 9) should be 'stdout' or 'stderr'");
+        Throw.when(!(objectArray[10] instanceof Integer), Sim0MQException.class, "maxBytes (field 10) should be an Integer");
+        this.maxBytes = ((Integer) objectArray[10]).intValue();
+    }
+
+    /**
+     * @return instanceId
+     */
+    public Object getInstanceId()
+    {
+        return this.instanceId;
+    }
+
+    /**
+     * @return stream
+     */
+    public String getStream()
+    {
+        return this.stream;
+    }
+
+    /**
+     * @return maxBytes
+     */
+    public int getMaxBytes()
+    {
+        return this.maxBytes;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the RequestFederateOutput Message. Can string setters together, and call build() at the end to build the
+     * actual message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FM11RequestFederateOutputMessage.Builder>
+    {
+        /** Id to identify the federate instance for which the output is requested. */
+        private Object instanceId;
+
+        /** The stream for which the output is requested. */
+        private String stream;
+
+        /** The maximum number of bytes to return. */
+        private int maxBytes;
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newInstanceId set id to identify the federate instance for which the output is requested
+         * @return the original object for chaining
+         */
+        public final Builder setInstanceId(final Object newInstanceId)
+        {
+            this.instanceId = newInstanceId;
+            return this;
+        }
+
+        /**
+         * @param newStream set the stream for which the output is requested: "stdout" or "stderr"
+         * @return the original object for chaining
+         */
+        public final Builder setStream(final String newStream)
+        {
+            this.stream = newStream;
+            return this;
+        }
+
+        /**
+         * @param newMaxBytes set the maximum number of bytes to return from the end of the captured output
+         * @return the original object for chaining
+         */
+        public final Builder setMaxBytes(final int newMaxBytes)
+        {
+            this.maxBytes = newMaxBytes;
+            return this;
+        }
+
+        @Override
+        public FM11RequestFederateOutputMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FM11RequestFederateOutputMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.instanceId, this.stream, this.maxBytes);
+        }
+
+    }
+}
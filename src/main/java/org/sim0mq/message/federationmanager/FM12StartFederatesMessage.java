@@ -0,0 +1,552 @@
+package org.sim0mq.message.federationmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * StartFederates, FM.12. Batch version of the StartFederate message FM.1: the Federate Starter starts a number of instances of
+ * the same model with one message. The fields of the FM.1 message are shared by all instances, and every instance has its own
+ * instance id and optionally its own arguments after the model path. The token %INSTANCE% in the argsAfter, the working
+ * directory and the redirects is replaced by the instance id, so every instance can get its own working directory and output
+ * files. The Federate Starter launches all processes before it waits for the models to start, and replies with one FS.9
+ * message that contains the status and port number per instance.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FM12StartFederatesMessage extends Sim0MQMessage
+{
+    /** The token in argsAfter, workingDirectory and the redirects that is replaced by the instance id. */
+    public static final String INSTANCE = "%INSTANCE%";
+
+    /** Code for the software to run, will be looked up in a table on the local computer. */
+    private final String softwareCode;
+
+    /** Arguments that the software needs, before the model file path and name. */
+    private final String argsBefore;
+
+    /** The actual path on the target computer where the model resides. This String cannot be empty. */
+    private final String modelPath;
+
+    /** Arguments after the model file path and name, for the instances that do not override them. */
+    private final String argsAfter;
+
+    /** Full path on the target computer that will be used as the working directory. */
+    private final String workingDirectory;
+
+    /** Place to get user input from in case a model asks for it. */
+    private final String redirectStdin;
+
+    /** Place to send the output to that the model normally displays on the console. */
+    private final String redirectStdout;
+
+    /** Place to send the error messages to that the model normally displays on the console. */
+    private final String redirectStderr;
+
+    /** Whether to delete the working directory after the run of the model or not. */
+    private final boolean deleteWorkingDirectory;
+
+    /** Whether to delete the redirected stdout after running or not. */
+    private final boolean deleteStdout;
+
+    /** Whether to delete the redirected stderr after running or not. */
+    private final boolean deleteStderr;
+
+    /** Name of the working directory template on the target computer, or an empty String for no template. */
+    private final String template;
+
+    /** Number of instances that follow. */
+    private final int numberInstances;
+
+    /** The instance ids, with the argsAfter per instance; an empty String means that the shared argsAfter is used. */
+    private final Map<String, String> instanceMap = new LinkedHashMap<>();
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FM.12";
+
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param softwareCode Code for the software to run, will be looked up in a table on the local computer.
+     * @param argsBefore Arguments that the software needs, before the model file path and name.
+     * @param modelPath The actual path on the target computer where the model resides.
+     * @param argsAfter Arguments after the model file path and name, for the instances that do not override them.
+     * @param workingDirectory Full path on the target computer that will be used as the working directory.
+     * @param redirectStdin Place to get user input from in case a model asks for it.
+     * @param redirectStdout Place to send the output to that the model normally displays on the console.
+     * @param redirectStderr Place to send the error messages to that the model normally displays on the console.
+     * @param deleteWorkingDirectory Whether to delete the working directory after the run of the model or not.
+     * @param deleteStdout Whether to delete the redirected stdout after running or not.
+     * @param deleteStderr Whether to delete the redirected stderr after running or not.
+     * @param template Name of the working directory template on the target computer, or an empty String for no template.
+     * @param numberInstances Number of instances that follow.
+     * @param instanceMap The instance ids, with the argsAfter per instance; an empty String means that the shared argsAfter is
+     *            used.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FM12StartFederatesMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final String softwareCode, final String argsBefore, final String modelPath,
+            final String argsAfter, final String workingDirectory, final String redirectStdin, final String redirectStdout,
+            final String redirectStderr, final boolean deleteWorkingDirectory, final boolean deleteStdout,
+            final boolean deleteStderr, final String template, final int numberInstances,
+            final Map<String, String> instanceMap) throws Sim0MQException, NullPointerException
+    {
+        this(createMessageArray(federationId, senderId, receiverId, messageId, new Object[] {softwareCode, argsBefore,
+                modelPath, argsAfter, workingDirectory, redirectStdin, redirectStdout, redirectStderr, deleteWorkingDirectory,
+                deleteStdout, deleteStderr, template}, numberInstances, instanceMap));
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM12StartFederatesMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
+        String[] names = new String[] {"softwareCode", "argsBefore", "modelPath", "argsAfter", "workingDirectory",
+                "redirectStdin", "redirectStdout", "redirectStderr"};
+        for (int i = 0; i < names.length; i++)
+        {
+            Throw.when(!(objectArray[8 + i] instanceof String), Sim0MQException.class,
+                    names[i] + " (field " + (8 + i) + ") should be a String");
+        }
+        this.softwareCode = objectArray[8].toString();
+        this.argsBefore = objectArray[9].toString();
+        this.modelPath = objectArray[10].toString();
+        this.argsAfter = objectArray[11].toString();
+        this.workingDirectory = objectArray[12].toString();
+        this.redirectStdin = objectArray[13].toString();
+        this.redirectStdout = objectArray[14].toString();
+        this.redirectStderr = objectArray[15].toString();
+        Throw.when(!(objectArray[16] instanceof Boolean), Sim0MQException.class,
+                "deleteWorkingDirectory (field 16) should be a Boolean");
+        this.deleteWorkingDirectory = ((Boolean) objectArray[16]).booleanValue();
+        Throw.when(!(objectArray[17] instanceof Boolean), Sim0MQException.class, "deleteStdout (field 17) should be a Boolean");
+        this.deleteStdout = ((Boolean) objectArray[17]).booleanValue();
+        Throw.when(!(objectArray[18] instanceof Boolean), Sim0MQException.class, "deleteStderr (field 18) should be a Boolean");
+        this.deleteStderr = ((Boolean) objectArray[18]).booleanValue();
+        Throw.when(!(objectArray[19] instanceof String), Sim0MQException.class, "template (field 19) should be a String");
+        this.template = objectArray[19].toString();
+        this.numberInstances = ((Integer) objectArray[20]).intValue();
+        for (int i = 0; i < this.numberInstances; i++)
+        {
+            Throw.when(!(objectArray[21 + 2 * i] instanceof String), Sim0MQException.class,
+                    "instanceId (field " + (21 + 2 * i) + ") should be a String");
+            Throw.when(!(objectArray[22 + 2 * i] instanceof String), Sim0MQException.class,
+                    "argsAfter (field " + (22 + 2 * i) + ") should be a String");
+            this.instanceMap.put(objectArray[21 + 2 * i].toString(), objectArray[22 + 2 * i].toString());
+        }
+        Throw.when(this.numberInstances != this.instanceMap.size(), Sim0MQException.class,
+                "numberInstances and the number of different instance ids are different");
+    }
+
+    /**
+     * Check and make the full message array for this message.
+     * @param federationId the federation id
+     * @param senderId The sender id
+     * @param receiverId The receiver id
+     * @param messageId The unique message number
+     * @param shared the 12 fields that are shared by all instances
+     * @param numberInstances Number of instances that follow.
+     * @param instanceMap The instance ids, with the argsAfter per instance.
+     * @return the object array for the message
+     * @throws Sim0MQException when numberInstances and the size of the map are different
+     * @throws NullPointerException when one of the parameters is null
+     */
+    private static Object[] createMessageArray(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object[] shared, final int numberInstances, final Map<String, String> instanceMap)
+            throws Sim0MQException, NullPointerException
+    {
+        Throw.whenNull(instanceMap, "instanceMap cannot be null");
+        Throw.when(numberInstances != instanceMap.size(), Sim0MQException.class,
+                "numberInstances as given and in map are different");
+        Object[] array = new Object[21 + 2 * numberInstances];
+        Object[] header = new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE,
+                messageId, 13 + 2 * numberInstances};
+        System.arraycopy(header, 0, array, 0, 8);
+        System.arraycopy(shared, 0, array, 8, 12);
+        array[20] = numberInstances;
+        int i = 21;
+        for (Map.Entry<String, String> entry : instanceMap.entrySet())
+        {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        return array;
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @return the number of payload fields
+     * @throws Sim0MQException when the array is too short or the number of instances is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 21, Sim0MQException.class, "objectArray too short -- length < 21");
+        Throw.when(!(objectArray[20] instanceof Integer), Sim0MQException.class,
+                "numberInstances (field 20) should be an Integer");
+        int numberInstances = ((Integer) objectArray[20]).intValue();
+        Throw.when(numberInstances < 0, Sim0MQException.class, "numberInstances should be >= 0");
+        return 13 + 2 * numberInstances;
+    }
+
+    /**
+     * @return softwareCode
+     */
+    public final String getSoftwareCode()
+    {
+        return this.softwareCode;
+    }
+
+    /**
+     * @return argsBefore
+     */
+    public final String getArgsBefore()
+    {
+        return this.argsBefore;
+    }
+
+    /**
+     * @return modelPath
+     */
+    public final String getModelPath()
+    {
+        return this.modelPath;
+    }
+
+    /**
+     * @return argsAfter
+     */
+    public final String getArgsAfter()
+    {
+        return this.argsAfter;
+    }
+
+    /**
+     * @return workingDirectory
+     */
+    public final String getWorkingDirectory()
+    {
+        return this.workingDirectory;
+    }
+
+    /**
+     * @return redirectStdin
+     */
+    public final String getRedirectStdin()
+    {
+        return this.redirectStdin;
+    }
+
+    /**
+     * @return redirectStdout
+     */
+    public final String getRedirectStdout()
+    {
+        return this.redirectStdout;
+    }
+
+    /**
+     * @return redirectStderr
+     */
+    public final String getRedirectStderr()
+    {
+        return this.redirectStderr;
+    }
+
+    /**
+     * @return deleteWorkingDirectory
+     */
+    public final boolean isDeleteWorkingDirectory()
+    {
+        return this.deleteWorkingDirectory;
+    }
+
+    /**
+     * @return deleteStdout
+     */
+    public final boolean isDeleteStdout()
+    {
+        return this.deleteStdout;
+    }
+
+    /**
+     * @return deleteStderr
+     */
+    public final boolean isDeleteStderr()
+    {
+        return this.deleteStderr;
+    }
+
+    /**
+     * @return template
+     */
+    public final String getTemplate()
+    {
+        return this.template;
+    }
+
+    /**
+     * @return numberInstances
+     */
+    public final int getNumberInstances()
+    {
+        return this.numberInstances;
+    }
+
+    /**
+     * @return instanceMap
+     */
+    public final Map<String, String> getInstanceMap()
+    {
+        return this.instanceMap;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the StartFederates Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FM12StartFederatesMessage.Builder>
+    {
+        /** Code for the software to run. */
+        private String softwareCode;
+
+        /** Arguments that the software needs, before the model file path and name. */
+        private String argsBefore;
+
+        /** The actual path on the target computer where the model resides. */
+        private String modelPath;
+
+        /** Arguments after the model file path and name, for the instances that do not override them. */
+        private String argsAfter;
+
+        /** Full path on the target computer that will be used as the working directory. */
+        private String workingDirectory;
+
+        /** Place to get user input from in case a model asks for it. */
+        private String redirectStdin;
+
+        /** Place to send the output to that the model normally displays on the console. */
+        private String redirectStdout;
+
+        /** Place to send the error messages to that the model normally displays on the console. */
+        private String redirectStderr;
+
+        /** Whether to delete the working directory after the run of the model or not. */
+        private boolean deleteWorkingDirectory;
+
+        /** Whether to delete the redirected stdout after running or not. */
+        private boolean deleteStdout;
+
+        /** Whether to delete the redirected stderr after running or not. */
+        private boolean deleteStderr;
+
+        /** Name of the working directory template, or an empty String for no template. */
+        private String template = "";
+
+        /** The instance ids, with the argsAfter per instance. */
+        private Map<String, String> instanceMap = new LinkedHashMap<>();
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newSoftwareCode set softwareCode
+         * @return the original object for chaining
+         */
+        public final Builder setSoftwareCode(final String newSoftwareCode)
+        {
+            this.softwareCode = newSoftwareCode;
+            return this;
+        }
+
+        /**
+         * @param newArgsBefore set argsBefore
+         * @return the original object for chaining
+         */
+        public final Builder setArgsBefore(final String newArgsBefore)
+        {
+            this.argsBefore = newArgsBefore;
+            return this;
+        }
+
+        /**
+         * @param newModelPath set modelPath
+         * @return the original object for chaining
+         */
+        public final Builder setModelPath(final String newModelPath)
+        {
+            this.modelPath = newModelPath;
+            return this;
+        }
+
+        /**
+         * @param newArgsAfter set the shared argsAfter
+         * @return the original object for chaining
+         */
+        public final Builder setArgsAfter(final String newArgsAfter)
+        {
+            this.argsAfter = newArgsAfter;
+            return this;
+        }
+
+        /**
+         * @param newWorkingDirectory set workingDirectory
+         * @return the original object for chaining
+         */
+        public final Builder setWorkingDirectory(final String newWorkingDirectory)
+        {
+            this.workingDirectory = newWorkingDirectory;
+            return this;
+        }
+
+        /**
+         * @param newRedirectStdin set redirectStdin
+         * @return the original object for chaining
+         */
+        public final Builder setRedirectStdin(final String newRedirectStdin)
+        {
+            this.redirectStdin = newRedirectStdin;
+            return this;
+        }
+
+        /**
+         * @param newRedirectStdout set redirectStdout
+         * @return the original object for chaining
+         */
+        public final Builder setRedirectStdout(final String newRedirectStdout)
+        {
+            this.redirectStdout = newRedirectStdout;
+            return this;
+        }
+
+        /**
+         * @param newRedirectStderr set redirectStderr
+         * @return the original object for chaining
+         */
+        public final Builder setRedirectStderr(final String newRedirectStderr)
+        {
+            this.redirectStderr = newRedirectStderr;
+            return this;
+        }
+
+        /**
+         * @param newDeleteWorkingDirectory set deleteWorkingDirectory
+         * @return the original object for chaining
+         */
+        public final Builder setDeleteWorkingDirectory(final boolean newDeleteWorkingDirectory)
+        {
+            this.deleteWorkingDirectory = newDeleteWorkingDirectory;
+            return this;
+        }
+
+        /**
+         * @param newDeleteStdout set deleteStdout
+         * @return the original object for chaining
+         */
+        public final Builder setDeleteStdout(final boolean newDeleteStdout)
+        {
+            this.deleteStdout = newDeleteStdout;
+            return this;
+        }
+
+        /**
+         * @param newDeleteStderr set deleteStderr
+         * @return the original object for chaining
+         */
+        public final Builder setDeleteStderr(final boolean newDeleteStderr)
+        {
+            this.deleteStderr = newDeleteStderr;
+            return this;
+        }
+
+        /**
+         * @param newTemplate set the name of the working directory template, or an empty String for no template
+         * @return the original object for chaining
+         */
+        public final Builder setTemplate(final String newTemplate)
+        {
+            this.template = newTemplate;
+            return this;
+        }
+
+        /**
+         * @param newInstanceMap set the instance ids, with the argsAfter per instance
+         * @return the original object for chaining
+         */
+        public final Builder setInstanceMap(final Map<String, String> newInstanceMap)
+        {
+            this.instanceMap = newInstanceMap;
+            return this;
+        }
+
+        /**
+         * Add an instance that uses the shared argsAfter.
+         * @param instanceId the instance id
+         * @return the original object for chaining
+         */
+        public final Builder addInstance(final String instanceId)
+        {
+            return addInstance(instanceId, "");
+        }
+
+        /**
+         * Add an instance with its own argsAfter.
+         * @param instanceId the instance id
+         * @param instanceArgsAfter the argsAfter of the instance, or an empty String to use the shared argsAfter
+         * @return the original object for chaining
+         */
+        public final Builder addInstance(final String instanceId, final String instanceArgsAfter)
+        {
+            this.instanceMap.put(instanceId, instanceArgsAfter);
+            return this;
+        }
+
+        @Override
+        public FM12StartFederatesMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FM12StartFederatesMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.softwareCode, this.argsBefore, this.modelPath, this.argsAfter, this.workingDirectory,
+                    this.redirectStdin, this.redirectStdout, this.redirectStderr, this.deleteWorkingDirectory,
+                    this.deleteStdout, this.deleteStderr, this.template, this.instanceMap.size(), this.instanceMap);
+        }
+
+    }
+}
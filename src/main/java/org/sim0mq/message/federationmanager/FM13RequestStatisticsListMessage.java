@@ -0,0 +1,242 @@
+package org.sim0mq.message.federationmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * RequestStatisticsList, FM.13. Batch version of the RequestStatistics message FM.6: the Federation Manager requests the values
+ * of a list of output variables with one message. An entry of the list is either the name of a variable, or a pattern in which
+ * '*' matches any sequence of characters and '?' matches one character, e.g., "queue1.*" for all variables with the prefix
+ * "queue1.". The Model replies with one MC.5 message that contains all values, and an error per name or pattern that could not
+ * be answered.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FM13RequestStatisticsListMessage extends Sim0MQMessage
+{
+    /** Number of variable names or patterns that follow. */
+    private final int numberNames;
+
+    /** The names of the output variables whose values are requested, or patterns that match the names. */
+    private final List<String> variableNames = new ArrayList<>();
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FM.13";
+
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param variableNames The names of the output variables whose values are requested, or patterns with '*' and '?' that
+     *            match the names.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM13RequestStatisticsListMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final List<String> variableNames) throws Sim0MQException, NullPointerException
+    {
+        this(createMessageArray(federationId, senderId, receiverId, messageId, variableNames));
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM13RequestStatisticsListMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
+        this.numberNames = ((Integer) objectArray[8]).intValue();
+        for (int i = 0; i < this.numberNames; i++)
+        {
+            Throw.when(!(objectArray[9 + i] instanceof String), Sim0MQException.class,
+                    "variableName (field " + (9 + i) + ") should be a String");
+            this.variableNames.add(objectArray[9 + i].toString());
+        }
+    }
+
+    /**
+     * Check and make the full message array for this message.
+     * @param federationId the federation id
+     * @param senderId The sender id
+     * @param receiverId The receiver id
+     * @param messageId The unique message number
+     * @param variableNames The names of the output variables, or patterns that match the names
+     * @return the object array for the message
+     * @throws NullPointerException when one of the parameters is null
+     */
+    private static Object[] createMessageArray(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final List<String> variableNames) throws NullPointerException
+    {
+        Throw.whenNull(variableNames, "variableNames cannot be null");
+        Object[] array = new Object[9 + variableNames.size()];
+        Object[] header = new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE,
+                messageId, 1 + variableNames.size()};
+        System.arraycopy(header, 0, array, 0, 8);
+        array[8] = variableNames.size();
+        int i = 9;
+        for (String variableName : variableNames)
+        {
+            array[i++] = variableName;
+        }
+        return array;
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @return the number of payload fields
+     * @throws Sim0MQException when the array is too short or the number of names is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 9, Sim0MQException.class, "objectArray too short -- length < 9");
+        Throw.when(!(objectArray[8] instanceof Integer), Sim0MQException.class, "numberNames (field 8) should be an Integer");
+        int numberNames = ((Integer) objectArray[8]).intValue();
+        Throw.when(numberNames < 0, Sim0MQException.class, "numberNames should be >= 0");
+        return 1 + numberNames;
+    }
+
+    /**
+     * @return numberNames
+     */
+    public final int getNumberNames()
+    {
+        return this.numberNames;
+    }
+
+    /**
+     * @return the names of the output variables whose values are requested, or patterns that match the names
+     */
+    public final List<String> getVariableNames()
+    {
+        return Collections.unmodifiableList(this.variableNames);
+    }
+
+    /**
+     * @param variableName a name or a pattern of the request
+     * @return whether the entry is a pattern, i.e., contains a '*' or a '?'
+     */
+    public static boolean isPattern(final String variableName)
+    {
+        return variableName.indexOf('*') >= 0 || variableName.indexOf('?') >= 0;
+    }
+
+    /**
+     * Return whether a variable name matches a name or a pattern of the request; '*' matches any sequence of characters,
+     * including an empty one, and '?' matches one character.
+     * @param pattern the name or the pattern
+     * @param variableName the name of a variable of the model
+     * @return whether the variable name matches the pattern
+     */
+    public static boolean matches(final String pattern, final String variableName)
+    {
+        int p = 0;
+        int v = 0;
+        int star = -1;
+        int starMatch = 0;
+        while (v < variableName.length())
+        {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == variableName.charAt(v)))
+            {
+                p++;
+                v++;
+            }
+            else if (p < pattern.length() && pattern.charAt(p) == '*')
+            {
+                star = p++;
+                starMatch = v;
+            }
+            else if (star >= 0)
+            {
+                // let the last '*' match one more character
+                p = star + 1;
+                v = ++starMatch;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*')
+        {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the RequestStatisticsList Message. Can string setters together, and call build() at the end to build the
+     * actual message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FM13RequestStatisticsListMessage.Builder>
+    {
+        /** The names of the output variables whose values are requested, or patterns that match the names. */
+        private List<String> variableNames = new ArrayList<>();
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newVariableNames set the names of the variables, or patterns that match the names
+         * @return the original object for chaining
+         */
+        public final Builder setVariableNames(final List<String> newVariableNames)
+        {
+            this.variableNames = newVariableNames;
+            return this;
+        }
+
+        /**
+         * @param variableName the name of a variable, or a pattern that matches the names of variables
+         * @return the original object for chaining
+         */
+        public final Builder addVariableName(final String variableName)
+        {
+            this.variableNames.add(variableName);
+            return this;
+        }
+
+        @Override
+        public FM13RequestStatisticsListMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FM13RequestStatisticsListMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.variableNames);
+        }
+
+    }
+}
@@ -0,0 +1,193 @@
+package org.sim0mq.message.federationmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+
+/**
+ * SetParameters, FM.14. Batch version of the SetParameter message FM.3: the Federation Manager sets the values of a number of
+ * parameters with one message. The values can be of any type that FM.3 allows, including arrays, vectors and matrices. The
+ * Model sets the parameters in the order of the message, and replies with one MC.2 message, which lists the parameters that
+ * could not be set, with the reason per parameter.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class FM14SetParametersMessage extends Sim0MQMessage
+{
+    /** Number of parameters that follow. */
+    private final int numberParameters;
+
+    /** The values per parameter name, in the order in which they are set. */
+    private final Map<String, Object> parameterMap = new LinkedHashMap<>();
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "FM.14";
+
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param parameterMap The values per parameter name, in the order in which they are set; a value can be any of the legal
+     *            types in djutils-serialization.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM14SetParametersMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Map<String, Object> parameterMap) throws Sim0MQException, NullPointerException
+    {
+        this(createMessageArray(federationId, senderId, receiverId, messageId, parameterMap));
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public FM14SetParametersMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
+        this.numberParameters = ((Integer) objectArray[8]).intValue();
+        for (int i = 0; i < this.numberParameters; i++)
+        {
+            Throw.when(!(objectArray[9 + 2 * i] instanceof String), Sim0MQException.class,
+                    "parameterName (field " + (9 + 2 * i) + ") should be a String");
+            this.parameterMap.put(objectArray[9 + 2 * i].toString(), objectArray[10 + 2 * i]);
+        }
+        Throw.when(this.numberParameters != this.parameterMap.size(), Sim0MQException.class,
+                "numberParameters and the number of different parameter names are different");
+    }
+
+    /**
+     * Make the full message array for this message.
+     * @param federationId the federation id
+     * @param senderId The sender id
+     * @param receiverId The receiver id
+     * @param messageId The unique message number
+     * @param parameterMap The values per parameter name
+     * @return the object array for the message
+     * @throws NullPointerException when one of the parameters is null
+     */
+    private static Object[] createMessageArray(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Map<String, Object> parameterMap) throws NullPointerException
+    {
+        Throw.whenNull(parameterMap, "parameterMap cannot be null");
+        Object[] array = new Object[9 + 2 * parameterMap.size()];
+        Object[] header = new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE,
+                messageId, 1 + 2 * parameterMap.size()};
+        System.arraycopy(header, 0, array, 0, 8);
+        array[8] = parameterMap.size();
+        int i = 9;
+        for (Map.Entry<String, Object> entry : parameterMap.entrySet())
+        {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        return array;
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @return the number of payload fields
+     * @throws Sim0MQException when the array is too short or the number of parameters is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 9, Sim0MQException.class, "objectArray too short -- length < 9");
+        Throw.when(!(objectArray[8] instanceof Integer), Sim0MQException.class,
+                "numberParameters (field 8) should be an Integer");
+        int numberParameters = ((Integer) objectArray[8]).intValue();
+        Throw.when(numberParameters < 0, Sim0MQException.class, "numberParameters should be >= 0");
+        return 1 + 2 * numberParameters;
+    }
+
+    /**
+     * @return numberParameters
+     */
+    public final int getNumberParameters()
+    {
+        return this.numberParameters;
+    }
+
+    /**
+     * @return the values per parameter name, in the order in which they are set
+     */
+    public final Map<String, Object> getParameterMap()
+    {
+        return this.parameterMap;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the SetParameters Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQMessage.Builder<FM14SetParametersMessage.Builder>
+    {
+        /** The values per parameter name, in the order in which they are set. */
+        private Map<String, Object> parameterMap = new LinkedHashMap<>();
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newParameterMap set the values per parameter name
+         * @return the original object for chaining
+         */
+        public final Builder setParameterMap(final Map<String, Object> newParameterMap)
+        {
+            this.parameterMap = newParameterMap;
+            return this;
+        }
+
+        /**
+         * @param parameterName the name of the parameter
+         * @param parameterValue the value of the parameter
+         * @return the original object for chaining
+         */
+        public final Builder addParameter(final String parameterName, final Object parameterValue)
+        {
+            this.parameterMap.put(parameterName, parameterValue);
+            return this;
+        }
+
+        @Override
+        public FM14SetParametersMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new FM14SetParametersMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.parameterMap);
+        }
+
+    }
+}
@@ -93,6 +93,13 @@ public class FM1StartFederateMessage extends Sim0MQMessage
      */
     private final boolean deleteStderr;
 
+    /**
+     * Name of the working directory template on the target computer, which is looked up in the properties of the Federate
+     * Starter. The working directory is provisioned with the files of the template before the model starts. The String is empty
+     * (0 characters) when no template is used.
+     */
+    private final String template;
+
     /** the unique message id. */
     private static final String MESSAGETYPE = "FM.1";
 
@@ -154,6 +161,44 @@ public class FM1StartFederateMessage extends Sim0MQMessage
                 redirectStderr, deleteWorkingDirectory, deleteStdout, deleteStderr});
     }
 
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param instanceId Id to identify the callback to know which model instance has been started, e.g. "IDVV.14".
+     * @param softwareCode Code for the software to run, will be looked up in a table on the local computer.
+     * @param argsBefore Arguments that the software needs, before the model file path and name.
+     * @param modelPath The actual path on the target computer where the model resides.
+     * @param argsAfter Arguments that the software or the model needs, after the model file path and name.
+     * @param workingDirectory Full path on the target computer that will be used as the working directory.
+     * @param redirectStdin Place to get user input from in case a model asks for it.
+     * @param redirectStdout Place to send the output to that the model normally displays on the console.
+     * @param redirectStderr Place to send the error messages to that the model normally displays on the console.
+     * @param deleteWorkingDirectory Whether to delete the working directory after the run of the model or not.
+     * @param deleteStdout Whether to delete the redirected stdout after running or not.
+     * @param deleteStderr Whether to delete the redirected stderr after running or not.
+     * @param template Name of the working directory template on the target computer, or an empty String for no template.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public FM1StartFederateMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final String instanceId, final String softwareCode, final String argsBefore,
+            final String modelPath, final String argsAfter, final String workingDirectory, final String redirectStdin,
+            final String redirectStdout, final String redirectStderr, final boolean deleteWorkingDirectory,
+            final boolean deleteStdout, final boolean deleteStderr, final String template)
+            throws Sim0MQException, NullPointerException
+    {
+        this(new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE, messageId, 13,
+                instanceId, softwareCode, argsBefore, modelPath, argsAfter, workingDirectory, redirectStdin, redirectStdout,
+                redirectStderr, deleteWorkingDirectory, deleteStdout, deleteStderr, template});
+    }
+
     /**
      * @param objectArray Object[]; the fields that constitute the message
      * @throws Sim0MQException on unknown data type
@@ -161,7 +206,7 @@ public class FM1StartFederateMessage extends Sim0MQMessage
      */
     public FM1StartFederateMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
     {
-        super(objectArray, 12, MESSAGETYPE);
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
         this.instanceId = objectArray[8];
         Throw.when(!(objectArray[9] instanceof String), Sim0MQException.class, "softwareCode (field 9) should be a String");
         this.softwareCode = objectArray[9].toString();
@@ -189,6 +234,28 @@ public class FM1StartFederateMessage extends Sim0MQMessage
         Throw.when(!(objectArray[19] instanceof Boolean), Sim0MQException.class,
                 "redirectStderr (field 19) should be a Boolean");
         this.deleteStderr = ((Boolean) objectArray[19]).booleanValue();
+        if (objectArray.length > 20)
+        {
+            Throw.when(!(objectArray[20] instanceof String), Sim0MQException.class, "template (field 20) should be a String");
+            this.template = objectArray[20].toString();
+        }
+        else
+        {
+            this.template = "";
+        }
+    }
+
+    /**
+     * Calculate the number of payload fields, which is 12 without, and 13 with the optional template field.
+     * @param objectArray Object[]; the fields that constitute the message
+     * @return the number of payload fields
+     * @throws Sim0MQException when the number of fields is not 12 or 13
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length != 20 && objectArray.length != 21, Sim0MQException.class,
+                "FM1StartFederateMessage should have 12 or 13 fields but has " + (objectArray.length - 8) + " fields");
+        return objectArray.length - 8;
     }
 
     /**
@@ -287,6 +354,14 @@ public class FM1StartFederateMessage extends Sim0MQMessage
         return this.deleteStderr;
     }
 
+    /**
+     * @return template, or an empty String when no template is used
+     */
+    public final String getTemplate()
+    {
+        return this.template;
+    }
+
     /**
      * Builder for the StartFederate Message. Can string setters together, and call build() at the end to build the actual
      * message.
@@ -374,6 +449,9 @@ public class FM1StartFederateMessage extends Sim0MQMessage
          */
         private boolean deleteStderr;
 
+        /** Name of the working directory template, or null when no template is used. */
+        private String template = null;
+
         /**
          * Empty constructor.
          */
@@ -502,9 +580,26 @@ public class FM1StartFederateMessage extends Sim0MQMessage
             return this;
         }
 
+        /**
+         * @param newTemplate set template
+         * @return the original object for chaining
+         */
+        public final Builder setTemplate(final String newTemplate)
+        {
+            this.template = newTemplate;
+            return this;
+        }
+
         @Override
         public FM1StartFederateMessage build() throws Sim0MQException, NullPointerException
         {
+            if (this.template != null)
+            {
+                return new FM1StartFederateMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                        this.instanceId, this.softwareCode, this.argsBefore, this.modelPath, this.argsAfter,
+                        this.workingDirectory, this.redirectStdin, this.redirectStdout, this.redirectStderr,
+                        this.deleteWorkingDirectory, this.deleteStdout, this.deleteStderr, this.template);
+            }
             return new FM1StartFederateMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
                     this.instanceId, this.softwareCode, this.argsBefore, this.modelPath, this.argsAfter, this.workingDirectory,
                     this.redirectStdin, this.redirectStdout, this.redirectStderr, this.deleteWorkingDirectory,
@@ -123,12 +123,12 @@ public class FM2SimRunControlMessage extends Sim0MQMessage
         Throw.when(!(objectArray[13] instanceof Integer), Sim0MQException.class,
                 "numberRandomStreams (field 13) should be int");
         this.numberRandomStreams = ((Integer) objectArray[13]).intValue();
-        for (int i = 0; i < this.numberRandomStreams; i += 2)
+        for (int i = 0; i < this.numberRandomStreams; i++)
         {
-            Object id = objectArray[14 + i];
-            Throw.when(!(objectArray[15 + i] instanceof Long), Sim0MQException.class,
-                    "Seed (field " + (15 + i) + ") should be int");
-            Long seed = (Long) objectArray[15 + i];
+            Object id = objectArray[14 + 2 * i];
+            Throw.when(!(objectArray[15 + 2 * i] instanceof Long), Sim0MQException.class,
+                    "Seed (field " + (15 + 2 * i) + ") should be long");
+            Long seed = (Long) objectArray[15 + 2 * i];
             this.streamMap.put(id, seed);
         }
         Throw.when(this.numberRandomStreams != this.streamMap.size(), Sim0MQException.class,
@@ -1,5 +1,8 @@
 package org.sim0mq.message.modelcontroller;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.djutils.exceptions.Throw;
 import org.sim0mq.Sim0MQException;
 import org.sim0mq.message.Sim0MQMessage;
@@ -7,7 +10,8 @@ import org.sim0mq.message.Sim0MQReply;
 
 /**
  * AckNak, MC.2. Message sent by the Model to acknowledge the reception and implementation of a message sent by the Federation
- * Manager.
+ * Manager. In response to a SetParameters message FM.14, the message can list the parameters that could not be set, with the
+ * reason per parameter, in optional fields after the error field.
  * <p>
  * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
  * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
@@ -22,6 +26,9 @@ public class MC2AckNakMessage extends Sim0MQReply
     /** Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string. */
     private final String error;
 
+    /** The errors per parameter that could not be set, in response to FM.14; empty when the optional fields are absent. */
+    private final Map<String, String> failureMap = new LinkedHashMap<>();
+
     /** the unique message id. */
     private static final String MESSAGETYPE = "MC.2";
 
@@ -51,6 +58,30 @@ public class MC2AckNakMessage extends Sim0MQReply
                 status, error});
     }
 
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param uniqueId Id to identify the callback to the message.
+     * @param status boolean; indicates whether all parameters of the FM.14 message have been set successfully.
+     * @param error If ‘status’ is False, an error message that indicates what went wrong. Otherwise, an empty string.
+     * @param failureMap The errors per parameter that could not be set.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public MC2AckNakMessage(final Object federationId, final Object senderId, final Object receiverId, final Object messageId,
+            final Object uniqueId, final boolean status, final String error, final Map<String, String> failureMap)
+            throws Sim0MQException, NullPointerException
+    {
+        this(createMessageArray(federationId, senderId, receiverId, messageId, uniqueId, status, error, failureMap));
+    }
+
     /**
      * @param objectArray Object[]; Full message object array
      * @throws Sim0MQException on unknown data type
@@ -58,11 +89,76 @@ public class MC2AckNakMessage extends Sim0MQReply
      */
     public MC2AckNakMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
     {
-        super(objectArray, 3, MESSAGETYPE);
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
         Throw.when(!(objectArray[9] instanceof Boolean), Sim0MQException.class, "status (field 9) should be Boolean");
         this.status = ((Boolean) objectArray[9]).booleanValue();
         Throw.when(!(objectArray[10] instanceof String), Sim0MQException.class, "error (field 10) should be String");
         this.error = objectArray[10].toString();
+        if (objectArray.length > 11)
+        {
+            int numberFailures = ((Integer) objectArray[11]).intValue();
+            for (int i = 0; i < numberFailures; i++)
+            {
+                Throw.when(!(objectArray[12 + 2 * i] instanceof String), Sim0MQException.class,
+                        "parameterName (field " + (12 + 2 * i) + ") should be a String");
+                Throw.when(!(objectArray[13 + 2 * i] instanceof String), Sim0MQException.class,
+                        "error (field " + (13 + 2 * i) + ") should be a String");
+                this.failureMap.put(objectArray[12 + 2 * i].toString(), objectArray[13 + 2 * i].toString());
+            }
+            Throw.when(numberFailures != this.failureMap.size(), Sim0MQException.class,
+                    "numberFailures and the number of different parameter names are different");
+        }
+    }
+
+    /**
+     * Make the full message array for a message with the optional failure fields.
+     * @param federationId the federation id
+     * @param senderId The sender id
+     * @param receiverId The receiver id
+     * @param messageId The unique message number
+     * @param uniqueId Id to identify the callback to the message
+     * @param status whether all parameters have been set successfully
+     * @param error the error message, or an empty string
+     * @param failureMap The errors per parameter that could not be set
+     * @return the object array for the message
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    private static Object[] createMessageArray(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object uniqueId, final boolean status, final String error,
+            final Map<String, String> failureMap) throws NullPointerException
+    {
+        Throw.whenNull(failureMap, "failureMap cannot be null");
+        Object[] array = new Object[12 + 2 * failureMap.size()];
+        Object[] header = new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE,
+                messageId, 4 + 2 * failureMap.size(), uniqueId, status, error, failureMap.size()};
+        System.arraycopy(header, 0, array, 0, 12);
+        int i = 12;
+        for (Map.Entry<String, String> entry : failureMap.entrySet())
+        {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        return array;
+    }
+
+    /**
+     * Calculate the number of payload fields, which is 3 without, and 4 + 2 * numberFailures with the optional failure fields.
+     * @param objectArray Object[]; the fields that constitute the message
+     * @return the number of payload fields
+     * @throws Sim0MQException when the number of fields is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        if (objectArray.length <= 11)
+        {
+            return 3;
+        }
+        Throw.when(!(objectArray[11] instanceof Integer), Sim0MQException.class,
+                "numberFailures (field 11) should be an Integer");
+        int numberFailures = ((Integer) objectArray[11]).intValue();
+        Throw.when(numberFailures < 0, Sim0MQException.class, "numberFailures should be >= 0");
+        return 4 + 2 * numberFailures;
     }
 
     /**
@@ -81,6 +177,14 @@ public class MC2AckNakMessage extends Sim0MQReply
         return this.error;
     }
 
+    /**
+     * @return the errors per parameter that could not be set; empty when the message has no failure fields
+     */
+    public final Map<String, String> getFailureMap()
+    {
+        return this.failureMap;
+    }
+
     /**
      * Builder for the StartFederate Message. Can string setters together, and call build() at the end to build the actual
      * message.
@@ -99,6 +203,9 @@ public class MC2AckNakMessage extends Sim0MQReply
         /** Optional. If there is an error, the error message is sent as well. Otherwise this field is an empty string. */
         private String error;
 
+        /** The errors per parameter that could not be set, in response to FM.14. */
+        private Map<String, String> failureMap = new LinkedHashMap<>();
+
         /**
          * Empty constructor.
          */
@@ -127,9 +234,35 @@ public class MC2AckNakMessage extends Sim0MQReply
             return this;
         }
 
+        /**
+         * @param newFailureMap set the errors per parameter that could not be set
+         * @return the original object for chaining
+         */
+        public final Builder setFailureMap(final Map<String, String> newFailureMap)
+        {
+            this.failureMap = newFailureMap;
+            return this;
+        }
+
+        /**
+         * @param parameterName the name of a parameter that could not be set
+         * @param parameterError the reason why the parameter could not be set
+         * @return the original object for chaining
+         */
+        public final Builder addFailure(final String parameterName, final String parameterError)
+        {
+            this.failureMap.put(parameterName, parameterError);
+            return this;
+        }
+
         @Override
         public MC2AckNakMessage build() throws Sim0MQException, NullPointerException
         {
+            if (!this.failureMap.isEmpty())
+            {
+                return new MC2AckNakMessage(this.federationId, this.senderId, this.receiverId, this.messageId, this.replyToId,
+                        this.status, this.error, this.failureMap);
+            }
             return new MC2AckNakMessage(this.federationId, this.senderId, this.receiverId, this.messageId, this.replyToId,
                     this.status, this.error);
         }
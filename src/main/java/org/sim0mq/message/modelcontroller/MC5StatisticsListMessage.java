@@ -0,0 +1,269 @@
+package org.sim0mq.message.modelcontroller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djutils.exceptions.Throw;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.Sim0MQReply;
+
+/**
+ * StatisticsList, MC.5. The Model sends this message as a response to a RequestStatisticsList message FM.13 sent by the
+ * Federation Manager. It contains the values of all variables that were requested, or that match a requested pattern, and an
+ * error per name or pattern that could not be answered, in the style of the StatisticsError message MC.4.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class MC5StatisticsListMessage extends Sim0MQReply
+{
+    /** Number of variable values that follow. */
+    private final int numberValues;
+
+    /** The values per variable name. */
+    private final Map<String, Object> valueMap = new LinkedHashMap<>();
+
+    /** Number of errors that follow. */
+    private final int numberErrors;
+
+    /** The errors per variable name or pattern of the request, e.g., "name" or "novalue" as in MC.4. */
+    private final Map<String, String> errorMap = new LinkedHashMap<>();
+
+    /** the unique message id. */
+    private static final String MESSAGETYPE = "MC.5";
+
+    /** */
+    private static final long serialVersionUID = 20261019L;
+
+    /**
+     * @param federationId the federation id can be coded using different types. Examples are two 64-bit longs indicating a
+     *            UUID, or a String with a UUID number, a String with meaningful identification, or a short or an int with a
+     *            simulation run number.
+     * @param senderId The sender id can be used to send back a message to the sender at some later time.
+     * @param receiverId The receiver id can be used to check whether the message is meant for us, or should be discarded (or an
+     *            error can be sent if we receive a message not meant for us).
+     * @param messageId The unique message number is meant to confirm with a callback that the message has been received
+     *            correctly. The number is unique for the sender, so not globally within the federation.
+     * @param uniqueId The message id of the FM.13 message for which this is the reply.
+     * @param valueMap The values per variable name.
+     * @param errorMap The errors per variable name or pattern of the request that could not be answered.
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public MC5StatisticsListMessage(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object uniqueId, final Map<String, Object> valueMap,
+            final Map<String, String> errorMap) throws Sim0MQException, NullPointerException
+    {
+        this(createMessageArray(federationId, senderId, receiverId, messageId, uniqueId, valueMap, errorMap));
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @throws Sim0MQException on unknown data type
+     * @throws NullPointerException when one of the parameters is null
+     */
+    public MC5StatisticsListMessage(final Object[] objectArray) throws Sim0MQException, NullPointerException
+    {
+        super(objectArray, calcPayloadFields(objectArray), MESSAGETYPE);
+        this.numberValues = ((Integer) objectArray[9]).intValue();
+        for (int i = 0; i < this.numberValues; i++)
+        {
+            Throw.when(!(objectArray[10 + 2 * i] instanceof String), Sim0MQException.class,
+                    "variableName (field " + (10 + 2 * i) + ") should be a String");
+            this.valueMap.put(objectArray[10 + 2 * i].toString(), objectArray[11 + 2 * i]);
+        }
+        int e = 10 + 2 * this.numberValues;
+        this.numberErrors = ((Integer) objectArray[e]).intValue();
+        for (int i = 0; i < this.numberErrors; i++)
+        {
+            Throw.when(!(objectArray[e + 1 + 2 * i] instanceof String), Sim0MQException.class,
+                    "variableName (field " + (e + 1 + 2 * i) + ") should be a String");
+            Throw.when(!(objectArray[e + 2 + 2 * i] instanceof String), Sim0MQException.class,
+                    "error (field " + (e + 2 + 2 * i) + ") should be a String");
+            this.errorMap.put(objectArray[e + 1 + 2 * i].toString(), objectArray[e + 2 + 2 * i].toString());
+        }
+        Throw.when(this.numberValues != this.valueMap.size() || this.numberErrors != this.errorMap.size(),
+                Sim0MQException.class, "the message contains duplicate variable names");
+    }
+
+    /**
+     * Make the full message array for this message.
+     * @param federationId the federation id
+     * @param senderId The sender id
+     * @param receiverId The receiver id
+     * @param messageId The unique message number
+     * @param uniqueId The message id of the FM.13 message for which this is the reply
+     * @param valueMap The values per variable name
+     * @param errorMap The errors per variable name or pattern
+     * @return the object array for the message
+     * @throws NullPointerException when one of the parameters is null
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    private static Object[] createMessageArray(final Object federationId, final Object senderId, final Object receiverId,
+            final Object messageId, final Object uniqueId, final Map<String, Object> valueMap,
+            final Map<String, String> errorMap) throws NullPointerException
+    {
+        Throw.whenNull(valueMap, "valueMap cannot be null");
+        Throw.whenNull(errorMap, "errorMap cannot be null");
+        int payload = 3 + 2 * valueMap.size() + 2 * errorMap.size();
+        Object[] array = new Object[8 + payload];
+        Object[] header = new Object[] {Sim0MQMessage.VERSION, true, federationId, senderId, receiverId, MESSAGETYPE,
+                messageId, payload, uniqueId};
+        System.arraycopy(header, 0, array, 0, 9);
+        int i = 9;
+        array[i++] = valueMap.size();
+        for (Map.Entry<String, Object> entry : valueMap.entrySet())
+        {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        array[i++] = errorMap.size();
+        for (Map.Entry<String, String> entry : errorMap.entrySet())
+        {
+            array[i++] = entry.getKey();
+            array[i++] = entry.getValue();
+        }
+        return array;
+    }
+
+    /**
+     * @param objectArray Object[]; Full message object array
+     * @return the number of payload fields
+     * @throws Sim0MQException when the array is too short or the number of values or errors is invalid
+     */
+    private static int calcPayloadFields(final Object[] objectArray) throws Sim0MQException
+    {
+        Throw.when(objectArray.length < 11, Sim0MQException.class, "objectArray too short -- length < 11");
+        Throw.when(!(objectArray[9] instanceof Integer), Sim0MQException.class, "numberValues (field 9) should be an Integer");
+        int numberValues = ((Integer) objectArray[9]).intValue();
+        Throw.when(numberValues < 0, Sim0MQException.class, "numberValues should be >= 0");
+        int e = 10 + 2 * numberValues;
+        Throw.when(objectArray.length <= e, Sim0MQException.class, "objectArray too short for " + numberValues + " values");
+        Throw.when(!(objectArray[e] instanceof Integer), Sim0MQException.class,
+                "numberErrors (field " + e + ") should be an Integer");
+        int numberErrors = ((Integer) objectArray[e]).intValue();
+        Throw.when(numberErrors < 0, Sim0MQException.class, "numberErrors should be >= 0");
+        return 3 + 2 * numberValues + 2 * numberErrors;
+    }
+
+    /**
+     * @return numberValues
+     */
+    public final int getNumberValues()
+    {
+        return this.numberValues;
+    }
+
+    /**
+     * @return the values per variable name
+     */
+    public final Map<String, Object> getValueMap()
+    {
+        return this.valueMap;
+    }
+
+    /**
+     * @return numberErrors
+     */
+    public final int getNumberErrors()
+    {
+        return this.numberErrors;
+    }
+
+    /**
+     * @return the errors per variable name or pattern of the request
+     */
+    public final Map<String, String> getErrorMap()
+    {
+        return this.errorMap;
+    }
+
+    /**
+     * @return messagetype
+     */
+    public static final String getMessageType()
+    {
+        return MESSAGETYPE;
+    }
+
+    /**
+     * Builder for the StatisticsList Message. Can string setters together, and call build() at the end to build the actual
+     * message.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static class Builder extends Sim0MQReply.Builder<MC5StatisticsListMessage.Builder>
+    {
+        /** The values per variable name. */
+        private Map<String, Object> valueMap = new LinkedHashMap<>();
+
+        /** The errors per variable name or pattern of the request. */
+        private Map<String, String> errorMap = new LinkedHashMap<>();
+
+        /**
+         * Empty constructor.
+         */
+        public Builder()
+        {
+            // nothing to do.
+        }
+
+        /**
+         * @param newValueMap set the values per variable name
+         * @return the original object for chaining
+         */
+        public final Builder setValueMap(final Map<String, Object> newValueMap)
+        {
+            this.valueMap = newValueMap;
+            return this;
+        }
+
+        /**
+         * @param newErrorMap set the errors per variable name or pattern
+         * @return the original object for chaining
+         */
+        public final Builder setErrorMap(final Map<String, String> newErrorMap)
+        {
+            this.errorMap = newErrorMap;
+            return this;
+        }
+
+        /**
+         * @param variableName the name of the variable
+         * @param variableValue the value of the variable
+         * @return the original object for chaining
+         */
+        public final Builder addValue(final String variableName, final Object variableValue)
+        {
+            this.valueMap.put(variableName, variableValue);
+            return this;
+        }
+
+        /**
+         * @param variableName the name of the variable or the pattern of the request that could not be answered
+         * @param error the error, e.g., "name" or "novalue" as in MC.4
+         * @return the original object for chaining
+         */
+        public final Builder addError(final String variableName, final String error)
+        {
+            this.errorMap.put(variableName, error);
+            return this;
+        }
+
+        @Override
+        public MC5StatisticsListMessage build() throws Sim0MQException, NullPointerException
+        {
+            return new MC5StatisticsListMessage(this.federationId, this.senderId, this.receiverId, this.messageId,
+                    this.replyToId, this.valueMap, this.errorMap);
+        }
+
+    }
+}
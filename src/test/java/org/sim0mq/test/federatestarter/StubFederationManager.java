@@ -0,0 +1,307 @@
+package org.sim0mq.test.federatestarter;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.djutils.serialization.SerializationException;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.federatestarter.FederateStarter;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.federationmanager.FM12StartFederatesMessage;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM9KillAllMessage;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+/**
+ * StubFederationManager runs a FederateStarter on a free port in a thread of its own, and talks to it over a DEALER socket,
+ * so a test receives the replies and the unsolicited FS.2 and FS.6 messages in the order in which they were sent. The software
+ * code "stub" starts a {@link StubModel} in the JVM of the FederateStarter, and the software code "sh" starts a shell. When the
+ * stub is closed, the federates of the federations it started are killed with FM.9, and the FederateStarter is stopped.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class StubFederationManager implements AutoCloseable
+{
+    /** the software code that starts a StubModel in the JVM of the FederateStarter. */
+    public static final String STUB = "stub";
+
+    /** the software code that starts a shell. */
+    public static final String SH = "sh";
+
+    /** the context of the socket. */
+    private final ZContext context = new ZContext(1);
+
+    /** the DEALER socket that is connected to the FederateStarter. */
+    private final ZMQ.Socket socket;
+
+    /** the thread that runs the FederateStarter. */
+    private final Thread fsThread;
+
+    /** the directory in which the federates run. */
+    private final Path workingDirectory;
+
+    /** the federations of which federates were started. */
+    private final Set<Object> federations = new LinkedHashSet<>();
+
+    /** the message id of the messages to the FederateStarter. */
+    private long messageCount = 0;
+
+    /**
+     * Start a FederateStarter on a free port, with the software codes "stub" and "sh" added to the properties, and connect to
+     * it.
+     * @param properties the fs.* properties of the FederateStarter
+     * @param modelController whether the FederateStarter talks to the model controllers of its federates
+     * @param workingDirectory the directory in which the federates run
+     * @throws IOException when no free port can be found
+     */
+    public StubFederationManager(final Properties properties, final boolean modelController, final Path workingDirectory)
+            throws IOException
+    {
+        this.workingDirectory = workingDirectory;
+        Properties softwareProperties = new Properties();
+        softwareProperties.putAll(properties);
+        softwareProperties.setProperty(STUB, "jvm:" + StubModel.class.getName());
+        softwareProperties.setProperty(SH, "sh");
+        int fsPort = freePort();
+        // the model ports lie below the ephemeral ports, which the connections to the models use as their local ports, so a
+        // model cannot find its port taken by a connection to another model; the FederateStarter skips the ports that are taken
+        int startPort = ThreadLocalRandom.current().nextInt(20000, 30000);
+        this.fsThread = new Thread(() ->
+        {
+            try
+            {
+                new FederateStarter(fsPort, softwareProperties, startPort, startPort + 50, modelController);
+            }
+            catch (Sim0MQException | SerializationException exception)
+            {
+                exception.printStackTrace();
+            }
+        }, "FederateStarter-" + fsPort);
+        // a FederateStarter that does not stop in time must not keep the JVM of the tests alive
+        this.fsThread.setDaemon(true);
+        this.fsThread.start();
+        this.socket = this.context.createSocket(SocketType.DEALER);
+        this.socket.setLinger(0);
+        // the FederateStarter reads the routing id as a String
+        this.socket.setIdentity(UUID.randomUUID().toString().getBytes());
+        this.socket.connect("tcp://127.0.0.1:" + fsPort);
+    }
+
+    /**
+     * @return a free port of the loopback interface
+     * @throws IOException when no port can be bound
+     */
+    private static int freePort() throws IOException
+    {
+        try (ServerSocket serverSocket = new ServerSocket(0))
+        {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    /**
+     * @return the next message id
+     */
+    public long nextMessageId()
+    {
+        return ++this.messageCount;
+    }
+
+    /**
+     * Return a builder of an FM.1 message for a federate that runs in the working directory, with the message id, sender and
+     * receiver filled in. The model path is the class path of the test, so a StubModel can be loaded.
+     * @param federationId the federation of the federate
+     * @param instanceId the instance id of the federate
+     * @param softwareCode the software code: "stub" or "sh"
+     * @param argsAfter the arguments after the model path, e.g. "%PORT% ack" for a StubModel
+     * @return the builder of the FM.1 message
+     */
+    public FM1StartFederateMessage.Builder startMessage(final String federationId, final String instanceId,
+            final String softwareCode, final String argsAfter)
+    {
+        this.federations.add(federationId);
+        FM1StartFederateMessage.Builder builder = new FM1StartFederateMessage.Builder();
+        builder.setSimulationRunId(federationId).setSenderId("FM").setReceiverId("FS").setMessageId(nextMessageId());
+        //@formatter:off
+        return builder
+                .setInstanceId(instanceId)
+                .setSoftwareCode(softwareCode)
+                .setArgsBefore("")
+                .setModelPath(System.getProperty("java.class.path"))
+                .setArgsAfter(argsAfter)
+                .setWorkingDirectory(this.workingDirectory.toString())
+                .setRedirectStdin("")
+                .setRedirectStdout("")
+                .setRedirectStderr("")
+                .setDeleteWorkingDirectory(false)
+                .setDeleteStdout(false)
+                .setDeleteStderr(false)
+                .setTemplate("");
+        //@formatter:on
+    }
+
+    /**
+     * Return a builder of an FM.12 message for federates that run in the working directory, with the message id, sender and
+     * receiver filled in, but without instances. The model path is the class path of the test, so a StubModel can be loaded.
+     * @param federationId the federation of the federates
+     * @param softwareCode the software code: "stub" or "sh"
+     * @param argsAfter the arguments after the model path that the instances share, e.g. "%PORT% ack" for a StubModel
+     * @return the builder of the FM.12 message
+     */
+    public FM12StartFederatesMessage.Builder startFederatesMessage(final String federationId, final String softwareCode,
+            final String argsAfter)
+    {
+        this.federations.add(federationId);
+        FM12StartFederatesMessage.Builder builder = new FM12StartFederatesMessage.Builder();
+        builder.setSimulationRunId(federationId).setSenderId("FM").setReceiverId("FS").setMessageId(nextMessageId());
+        //@formatter:off
+        return builder
+                .setSoftwareCode(softwareCode)
+                .setArgsBefore("")
+                .setModelPath(System.getProperty("java.class.path"))
+                .setArgsAfter(argsAfter)
+                .setWorkingDirectory(this.workingDirectory.toString())
+                .setRedirectStdin("")
+                .setRedirectStdout("")
+                .setRedirectStderr("")
+                .setDeleteWorkingDirectory(false)
+                .setDeleteStdout(false)
+                .setDeleteStderr(false)
+                .setTemplate("");
+        //@formatter:on
+    }
+
+    /**
+     * Send an FM.1 message to start a StubModel, and return the FS.2 reply.
+     * @param federationId the federation of the federate
+     * @param instanceId the instance id of the federate
+     * @param mode the way the StubModel answers FM.7: "ack", "nak", "silent" or "stubborn"
+     * @return the fields of the FS.2 reply
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be (de)serialized
+     */
+    public Object[] startStubModel(final String federationId, final String instanceId, final String mode)
+            throws Sim0MQException, SerializationException
+    {
+        send(startMessage(federationId, instanceId, STUB, "%PORT% " + mode).build().createByteArray());
+        return receive("FS.2", 10000L);
+    }
+
+    /**
+     * Send an FM.8 message for a federate.
+     * @param federationId the federation of the federate
+     * @param instanceId the instance id of the federate
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be serialized
+     */
+    public void sendKill(final String federationId, final String instanceId) throws Sim0MQException, SerializationException
+    {
+        send(Sim0MQMessage.encodeUTF8(true, federationId, "FM", "FS", "FM.8", nextMessageId(), instanceId));
+    }
+
+    /**
+     * Send a message to the FederateStarter.
+     * @param message the encoded message
+     */
+    public void send(final byte[] message)
+    {
+        this.socket.sendMore("");
+        this.socket.send(message, 0);
+    }
+
+    /**
+     * Receive the next message from the FederateStarter.
+     * @param timeout the maximum time to wait in ms
+     * @return the fields of the message, or null when no message was received in time
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be deserialized
+     */
+    public Object[] receive(final long timeout) throws Sim0MQException, SerializationException
+    {
+        this.socket.setReceiveTimeOut((int) timeout);
+        if (this.socket.recv(0) == null)
+        {
+            return null;
+        }
+        return Sim0MQMessage.decodeToArray(this.socket.recv(0));
+    }
+
+    /**
+     * Receive the next message from the FederateStarter, and check its type.
+     * @param messageType the expected message type, e.g. "FS.2"
+     * @param timeout the maximum time to wait in ms
+     * @return the fields of the message
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be deserialized
+     * @throws AssertionError when no message, or a message of another type was received
+     */
+    public Object[] receive(final String messageType, final long timeout) throws Sim0MQException, SerializationException
+    {
+        Object[] fields = receive(timeout);
+        if (fields == null)
+        {
+            throw new AssertionError("no " + messageType + " message received within " + timeout + " ms");
+        }
+        if (!fields[5].toString().equals(messageType))
+        {
+            throw new AssertionError("expected " + messageType + " but received " + Sim0MQMessage.print(fields));
+        }
+        return fields;
+    }
+
+    /**
+     * Kill the federates of the started federations, stop the FederateStarter, and close the socket.
+     */
+    @Override
+    public void close()
+    {
+        List<Object> federationIds = new ArrayList<>(this.federations);
+        for (Object federationId : federationIds)
+        {
+            try
+            {
+                send(new FM9KillAllMessage(federationId, "FM", "FS", nextMessageId()).createByteArray());
+                Object[] fields;
+                do
+                {
+                    fields = receive(10000L);
+                }
+                while (fields != null && !fields[5].toString().equals("FS.5"));
+            }
+            catch (Sim0MQException | SerializationException exception)
+            {
+                exception.printStackTrace();
+            }
+        }
+        // a poll of jeromq can swallow an interrupt, so the FederateStarter is interrupted till it stops or a second passed
+        long end = System.currentTimeMillis() + 1000L;
+        while (this.fsThread.isAlive() && System.currentTimeMillis() < end)
+        {
+            this.fsThread.interrupt();
+            try
+            {
+                this.fsThread.join(100L);
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.context.close();
+    }
+
+}
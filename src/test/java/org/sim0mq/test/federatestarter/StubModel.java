@@ -0,0 +1,106 @@
+package org.sim0mq.test.federatestarter;
+
+import org.djutils.serialization.SerializationException;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.modelcontroller.MC1StatusMessage;
+import org.sim0mq.message.modelcontroller.MC2AckNakMessage;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+/**
+ * StubModel is a model controller that a FederateStarter can start in its JVM with a software code of the form
+ * <code>jvm:org.sim0mq.test.federatestarter.StubModel</code>. It binds a ROUTER socket to the port in its first argument,
+ * answers FS.1 with the status "started", answers FM.7 as its second argument tells, and ends when it receives FS.3 or when its
+ * thread is interrupted. The second argument is "ack" (the default) to acknowledge a reset, "nak" to refuse it, "silent" to
+ * ignore it, or "stubborn" to acknowledge a reset but ignore FS.3, so it only ends when it is destroyed.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public final class StubModel
+{
+    /** */
+    private StubModel()
+    {
+        // main class
+    }
+
+    /**
+     * Answer the FederateStarter till FS.3 is received or the thread is interrupted.
+     * @param args the port, and optionally the way FM.7 is answered: "ack", "nak", "silent" or "stubborn"
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be (de)serialized
+     */
+    public static void main(final String[] args) throws Sim0MQException, SerializationException
+    {
+        String mode = args.length > 1 ? args[1] : "ack";
+        System.out.println("StubModel listening on port " + args[0] + " in mode " + mode);
+        long messageCount = 0;
+        try (ZContext context = new ZContext(1))
+        {
+            ZMQ.Socket socket = context.createSocket(SocketType.ROUTER);
+            socket.setLinger(0);
+            socket.bind("tcp://127.0.0.1:" + args[0]);
+            socket.setReceiveTimeOut(10);
+            while (!Thread.currentThread().isInterrupted())
+            {
+                byte[] identity = socket.recv(0);
+                if (identity == null)
+                {
+                    continue;
+                }
+                socket.recv(0);
+                Object[] fields = Sim0MQMessage.decodeToArray(socket.recv(0));
+                String type = fields[5].toString();
+                byte[] reply = null;
+                switch (type)
+                {
+                    case "FS.1":
+                        reply = new MC1StatusMessage(fields[2], fields[4], fields[3], ++messageCount, fields[6], "started", "")
+                                .createByteArray();
+                        break;
+
+                    case "FM.7":
+                        if (!mode.equals("silent"))
+                        {
+                            boolean ack = !mode.equals("nak");
+                            reply = new MC2AckNakMessage(fields[2], fields[4], fields[3], ++messageCount, fields[6], ack,
+                                    ack ? "" : "reset refused").createByteArray();
+                        }
+                        break;
+
+                    case "FS.3":
+                        if (!mode.equals("stubborn"))
+                        {
+                            System.out.println("StubModel on port " + args[0] + " ends");
+                            return;
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+                if (reply != null)
+                {
+                    socket.sendMore(identity);
+                    socket.sendMore("");
+                    socket.send(reply, 0);
+                }
+            }
+        }
+        catch (RuntimeException exception)
+        {
+            // the socket operations of jeromq throw when the thread is interrupted by destroy; other errors, such as a port
+            // that is taken, are reported
+            if (!Thread.currentThread().isInterrupted())
+            {
+                exception.printStackTrace();
+            }
+        }
+    }
+
+}
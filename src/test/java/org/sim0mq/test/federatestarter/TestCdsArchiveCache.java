@@ -0,0 +1,166 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.CdsArchiveCache;
+
+/**
+ * Tests of the CdsArchiveCache: the key of a configuration, which depends on the executable, the arguments before the model
+ * path and the model path resolved against the working directory, and the stamp with the size and modification time of the
+ * files, which makes the cache record an archive again when the model or the JVM changed.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestCdsArchiveCache
+{
+    /** the directory with the fake JVM, the models, the working directories and the cache. */
+    @TempDir
+    private Path folder;
+
+    /** the fake java executable. */
+    private Path java;
+
+    /** the directory of the cache. */
+    private Path cacheDirectory;
+
+    /**
+     * Create a fake java executable, and a model jar in two working directories.
+     * @throws IOException on error
+     */
+    @BeforeEach
+    public void createFiles() throws IOException
+    {
+        this.java = Files.createDirectories(this.folder.resolve("jdk").resolve("bin")).resolve("java");
+        Files.writeString(this.java, "jvm");
+        for (String run : List.of("run1", "run2"))
+        {
+            Files.writeString(Files.createDirectories(this.folder.resolve(run)).resolve("model.jar"), run);
+        }
+        this.cacheDirectory = this.folder.resolve("cds");
+    }
+
+    /**
+     * @param options the options of a launch
+     * @return the file to which the launch records the archive
+     */
+    private static Path recording(final List<String> options)
+    {
+        assertEquals(2, options.size(), "the launch records an archive: " + options);
+        assertEquals("-XX:+IgnoreUnrecognizedVMOptions", options.get(0));
+        assertTrue(options.get(1).startsWith("-XX:ArchiveClassesAtExit="), options.get(1));
+        return Paths.get(options.get(1).substring("-XX:ArchiveClassesAtExit=".length()));
+    }
+
+    /**
+     * Let a fake JVM write the archive that it records, and wait till the cache has stored it.
+     * @param cache the cache
+     * @param options the options of the launch
+     * @return the stored archive
+     * @throws Exception on error
+     */
+    private Path record(final CdsArchiveCache cache, final List<String> options) throws Exception
+    {
+        Path recording = recording(options);
+        Process process = new ProcessBuilder("sh", "-c", "sleep 0.2").start();
+        cache.launched(options, process);
+        Files.writeString(recording, "archive");
+        process.waitFor();
+        Path archive = recording.resolveSibling(recording.getFileName().toString().replace(".jsa.tmp", ".jsa"));
+        long end = System.currentTimeMillis() + 5000L;
+        while (!Files.isRegularFile(archive) && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        assertTrue(Files.isRegularFile(archive), "archive " + archive + " has not been stored");
+        assertFalse(Files.exists(recording));
+        return archive;
+    }
+
+    /**
+     * The key of a configuration differs for other arguments before the model path, and for a relative model path in another
+     * working directory, but not for an absolute model path that resolves to the same jar. Only one launch per configuration
+     * records at a time, and other software than java gets no options.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKey() throws Exception
+    {
+        CdsArchiveCache cache = new CdsArchiveCache(this.cacheDirectory);
+        Path run1 = this.folder.resolve("run1");
+        Path run2 = this.folder.resolve("run2");
+        List<String> first = cache.options(this.java.toString(), "-Xmx1g", "model.jar", run1);
+        Path recording = recording(first);
+        assertEquals(this.cacheDirectory, recording.getParent());
+        assertTrue(Files.isDirectory(this.cacheDirectory), "the cache directory is created");
+
+        assertEquals(List.of(), cache.options(this.java.toString(), "-Xmx1g", "model.jar", run1),
+                "the configuration is being recorded");
+        assertEquals(List.of(), cache.options(this.java.toString(), "-Xmx1g", run1.resolve("model.jar").toString(), run2),
+                "the absolute model path resolves to the same jar");
+        assertNotEquals(recording, recording(cache.options(this.java.toString(), "-Xmx2g", "model.jar", run1)));
+        assertNotEquals(recording, recording(cache.options(this.java.toString(), "-Xmx1g", "model.jar", run2)));
+        assertEquals(List.of(), cache.options("/bin/sh", "-c", "model.jar", run1), "sh is not java");
+
+        // a recording that was not launched is given up
+        cache.launched(first, null);
+        assertEquals(recording, recording(cache.options(this.java.toString(), "-Xmx1g", "model.jar", run1)));
+    }
+
+    /**
+     * A recorded archive is used by the next launches while the stamp of the configuration matches, and is recorded again
+     * when the model jar or the java executable changed, or when the recording JVM wrote no archive.
+     * @throws Exception on error
+     */
+    @Test
+    public void testStamp() throws Exception
+    {
+        CdsArchiveCache cache = new CdsArchiveCache(this.cacheDirectory);
+        Path run1 = this.folder.resolve("run1");
+        Path archive = record(cache, cache.options(this.java.toString(), "", "model.jar", run1));
+        List<String> share = List.of("-XX:+IgnoreUnrecognizedVMOptions", "-XX:SharedArchiveFile=" + archive);
+        assertEquals(share, cache.options(this.java.toString(), "", "model.jar", run1));
+        assertEquals(share, new CdsArchiveCache(this.cacheDirectory).options(this.java.toString(), "", "model.jar", run1),
+                "the archive is used by the next FederateStarter");
+
+        // a model jar of another size
+        Files.writeString(run1.resolve("model.jar"), "a new model");
+        List<String> options = cache.options(this.java.toString(), "", "model.jar", run1);
+        assertFalse(Files.exists(archive), "the out-of-date archive is removed");
+        assertEquals(archive, record(cache, options));
+        assertEquals(share, cache.options(this.java.toString(), "", "model.jar", run1));
+
+        // a java executable with another modification time; the recording JVM is killed before it writes the archive
+        Files.setLastModifiedTime(this.java, FileTime.fromMillis(Files.getLastModifiedTime(this.java).toMillis() - 60000L));
+        options = cache.options(this.java.toString(), "", "model.jar", run1);
+        recording(options);
+        Process process = new ProcessBuilder("sh", "-c", "exit 1").start();
+        cache.launched(options, process);
+        process.waitFor();
+        long end = System.currentTimeMillis() + 5000L;
+        List<String> next;
+        while ((next = cache.options(this.java.toString(), "", "model.jar", run1)).isEmpty()
+                && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        assertEquals(archive, record(cache, next), "a recording without archive is given up and recorded again");
+        assertEquals(share, cache.options(this.java.toString(), "", "model.jar", run1));
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.CorePlacement;
+
+/**
+ * Tests of the CorePlacement against fake /proc and /sys trees: the parsing of the CPU lists of the NUMA nodes and of the
+ * allowed cores, the allocation of cores on the node with the most free cores, and the CPU lists of the launchers.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestCorePlacement
+{
+    /** the directory with the fake file systems. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Create a fake topology with two NUMA nodes with cores 0-3 and 4-7, of which core 3 may not be used.
+     * @throws IOException on error
+     */
+    private void writeTopology() throws IOException
+    {
+        Path self = Files.createDirectories(this.folder.resolve("proc").resolve("self"));
+        Files.writeString(self.resolve("status"), "Name:\tjava\nCpus_allowed:\tf7\nCpus_allowed_list:\t0-2,4-7\n");
+        Path nodes = this.folder.resolve("sys").resolve("devices").resolve("system").resolve("node");
+        Files.createDirectories(nodes.resolve("node0"));
+        Files.writeString(nodes.resolve("node0").resolve("cpulist"), "0-3\n");
+        Files.createDirectories(nodes.resolve("node1"));
+        Files.writeString(nodes.resolve("node1").resolve("cpulist"), "4-7\n");
+        Files.createDirectories(nodes.resolve("possible"));
+    }
+
+    /**
+     * Return a set of cores.
+     * @param cores the cores
+     * @return the set of the cores
+     */
+    private static BitSet cores(final int... cores)
+    {
+        BitSet result = new BitSet();
+        for (int core : cores)
+        {
+            result.set(core);
+        }
+        return result;
+    }
+
+    /**
+     * Cores are allocated on the NUMA node with the most free cores, limited to the allowed cores, till no node has enough
+     * free cores; released cores can be allocated again.
+     * @throws IOException on error
+     */
+    @Test
+    public void testAllocate() throws IOException
+    {
+        writeTopology();
+        CorePlacement placement = new CorePlacement("numactl", 2, this.folder.resolve("proc"), this.folder.resolve("sys"));
+        assertTrue(placement.hasFreeCores());
+        BitSet first = placement.allocate();
+        assertEquals(cores(4, 5), first);
+        assertEquals(cores(0, 1), placement.allocate(), "node 0 has 3 allowed free cores, node 1 has 2");
+        assertEquals(cores(6, 7), placement.allocate(), "core 3 is not allowed, so node 0 has only 1 free core");
+        assertFalse(placement.hasFreeCores());
+        assertNull(placement.allocate());
+
+        placement.release(first);
+        assertTrue(placement.hasFreeCores());
+        assertEquals(cores(4, 5), placement.allocate());
+        assertEquals(List.of("numactl", "--physcpubind=4-5", "--membind=1", "model"),
+                placement.wrap(List.of("model"), cores(4, 5)));
+    }
+
+    /**
+     * Occupied cores are skipped, and the CPU list of taskset has ranges and single cores.
+     * @throws IOException on error
+     */
+    @Test
+    public void testOccupyAndWrap() throws IOException
+    {
+        writeTopology();
+        CorePlacement placement = new CorePlacement("taskset", 2, this.folder.resolve("proc"), this.folder.resolve("sys"));
+        placement.occupy(cores(1, 4, 5, 6, 7));
+        BitSet allocated = placement.allocate();
+        assertEquals(cores(0, 2), allocated);
+        assertEquals(List.of("taskset", "-c", "0,2", "java", "-jar", "model.jar"),
+                placement.wrap(List.of("java", "-jar", "model.jar"), allocated));
+        assertEquals(List.of("taskset", "-c", "0-2,4,6-7", "model"), placement.wrap(List.of("model"), cores(0, 1, 2, 4, 6, 7)));
+    }
+
+    /**
+     * Without a readable topology, all available processors are on one node.
+     */
+    @Test
+    public void testNoTopology()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        CorePlacement placement =
+                new CorePlacement("taskset", processors, this.folder.resolve("proc"), this.folder.resolve("sys"));
+        BitSet all = new BitSet();
+        all.set(0, processors);
+        assertEquals(all, placement.allocate());
+        assertFalse(placement.hasFreeCores());
+        assertFalse(new CorePlacement("taskset", processors + 1, this.folder.resolve("proc"), this.folder.resolve("sys"))
+                .hasFreeCores());
+    }
+
+    /**
+     * An unknown launcher or less than one core per federate is refused.
+     */
+    @Test
+    public void testArguments()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new CorePlacement("nice", 1));
+        assertThrows(IllegalArgumentException.class, () -> new CorePlacement("taskset", 0));
+    }
+
+}
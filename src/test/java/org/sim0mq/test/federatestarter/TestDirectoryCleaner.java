@@ -0,0 +1,187 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.DirectoryCleaner;
+
+/**
+ * Tests of the DirectoryCleaner: the deletion of directory trees in the background, the protection of the directories that
+ * contain the home or working directory, and the reclaim of the orphans in the journal of an earlier run, which is limited to
+ * the directories under the cleanup root that the cleaner saw being created, and to a journal of the user.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestDirectoryCleaner
+{
+    /** the directory with the working directories and the journal. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Create a directory with a file and a subdirectory with a file.
+     * @param directory the directory
+     * @return the directory
+     * @throws IOException on error
+     */
+    private static Path tree(final Path directory) throws IOException
+    {
+        Files.createDirectories(directory.resolve("sub"));
+        Files.writeString(directory.resolve("a.txt"), "a");
+        Files.writeString(directory.resolve("sub").resolve("b.txt"), "b");
+        return directory;
+    }
+
+    /**
+     * Wait till a path has been deleted.
+     * @param path the path
+     * @throws InterruptedException when the wait is interrupted
+     */
+    private static void awaitDeleted(final Path path) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 5000L;
+        while (Files.exists(path) && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        assertFalse(Files.exists(path), path + " has not been deleted");
+    }
+
+    /**
+     * A directory tree is deleted in the background, but the root of the file system and the directories that contain the
+     * home or working directory are not.
+     * @throws Exception on error
+     */
+    @Test
+    public void testDeleteAndProtect() throws Exception
+    {
+        DirectoryCleaner cleaner = new DirectoryCleaner(null, null, 0);
+        try
+        {
+            Path home = Paths.get(System.getProperty("user.home")).toAbsolutePath();
+            cleaner.delete(home.getRoot());
+            cleaner.delete(home);
+            cleaner.delete(Paths.get(""));
+            cleaner.delete(Paths.get("").toAbsolutePath().getParent());
+            Path tree = tree(this.folder.resolve("run"));
+            cleaner.delete(tree);
+            awaitDeleted(tree);
+            assertTrue(Files.isDirectory(home));
+            assertTrue(Files.isDirectory(Paths.get("").toAbsolutePath()));
+        }
+        finally
+        {
+            cleaner.shutdown();
+        }
+    }
+
+    /**
+     * The directories under the root that a run registered before they were created and that it did not delete, are reclaimed
+     * by the next run; a directory that existed before it was registered, a kept directory, and the root and a directory
+     * outside the root that were added to the journal by hand are not.
+     * @throws Exception on error
+     */
+    @Test
+    public void testReclaimOrphans() throws Exception
+    {
+        Path journal = this.folder.resolve("cleanup.txt");
+        Path root = Files.createDirectories(this.folder.resolve("root"));
+        Path outside = tree(this.folder.resolve("outside"));
+        Path existing = tree(root.resolve("existing"));
+        Path orphan = root.resolve("orphan");
+        Path deleted = root.resolve("deleted");
+        Path adopted = root.resolve("adopted");
+
+        DirectoryCleaner first = new DirectoryCleaner(journal, root, 0);
+        try
+        {
+            for (Path directory : List.of(orphan, deleted, adopted, existing, outside))
+            {
+                first.register(directory);
+                tree(directory);
+            }
+            first.delete(deleted);
+            awaitDeleted(deleted);
+            Thread.sleep(100L);
+        }
+        finally
+        {
+            first.shutdown();
+        }
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        assertEquals(List.of("+" + orphan, "+" + deleted, "+" + adopted, "-" + deleted), lines);
+        Files.write(journal, List.of("+" + outside, "+" + root), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        DirectoryCleaner second = new DirectoryCleaner(journal, root, 0);
+        try
+        {
+            second.keep(adopted);
+            assertEquals(1, second.reclaimOrphans());
+            awaitDeleted(orphan);
+            Thread.sleep(100L);
+            assertTrue(Files.isDirectory(adopted));
+            assertTrue(Files.isDirectory(existing));
+            assertTrue(Files.isDirectory(outside));
+            assertTrue(Files.isDirectory(root));
+            // the reclaim compacted the journal to the kept directory and the orphan, and the delete of the orphan was appended
+            assertEquals(List.of("+" + adopted, "+" + orphan, "-" + orphan),
+                    Files.readAllLines(journal, StandardCharsets.UTF_8));
+        }
+        finally
+        {
+            second.shutdown();
+        }
+    }
+
+    /**
+     * The orphans are not reclaimed without a root, or when the journal is not owned by the user of the FederateStarter.
+     * @throws Exception on error
+     */
+    @Test
+    public void testUntrustedJournal() throws Exception
+    {
+        Path journal = this.folder.resolve("cleanup.txt");
+        Path root = Files.createDirectories(this.folder.resolve("root"));
+        Path orphan = tree(root.resolve("orphan"));
+        Files.write(journal, List.of("+" + orphan), StandardCharsets.UTF_8);
+
+        DirectoryCleaner noRoot = new DirectoryCleaner(journal, null, 0);
+        try
+        {
+            assertEquals(0, noRoot.reclaimOrphans());
+        }
+        finally
+        {
+            noRoot.shutdown();
+        }
+
+        String user = System.getProperty("user.name");
+        DirectoryCleaner cleaner = new DirectoryCleaner(journal, root, 0);
+        try
+        {
+            System.setProperty("user.name", user + "-other");
+            assertEquals(0, cleaner.reclaimOrphans(), "the journal is owned by another user");
+        }
+        finally
+        {
+            System.setProperty("user.name", user);
+            cleaner.shutdown();
+        }
+        assertTrue(Files.isDirectory(orphan));
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.FederateJournal;
+import org.sim0mq.federatestarter.FederateJournal.Entry;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+
+/**
+ * Tests of the FederateJournal: the replay of the starts, idle processes and ends of the federates when the journal is opened
+ * again, the compaction of the journal to the records of the running federates, a journal that ends in a torn record, and the
+ * growth of the journal for a record that is larger than the mapping.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestFederateJournal
+{
+    /** the directory with the journal. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Create the FM.1 message of a federate.
+     * @param instanceId the instance id
+     * @param argsAfter the arguments after the model path
+     * @return the FM.1 message
+     * @throws Exception on error
+     */
+    private static FM1StartFederateMessage startMessage(final String instanceId, final String argsAfter) throws Exception
+    {
+        FM1StartFederateMessage.Builder builder = new FM1StartFederateMessage.Builder();
+        builder.setSimulationRunId("RUN").setSenderId("FM").setReceiverId("FS").setMessageId(1L);
+        //@formatter:off
+        return builder
+                .setInstanceId(instanceId)
+                .setSoftwareCode("java")
+                .setArgsBefore("-jar")
+                .setModelPath("model.jar")
+                .setArgsAfter(argsAfter)
+                .setWorkingDirectory("/tmp/" + instanceId)
+                .setRedirectStdin("")
+                .setRedirectStdout("out.txt")
+                .setRedirectStderr("err.txt")
+                .setDeleteWorkingDirectory(true)
+                .setDeleteStdout(false)
+                .setDeleteStderr(false)
+                .setTemplate("")
+                .build();
+        //@formatter:on
+    }
+
+    /**
+     * @param entries the entries of the journal
+     * @return the instance ids of the entries
+     */
+    private static List<Object> instanceIds(final List<Entry> entries)
+    {
+        return entries.stream().map(e -> e.getStartFederateMessage().getInstanceId()).toList();
+    }
+
+    /**
+     * A journal that is opened again recovers the federates that did not end, in the order of their start, with their pid,
+     * port, identity, model id, FM.1 message, cores, and whether their process was idle.
+     * @throws Exception on error
+     */
+    @Test
+    public void testReplay() throws Exception
+    {
+        Path file = this.folder.resolve("federates.journal");
+        long pid = ProcessHandle.current().pid();
+        FederateJournal journal = new FederateJournal(file);
+        assertTrue(journal.getRecovered().isEmpty());
+        BitSet cores = new BitSet();
+        cores.set(2, 4);
+        journal.started("A", pid, 5001, "fm-1", null, startMessage("A", "1"), null);
+        journal.started("B", pid, 5002, "fm-1", "A", startMessage("B", "2"), cores);
+        journal.started("C", pid, 5003, "fm-2", null, startMessage("C", "3"), null);
+        journal.idle("C");
+        journal.ended("A");
+        journal.ended("unknown");
+
+        List<Entry> recovered = new FederateJournal(file).getRecovered();
+        assertEquals(List.of("B", "C"), instanceIds(recovered));
+        Entry b = recovered.get(0);
+        assertEquals(pid, b.getPid());
+        assertEquals(5002, b.getPort());
+        assertEquals("fm-1", b.getIdentity());
+        assertEquals("A", b.getModelId());
+        assertEquals("2", b.getStartFederateMessage().getArgsAfter());
+        assertEquals("/tmp/B", b.getStartFederateMessage().getWorkingDirectory());
+        assertEquals(cores, b.getCores());
+        assertFalse(b.isIdle());
+        assertEquals(ProcessHandle.current(), b.findProcess(), "the process of the journal is still running");
+        Entry c = recovered.get(1);
+        assertEquals("fm-2", c.getIdentity());
+        assertNull(c.getModelId());
+        assertNull(c.getCores());
+        assertTrue(c.isIdle());
+    }
+
+    /**
+     * When a journal is opened, it is compacted to the start and idle records of the running federates, and the sequence
+     * numbers continue after the ones in the journal, so a later end is not mistaken for the end of an earlier federate.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCompaction() throws Exception
+    {
+        Path file = this.folder.resolve("federates.journal");
+        long pid = ProcessHandle.current().pid();
+        FederateJournal journal = new FederateJournal(file);
+        for (int i = 0; i < 100; i++)
+        {
+            journal.started("X" + i, pid, 6000 + i, "fm", null, startMessage("X" + i, ""), null);
+            journal.ended("X" + i);
+        }
+        journal.started("A", pid, 5001, "fm", null, startMessage("A", ""), null);
+        journal.started("B", pid, 5002, "fm", null, startMessage("B", ""), null);
+        journal.idle("B");
+
+        FederateJournal reopened = new FederateJournal(file);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        int first = bytes.getInt(0);
+        int second = bytes.getInt(4 + first);
+        int third = bytes.getInt(4 + first + 4 + second);
+        assertEquals(101L, bytes.getLong(4 + 1), "the first record is the start of A");
+        assertEquals(9, third, "the third record is the idle record of B");
+        assertEquals(0, bytes.getInt(4 + first + 4 + second + 4 + third), "the ended federates are compacted away");
+
+        reopened.started("C", pid, 5003, "fm", null, startMessage("C", ""), null);
+        reopened.ended("A");
+        assertEquals(List.of("B", "C"), instanceIds(new FederateJournal(file).getRecovered()));
+    }
+
+    /**
+     * A record that was torn by a crash, because its length was not written, or because the file ends within the record, ends
+     * the journal; the records before it are recovered.
+     * @throws Exception on error
+     */
+    @Test
+    public void testTornRecord() throws Exception
+    {
+        Path file = this.folder.resolve("federates.journal");
+        long pid = ProcessHandle.current().pid();
+        FederateJournal journal = new FederateJournal(file);
+        journal.started("A", pid, 5001, "fm", null, startMessage("A", ""), null);
+        journal.started("B", pid, 5002, "fm", null, startMessage("B", ""), null);
+        journal.started("C", pid, 5003, "fm", null, startMessage("C", ""), null);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int a = buffer.getInt(0);
+        int b = buffer.getInt(4 + a);
+
+        // the length of C was not written
+        buffer.putInt(4 + a + 4 + b, 0);
+        Files.write(file, bytes);
+        assertEquals(List.of("A", "B"), instanceIds(new FederateJournal(file).getRecovered()));
+
+        // the file ends within the record of B
+        byte[] torn = new byte[4 + a + 4 + b / 2];
+        System.arraycopy(bytes, 0, torn, 0, torn.length);
+        Files.write(file, torn);
+        assertEquals(List.of("A"), instanceIds(new FederateJournal(file).getRecovered()));
+    }
+
+    /**
+     * A record that is larger than the free space of the mapping, even after compaction, grows the journal till it fits.
+     * @throws Exception on error
+     */
+    @Test
+    public void testGrow() throws Exception
+    {
+        Path file = this.folder.resolve("federates.journal");
+        long pid = ProcessHandle.current().pid();
+        FederateJournal journal = new FederateJournal(file);
+        long size = Files.size(file);
+        String large = "x".repeat((int) size * 2);
+        journal.started("A", pid, 5001, "fm", null, startMessage("A", ""), null);
+        journal.started("B", pid, 5002, "fm", null, startMessage("B", large), null);
+        journal.started("C", pid, 5003, "fm", null, startMessage("C", ""), null);
+        assertTrue(Files.size(file) > 2 * size, "the journal has grown");
+        List<Entry> recovered = new FederateJournal(file).getRecovered();
+        assertEquals(List.of("A", "B", "C"), instanceIds(recovered));
+        assertEquals(large, recovered.get(1).getStartFederateMessage().getArgsAfter());
+    }
+
+}
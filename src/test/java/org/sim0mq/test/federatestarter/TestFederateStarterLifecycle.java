@@ -0,0 +1,309 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.message.federatestarter.FS2FederateStartedMessage;
+import org.sim0mq.message.federatestarter.FS4FederateKilledMessage;
+import org.sim0mq.message.federatestarter.FS5FederatesKilledMessage;
+import org.sim0mq.message.federatestarter.FS6FederateExitedMessage;
+import org.sim0mq.message.federatestarter.FS9FederatesStartedMessage;
+import org.sim0mq.message.federatestarter.FS9FederatesStartedMessage.InstanceStatus;
+import org.sim0mq.message.federationmanager.FM12StartFederatesMessage;
+import org.sim0mq.message.federationmanager.FM9KillAllMessage;
+
+/**
+ * Tests of the life cycle of the federates of a FederateStarter, against a stub Federation Manager and stub model controllers
+ * that run in the JVM of the FederateStarter.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestFederateStarterLifecycle
+{
+    /** the directory in which the federates run. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * With fs.reuse, a model that acknowledges the FM.7 reset is kept, and its process is handed out to the next FM.1 for the
+     * same software; a model that refuses or ignores the reset is killed. The FederateStarter serves other messages while it
+     * waits for the reply on the reset.
+     * @throws Exception on error
+     */
+    @Test
+    public void testReuseAndReset() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.reuse", "true");
+        properties.setProperty("fs.reuse.timeout", "500");
+        try (StubFederationManager fm = new StubFederationManager(properties, true, this.folder))
+        {
+            FS2FederateStartedMessage a = new FS2FederateStartedMessage(fm.startStubModel("RUN", "A", "ack"));
+            assertEquals("started", a.getStatus(), a.getError());
+            fm.sendKill("RUN", "A");
+            FS4FederateKilledMessage killedA = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedA.isStatus(), killedA.getError());
+            assertEquals("A", killedA.getInstanceId());
+
+            FS2FederateStartedMessage b = new FS2FederateStartedMessage(fm.startStubModel("RUN", "B", "ack"));
+            assertEquals("started", b.getStatus(), b.getError());
+            assertEquals(a.getModelPort(), b.getModelPort());
+            assertEquals("A", b.getModelId(), "the process of A is reused");
+
+            // the start of D is answered while the FederateStarter waits for the reply of C on the reset
+            FS2FederateStartedMessage c = new FS2FederateStartedMessage(fm.startStubModel("RUN", "C", "silent"));
+            assertEquals("started", c.getStatus(), c.getError());
+            long killTime = System.currentTimeMillis();
+            fm.sendKill("RUN", "C");
+            FS2FederateStartedMessage d = new FS2FederateStartedMessage(fm.startStubModel("RUN", "D", "nak"));
+            assertEquals("started", d.getStatus(), d.getError());
+            assertEquals("D", d.getModelId());
+            FS4FederateKilledMessage killedC = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertEquals("C", killedC.getInstanceId());
+            assertTrue(killedC.isStatus(), killedC.getError());
+            assertTrue(System.currentTimeMillis() - killTime >= 500L, "C is killed after the reuse timeout");
+
+            // D refuses the reset, so it is killed, and the next start gets a process of its own
+            fm.sendKill("RUN", "D");
+            FS4FederateKilledMessage killedD = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertEquals("D", killedD.getInstanceId());
+            assertTrue(killedD.isStatus(), killedD.getError());
+            FS2FederateStartedMessage e = new FS2FederateStartedMessage(fm.startStubModel("RUN", "E", "nak"));
+            assertEquals("started", e.getStatus(), e.getError());
+            assertEquals("E", e.getModelId());
+            assertNotEquals(b.getModelPort(), e.getModelPort());
+        }
+    }
+
+    /**
+     * With fs.notify, a federate that exits on its own is reported with an unsolicited FS.6 message with its exit code and
+     * runtime, and a later FM.8 for it succeeds; a federate that is killed is not reported with FS.6.
+     * @throws Exception on error
+     */
+    @Test
+    public void testNotifyExit() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.notify", "true");
+        try (StubFederationManager fm = new StubFederationManager(properties, false, this.folder))
+        {
+            fm.send(fm.startMessage("RUN", "X", StubFederationManager.SH, "").setArgsBefore("-c")
+                    .setModelPath("sleep 0.3; exit 3").build().createByteArray());
+            FS2FederateStartedMessage x = new FS2FederateStartedMessage(fm.receive("FS.2", 5000L));
+            assertEquals("started", x.getStatus(), x.getError());
+            FS6FederateExitedMessage exited = new FS6FederateExitedMessage(fm.receive("FS.6", 5000L));
+            assertEquals("X", exited.getInstanceId());
+            assertEquals(3, exited.getExitCode());
+            assertTrue(exited.getRuntime().si >= 0.2, "runtime " + exited.getRuntime());
+            fm.sendKill("RUN", "X");
+            FS4FederateKilledMessage killedX = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedX.isStatus(), killedX.getError());
+
+            fm.send(fm.startMessage("RUN", "Y", StubFederationManager.SH, "").setArgsBefore("-c").setModelPath("sleep 30")
+                    .build().createByteArray());
+            assertEquals("started", new FS2FederateStartedMessage(fm.receive("FS.2", 5000L)).getStatus());
+            fm.sendKill("RUN", "Y");
+            FS4FederateKilledMessage killedY = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertEquals("Y", killedY.getInstanceId());
+            assertTrue(killedY.isStatus(), killedY.getError());
+            assertNull(fm.receive(500L), "no FS.6 for a killed federate");
+        }
+    }
+
+    /**
+     * FM.9 kills all federates of a federation, including its idle processes, and is answered with FS.5 when they are gone;
+     * the federates of another federation keep running.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKillAll() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.reuse", "true");
+        try (StubFederationManager fm = new StubFederationManager(properties, true, this.folder))
+        {
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("RUN", "A", "ack")).getStatus());
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("RUN", "B", "ack")).getStatus());
+            fm.sendKill("RUN", "B");
+            assertTrue(new FS4FederateKilledMessage(fm.receive("FS.4", 5000L)).isStatus(), "B is reset and idle");
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("OTHER", "C", "ack")).getStatus());
+
+            fm.send(new FM9KillAllMessage("RUN", "FM", "FS", fm.nextMessageId()).createByteArray());
+            FS5FederatesKilledMessage killed = new FS5FederatesKilledMessage(fm.receive("FS.5", 5000L));
+            assertTrue(killed.isStatus(), killed.getError());
+
+            // the idle process of B has been killed as well, so it is not reused
+            FS2FederateStartedMessage e = new FS2FederateStartedMessage(fm.startStubModel("RUN", "E", "ack"));
+            assertEquals("started", e.getStatus(), e.getError());
+            assertEquals("E", e.getModelId());
+            fm.sendKill("OTHER", "C");
+            FS4FederateKilledMessage killedC = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedC.isStatus(), killedC.getError());
+        }
+    }
+
+    /**
+     * A model that ignores FS.3 is asked to terminate by the operating system after fs.kill.graceperiod, and all models of an
+     * FM.9 get their grace period at the same time. A process that ignores the request to terminate is destroyed forcibly
+     * after fs.kill.termperiod.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKillEscalation() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.kill.graceperiod", "500");
+        properties.setProperty("fs.kill.termperiod", "500");
+        try (StubFederationManager fm = new StubFederationManager(properties, true, this.folder))
+        {
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("RUN", "A", "stubborn")).getStatus());
+            long killTime = System.currentTimeMillis();
+            fm.sendKill("RUN", "A");
+            FS4FederateKilledMessage killedA = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedA.isStatus(), killedA.getError());
+            assertTrue(System.currentTimeMillis() - killTime >= 500L, "A is destroyed after the grace period");
+
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("RUN", "B", "stubborn")).getStatus());
+            assertEquals("started", new FS2FederateStartedMessage(fm.startStubModel("RUN", "C", "stubborn")).getStatus());
+            killTime = System.currentTimeMillis();
+            fm.send(new FM9KillAllMessage("RUN", "FM", "FS", fm.nextMessageId()).createByteArray());
+            FS5FederatesKilledMessage killed = new FS5FederatesKilledMessage(fm.receive("FS.5", 5000L));
+            assertTrue(killed.isStatus(), killed.getError());
+            long duration = System.currentTimeMillis() - killTime;
+            assertTrue(duration >= 500L && duration < 1000L, "B and C share the grace period, but took " + duration + " ms");
+        }
+
+        try (StubFederationManager fm = new StubFederationManager(properties, false, this.folder))
+        {
+            fm.send(fm.startMessage("RUN", "X", StubFederationManager.SH, "").setArgsBefore("-c")
+                    .setModelPath("trap '' TERM; exec sleep 30").build().createByteArray());
+            assertEquals("started", new FS2FederateStartedMessage(fm.receive("FS.2", 5000L)).getStatus());
+            long killTime = System.currentTimeMillis();
+            fm.sendKill("RUN", "X");
+            FS4FederateKilledMessage killedX = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedX.isStatus(), killedX.getError());
+            long duration = System.currentTimeMillis() - killTime;
+            assertTrue(duration >= 500L && duration < 1000L, "X is destroyed forcibly after the term period, took " + duration);
+        }
+    }
+
+    /**
+     * With fs.admission, a start for which the node has no room is answered with an FS.2 status "queued" and an estimated
+     * wait, and a start beyond the length of the queue with an FS.2 error. A queued start can be cancelled with FM.8, and with
+     * fs.notify, a queued start that is carried out later is reported with an unsolicited FS.2 message.
+     * @throws Exception on error
+     */
+    @Test
+    public void testAdmissionQueue() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.notify", "true");
+        properties.setProperty("fs.admission", "true");
+        properties.setProperty("fs.admission.federates", "1");
+        properties.setProperty("fs.admission.interval", "100");
+        properties.setProperty("fs.admission.cpu", "1.0");
+        properties.setProperty("fs.admission.memory", "0");
+        properties.setProperty("fs.admission.queue", "2");
+        try (StubFederationManager fm = new StubFederationManager(properties, true, this.folder))
+        {
+            FS2FederateStartedMessage a = new FS2FederateStartedMessage(fm.startStubModel("RUN", "A", "ack"));
+            assertEquals("started", a.getStatus(), a.getError());
+            FS2FederateStartedMessage b = new FS2FederateStartedMessage(fm.startStubModel("RUN", "B", "ack"));
+            assertEquals("queued", b.getStatus(), b.getError());
+            assertEquals(0, b.getModelPort());
+            assertTrue(b.getEstimatedWait().si > 0.0, "estimated wait " + b.getEstimatedWait());
+            assertEquals("queued", new FS2FederateStartedMessage(fm.startStubModel("RUN", "C", "ack")).getStatus());
+            FS2FederateStartedMessage d = new FS2FederateStartedMessage(fm.startStubModel("RUN", "D", "ack"));
+            assertEquals("error", d.getStatus());
+            assertTrue(d.getError().contains("queue full"), d.getError());
+
+            fm.sendKill("RUN", "C");
+            FS4FederateKilledMessage killedC = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertTrue(killedC.isStatus(), killedC.getError());
+
+            // the room that A leaves is taken by B, and not by the cancelled C
+            fm.sendKill("RUN", "A");
+            FS4FederateKilledMessage killedA = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+            assertEquals("A", killedA.getInstanceId());
+            assertTrue(killedA.isStatus(), killedA.getError());
+            FS2FederateStartedMessage startedB = new FS2FederateStartedMessage(fm.receive("FS.2", 10000L));
+            assertEquals("B", startedB.getInstanceId());
+            assertEquals("started", startedB.getStatus(), startedB.getError());
+            assertTrue(startedB.getModelPort() > 0);
+            assertNull(fm.receive(500L), "C is not started");
+        }
+    }
+
+    /**
+     * FM.12 starts a batch of federates in parallel, with %INSTANCE% replaced by the instance id, and is answered with one FS.9
+     * message with the status, port and model id of every instance. An instance that cannot be started is reported with an
+     * error, without failing the other instances.
+     * @throws Exception on error
+     */
+    @Test
+    public void testStartFederates() throws Exception
+    {
+        try (StubFederationManager fm = new StubFederationManager(new Properties(), true, this.folder))
+        {
+            FM12StartFederatesMessage.Builder builder =
+                    fm.startFederatesMessage("RUN", StubFederationManager.STUB, "%PORT% ack");
+            builder.addInstance("A").addInstance("B").addInstance("C")
+                    .setWorkingDirectory(this.folder.resolve(FM12StartFederatesMessage.INSTANCE).toString());
+            fm.send(builder.build().createByteArray());
+            FS9FederatesStartedMessage started = new FS9FederatesStartedMessage(fm.receive("FS.9", 10000L));
+            assertEquals(3, started.getNumberInstances());
+            List<InstanceStatus> statusList = started.getInstanceStatusList();
+            Set<Integer> ports = new HashSet<>();
+            for (InstanceStatus status : statusList)
+            {
+                assertEquals("started", status.getStatus(), status.getError());
+                assertEquals(status.getInstanceId(), status.getModelId());
+                assertTrue(status.getModelPort() > 0);
+                ports.add(status.getModelPort());
+            }
+            assertEquals(List.of("A", "B", "C"), statusList.stream().map(s -> s.getInstanceId().toString()).toList());
+            assertEquals(3, ports.size(), "every instance has a port of its own");
+            assertTrue(Files.isDirectory(this.folder.resolve("B")), "%INSTANCE% is replaced in the working directory");
+
+            // a batch with an instance of which the working directory cannot be created, because it is a file
+            Files.writeString(this.folder.resolve("D"), "D");
+            fm.send(fm.startFederatesMessage("RUN", StubFederationManager.STUB, "%PORT% ack").addInstance("D").addInstance("E")
+                    .setWorkingDirectory(this.folder.resolve(FM12StartFederatesMessage.INSTANCE).toString()).build()
+                    .createByteArray());
+            FS9FederatesStartedMessage mixed = new FS9FederatesStartedMessage(fm.receive("FS.9", 10000L));
+            assertEquals(2, mixed.getNumberInstances());
+            InstanceStatus d = mixed.getInstanceStatusList().get(0);
+            assertEquals("D", d.getInstanceId());
+            assertEquals("error", d.getStatus());
+            assertFalse(d.getError().isEmpty());
+            InstanceStatus e = mixed.getInstanceStatusList().get(1);
+            assertEquals("E", e.getInstanceId());
+            assertEquals("started", e.getStatus(), e.getError());
+            assertFalse(ports.contains(e.getModelPort()));
+
+            for (String instanceId : List.of("A", "B", "C", "E"))
+            {
+                fm.sendKill("RUN", instanceId);
+                FS4FederateKilledMessage killed = new FS4FederateKilledMessage(fm.receive("FS.4", 5000L));
+                assertEquals(instanceId, killed.getInstanceId());
+                assertTrue(killed.isStatus(), killed.getError());
+            }
+        }
+    }
+
+}
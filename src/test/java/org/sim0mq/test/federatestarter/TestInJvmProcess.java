@@ -0,0 +1,218 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.InJvmProcess;
+import org.sim0mq.federatestarter.OutputCapture;
+
+/**
+ * Tests of the InJvmProcess: the exit code of a model that returns, fails, or is destroyed (forcibly), the life of the process
+ * while a non-daemon thread of the model runs, and the routing of the output of the threads of the model to a redirect file or
+ * a captured pipe, apart from the output of the other threads of the JVM.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestInJvmProcess
+{
+    /** the directory for the redirect files. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Start the Model of this test in the JVM.
+     * @param instanceId the instance id
+     * @param mode the mode of the Model
+     * @param redirectStdout the file for stdout, %CAPTURE%, or an empty String
+     * @param redirectStderr the file for stderr, %CAPTURE%, or an empty String
+     * @return the running process
+     * @throws IOException when the process cannot be started
+     */
+    private static InJvmProcess start(final String instanceId, final String mode, final String redirectStdout,
+            final String redirectStderr) throws IOException
+    {
+        return InJvmProcess.start(instanceId, Model.class.getName(), System.getProperty("java.class.path"),
+                List.of(mode, instanceId), redirectStdout, redirectStderr);
+    }
+
+    /**
+     * A model that returns from its main method exits with 0, and a model whose main method throws exits with 1; the process
+     * stays alive as long as a non-daemon thread of the model runs.
+     * @throws Exception on error
+     */
+    @Test
+    public void testExitCode() throws Exception
+    {
+        InJvmProcess echo = start("echo", "echo", "", "");
+        assertTrue(echo.waitFor(5, TimeUnit.SECONDS));
+        assertEquals(0, echo.exitValue());
+        assertFalse(echo.isAlive());
+
+        InJvmProcess fail = start("fail", "fail", "", "");
+        assertEquals(1, fail.onExit().get(5, TimeUnit.SECONDS).exitValue());
+
+        InJvmProcess thread = start("thread", "thread", "", "");
+        assertThrows(IllegalThreadStateException.class, () -> thread.exitValue());
+        assertFalse(thread.waitFor(100, TimeUnit.MILLISECONDS), "the non-daemon thread of the model keeps it alive");
+        assertTrue(thread.waitFor(5, TimeUnit.SECONDS));
+        assertEquals(0, thread.exitValue());
+
+        assertThrows(IOException.class, () -> InJvmProcess.start("missing", "org.sim0mq.Missing",
+                System.getProperty("java.class.path"), List.of(), "", ""));
+    }
+
+    /**
+     * A destroyed model exits with 143 when its threads end on the interrupt; a model that ignores the interrupt keeps running
+     * till it is destroyed forcibly, and then exits with 137.
+     * @throws Exception on error
+     */
+    @Test
+    public void testDestroy() throws Exception
+    {
+        InJvmProcess sleep = start("sleep", "sleep", "", "");
+        assertFalse(sleep.waitFor(100, TimeUnit.MILLISECONDS));
+        sleep.destroy();
+        assertTrue(sleep.waitFor(5, TimeUnit.SECONDS));
+        assertEquals(143, sleep.exitValue());
+
+        InJvmProcess stubborn = start("stubborn", "stubborn", "", "");
+        assertFalse(stubborn.waitFor(100, TimeUnit.MILLISECONDS));
+        stubborn.destroy();
+        assertFalse(stubborn.waitFor(300, TimeUnit.MILLISECONDS), "the model ignores the interrupt of destroy");
+        stubborn.destroyForcibly();
+        assertTrue(stubborn.waitFor(5, TimeUnit.SECONDS));
+        assertEquals(137, stubborn.exitValue());
+        assertEquals(ProcessHandle.current().pid(), stubborn.pid(), "an in-JVM process has the pid of the JVM");
+    }
+
+    /**
+     * The output of the threads of a model goes to its redirect file or its captured pipe, including the output of the threads
+     * that the model started, and the output of other threads does not.
+     * @throws Exception on error
+     */
+    @Test
+    public void testOutputRouting() throws Exception
+    {
+        Path out = this.folder.resolve("out.txt");
+        InJvmProcess file = start("file", "thread", out.toString(), OutputCapture.CAPTURE);
+        InJvmProcess other = start("other", "echo", OutputCapture.CAPTURE, "");
+        System.out.println("test thread");
+        assertTrue(file.waitFor(5, TimeUnit.SECONDS));
+        assertTrue(other.waitFor(5, TimeUnit.SECONDS));
+        assertEquals("out:file\nthread:file\n", Files.readString(out, StandardCharsets.UTF_8).replace("\r\n", "\n"));
+        assertEquals("err:file\n", new String(file.getErrorStream().readAllBytes(), StandardCharsets.UTF_8)
+                .replace("\r\n", "\n"));
+        assertEquals(0, file.getInputStream().readAllBytes().length, "stdout of a redirected model is not piped");
+        assertEquals("out:other\n", new String(other.getInputStream().readAllBytes(), StandardCharsets.UTF_8)
+                .replace("\r\n", "\n"));
+    }
+
+    /**
+     * Model that is started in the JVM by the tests. The first argument is the mode: "echo" writes the second argument to
+     * stdout and stderr, "fail" throws an exception, "thread" echoes and starts a non-daemon thread that writes to stdout after
+     * 300 ms, "sleep" sleeps till it is interrupted, and "stubborn" ignores interrupts till it was interrupted 3 times.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    public static final class Model
+    {
+        /** */
+        private Model()
+        {
+            // main class
+        }
+
+        /**
+         * Run the model in the given mode.
+         * @param args the mode, and the text to write
+         * @throws InterruptedException when a sleep of the "thread" mode is interrupted
+         */
+        public static void main(final String[] args) throws InterruptedException
+        {
+            switch (args[0])
+            {
+                case "echo":
+                    echo(args[1]);
+                    break;
+
+                case "fail":
+                    throw new IllegalStateException("model fails");
+
+                case "thread":
+                    echo(args[1]);
+                    Thread thread = new Thread(() ->
+                    {
+                        try
+                        {
+                            Thread.sleep(300L);
+                        }
+                        catch (InterruptedException exception)
+                        {
+                            // end early
+                        }
+                        System.out.println("thread:" + args[1]);
+                    });
+                    thread.start();
+                    break;
+
+                case "sleep":
+                    try
+                    {
+                        Thread.sleep(30000L);
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        // destroyed
+                    }
+                    break;
+
+                case "stubborn":
+                    int interrupts = 0;
+                    while (interrupts < 3)
+                    {
+                        try
+                        {
+                            Thread.sleep(30000L);
+                        }
+                        catch (InterruptedException exception)
+                        {
+                            interrupts++;
+                        }
+                    }
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("unknown mode " + args[0]);
+            }
+        }
+
+        /**
+         * Write a text to stdout and stderr.
+         * @param text the text
+         */
+        private static void echo(final String text)
+        {
+            System.out.println("out:" + text);
+            System.err.println("err:" + text);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.NodeMetrics;
+
+/**
+ * Tests of the NodeMetrics against fake /proc and cgroup file systems: the CPU load from /proc/stat, the available memory from
+ * /proc/meminfo, and the tightest CPU quota and memory limit of the cgroup of the process and its ancestors, for cgroup v2 and
+ * v1.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestNodeMetrics
+{
+    /** one GB in bytes. */
+    private static final long GB = 1024L * 1024L * 1024L;
+
+    /** the directory with the fake file systems. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Write a file, creating its directories.
+     * @param file the file
+     * @param content the content of the file
+     * @throws IOException on error
+     */
+    private static void write(final Path file, final String content) throws IOException
+    {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    /**
+     * Without cgroup files, the CPU load is calculated from the difference between two samples of /proc/stat, including
+     * iowait as idle time, and the available memory is the MemAvailable of /proc/meminfo.
+     * @throws IOException on error
+     */
+    @Test
+    public void testProc() throws IOException
+    {
+        Path proc = this.folder.resolve("proc");
+        Path cgroup = Files.createDirectories(this.folder.resolve("cgroup"));
+        write(proc.resolve("stat"), "cpu  100 0 100 700 100 0 0 0 0 0\ncpu0 100 0 100 700 100 0 0 0 0 0\n");
+        write(proc.resolve("meminfo"), "MemTotal:       16384000 kB\nMemFree:         1000 kB\nMemAvailable:    8192000 kB\n");
+        NodeMetrics metrics = new NodeMetrics(0L, proc, cgroup);
+        assertTrue(Double.isNaN(metrics.getCpuLoad()), "the first sample has no load");
+        assertEquals(8192000L * 1024L, metrics.getAvailableMemory());
+
+        // 1000 more jiffies, of which 200 idle and 50 iowait
+        write(proc.resolve("stat"), "cpu  475 0 475 900 150 0 0 0 0 0\n");
+        assertEquals(0.75, metrics.getCpuLoad(), 1.0E-9);
+    }
+
+    /**
+     * Without /proc and cgroup files, the metrics are unknown.
+     */
+    @Test
+    public void testUnknown()
+    {
+        NodeMetrics metrics = new NodeMetrics(0L, this.folder.resolve("proc"), this.folder.resolve("cgroup"));
+        assertTrue(Double.isNaN(metrics.getCpuLoad()));
+        assertTrue(Double.isNaN(metrics.getCpuLoad()));
+        assertEquals(-1L, metrics.getAvailableMemory());
+    }
+
+    /**
+     * With cgroup v2, the cgroup of the process is found through /proc/self/cgroup, the tightest memory limit of the cgroup and
+     * its ancestors limits the available memory, and the CPU load is the usage of the cgroup with the CPU quota relative to
+     * that quota.
+     * @throws IOException on error
+     */
+    @Test
+    public void testCgroupV2() throws IOException
+    {
+        Path proc = this.folder.resolve("proc");
+        Path cgroup = this.folder.resolve("cgroup");
+        write(proc.resolve("self").resolve("cgroup"), "0::/kubepods/pod1\n");
+        write(proc.resolve("meminfo"), "MemAvailable:    8388608 kB\n");
+        write(proc.resolve("stat"), "cpu  100 0 100 700 100 0 0 0 0 0\n");
+        write(cgroup.resolve("cgroup.controllers"), "cpu memory\n");
+        Path pod = cgroup.resolve("kubepods").resolve("pod1");
+        write(pod.resolve("memory.max"), "max\n");
+        write(pod.resolve("memory.current"), "100\n");
+        write(pod.getParent().resolve("memory.max"), String.valueOf(4 * GB));
+        write(pod.getParent().resolve("memory.current"), String.valueOf(3 * GB));
+        write(pod.resolve("cpu.max"), "50000 100000\n");
+        write(pod.getParent().resolve("cpu.max"), "max 100000\n");
+        write(pod.resolve("cpu.stat"), "usage_usec 1000\nuser_usec 800\n");
+        NodeMetrics metrics = new NodeMetrics(0L, proc, cgroup);
+        assertTrue(Double.isNaN(metrics.getCpuLoad()), "the first sample has no load");
+        assertEquals(GB, metrics.getAvailableMemory(), "the limit of kubepods is the tightest");
+
+        // far more usage than half a CPU can deliver in the time between the samples
+        write(pod.resolve("cpu.stat"), "usage_usec 100001000\nuser_usec 800\n");
+        assertEquals(1.0, metrics.getCpuLoad(), 1.0E-9);
+        write(pod.resolve("cpu.stat"), "usage_usec 100001000\nuser_usec 800\n");
+        assertEquals(0.0, metrics.getCpuLoad(), 1.0E-9);
+    }
+
+    /**
+     * With cgroup v1, the cgroups of the cpu, cpuacct and memory controllers are found through /proc/self/cgroup, and the room
+     * under the memory limit limits the available memory.
+     * @throws IOException on error
+     */
+    @Test
+    public void testCgroupV1() throws IOException
+    {
+        Path proc = this.folder.resolve("proc");
+        Path cgroup = this.folder.resolve("cgroup");
+        write(proc.resolve("self").resolve("cgroup"), "4:memory:/docker/abc\n3:cpu,cpuacct:/docker/abc\n1:name=systemd:/\n");
+        write(proc.resolve("meminfo"), "MemAvailable:    8388608 kB\n");
+        Path memory = cgroup.resolve("memory").resolve("docker").resolve("abc");
+        write(memory.resolve("memory.limit_in_bytes"), String.valueOf(2 * GB));
+        write(memory.resolve("memory.usage_in_bytes"), String.valueOf(GB + GB / 2));
+        Path cpu = cgroup.resolve("cpu").resolve("docker").resolve("abc");
+        write(cpu.resolve("cpu.cfs_quota_us"), "200000\n");
+        write(cpu.resolve("cpu.cfs_period_us"), "100000\n");
+        Path cpuacct = cgroup.resolve("cpuacct").resolve("docker").resolve("abc");
+        write(cpuacct.resolve("cpuacct.usage"), "5000000\n");
+        NodeMetrics metrics = new NodeMetrics(0L, proc, cgroup);
+        assertTrue(Double.isNaN(metrics.getCpuLoad()), "the first sample has no load");
+        assertEquals(GB / 2, metrics.getAvailableMemory());
+        write(cpuacct.resolve("cpuacct.usage"), "5000000\n");
+        assertEquals(0.0, metrics.getCpuLoad(), 1.0E-9, "no usage between the samples");
+    }
+
+}
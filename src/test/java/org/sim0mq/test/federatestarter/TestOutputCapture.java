@@ -0,0 +1,221 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.OutputCapture;
+import org.sim0mq.federatestarter.OutputCapture.RingBuffer;
+
+/**
+ * Tests of the OutputCapture: the tail of the ring buffer of a stream when the output wraps around the buffer, in one write
+ * and in several, the retention of the buffers of exited federates, the spill files, and the drain thread that waits while no
+ * pipe is registered.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestOutputCapture
+{
+    /** the directory for the spill files. */
+    @TempDir
+    private Path folder;
+
+    /**
+     * Start a shell command, and capture its stdout.
+     * @param capture the output capture
+     * @param instanceId the instance id of the federate
+     * @param command the shell command
+     * @return the process, which has exited
+     * @throws IOException when the process cannot be started
+     * @throws InterruptedException when the wait is interrupted
+     */
+    private static Process capture(final OutputCapture capture, final String instanceId, final String command)
+            throws IOException, InterruptedException
+    {
+        Process process = new ProcessBuilder("sh", "-c", command).start();
+        capture.register(instanceId, process, true, false);
+        process.waitFor();
+        return process;
+    }
+
+    /**
+     * Wait till a number of bytes has been written to a buffer.
+     * @param buffer the buffer
+     * @param totalBytes the number of bytes
+     * @throws InterruptedException when the wait is interrupted
+     */
+    private static void await(final RingBuffer buffer, final long totalBytes) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 5000L;
+        while (buffer.getTotalBytes() < totalBytes && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        assertEquals(totalBytes, buffer.getTotalBytes());
+    }
+
+    /**
+     * @param bytes the bytes
+     * @return the bytes as a String
+     */
+    private static String string(final byte[] bytes)
+    {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The tail of a buffer holds the last bytes, when the output is shorter than the buffer, when it is longer in one write,
+     * and when it wraps around the end of the buffer in several writes.
+     * @throws Exception on error
+     */
+    @Test
+    public void testRingBuffer() throws Exception
+    {
+        OutputCapture capture = new OutputCapture(10, null, 1024L, 0, 10);
+        try
+        {
+            capture(capture, "short", "printf 0123");
+            RingBuffer buffer = capture.getBuffer("short", "stdout");
+            await(buffer, 4L);
+            assertEquals("0123", string(buffer.tail(100)));
+            assertEquals("23", string(buffer.tail(2)));
+            assertEquals("", string(buffer.tail(0)));
+            assertNull(capture.getBuffer("short", "stderr"), "stderr is not captured");
+
+            capture(capture, "long", "printf 0123456789abcdef");
+            buffer = capture.getBuffer("long", "stdout");
+            await(buffer, 16L);
+            assertEquals("6789abcdef", string(buffer.tail(100)));
+            assertEquals("cdef", string(buffer.tail(4)));
+
+            capture(capture, "wrap", "printf 0123456; sleep 0.2; printf 789abcd; sleep 0.2; printf ef");
+            buffer = capture.getBuffer("wrap", "stdout");
+            await(buffer, 16L);
+            assertEquals("6789abcdef", string(buffer.tail(10)));
+            assertEquals("9abcdef", string(buffer.tail(7)));
+        }
+        finally
+        {
+            capture.shutdown();
+        }
+    }
+
+    /**
+     * The buffers of a federate that exited are retained, till more federates than the retention exited after it.
+     * @throws Exception on error
+     */
+    @Test
+    public void testRetain() throws Exception
+    {
+        OutputCapture capture = new OutputCapture(64, null, 1024L, 0, 1);
+        try
+        {
+            capture(capture, "A", "printf A");
+            capture(capture, "B", "printf B");
+            await(capture.getBuffer("A", "stdout"), 1L);
+            await(capture.getBuffer("B", "stdout"), 1L);
+            capture.unregister("A");
+            assertEquals("A", string(capture.getBuffer("A", "stdout").tail(10)));
+            capture.unregister("B");
+            assertNull(capture.getBuffer("A", "stdout"), "A is no longer retained");
+            assertEquals("B", string(capture.getBuffer("B", "stdout").tail(10)));
+        }
+        finally
+        {
+            capture.shutdown();
+        }
+    }
+
+    /**
+     * The output is spilled to a compressed file, which is returned when the spilling is stopped.
+     * @throws Exception on error
+     */
+    @Test
+    public void testSpill() throws Exception
+    {
+        OutputCapture capture = new OutputCapture(4, this.folder, 1024L, 2, 1);
+        try
+        {
+            Process process = capture(capture, "S/1", "printf 0123456789");
+            await(capture.getBuffer("S/1", "stdout"), 10L);
+            // the pipe is closed after the process exited and the pipe is empty, which closes the spill file
+            process.onExit().get();
+            Thread.sleep(100L);
+            List<Path> files = capture.closeSpillFiles("S/1", "stdout");
+            assertEquals(List.of(this.folder.resolve("S_1.stdout.gz")), files);
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(files.get(0))))
+            {
+                assertEquals("0123456789", string(in.readAllBytes()));
+            }
+            assertTrue(capture.closeSpillFiles("S/1", "stderr").isEmpty());
+        }
+        finally
+        {
+            capture.shutdown();
+        }
+    }
+
+    /**
+     * The drain thread waits without polling while no pipe is registered, and drains again when a pipe is registered.
+     * @throws Exception on error
+     */
+    @Test
+    public void testIdleThread() throws Exception
+    {
+        OutputCapture capture = new OutputCapture(64, null, 1024L, 0, 2);
+        try
+        {
+            capture(capture, "A", "printf A");
+            await(capture.getBuffer("A", "stdout"), 1L);
+            Thread thread = drainThread();
+            assertNotNull(thread);
+            long end = System.currentTimeMillis() + 5000L;
+            while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < end)
+            {
+                Thread.sleep(10L);
+            }
+            assertEquals(Thread.State.WAITING, thread.getState(), "the drain thread waits while no pipe is registered");
+
+            capture(capture, "B", "printf B");
+            await(capture.getBuffer("B", "stdout"), 1L);
+            capture.shutdown();
+            thread.join(5000L);
+            assertFalse(thread.isAlive(), "the drain thread ends at shutdown");
+        }
+        finally
+        {
+            capture.shutdown();
+        }
+    }
+
+    /**
+     * @return the drain thread of the OutputCapture, or null when it is not running
+     */
+    private static Thread drainThread()
+    {
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.getName().equals("OutputCapture"))
+            {
+                return thread;
+            }
+        }
+        return null;
+    }
+
+}
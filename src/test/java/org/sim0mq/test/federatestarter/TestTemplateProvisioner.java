@@ -0,0 +1,201 @@
+package org.sim0mq.test.federatestarter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federatestarter.TemplateProvisioner;
+
+/**
+ * Tests of the TemplateProvisioner: the cache of a template, and the fallback from reflinks to copies, or to hardlinks for a
+ * template that opted in to them, where the writable files are always copied.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestTemplateProvisioner
+{
+    /** the directory with the template, the cache and the working directories. */
+    @TempDir
+    private Path folder;
+
+    /** the template directory. */
+    private Path template;
+
+    /** the cache directory. */
+    private Path cache;
+
+    /**
+     * Create a template with a data file, a configuration file that the federate modifies, and a file in a subdirectory.
+     * @throws IOException on error
+     */
+    @BeforeEach
+    public void createTemplate() throws IOException
+    {
+        this.template = Files.createDirectories(this.folder.resolve("template"));
+        Files.createDirectories(this.template.resolve("sub"));
+        Files.writeString(this.template.resolve("data.bin"), "data");
+        Files.writeString(this.template.resolve("config.xml"), "<config/>");
+        Files.writeString(this.template.resolve("sub").resolve("x.txt"), "x");
+        this.cache = this.folder.resolve("cache");
+    }
+
+    /**
+     * @param hardlink whether the template "linked" opts in to hardlinks
+     * @return the properties with the templates "plain" and "linked", which have the same directory
+     */
+    private Properties properties(final boolean hardlink)
+    {
+        Properties properties = new Properties();
+        properties.setProperty("fs.template.plain", this.template.toString());
+        properties.setProperty("fs.template.linked", this.template.toString());
+        properties.setProperty("fs.template.linked.writable", "config.xml");
+        properties.setProperty("fs.template.linked.hardlink", String.valueOf(hardlink));
+        return properties;
+    }
+
+    /**
+     * @param file a file
+     * @return whether the owner may write the file, which is also correct when the tests run as root
+     * @throws IOException on error
+     */
+    private static boolean ownerWritable(final Path file) throws IOException
+    {
+        return Files.getPosixFilePermissions(file).contains(PosixFilePermission.OWNER_WRITE);
+    }
+
+    /**
+     * @return whether the file system of the test directory supports reflinks, in which case no copy or hardlink is made
+     * @throws Exception on error
+     */
+    private boolean reflinkSupported() throws Exception
+    {
+        Path source = Files.createDirectories(this.folder.resolve("reflink-source"));
+        Files.writeString(source.resolve("f"), "f");
+        Path target = Files.createDirectories(this.folder.resolve("reflink-target"));
+        return new ProcessBuilder("cp", "-R", "--reflink=always", source + "/.", target.toString())
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+    }
+
+    /**
+     * Without reflinks, a template is copied from the read-only cache by default, so the federate gets writable files of its
+     * own, also for a template that opted in to hardlinks when there is no cache.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCopy() throws Exception
+    {
+        TemplateProvisioner provisioner = new TemplateProvisioner(properties(true), this.cache);
+        try
+        {
+            Path working = Files.createDirectories(this.folder.resolve("run1"));
+            provisioner.provision("plain", working);
+            assertEquals("data", Files.readString(working.resolve("data.bin")));
+            assertEquals("x", Files.readString(working.resolve("sub").resolve("x.txt")));
+            Path cached = this.cache.resolve("plain").resolve("data.bin");
+            assertFalse(ownerWritable(cached), "the cached files are read-only");
+            assertFalse(Files.isSameFile(cached, working.resolve("data.bin")));
+            assertTrue(ownerWritable(working.resolve("data.bin")));
+            Files.writeString(working.resolve("data.bin"), "changed");
+            assertEquals("data", Files.readString(cached));
+            assertThrows(IOException.class, () -> provisioner.provision("unknown", working));
+        }
+        finally
+        {
+            provisioner.shutdown();
+        }
+
+        TemplateProvisioner inPlace = new TemplateProvisioner(properties(true), null);
+        try
+        {
+            Path working = Files.createDirectories(this.folder.resolve("run2"));
+            inPlace.provision("linked", working);
+            assertFalse(Files.isSameFile(this.template.resolve("data.bin"), working.resolve("data.bin")),
+                    "a template that is used in place is never linked");
+            assertTrue(ownerWritable(working.resolve("data.bin")));
+        }
+        finally
+        {
+            inPlace.shutdown();
+        }
+    }
+
+    /**
+     * Without reflinks, a template that opted in to hardlinks is linked to the read-only cache, except for its writable files,
+     * which are copied.
+     * @throws Exception on error
+     */
+    @Test
+    public void testHardlink() throws Exception
+    {
+        assumeFalse(reflinkSupported(), "the file system supports reflinks, so no hardlinks are made");
+        TemplateProvisioner provisioner = new TemplateProvisioner(properties(true), this.cache);
+        try
+        {
+            Path working = Files.createDirectories(this.folder.resolve("run"));
+            provisioner.provision("linked", working);
+            Path cached = this.cache.resolve("linked");
+            assertTrue(Files.isSameFile(cached.resolve("data.bin"), working.resolve("data.bin")));
+            assertTrue(Files.isSameFile(cached.resolve("sub").resolve("x.txt"), working.resolve("sub").resolve("x.txt")));
+            assertFalse(ownerWritable(working.resolve("data.bin")), "a linked file is immutable");
+            assertFalse(Files.isSameFile(cached.resolve("config.xml"), working.resolve("config.xml")));
+            assertTrue(ownerWritable(working.resolve("config.xml")));
+
+            // a template on the same file system that did not opt in is still copied
+            Path plain = Files.createDirectories(this.folder.resolve("plain"));
+            provisioner.provision("plain", plain);
+            assertFalse(Files.isSameFile(this.cache.resolve("plain").resolve("data.bin"), plain.resolve("data.bin")));
+        }
+        finally
+        {
+            provisioner.shutdown();
+        }
+    }
+
+    /**
+     * A cached template is used again by the next FederateStarter while the template is unchanged, and cached again when a
+     * file of the template changed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCacheValidation() throws Exception
+    {
+        TemplateProvisioner first = new TemplateProvisioner(properties(false), this.cache);
+        try
+        {
+            first.provision("plain", Files.createDirectories(this.folder.resolve("run1")));
+        }
+        finally
+        {
+            first.shutdown();
+        }
+
+        Files.writeString(this.template.resolve("data.bin"), "new data");
+        TemplateProvisioner second = new TemplateProvisioner(properties(false), this.cache);
+        try
+        {
+            Path working = Files.createDirectories(this.folder.resolve("run2"));
+            second.provision("plain", working);
+            assertEquals("new data", Files.readString(working.resolve("data.bin")));
+            assertEquals("new data", Files.readString(this.cache.resolve("plain").resolve("data.bin")));
+        }
+        finally
+        {
+            second.shutdown();
+        }
+    }
+
+}
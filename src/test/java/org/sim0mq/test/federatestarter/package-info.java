@@ -0,0 +1,8 @@
+/**
+ * Tests for the FederateStarter and the classes it uses, against stub Federation Managers and model controllers.
+ * <p>
+ * (c) copyright 2015-2024 <a href="http://www.simulation.tudelft.nl">Delft University of Technology</a>. <br>
+ * BSD-style license. See <a href="http://www.simulation.tudelft.nl/dsol/3.0/license.html">DSOL License</a>. <br>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+package org.sim0mq.test.federatestarter;
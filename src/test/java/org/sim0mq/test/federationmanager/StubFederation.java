@@ -0,0 +1,810 @@
+package org.sim0mq.test.federationmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djutils.serialization.SerializationException;
+import org.sim0mq.Sim0MQException;
+import org.sim0mq.message.Sim0MQMessage;
+import org.sim0mq.message.federatestarter.FS2FederateStartedMessage;
+import org.sim0mq.message.federatestarter.FS4FederateKilledMessage;
+import org.sim0mq.message.federatestarter.FS6FederateExitedMessage;
+import org.sim0mq.message.federationmanager.FM13RequestStatisticsListMessage;
+import org.sim0mq.message.federationmanager.FM14SetParametersMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+import org.sim0mq.message.federationmanager.FM3SetParameterMessage;
+import org.sim0mq.message.heartbeat.HB2AliveMessage;
+import org.sim0mq.message.modelcontroller.MC1StatusMessage;
+import org.sim0mq.message.modelcontroller.MC2AckNakMessage;
+import org.sim0mq.message.modelcontroller.MC3StatisticsMessage;
+import org.sim0mq.message.modelcontroller.MC4StatisticsErrorMessage;
+import org.sim0mq.message.modelcontroller.MC5StatisticsListMessage;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+/**
+ * StubFederation plays a FederateStarter and the model controllers of the models it starts, each on its own ROUTER socket,
+ * so that a FederationManager can be tested without starting processes. The FederateStarter answers FM.1 with FS.2, reporting
+ * the port of a new stub model controller, and FM.8 with FS.4, refusing a model that it did not start or that it is still
+ * killing; FM.1 and FS.4 replies can be lost, and kills can be delayed. A model controller acknowledges FM.2, FM.3, FM.4
+ * and FM.14, answers FM.5, answers FM.6 with MC.3 or MC.4, FM.13 with MC.5, and HB.1 with HB.2, and can be told to stay
+ * silent. The acknowledgements of FM.3 can be delayed, lost or negative. Every received message type is recorded, in the
+ * order of arrival.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class StubFederation implements AutoCloseable
+{
+    /** the context of the sockets. */
+    private final ZContext context = new ZContext(1);
+
+    /** the socket of the stub FederateStarter. */
+    private final ZMQ.Socket fsSocket;
+
+    /** the port of the stub FederateStarter. */
+    private final int fsPort;
+
+    /** the stub model controllers, in the order in which they were started; only used by the thread of the stubs. */
+    private final List<Model> models = new ArrayList<>();
+
+    /** the thread that answers the messages. */
+    private final Thread thread;
+
+    /** the types of the received messages, in the order of arrival. */
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+    /** the receiver ids of the messages that the model controllers received. */
+    private final List<Object> modelReceiverIds = Collections.synchronizedList(new ArrayList<>());
+
+    /** the stream map of the FM.2 message per instance id. */
+    private final Map<String, Map<Object, Long>> streamMaps = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the value per statistic that the model controllers report. */
+    private final Map<String, Object> statistics = Collections.synchronizedMap(new HashMap<>());
+
+    /** the error per statistic that the model controllers cannot report. */
+    private final Map<String, String> statisticErrors = Collections.synchronizedMap(new HashMap<>());
+
+    /** the parameters that the model controllers received with FM.3 or FM.14, in the order of arrival. */
+    private final Map<String, Object> parameters = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** the names of the parameters that the model controllers refuse. */
+    private final Set<String> refusedParameters = Collections.synchronizedSet(new HashSet<>());
+
+    /** the instance ids of the models that the stub FederateStarter started and did not kill yet. */
+    private final Set<String> startedModels = Collections.synchronizedSet(new HashSet<>());
+
+    /** the time in ms since the epoch at which the kill of a model completes, per instance id. */
+    private final Map<String, Long> killDue = Collections.synchronizedMap(new HashMap<>());
+
+    /** the number of FM.1 messages that are still lost, i.e., not answered and not started. */
+    private volatile int lostStarts = 0;
+
+    /** the number of FS.4 replies that are still lost, i.e., the model is killed but the kill is not confirmed. */
+    private volatile int lostKillReplies = 0;
+
+    /** the time in ms that a kill takes before it is confirmed with FS.4. */
+    private volatile long killDelay = 0L;
+
+    /** the replies that wait for their delay; only used by the thread of the stubs. */
+    private final List<DelayedReply> delayedReplies = new ArrayList<>();
+
+    /** the time in ms by which the acknowledgement of an FM.3 message is delayed. */
+    private volatile long parameterAckDelay = 0L;
+
+    /** the number of acknowledgements of FM.3 messages that are still lost, i.e., not sent. */
+    private volatile int lostParameterAcks = 0;
+
+    /** the largest number of FM.3 messages of one model that were received and not yet acknowledged. */
+    private volatile int maxParametersInFlight = 0;
+
+    /** whether the model controllers answer HB.1. */
+    private volatile boolean heartbeatAnswers = true;
+
+    /** the instance ids of the models whose simulation never ends. */
+    private final Set<String> stragglers = Collections.synchronizedSet(new HashSet<>());
+
+    /** the status of the FS.2 reply: "started" or "queued". */
+    private volatile String startStatus = "started";
+
+    /** whether a "queued" FS.2 reply is followed at once by a "started" one, as a FederateStarter does when room frees. */
+    private volatile boolean startAfterQueued = false;
+
+    /** the model id that the FS.2 reply reports, or null to report the instance id. */
+    private volatile Object modelId = null;
+
+    /** the number of FM.5 messages per model that are answered with "running" before the simulation ends. */
+    private volatile int runningReplies = 0;
+
+    /** the exit code of the FS.6 message that is sent on the first FM.5 message, or -1 to send none. */
+    private volatile int exitCode = -1;
+
+    /** whether the model controllers answer. */
+    private volatile boolean modelAnswers = true;
+
+    /** the routing id of the FederationManager, as seen by the stub FederateStarter. */
+    private byte[] fmIdentity;
+
+    /** the poller of the sockets; only used by the thread of the stubs. */
+    private ZMQ.Poller poller;
+
+    /** the message id of the messages of the stubs. */
+    private long messageCount = 0;
+
+    /** whether the stubs have been closed. */
+    private volatile boolean closed = false;
+
+    /**
+     * Bind the socket of the stub FederateStarter to a random port of the loopback interface, and start answering.
+     */
+    public StubFederation()
+    {
+        this.fsSocket = this.context.createSocket(SocketType.ROUTER);
+        this.fsSocket.setLinger(0);
+        this.fsPort = this.fsSocket.bindToRandomPort("tcp://127.0.0.1");
+        this.thread = new Thread(this::loop, "StubFederation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return the endpoint of the stub FederateStarter
+     */
+    public String getEndpoint()
+    {
+        return "tcp://127.0.0.1:" + this.fsPort;
+    }
+
+    /**
+     * @return a copy of the types of the received messages, in the order of arrival
+     */
+    public List<String> getReceived()
+    {
+        synchronized (this.received)
+        {
+            return new ArrayList<>(this.received);
+        }
+    }
+
+    /**
+     * @param messageType a message type, e.g. "FM.1"
+     * @return the number of received messages of the type
+     */
+    public int count(final String messageType)
+    {
+        return Collections.frequency(getReceived(), messageType);
+    }
+
+    /**
+     * @return a copy of the receiver ids of the messages that the model controllers received
+     */
+    public List<Object> getModelReceiverIds()
+    {
+        synchronized (this.modelReceiverIds)
+        {
+            return new ArrayList<>(this.modelReceiverIds);
+        }
+    }
+
+    /**
+     * @return a copy of the stream maps of the received FM.2 messages, per instance id
+     */
+    public Map<String, Map<Object, Long>> getStreamMaps()
+    {
+        synchronized (this.streamMaps)
+        {
+            return new LinkedHashMap<>(this.streamMaps);
+        }
+    }
+
+    /**
+     * @return a copy of the parameters that the model controllers received with FM.3 or FM.14, in the order of arrival
+     */
+    public Map<String, Object> getParameters()
+    {
+        synchronized (this.parameters)
+        {
+            return new LinkedHashMap<>(this.parameters);
+        }
+    }
+
+    /**
+     * @return the largest number of FM.3 messages of one model that were received and not yet acknowledged
+     */
+    public int getMaxParametersInFlight()
+    {
+        return this.maxParametersInFlight;
+    }
+
+    /**
+     * Wait till a message of a type has been received.
+     * @param messageType the message type, e.g. "FM.1"
+     * @param timeout the maximum time to wait in ms
+     * @return whether the message has been received
+     * @throws InterruptedException when the wait is interrupted
+     */
+    public boolean await(final String messageType, final long timeout) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeout;
+        while (count(messageType) == 0 && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10L);
+        }
+        return count(messageType) > 0;
+    }
+
+    /**
+     * @param newStartStatus the status of the FS.2 reply: "started" or "queued"
+     * @return the stubs for chaining
+     */
+    public StubFederation setStartStatus(final String newStartStatus)
+    {
+        this.startStatus = newStartStatus;
+        return this;
+    }
+
+    /**
+     * @param newStartAfterQueued whether a "queued" FS.2 reply is followed at once by a "started" one
+     * @return the stubs for chaining
+     */
+    public StubFederation setStartAfterQueued(final boolean newStartAfterQueued)
+    {
+        this.startAfterQueued = newStartAfterQueued;
+        return this;
+    }
+
+    /**
+     * @param newModelId the model id that the FS.2 reply reports, or null to report the instance id
+     * @return the stubs for chaining
+     */
+    public StubFederation setModelId(final Object newModelId)
+    {
+        this.modelId = newModelId;
+        return this;
+    }
+
+    /**
+     * @param newRunningReplies the number of FM.5 messages per model that are answered with "running" before the simulation
+     *            ends
+     * @return the stubs for chaining
+     */
+    public StubFederation setRunningReplies(final int newRunningReplies)
+    {
+        this.runningReplies = newRunningReplies;
+        return this;
+    }
+
+    /**
+     * @param newExitCode the exit code of the FS.6 message that is sent on the first FM.5 message, or -1 to send none
+     * @return the stubs for chaining
+     */
+    public StubFederation setExitCode(final int newExitCode)
+    {
+        this.exitCode = newExitCode;
+        return this;
+    }
+
+    /**
+     * @param newModelAnswers whether the model controllers answer
+     * @return the stubs for chaining
+     */
+    public StubFederation setModelAnswers(final boolean newModelAnswers)
+    {
+        this.modelAnswers = newModelAnswers;
+        return this;
+    }
+
+    /**
+     * @param newLostStarts the number of FM.1 messages that are lost, i.e., not answered and not started
+     * @return the stubs for chaining
+     */
+    public StubFederation setLostStarts(final int newLostStarts)
+    {
+        this.lostStarts = newLostStarts;
+        return this;
+    }
+
+    /**
+     * @param newLostKillReplies the number of FS.4 replies that are lost, i.e., the model is killed but the kill is not
+     *            confirmed
+     * @return the stubs for chaining
+     */
+    public StubFederation setLostKillReplies(final int newLostKillReplies)
+    {
+        this.lostKillReplies = newLostKillReplies;
+        return this;
+    }
+
+    /**
+     * @param newKillDelay the time in ms that a kill takes before it is confirmed with FS.4
+     * @return the stubs for chaining
+     */
+    public StubFederation setKillDelay(final long newKillDelay)
+    {
+        this.killDelay = newKillDelay;
+        return this;
+    }
+
+    /**
+     * @param newParameterAckDelay the time in ms by which the acknowledgement of an FM.3 message is delayed
+     * @return the stubs for chaining
+     */
+    public StubFederation setParameterAckDelay(final long newParameterAckDelay)
+    {
+        this.parameterAckDelay = newParameterAckDelay;
+        return this;
+    }
+
+    /**
+     * @param newLostParameterAcks the number of acknowledgements of FM.3 messages that are lost, i.e., not sent
+     * @return the stubs for chaining
+     */
+    public StubFederation setLostParameterAcks(final int newLostParameterAcks)
+    {
+        this.lostParameterAcks = newLostParameterAcks;
+        return this;
+    }
+
+    /**
+     * @param parameterName the name of a parameter that the model controllers refuse with a negative MC.2 acknowledgement
+     * @return the stubs for chaining
+     */
+    public StubFederation addRefusedParameter(final String parameterName)
+    {
+        this.refusedParameters.add(parameterName);
+        return this;
+    }
+
+    /**
+     * @param newHeartbeatAnswers whether the model controllers answer HB.1
+     * @return the stubs for chaining
+     */
+    public StubFederation setHeartbeatAnswers(final boolean newHeartbeatAnswers)
+    {
+        this.heartbeatAnswers = newHeartbeatAnswers;
+        return this;
+    }
+
+    /**
+     * @param instanceId the instance id of a model whose simulation never ends
+     * @return the stubs for chaining
+     */
+    public StubFederation addStraggler(final String instanceId)
+    {
+        this.stragglers.add(instanceId);
+        return this;
+    }
+
+    /**
+     * @param variableName the name of a statistic
+     * @param value the value that the model controllers report
+     * @return the stubs for chaining
+     */
+    public StubFederation putStatistic(final String variableName, final Object value)
+    {
+        this.statistics.put(variableName, value);
+        return this;
+    }
+
+    /**
+     * @param variableName the name of a statistic
+     * @param error the error of the MC.4 message with which the model controllers answer an FM.6 message for the statistic
+     * @return the stubs for chaining
+     */
+    public StubFederation putStatisticError(final String variableName, final String error)
+    {
+        this.statisticErrors.put(variableName, error);
+        return this;
+    }
+
+    /**
+     * Answer the messages of the FederationManager till the stubs are closed.
+     */
+    private void loop()
+    {
+        this.poller = this.context.createPoller(16);
+        this.poller.register(this.fsSocket, ZMQ.Poller.POLLIN);
+        while (!this.closed)
+        {
+            this.poller.poll(10L);
+            try
+            {
+                if (this.poller.pollin(0))
+                {
+                    receive(this.fsSocket, null);
+                }
+                for (Model model : this.models.toArray(new Model[0]))
+                {
+                    if (this.poller.pollin(model.pollIndex))
+                    {
+                        receive(model.socket, model);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                for (DelayedReply reply : this.delayedReplies.toArray(new DelayedReply[0]))
+                {
+                    if (reply.due <= now)
+                    {
+                        this.delayedReplies.remove(reply);
+                        if (reply.model != null)
+                        {
+                            reply.model.parametersInFlight--;
+                        }
+                        send(reply.socket, reply.identity, reply.message);
+                    }
+                }
+            }
+            catch (Sim0MQException | SerializationException exception)
+            {
+                exception.printStackTrace();
+            }
+        }
+        this.poller.close();
+    }
+
+    /**
+     * Receive and answer the messages on a socket.
+     * @param socket the socket
+     * @param model the stub model controller of the socket, or null for the stub FederateStarter
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be (de)serialized
+     */
+    private void receive(final ZMQ.Socket socket, final Model model) throws Sim0MQException, SerializationException
+    {
+        byte[] identity;
+        while ((identity = socket.recv(ZMQ.DONTWAIT)) != null)
+        {
+            byte[] bytes = socket.recv(0);
+            while (socket.hasReceiveMore())
+            {
+                bytes = socket.recv(0);
+            }
+            Object[] fields = Sim0MQMessage.decodeToArray(bytes);
+            String type = fields[5].toString();
+            this.received.add(type);
+            if (model == null)
+            {
+                this.fmIdentity = identity;
+                answerFederateStarter(identity, fields, type);
+            }
+            else
+            {
+                this.modelReceiverIds.add(fields[4]);
+                answerModel(model, identity, fields, type);
+            }
+        }
+    }
+
+    /**
+     * Answer a message to the stub FederateStarter.
+     * @param identity the routing id of the FederationManager
+     * @param fields the fields of the message
+     * @param type the message type
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be serialized
+     */
+    private void answerFederateStarter(final byte[] identity, final Object[] fields, final String type)
+            throws Sim0MQException, SerializationException
+    {
+        Object fmId = fields[3];
+        Object instanceId = fields[8];
+        switch (type)
+        {
+            case "FM.1":
+                if (this.lostStarts > 0)
+                {
+                    this.lostStarts--;
+                    return;
+                }
+                if ("queued".equals(this.startStatus))
+                {
+                    send(this.fsSocket, identity, new FS2FederateStartedMessage(fields[2], "FS", fmId, ++this.messageCount,
+                            instanceId, "queued", 0, "", Duration.instantiateSI(0.3)).createByteArray());
+                    if (!this.startAfterQueued)
+                    {
+                        return;
+                    }
+                }
+                Model model = new Model(instanceId.toString());
+                this.startedModels.add(instanceId.toString());
+                Object id = this.modelId == null ? instanceId : this.modelId;
+                send(this.fsSocket, identity, new FS2FederateStartedMessage(fields[2], "FS", fmId, ++this.messageCount,
+                        instanceId, "started", model.port, "", Duration.ZERO, id).createByteArray());
+                break;
+
+            case "FM.8":
+                String error = "";
+                if (this.killDue.getOrDefault(instanceId.toString(), 0L) > System.currentTimeMillis())
+                {
+                    error = "model " + instanceId + " is already being killed";
+                }
+                else if (!this.startedModels.remove(instanceId.toString()))
+                {
+                    error = "model " + instanceId + " unknown -- this model is unknown to the FederateStarter";
+                }
+                else if (this.lostKillReplies > 0)
+                {
+                    this.lostKillReplies--;
+                    return;
+                }
+                byte[] killed = new FS4FederateKilledMessage(fields[2], "FS", fmId, ++this.messageCount, instanceId,
+                        error.isEmpty(), error).createByteArray();
+                if (error.isEmpty() && this.killDelay > 0)
+                {
+                    long due = System.currentTimeMillis() + this.killDelay;
+                    this.killDue.put(instanceId.toString(), due);
+                    this.delayedReplies.add(new DelayedReply(this.fsSocket, null, identity, killed, due));
+                }
+                else
+                {
+                    send(this.fsSocket, identity, killed);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Answer a message to a stub model controller.
+     * @param model the stub model controller
+     * @param identity the routing id of the FederationManager
+     * @param fields the fields of the message
+     * @param type the message type
+     * @throws Sim0MQException on an invalid message
+     * @throws SerializationException when a message cannot be serialized
+     */
+    private void answerModel(final Model model, final byte[] identity, final Object[] fields, final String type)
+            throws Sim0MQException, SerializationException
+    {
+        if (!this.modelAnswers)
+        {
+            return;
+        }
+        Object fmId = fields[3];
+        Object modelSender = fields[4];
+        Object replyToId = fields[6];
+        switch (type)
+        {
+            case "FM.2":
+                this.streamMaps.put(model.instanceId, new FM2SimRunControlMessage(fields).getStreamMap());
+                send(model.socket, identity, new MC2AckNakMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        replyToId, true, "").createByteArray());
+                break;
+
+            case "FM.3":
+                FM3SetParameterMessage setParameter = new FM3SetParameterMessage(fields);
+                this.parameters.put(setParameter.getParameterName(), setParameter.getParameterValue());
+                if (this.lostParameterAcks > 0)
+                {
+                    this.lostParameterAcks--;
+                    return;
+                }
+                boolean accepted = !this.refusedParameters.contains(setParameter.getParameterName());
+                byte[] ack = new MC2AckNakMessage(fields[2], modelSender, fmId, ++this.messageCount, replyToId, accepted,
+                        accepted ? "" : "parameter refused").createByteArray();
+                model.parametersInFlight++;
+                this.maxParametersInFlight = Math.max(this.maxParametersInFlight, model.parametersInFlight);
+                long due = System.currentTimeMillis() + this.parameterAckDelay;
+                this.delayedReplies.add(new DelayedReply(model.socket, model, identity, ack, due));
+                break;
+
+            case "FM.14":
+                this.parameters.putAll(new FM14SetParametersMessage(fields).getParameterMap());
+                send(model.socket, identity, new MC2AckNakMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        replyToId, true, "").createByteArray());
+                break;
+
+            case "FM.4":
+                send(model.socket, identity, new MC2AckNakMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        replyToId, true, "").createByteArray());
+                break;
+
+            case "FM.5":
+                if (this.exitCode >= 0 && this.fmIdentity != null)
+                {
+                    // the model exits on its own instead of answering
+                    int code = this.exitCode;
+                    this.exitCode = -1;
+                    send(this.fsSocket, this.fmIdentity, new FS6FederateExitedMessage(fields[2], "FS", fmId,
+                            ++this.messageCount, model.instanceId, code, Duration.instantiateSI(1.0)).createByteArray());
+                    return;
+                }
+                String status = "ended";
+                if (model.runningReplies > 0 || this.stragglers.contains(model.instanceId))
+                {
+                    model.runningReplies--;
+                    status = "running";
+                }
+                send(model.socket, identity, new MC1StatusMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        replyToId, status, "").createByteArray());
+                break;
+
+            case "FM.6":
+                String variableName = fields[8].toString();
+                if (this.statisticErrors.containsKey(variableName))
+                {
+                    send(model.socket, identity, new MC4StatisticsErrorMessage(fields[2], modelSender, fmId,
+                            ++this.messageCount, variableName, this.statisticErrors.get(variableName)).createByteArray());
+                    break;
+                }
+                send(model.socket, identity, new MC3StatisticsMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        variableName, this.statistics.getOrDefault(variableName, 0.0)).createByteArray());
+                break;
+
+            case "FM.13":
+                Map<String, Object> valueMap = new LinkedHashMap<>();
+                Map<String, String> errorMap = new LinkedHashMap<>();
+                for (String name : new FM13RequestStatisticsListMessage(fields).getVariableNames())
+                {
+                    if (this.statisticErrors.containsKey(name))
+                    {
+                        errorMap.put(name, this.statisticErrors.get(name));
+                    }
+                    else if (FM13RequestStatisticsListMessage.isPattern(name))
+                    {
+                        synchronized (this.statistics)
+                        {
+                            this.statistics.forEach((n, v) ->
+                            {
+                                if (FM13RequestStatisticsListMessage.matches(name, n))
+                                {
+                                    valueMap.put(n, v);
+                                }
+                            });
+                        }
+                    }
+                    else
+                    {
+                        valueMap.put(name, this.statistics.getOrDefault(name, 0.0));
+                    }
+                }
+                send(model.socket, identity, new MC5StatisticsListMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                        replyToId, valueMap, errorMap).createByteArray());
+                break;
+
+            case "HB.1":
+                if (this.heartbeatAnswers)
+                {
+                    send(model.socket, identity, new HB2AliveMessage(fields[2], modelSender, fmId, ++this.messageCount,
+                            replyToId).createByteArray());
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Send a message to the FederationManager.
+     * @param socket the socket of the stub that sends the message
+     * @param identity the routing id of the FederationManager
+     * @param message the message
+     */
+    private void send(final ZMQ.Socket socket, final byte[] identity, final byte[] message)
+    {
+        socket.sendMore(identity);
+        socket.sendMore("");
+        socket.send(message, 0);
+    }
+
+    /**
+     * Stop answering, and close the sockets.
+     */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        try
+        {
+            this.thread.join();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        this.context.close();
+    }
+
+    /**
+     * A stub model controller, with its own ROUTER socket, since the FederationManager tells its models apart by connection.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private final class Model
+    {
+        /** the instance id of the model. */
+        private final String instanceId;
+
+        /** the socket of the model controller. */
+        private final ZMQ.Socket socket;
+
+        /** the port of the model controller. */
+        private final int port;
+
+        /** the index of the socket in the poller. */
+        private final int pollIndex;
+
+        /** the number of FM.5 messages that are still answered with "running". */
+        private int runningReplies;
+
+        /** the number of FM.3 messages that were received and not yet acknowledged. */
+        private int parametersInFlight;
+
+        /**
+         * Bind the socket of a stub model controller to a random port, and poll it.
+         * @param instanceId the instance id of the model
+         */
+        Model(final String instanceId)
+        {
+            this.instanceId = instanceId;
+            this.socket = StubFederation.this.context.createSocket(SocketType.ROUTER);
+            this.socket.setLinger(0);
+            this.port = this.socket.bindToRandomPort("tcp://127.0.0.1");
+            this.pollIndex = StubFederation.this.poller.register(this.socket, ZMQ.Poller.POLLIN);
+            this.runningReplies = StubFederation.this.runningReplies;
+            StubFederation.this.models.add(this);
+        }
+    }
+
+    /**
+     * A reply of a stub that is sent when its delay has passed.
+     * <p>
+     * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved.
+     * <br>
+     * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+     * </p>
+     * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+     */
+    private static final class DelayedReply
+    {
+        /** the socket that sends the reply. */
+        private final ZMQ.Socket socket;
+
+        /** the stub model controller of an acknowledged FM.3 message, or null for another reply. */
+        private final Model model;
+
+        /** the routing id of the FederationManager. */
+        private final byte[] identity;
+
+        /** the reply. */
+        private final byte[] message;
+
+        /** the time in ms since the epoch at which the reply is sent. */
+        private final long due;
+
+        /**
+         * @param socket the socket that sends the reply
+         * @param model the stub model controller of an acknowledged FM.3 message, or null for another reply
+         * @param identity the routing id of the FederationManager
+         * @param message the reply
+         * @param due the time in ms since the epoch at which the reply is sent
+         */
+        DelayedReply(final ZMQ.Socket socket, final Model model, final byte[] identity, final byte[] message, final long due)
+        {
+            this.socket = socket;
+            this.model = model;
+            this.identity = identity;
+            this.message = message;
+            this.due = due;
+        }
+    }
+
+}
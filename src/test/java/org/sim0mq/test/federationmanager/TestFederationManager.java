@@ -0,0 +1,467 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Time;
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.FederationManager;
+import org.sim0mq.federationmanager.ModelRun;
+import org.sim0mq.federationmanager.ModelState;
+import org.sim0mq.federationmanager.TimeoutPolicy;
+import org.sim0mq.federationmanager.TimeoutPolicy.Interaction;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+
+/**
+ * Tests of the FederationManager, which drive runs against a stub FederateStarter and a stub model controller.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestFederationManager
+{
+    /** the maximum time in seconds to wait for a run. */
+    private static final long WAIT = 10L;
+
+    /**
+     * @param instanceId the instance id of the run
+     * @return a run on the FederateStarter "fs1", without run control, parameters and statistics
+     */
+    static ModelRun run(final String instanceId)
+    {
+        return run(instanceId, "fs1");
+    }
+
+    /**
+     * @param instanceId the instance id of the run
+     * @param federateStarter the name of the FederateStarter of the run
+     * @return a run without run control, parameters and statistics
+     */
+    static ModelRun run(final String instanceId, final String federateStarter)
+    {
+        FM1StartFederateMessage.Builder builder = new FM1StartFederateMessage.Builder().setSoftwareCode("java")
+                .setArgsBefore("").setModelPath("model.jar").setArgsAfter("").setWorkingDirectory("/tmp")
+                .setRedirectStdin("").setRedirectStdout("").setRedirectStderr("").setDeleteWorkingDirectory(false)
+                .setDeleteStdout(false).setDeleteStderr(false);
+        return new ModelRun(instanceId, federateStarter, builder);
+    }
+
+    /**
+     * Drive a run through all its states: FM.1, FM.2, FM.3 per parameter, FM.4, FM.5, FM.6 per statistic and FM.8. The
+     * messages to the model controller carry the model id that the FederateStarter reported.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFullRun() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setModelId("model-7").putStatistic("avgWait", 3.5).putStatistic("utilization", 0.75);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            FM2SimRunControlMessage.Builder runControl = new FM2SimRunControlMessage.Builder()
+                    .setRunDuration(Duration.instantiateSI(100.0)).setWarmupDuration(Duration.ZERO).setOffsetTime(Time.ZERO)
+                    .setSpeed(0.0).setNumberReplications(1).setStreamMap(new LinkedHashMap<>());
+            ModelRun run = run("model.1").setRunControl(runControl).addParameter("arrivalRate", 2.0)
+                    .addParameter("servers", 3).addStatistic("avgWait").addStatistic("utilization");
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(3.5, result.getStatistics().get("avgWait"));
+            assertEquals(0.75, result.getStatistics().get("utilization"));
+            assertEquals(Arrays.asList("FM.1", "FM.2", "FM.3", "FM.3", "FM.4", "FM.5", "FM.6", "FM.6", "FM.8"),
+                    stub.getReceived());
+            for (Object receiverId : stub.getModelReceiverIds())
+            {
+                assertEquals("model-7", receiverId.toString());
+            }
+            assertEquals(0, fm.getNumberActive());
+            assertEquals(0, fm.getStateTable().size());
+        }
+    }
+
+    /**
+     * A "started" reply that follows a "queued" one cancels the wake-up of the queued start, so the FM.1 message is not sent
+     * again and the run does not skip a reply.
+     * @throws Exception on error
+     */
+    @Test
+    public void testQueuedThenStarted() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setStartStatus("queued").setStartAfterQueued(true).setRunningReplies(1);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            // the run outlives the wake-up of the queued start, 300 ms after the FS.2 reply
+            ModelRun run = run("model.1").setStatusInterval(500L);
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(Arrays.asList("FM.1", "FM.4", "FM.5", "FM.5", "FM.8"), stub.getReceived());
+        }
+    }
+
+    /**
+     * A run that is cancelled while its start is queued fails without being started, and its model is not killed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCancelWhileQueued() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setStartStatus("queued");
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1");
+            fm.submit(run);
+            assertTrue(stub.await("FM.1", WAIT * 1000L));
+            fm.cancel(run);
+            ModelRun result = run.getCompletion().get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.ERROR, result.getState());
+            assertTrue(result.getError().contains("cancelled"), result.getError());
+            assertEquals(0, stub.count("FM.4"));
+            assertEquals(0, stub.count("FM.8"));
+            assertEquals(0, fm.getNumberActive());
+        }
+    }
+
+    /**
+     * A model that exits on its own before its statistics have been gathered lets the run fail; the FederateStarter has
+     * cleaned it up already, so it is not killed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFederateExited() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setExitCode(3);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1").addStatistic("avgWait");
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.ERROR, result.getState());
+            assertTrue(result.getError().contains("exited with exit code 3"), result.getError());
+            assertEquals(0, stub.count("FM.6"));
+            assertEquals(0, stub.count("FM.8"));
+        }
+    }
+
+    /**
+     * A run with the instance id of an active run fails at once, and does not disturb the active run.
+     * @throws Exception on error
+     */
+    @Test
+    public void testDuplicateInstanceId() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.putStatistic("avgWait", 1.25);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun first = run("model.1").addStatistic("avgWait");
+            ModelRun second = run("model.1").addStatistic("avgWait");
+            fm.submit(first);
+            ModelRun duplicate = fm.submit(second).get(WAIT, TimeUnit.SECONDS);
+            ModelRun result = first.getCompletion().get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.ERROR, duplicate.getState());
+            assertTrue(duplicate.getError().contains("already running"), duplicate.getError());
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(1.25, result.getStatistics().get("avgWait"));
+            assertEquals(1, stub.count("FM.1"));
+            assertEquals(0, fm.getNumberActive());
+            assertEquals(0, fm.getStateTable().size());
+        }
+    }
+
+    /**
+     * A model controller that never answers gets its FM.4 message again after the timeout, is restarted with a new model when
+     * the retries are exhausted, and lets the run fail when the restarts are exhausted as well; every model is killed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testRetryRestartFail() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setModelAnswers(false);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            fm.setTimeoutPolicy(Interaction.CONTROL, new TimeoutPolicy(100L, 1, 1));
+            ModelRun result = fm.submit(run("model.1")).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.ERROR, result.getState());
+            assertTrue(result.getError().contains("did not answer a CONTROL request within 100 ms after 1 retries"),
+                    result.getError());
+            assertEquals(1, result.getNumberRestarts());
+            assertEquals(2, fm.getNumberRetries());
+            assertEquals(2, fm.getNumberTimeouts());
+            assertEquals(1, fm.getNumberRestarts());
+            assertEquals(2, stub.count("FM.1"));
+            assertEquals(4, stub.count("FM.4"));
+            assertEquals(2, stub.count("FM.8"));
+            assertEquals(0, fm.getNumberActive());
+        }
+    }
+
+    /**
+     * A model that is unknown to the FederateStarter counts as killed: after a START timeout, the restart proceeds although
+     * the FederateStarter never started the model, and a run of which the statistics were gathered terminates when the reply
+     * to its first FM.8 message was lost.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKillUnknownModel() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setLostStarts(1);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            fm.setTimeoutPolicy(Interaction.START, new TimeoutPolicy(1000L, 0, 1));
+            fm.setTimeoutPolicy(Interaction.KILL, new TimeoutPolicy(200L, 1, 0));
+            ModelRun result = fm.submit(run("model.1")).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(1, result.getNumberRestarts());
+            assertEquals(Arrays.asList("FM.1", "FM.8", "FM.1", "FM.4", "FM.5", "FM.8"), stub.getReceived());
+
+            stub.setLostKillReplies(1);
+            result = fm.submit(run("model.2")).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(4, stub.count("FM.8"), "the FM.8 message of model.2 is sent again");
+            assertEquals(1, fm.getNumberRetries());
+        }
+    }
+
+    /**
+     * A kill that takes longer than the KILL timeout gets its FM.8 message again; the refusal of the FederateStarter to kill
+     * the model twice does not let the run fail, which terminates when the first kill is confirmed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKillRetried() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setKillDelay(300L);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            fm.setTimeoutPolicy(Interaction.KILL, new TimeoutPolicy(200L, 2, 0));
+            ModelRun result = fm.submit(run("model.1")).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(2, stub.count("FM.8"));
+            assertEquals(1, fm.getNumberRetries());
+            assertEquals(0, fm.getNumberTimeouts());
+        }
+    }
+
+    /**
+     * The statistics of a run with a statistics list are requested with one FM.13 message, of which the names can be patterns,
+     * and the values and errors of the MC.5 reply are stored in the run.
+     * @throws Exception on error
+     */
+    @Test
+    public void testStatisticsList() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.putStatistic("queue1.length", 2.0).putStatistic("queue1.wait", 1.5).putStatistic("queue2.length", 4.0)
+                    .putStatistic("avgWait", 3.5).putStatisticError("missing", "unknown variable");
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1").setStatisticsList(true).addStatistic("queue1.*").addStatistic("avgWait")
+                    .addStatistic("missing");
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(Map.of("queue1.length", 2.0, "queue1.wait", 1.5, "avgWait", 3.5), result.getStatistics());
+            assertEquals(Map.of("missing", "unknown variable"), result.getStatisticsErrors());
+            assertEquals(Arrays.asList("FM.1", "FM.4", "FM.5", "FM.13", "FM.8"), stub.getReceived());
+        }
+    }
+
+    /**
+     * The parameters of a run with a parameter list are set with one FM.14 message instead of an FM.3 message per parameter.
+     * @throws Exception on error
+     */
+    @Test
+    public void testParameterList() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1").setParameterList(true).addParameter("arrivalRate", 2.0).addParameter("servers", 3);
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(Map.of("arrivalRate", 2.0, "servers", 3), stub.getParameters());
+            assertEquals(Arrays.asList("FM.1", "FM.14", "FM.4", "FM.5", "FM.8"), stub.getReceived());
+        }
+    }
+
+    /**
+     * The FM.3 messages of a run are pipelined up to the parameter window: with slow acknowledgements, no more FM.3 messages
+     * than the window are unacknowledged at any time, and all parameters are set in order.
+     * @throws Exception on error
+     */
+    @Test
+    public void testParameterWindow() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setParameterAckDelay(50L);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1").setParameterWindow(2);
+            for (int i = 0; i < 5; i++)
+            {
+                run.addParameter("p" + i, i);
+            }
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(5, stub.count("FM.3"));
+            assertEquals(2, stub.getMaxParametersInFlight());
+            assertEquals(Arrays.asList("p0", "p1", "p2", "p3", "p4"), new ArrayList<>(stub.getParameters().keySet()));
+        }
+    }
+
+    /**
+     * A lost acknowledgement of an FM.3 message is covered by the acknowledgement of a later FM.3 message; when all
+     * acknowledgements are lost, the unacknowledged FM.3 messages are sent again after the CONTROL timeout.
+     * @throws Exception on error
+     */
+    @Test
+    public void testLostParameterAcks() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setLostParameterAcks(1);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            fm.setTimeoutPolicy(Interaction.CONTROL, new TimeoutPolicy(300L, 1, 0));
+            ModelRun first = run("model.1").setParameterWindow(2).addParameter("a", 1).addParameter("b", 2);
+            ModelRun result = fm.submit(first).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(2, stub.count("FM.3"), "the acknowledgement of b also acknowledges a");
+            assertEquals(0, fm.getNumberRetries());
+
+            stub.setLostParameterAcks(2);
+            ModelRun second = run("model.2").setParameterWindow(2).addParameter("a", 1).addParameter("b", 2);
+            result = fm.submit(second).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertEquals(6, stub.count("FM.3"), "a and b are sent again");
+            assertEquals(1, fm.getNumberRetries());
+            assertEquals(0, fm.getNumberTimeouts());
+        }
+    }
+
+    /**
+     * A parameter that the model refuses with a negative acknowledgement lets the run fail, and its model is killed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testRefusedParameter() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.addRefusedParameter("b");
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun run = run("model.1").setParameterWindow(3).addParameter("a", 1).addParameter("b", 2)
+                    .addParameter("c", 3);
+            ModelRun result = fm.submit(run).get(WAIT, TimeUnit.SECONDS);
+
+            assertEquals(ModelState.ERROR, result.getState());
+            assertTrue(result.getError().contains("refused parameter b"), result.getError());
+            assertEquals(0, stub.count("FM.4"));
+            assertEquals(1, stub.count("FM.8"));
+        }
+    }
+
+    /**
+     * A model controller that answers the heartbeats keeps the run alive; a model controller that stops answering them lets
+     * the run fail according to the HEARTBEAT policy, even while it answers the other requests.
+     * @throws Exception on error
+     */
+    @Test
+    public void testHeartbeat() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setRunningReplies(4);
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            fm.setHeartbeatInterval(50L);
+            fm.setTimeoutPolicy(Interaction.HEARTBEAT, new TimeoutPolicy(200L, 0, 0));
+            ModelRun result = fm.submit(run("model.1").setStatusInterval(100L)).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, result.getState(), "error: " + result.getError());
+            assertTrue(stub.count("HB.1") >= 3, "heartbeats: " + stub.count("HB.1"));
+
+            stub.setHeartbeatAnswers(false).setRunningReplies(100);
+            result = fm.submit(run("model.2").setStatusInterval(100L)).get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.ERROR, result.getState());
+            assertTrue(result.getError().contains("did not answer a HEARTBEAT request within 200 ms"), result.getError());
+            assertEquals(1, fm.getNumberTimeouts());
+            assertEquals(2, stub.count("FM.8"));
+        }
+    }
+
+    /**
+     * A FederationManager that is closed by an action on the thread of its event loop does not wait for itself, and a run
+     * that was submitted before the close, but not yet handed to the loop, fails without sending an FM.1 message; a run that
+     * is submitted after the close is refused.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCloseOnLoopThread() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.setStartStatus("queued");
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ModelRun first = run("model.1");
+            fm.submit(first);
+            assertTrue(stub.await("FM.1", WAIT * 1000L));
+            ModelRun second = run("model.2");
+            fm.runLater(0L, () ->
+            {
+                fm.submit(second);
+                fm.close();
+            });
+            ModelRun failed = second.getCompletion().get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.ERROR, failed.getState());
+            assertTrue(failed.getError().contains("closed"), failed.getError());
+            assertEquals(ModelState.ERROR, first.getCompletion().get(WAIT, TimeUnit.SECONDS).getState());
+            CompletableFuture.runAsync(fm::close).get(WAIT, TimeUnit.SECONDS);
+            assertThrows(IllegalStateException.class, () -> fm.submit(run("model.3")));
+            Thread.sleep(200L);
+            assertEquals(1, stub.count("FM.1"), "the second run is not started");
+            assertEquals(0, stub.count("FM.8"), "the models are not killed");
+            assertEquals(0, fm.getNumberActive());
+        }
+    }
+
+    /**
+     * An action that is chained to the completion of a run can close the FederationManager.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCloseOnCompletion() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            CompletableFuture<Void> closed = fm.submit(run("model.1")).thenAccept(r -> fm.close());
+            closed.get(WAIT, TimeUnit.SECONDS);
+            CompletableFuture.runAsync(fm::close).get(WAIT, TimeUnit.SECONDS);
+            assertThrows(IllegalStateException.class, () -> fm.submit(run("model.2")));
+        }
+    }
+
+}
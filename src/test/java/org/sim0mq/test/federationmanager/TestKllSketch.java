@@ -0,0 +1,188 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.KllSketch;
+
+/**
+ * Tests of the KllSketch: the rank error of the quantiles, the merge of sketches, and the merge of a sketch into itself.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestKllSketch
+{
+    /** the number of items of the streams. */
+    private static final int N = 100_000;
+
+    /** the parameter k of the sketches. */
+    private static final int K = 200;
+
+    /** the maximum rank error, a few times the expected rank error of 1.7 / k. */
+    private static final double MAX_ERROR = 3.0 * 1.7 / K;
+
+    /**
+     * @param seed the seed of the shuffle
+     * @return the numbers 0 to N - 1 in a random order
+     */
+    private static double[] stream(final long seed)
+    {
+        double[] values = new double[N];
+        for (int i = 0; i < N; i++)
+        {
+            values[i] = i;
+        }
+        Random random = new Random(seed);
+        for (int i = N - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            double value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Check that the quantiles of a sketch of the numbers 0 to N - 1 have a rank error below MAX_ERROR.
+     * @param sketch the sketch
+     */
+    private static void assertRankError(final KllSketch sketch)
+    {
+        for (int percentile = 1; percentile < 100; percentile++)
+        {
+            double q = percentile / 100.0;
+            double rank = sketch.getQuantile(q) / N;
+            assertEquals(q, rank, MAX_ERROR, "quantile " + q);
+        }
+    }
+
+    /**
+     * The quantiles of a long stream are within the rank error, in a sketch of bounded size.
+     */
+    @Test
+    public void testRankError()
+    {
+        KllSketch sketch = new KllSketch(K);
+        for (double value : stream(1L))
+        {
+            sketch.add(value);
+        }
+        assertEquals(N, sketch.getCount());
+        assertRankError(sketch);
+        assertEquals(0.0, sketch.getQuantile(0.0), MAX_ERROR * N);
+        assertEquals(N - 1, sketch.getQuantile(1.0), MAX_ERROR * N);
+    }
+
+    /**
+     * The quantiles of an ascending and a descending stream are within the rank error; the items that stay in a compactor of
+     * odd size do not drift towards the largest items.
+     */
+    @Test
+    public void testSortedStreams()
+    {
+        KllSketch ascending = new KllSketch(K);
+        KllSketch descending = new KllSketch(K);
+        for (int i = 0; i < N; i++)
+        {
+            ascending.add(i);
+            descending.add(N - 1 - i);
+        }
+        assertRankError(ascending);
+        assertRankError(descending);
+    }
+
+    /**
+     * Two sketches of the halves of a stream merge into a sketch of the whole stream, and the merged sketch is not changed.
+     */
+    @Test
+    public void testMerge()
+    {
+        double[] values = stream(2L);
+        KllSketch first = new KllSketch(K);
+        KllSketch second = new KllSketch(K);
+        for (int i = 0; i < N; i++)
+        {
+            (i < N / 2 ? first : second).add(values[i]);
+        }
+        double median = second.getQuantile(0.5);
+        first.merge(second);
+        assertEquals(N, first.getCount());
+        assertEquals(N / 2, second.getCount());
+        assertEquals(median, second.getQuantile(0.5));
+        assertRankError(first);
+
+        // merging into an empty sketch gives the same quantiles
+        KllSketch empty = new KllSketch(K);
+        empty.merge(first);
+        assertEquals(N, empty.getCount());
+        assertRankError(empty);
+    }
+
+    /**
+     * A sketch that is merged into itself ends, and describes its stream twice, with the same quantiles.
+     */
+    @Test
+    public void testSelfMerge()
+    {
+        KllSketch sketch = new KllSketch(K);
+        for (double value : stream(3L))
+        {
+            sketch.add(value);
+        }
+        sketch.merge(sketch);
+        assertEquals(2L * N, sketch.getCount());
+        assertRankError(sketch);
+    }
+
+    /**
+     * The same stream gives the same sketch, and a copy has the same quantiles as its original.
+     */
+    @Test
+    public void testDeterminism()
+    {
+        KllSketch first = new KllSketch(K);
+        KllSketch second = new KllSketch(K);
+        for (double value : stream(4L))
+        {
+            first.add(value);
+            second.add(value);
+        }
+        KllSketch copy = first.copy();
+        for (int percentile = 0; percentile <= 100; percentile++)
+        {
+            double q = percentile / 100.0;
+            assertEquals(first.getQuantile(q), second.getQuantile(q));
+            assertEquals(first.getQuantile(q), copy.getQuantile(q));
+        }
+        assertEquals(first.getCount(), copy.getCount());
+    }
+
+    /**
+     * An empty sketch has NaN quantiles, and a small sketch keeps its items exactly.
+     */
+    @Test
+    public void testSmallAndEmpty()
+    {
+        KllSketch sketch = new KllSketch(8);
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        assertEquals(0, sketch.getCount());
+        sketch.add(3.0);
+        sketch.add(1.0);
+        sketch.add(2.0);
+        assertEquals(1.0, sketch.getQuantile(0.0));
+        assertEquals(2.0, sketch.getQuantile(0.5));
+        assertEquals(3.0, sketch.getQuantile(1.0));
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new KllSketch(7));
+    }
+
+}
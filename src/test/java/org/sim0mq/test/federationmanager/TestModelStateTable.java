@@ -0,0 +1,183 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.ModelState;
+import org.sim0mq.federationmanager.ModelStateTable;
+
+/**
+ * Tests of the ModelStateTable: the legal transitions, the counts per state, the keys of removed models, and concurrent
+ * changes.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestModelStateTable
+{
+    /**
+     * Check that the counts of the table add up to its size, and that every state has the given count.
+     * @param table the table
+     * @param expected the expected count per state ordinal
+     */
+    private static void assertCounts(final ModelStateTable table, final long... expected)
+    {
+        long total = 0;
+        for (ModelState state : ModelState.values())
+        {
+            assertEquals(expected[state.ordinal()], table.getCount(state), state.toString());
+            assertEquals(expected[state.ordinal()], table.getModelIds(state).size(), state.toString());
+            total += table.getCount(state);
+        }
+        assertEquals(table.size(), total);
+    }
+
+    /**
+     * A model only moves forward, possibly skipping states, or to ERROR from any state but TERMINATED; a failed transition
+     * leaves the state and the counts alone.
+     */
+    @Test
+    public void testTransitions()
+    {
+        ModelStateTable table = new ModelStateTable();
+        long a = table.add("a");
+        long b = table.add("b");
+        assertEquals(ModelState.NOT_STARTED, table.getState(a));
+        assertCounts(table, 2, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        assertTrue(table.setState(a, ModelState.STARTED));
+        assertTrue(table.setState(a, ModelState.STARTED));
+        assertTrue(table.setState(a, ModelState.SIMULATORSTARTED));
+        assertFalse(table.setState(a, ModelState.PARAMETERS));
+        assertEquals(ModelState.SIMULATORSTARTED, table.getState("a"));
+        assertTrue(table.setState("b", ModelState.ERROR));
+        assertFalse(table.setState(b, ModelState.TERMINATED));
+        assertFalse(table.setState(b, ModelState.NOT_STARTED));
+        assertCounts(table, 0, 0, 0, 0, 1, 0, 0, 0, 1);
+
+        assertTrue(table.setState(a, ModelState.TERMINATED));
+        assertFalse(table.setState(a, ModelState.ERROR));
+        assertEquals(Arrays.asList("a"), table.getModelIds(ModelState.TERMINATED));
+        assertCounts(table, 0, 0, 0, 0, 0, 0, 0, 1, 1);
+
+        // compareAndSetState only succeeds from the expected state
+        long c = table.add("c");
+        assertFalse(table.compareAndSetState(c, ModelState.STARTED, ModelState.RUNCONTROL));
+        assertFalse(table.compareAndSetState(c, ModelState.NOT_STARTED, ModelState.NOT_STARTED));
+        assertTrue(table.compareAndSetState(c, ModelState.NOT_STARTED, ModelState.RUNCONTROL));
+        assertFalse(table.compareAndSetState(c, ModelState.NOT_STARTED, ModelState.RUNCONTROL));
+        assertCounts(table, 0, 0, 1, 0, 0, 0, 0, 1, 1);
+        assertFalse(table.setState("unknown", ModelState.STARTED));
+        assertNull(table.getState("unknown"));
+        assertEquals(-1L, table.keyOf("unknown"));
+        assertFalse(table.setState(-1L, ModelState.STARTED));
+        assertNull(table.getState(-1L));
+    }
+
+    /**
+     * A duplicate id is refused and not counted, and a removed model no longer counts; its key does not change the state of a
+     * model that reuses its slot, also when that model has the same id.
+     */
+    @Test
+    public void testRemoveAndReuse()
+    {
+        ModelStateTable table = new ModelStateTable();
+        long a = table.add("a");
+        assertTrue(table.setState(a, ModelState.STARTED));
+        assertTrue(table.remove("a"));
+        assertFalse(table.remove("a"));
+        assertNull(table.getState(a));
+        assertFalse(table.setState(a, ModelState.RUNCONTROL));
+        assertCounts(table, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        // the slot of "a" is reused, with another generation
+        long reused = table.add("a");
+        assertEquals(a & 0xFFFFFFFFL, reused & 0xFFFFFFFFL);
+        assertNotEquals(a, reused);
+        assertEquals(reused, table.keyOf("a"));
+        assertFalse(table.setState(a, ModelState.ERROR));
+        assertFalse(table.compareAndSetState(a, ModelState.NOT_STARTED, ModelState.STARTED));
+        assertNull(table.getState(a));
+        assertEquals(ModelState.NOT_STARTED, table.getState(reused));
+        assertCounts(table, 1, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> table.add("a"));
+        assertCounts(table, 1, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertEquals(1, table.size());
+
+        long b = table.add("b");
+        assertNotEquals(reused & 0xFFFFFFFFL, b & 0xFFFFFFFFL);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(table.getModelIds(ModelState.NOT_STARTED)));
+    }
+
+    /**
+     * Threads that add, move and remove their own models, while other threads hold stale keys, leave consistent counts.
+     * @throws InterruptedException when interrupted
+     */
+    @Test
+    public void testConcurrency() throws InterruptedException
+    {
+        ModelStateTable table = new ModelStateTable();
+        int numberThreads = 4;
+        int numberModels = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger staleSuccesses = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numberThreads; t++)
+        {
+            int thread = t;
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException exception)
+                {
+                    return;
+                }
+                for (int m = 0; m < numberModels; m++)
+                {
+                    String modelId = thread + "." + m;
+                    long key = table.add(modelId);
+                    table.setState(key, ModelState.STARTED);
+                    table.setState(key, ModelState.SIMULATORSTARTED);
+                    // every tenth model stays, in state SIMULATORSTARTED
+                    if (m % 10 != 0)
+                    {
+                        table.remove(modelId);
+                        // the key is stale now, and its slot can be reused by any thread
+                        if (table.setState(key, ModelState.ERROR))
+                        {
+                            staleSuccesses.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        long remaining = numberThreads * numberModels / 10;
+        assertEquals(0, staleSuccesses.get());
+        assertEquals(remaining, table.size());
+        assertCounts(table, 0, 0, 0, 0, remaining, 0, 0, 0, 0);
+    }
+
+}
@@ -0,0 +1,226 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Time;
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.FederationManager;
+import org.sim0mq.federationmanager.ModelRun;
+import org.sim0mq.federationmanager.ModelState;
+import org.sim0mq.federationmanager.ReplicationScheduler;
+import org.sim0mq.federationmanager.ReplicationScheduler.ReplicationFactory;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+
+/**
+ * Tests of the ReplicationScheduler: the dealing of replications to the nodes, stealing, the seeds, and the backup copies of
+ * stragglers, with two stub FederateStarters.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestReplicationScheduler
+{
+    /** the maximum time in seconds to wait for an experiment. */
+    private static final long WAIT = 20L;
+
+    /** the base seed of the experiments. */
+    private static final long BASE_SEED = 42L;
+
+    /** the stream ids of the model. */
+    private static final List<Object> STREAM_IDS = Arrays.asList("default", "arrivals");
+
+    /** the node and the run per started replication, in the order of starting. */
+    private final List<String[]> started = Collections.synchronizedList(new ArrayList<>());
+
+    /** the run per instance id. */
+    private final Map<String, ModelRun> runMap = new ConcurrentHashMap<>();
+
+    /** the FM.2 builder that all runs share, with a stream map of its own. */
+    private final FM2SimRunControlMessage.Builder runControl = new FM2SimRunControlMessage.Builder()
+            .setRunDuration(Duration.instantiateSI(100.0)).setWarmupDuration(Duration.ZERO).setOffsetTime(Time.ZERO)
+            .setSpeed(0.0).setNumberReplications(1).setStreamMap(new LinkedHashMap<>(Map.of("default", 1L)));
+
+    /**
+     * @return a factory of runs with the shared FM.2 builder, which records the started replications
+     */
+    private ReplicationFactory factory()
+    {
+        return (replication, federateStarter) ->
+        {
+            String instanceId = replication.getPointId() + "." + replication.getNumber();
+            this.started.add(new String[] {String.valueOf(replication.getNumber()), federateStarter});
+            ModelRun run = TestFederationManager.run(instanceId, federateStarter).setRunControl(this.runControl)
+                    .setStatusInterval(20L);
+            this.runMap.put(instanceId, run);
+            return run;
+        };
+    }
+
+    /**
+     * Wait for all replications, and check that they terminated.
+     * @param futures the futures of the replications
+     * @throws Exception on error or timeout
+     */
+    private static void assertTerminated(final List<CompletableFuture<ModelRun>> futures) throws Exception
+    {
+        for (CompletableFuture<ModelRun> future : futures)
+        {
+            ModelRun run = future.get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, run.getState(), "error: " + run.getError());
+        }
+    }
+
+    /**
+     * The seed of a stream depends on the base seed, the parameter point, the replication number and the stream id only.
+     */
+    @Test
+    public void testSeed()
+    {
+        long seed = ReplicationScheduler.seed(BASE_SEED, "p", 3, "default");
+        assertEquals(seed, ReplicationScheduler.seed(BASE_SEED, "p", 3, "default"));
+        assertTrue(seed >= 0L);
+        assertNotEquals(seed, ReplicationScheduler.seed(BASE_SEED + 1, "p", 3, "default"));
+        assertNotEquals(seed, ReplicationScheduler.seed(BASE_SEED, "q", 3, "default"));
+        assertNotEquals(seed, ReplicationScheduler.seed(BASE_SEED, "p", 4, "default"));
+        assertNotEquals(seed, ReplicationScheduler.seed(BASE_SEED, "p", 3, "arrivals"));
+        // the ids are hashed by their string, so equal strings give equal seeds
+        assertEquals(ReplicationScheduler.seed(BASE_SEED, 7, 0, "default"),
+                ReplicationScheduler.seed(BASE_SEED, "7", 0, "default"));
+    }
+
+    /**
+     * The replications are dealt in contiguous blocks in proportion to the limits of the nodes, and every run gets the seeds
+     * of its replication in its FM.2 message, while the shared FM.2 builder keeps its own stream map.
+     * @throws Exception on error
+     */
+    @Test
+    public void testDealing() throws Exception
+    {
+        try (StubFederation stub1 = new StubFederation(); StubFederation stub2 = new StubFederation();
+                FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            fm.addFederateStarter("fs1", stub1.getEndpoint());
+            fm.addFederateStarter("fs2", stub2.getEndpoint());
+            ReplicationScheduler scheduler = new ReplicationScheduler(fm, BASE_SEED);
+            scheduler.addNode("fs1", 1);
+            scheduler.addNode("fs2", 3);
+            List<CompletableFuture<ModelRun>> futures = scheduler.submit("p", 8, STREAM_IDS, factory());
+
+            // fs1 gets replications 0-1 and fs2 gets 2-7; each node starts from the head of its block
+            List<String> first = new ArrayList<>();
+            for (String[] start : this.started.subList(0, 4))
+            {
+                first.add(start[0] + "@" + start[1]);
+            }
+            assertEquals(Arrays.asList("0@fs1", "2@fs2", "3@fs2", "4@fs2"), first);
+            assertTerminated(futures);
+            assertEquals(0, scheduler.getNumberPending());
+            assertEquals(0, scheduler.getNumberRunning());
+
+            Map<String, Map<Object, Long>> streamMaps = new LinkedHashMap<>(stub1.getStreamMaps());
+            streamMaps.putAll(stub2.getStreamMaps());
+            assertEquals(8, streamMaps.size());
+            for (int number = 0; number < 8; number++)
+            {
+                Map<Object, Long> streamMap = streamMaps.get("p." + number);
+                for (Object streamId : STREAM_IDS)
+                {
+                    assertEquals(ReplicationScheduler.seed(BASE_SEED, "p", number, streamId), streamMap.get(streamId));
+                }
+            }
+
+            // a run without seeds of its own gets the stream map of the shared builder
+            ModelRun plain = TestFederationManager.run("plain", "fs1").setRunControl(this.runControl);
+            assertEquals(ModelState.TERMINATED, fm.submit(plain).get(WAIT, TimeUnit.SECONDS).getState());
+            assertEquals(Map.of("default", 1L), stub1.getStreamMaps().get("plain"));
+        }
+    }
+
+    /**
+     * A node whose deque is empty steals the last replications of the node with the most pending work.
+     * @throws Exception on error
+     */
+    @Test
+    public void testStealing() throws Exception
+    {
+        try (StubFederation slow = new StubFederation(); StubFederation fast = new StubFederation();
+                FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            slow.setRunningReplies(10);
+            fm.addFederateStarter("slow", slow.getEndpoint());
+            fm.addFederateStarter("fast", fast.getEndpoint());
+            ReplicationScheduler scheduler = new ReplicationScheduler(fm, BASE_SEED);
+            scheduler.addNode("slow", 1);
+            scheduler.addNode("fast", 1);
+            List<CompletableFuture<ModelRun>> futures = scheduler.submit("p", 6, STREAM_IDS, factory());
+            assertTerminated(futures);
+
+            assertTrue(scheduler.getNumberStolen() > 0);
+            boolean stolen = false;
+            synchronized (this.started)
+            {
+                for (String[] start : this.started)
+                {
+                    // replications 0-2 were dealt to the slow node
+                    stolen |= Integer.parseInt(start[0]) < 3 && "fast".equals(start[1]);
+                }
+            }
+            assertTrue(stolen);
+            int completed = scheduler.getNumberCompleted().get("slow") + scheduler.getNumberCompleted().get("fast");
+            assertEquals(6, completed);
+        }
+    }
+
+    /**
+     * A straggler gets a backup copy with the same seeds on another node; the backup wins, and the straggler is cancelled,
+     * which kills its model.
+     * @throws Exception on error
+     */
+    @Test
+    public void testBackupWins() throws Exception
+    {
+        try (StubFederation stub1 = new StubFederation(); StubFederation stub2 = new StubFederation();
+                FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub1.addStraggler("p.0");
+            fm.addFederateStarter("fs1", stub1.getEndpoint());
+            fm.addFederateStarter("fs2", stub2.getEndpoint());
+            ReplicationScheduler scheduler = new ReplicationScheduler(fm, BASE_SEED);
+            scheduler.setSpeculation(true);
+            scheduler.setMinSamples(2);
+            // the runs of the stub take a few status intervals; only the straggler, which never ends, is far beyond that
+            scheduler.setStragglerFactor(20.0);
+            scheduler.setSpeculationInterval(20L);
+            scheduler.addNode("fs1", 2);
+            scheduler.addNode("fs2", 2);
+            List<CompletableFuture<ModelRun>> futures = scheduler.submit("p", 6, STREAM_IDS, factory());
+            assertTerminated(futures);
+
+            ModelRun winner = futures.get(0).get();
+            assertEquals("p.0.backup", winner.getInstanceId());
+            assertEquals("fs2", winner.getFederateStarter());
+            assertEquals(1, scheduler.getNumberBackups());
+            assertEquals(1, scheduler.getNumberBackupWins());
+            ModelRun loser = this.runMap.get("p.0").getCompletion().get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.ERROR, loser.getState());
+            assertTrue(loser.getError().contains("cancelled"), loser.getError());
+            assertEquals(stub1.getStreamMaps().get("p.0"), stub2.getStreamMaps().get("p.0.backup"));
+        }
+    }
+
+}
@@ -0,0 +1,250 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.djunits.value.vdouble.scalar.Duration;
+import org.djunits.value.vdouble.scalar.Time;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federationmanager.FederationManager;
+import org.sim0mq.federationmanager.ModelRun;
+import org.sim0mq.federationmanager.ModelState;
+import org.sim0mq.federationmanager.ResultCache;
+import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
+import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
+import org.sim0mq.message.modelcontroller.MC5StatisticsListMessage;
+
+/**
+ * Tests of the ResultCache: the canonical key of a run, the eviction of the least recently used entries, and the use of the
+ * cache by a FederationManager.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestResultCache
+{
+    /** the maximum time in seconds to wait for a run. */
+    private static final long WAIT = 10L;
+
+    /** the directory of the caches. */
+    @TempDir
+    private Path directory;
+
+    /**
+     * @param instanceId the instance id
+     * @param workingDirectory the working directory
+     * @param argsAfter the arguments after the model path
+     * @return an FM.1 message
+     * @throws Exception on error
+     */
+    private static FM1StartFederateMessage start(final String instanceId, final String workingDirectory,
+            final String argsAfter) throws Exception
+    {
+        return new FM1StartFederateMessage.Builder().setSimulationRunId("TEST").setSenderId("FM").setReceiverId("FS")
+                .setMessageId(1L).setInstanceId(instanceId).setSoftwareCode("java").setArgsBefore("")
+                .setModelPath("model.jar").setArgsAfter(argsAfter).setWorkingDirectory(workingDirectory).setRedirectStdin("")
+                .setRedirectStdout(instanceId + ".out").setRedirectStderr("").setDeleteWorkingDirectory(false)
+                .setDeleteStdout(false).setDeleteStderr(false).build();
+    }
+
+    /**
+     * @param streamMap the seeds per stream id
+     * @return an FM.2 message
+     * @throws Exception on error
+     */
+    private static FM2SimRunControlMessage runControl(final Map<Object, Long> streamMap) throws Exception
+    {
+        return new FM2SimRunControlMessage.Builder().setSimulationRunId("TEST").setSenderId("FM").setReceiverId("MC")
+                .setMessageId(2L).setRunDuration(Duration.instantiateSI(100.0)).setWarmupDuration(Duration.ZERO)
+                .setOffsetTime(Time.ZERO).setSpeed(0.0).setNumberReplications(1).setStreamMap(streamMap).build();
+    }
+
+    /**
+     * @param entries the keys and values, alternating
+     * @param <V> the type of the values
+     * @return a map with the entries in the given order
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> map(final Object... entries)
+    {
+        Map<String, V> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2)
+        {
+            map.put(entries[i].toString(), (V) entries[i + 1]);
+        }
+        return map;
+    }
+
+    /**
+     * The key leaves out the fields that do not change the outcome of a run, and does not depend on the order of the seeds
+     * and parameters; every input that can change the outcome changes the key.
+     * @throws Exception on error
+     */
+    @Test
+    public void testKey() throws Exception
+    {
+        Map<Object, Long> seeds = new LinkedHashMap<>();
+        seeds.put("default", 1L);
+        seeds.put("arrivals", 2L);
+        Map<Object, Long> reversedSeeds = new LinkedHashMap<>();
+        reversedSeeds.put("arrivals", 2L);
+        reversedSeeds.put("default", 1L);
+        Map<String, Object> parameters = map("rate", 2.0, "servers", 3);
+        Map<String, Object> reversedParameters = map("servers", 3, "rate", 2.0);
+        List<String> statistics = Arrays.asList("avgWait", "utilization");
+        String key = ResultCache.key(start("run.1", "/tmp/1", ""), runControl(seeds), parameters, statistics, false);
+
+        assertEquals(64, key.length());
+        assertEquals(key, ResultCache.key(start("run.2", "/tmp/2", ""), runControl(reversedSeeds), reversedParameters,
+                statistics, false));
+
+        Map<Object, Long> otherSeeds = new LinkedHashMap<>(seeds);
+        otherSeeds.put("arrivals", 3L);
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), runControl(otherSeeds), parameters, statistics,
+                false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), runControl(seeds), map("rate", 2.5, "servers", 3),
+                statistics, false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), runControl(seeds), map("rate", 2.0, "servers", 3L),
+                statistics, false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", "-fast"), runControl(seeds), parameters, statistics,
+                false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), null, parameters, statistics, false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), runControl(seeds), parameters,
+                Arrays.asList("utilization", "avgWait"), false));
+        assertNotEquals(key, ResultCache.key(start("run.1", "/tmp/1", ""), runControl(seeds), parameters, statistics, true));
+        // the parameter and statistic names are separate fields, so moving a name from one list to another changes the key
+        assertNotEquals(ResultCache.key(start("run.1", "/tmp/1", ""), null, map("a", "b"), Collections.emptyList(), false),
+                ResultCache.key(start("run.1", "/tmp/1", ""), null, Collections.emptyMap(), Arrays.asList("a", "b"), false));
+    }
+
+    /**
+     * The least recently used entries are removed when the entries take more than the maximum number of bytes; a lookup
+     * makes an entry the most recently used one, and the entries survive a restart.
+     * @throws Exception on error
+     */
+    @Test
+    public void testEviction() throws Exception
+    {
+        Path cacheDirectory = this.directory.resolve("cache");
+        ResultCache probe = new ResultCache(this.directory.resolve("probe"), Long.MAX_VALUE);
+        probe.put("a", map("x", 1.0), map());
+        long entrySize = probe.getSize();
+        assertTrue(entrySize > 0);
+
+        // room for three entries of the same size
+        ResultCache cache = new ResultCache(cacheDirectory, 3 * entrySize + entrySize / 2);
+        cache.put("a", map("x", 1.0), map());
+        cache.put("b", map("x", 2.0), map());
+        cache.put("c", map("x", 3.0), map());
+        assertEquals(3, cache.getNumberEntries());
+        assertEquals(3 * entrySize, cache.getSize());
+        MC5StatisticsListMessage a = cache.get("a");
+        assertNotNull(a);
+        assertEquals(1.0, a.getValueMap().get("x"));
+
+        // "b" is now the least recently used entry
+        cache.put("d", map("x", 4.0), map());
+        assertEquals(3, cache.getNumberEntries());
+        assertEquals(3 * entrySize, cache.getSize());
+        assertNull(cache.get("b"));
+        assertFalse(Files.exists(cacheDirectory.resolve("b.result")));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.getNumberHits());
+        assertEquals(1, cache.getNumberMisses());
+
+        // replacing an entry does not count its size twice
+        cache.put("d", map("x", 5.0), map());
+        assertEquals(3, cache.getNumberEntries());
+        assertEquals(5.0, cache.get("d").getValueMap().get("x"));
+
+        ResultCache reopened = new ResultCache(cacheDirectory, 3 * entrySize + entrySize / 2);
+        assertEquals(3, reopened.getNumberEntries());
+        assertEquals(3 * entrySize, reopened.getSize());
+        assertEquals(3.0, reopened.get("c").getValueMap().get("x"));
+
+        // a smaller cache removes entries when it is opened
+        ResultCache smaller = new ResultCache(cacheDirectory, entrySize);
+        assertEquals(1, smaller.getNumberEntries());
+    }
+
+    /**
+     * An entry that cannot be read is a miss, and is removed.
+     * @throws Exception on error
+     */
+    @Test
+    public void testCorruptEntry() throws Exception
+    {
+        Files.write(this.directory.resolve("bad.result"), new byte[] {1, 2, 3});
+        ResultCache cache = new ResultCache(this.directory, 1000L);
+        assertEquals(1, cache.getNumberEntries());
+        assertNull(cache.get("bad"));
+        assertEquals(1, cache.getNumberMisses());
+        assertEquals(0, cache.getNumberEntries());
+        assertEquals(0L, cache.getSize());
+        assertFalse(Files.exists(this.directory.resolve("bad.result")));
+    }
+
+    /**
+     * A FederationManager with a cache completes a run with the same inputs as an earlier run from the cache, without starting
+     * its model; a run of which a statistic could not be gathered is not cached.
+     * @throws Exception on error
+     */
+    @Test
+    public void testFederationManager() throws Exception
+    {
+        try (StubFederation stub = new StubFederation(); FederationManager fm = new FederationManager("TEST", "FM"))
+        {
+            stub.putStatistic("avgWait", 2.5).putStatisticError("maxWait", "unknown statistic");
+            fm.addFederateStarter("fs1", stub.getEndpoint());
+            ResultCache cache = new ResultCache(this.directory, 1_000_000L);
+            fm.setResultCache(cache);
+
+            ModelRun first = fm.submit(TestFederationManager.run("run.1").addParameter("rate", 2.0).addStatistic("avgWait"))
+                    .get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, first.getState(), "error: " + first.getError());
+            assertFalse(first.isCached());
+            ModelRun second = fm.submit(TestFederationManager.run("run.2").addParameter("rate", 2.0).addStatistic("avgWait"))
+                    .get(WAIT, TimeUnit.SECONDS);
+            assertEquals(ModelState.TERMINATED, second.getState(), "error: " + second.getError());
+            assertTrue(second.isCached());
+            assertEquals(2.5, second.getStatistics().get("avgWait"));
+            assertEquals(1, stub.count("FM.1"));
+            assertEquals(1, cache.getNumberHits());
+
+            // another parameter value is another run
+            ModelRun third = fm.submit(TestFederationManager.run("run.3").addParameter("rate", 3.0).addStatistic("avgWait"))
+                    .get(WAIT, TimeUnit.SECONDS);
+            assertFalse(third.isCached());
+            assertEquals(2, stub.count("FM.1"));
+
+            // a run with a statistics error terminates, but is executed again the next time
+            for (int i = 0; i < 2; i++)
+            {
+                ModelRun run = fm.submit(TestFederationManager.run("error." + i).addStatistic("maxWait"))
+                        .get(WAIT, TimeUnit.SECONDS);
+                assertEquals(ModelState.TERMINATED, run.getState(), "error: " + run.getError());
+                assertFalse(run.isCached());
+                assertEquals("unknown statistic", run.getStatisticsErrors().get("maxWait"));
+            }
+            assertEquals(4, stub.count("FM.1"));
+            assertEquals(2, cache.getNumberEntries());
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sim0mq.federationmanager.ResultStore;
+import org.sim0mq.federationmanager.StatisticSummary;
+
+/**
+ * Tests of the ResultStore: the columns of long and double values, the promotion of a long column, and the reopening of a
+ * store and appending to it, also beyond the first segment of the columns.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestResultStore
+{
+    /** the number of rows per mapped segment of a column. */
+    private static final int SEGMENT_ROWS = 1 << 16;
+
+    /** the directory of the store. */
+    @TempDir
+    private Path directory;
+
+    /**
+     * Integral numbers go into columns of long values, other numeric values into columns of double values, and arrays
+     * element-wise; values that are not numeric are skipped, and rows without a value have a missing value.
+     * @throws IOException on error
+     */
+    @Test
+    public void testColumns() throws IOException
+    {
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("count", 7);
+            statistics.put("wait", 2.5);
+            statistics.put("busy", true);
+            statistics.put("queue", new double[] {1.0, 2.0});
+            statistics.put("log", "run 0");
+            assertEquals(0L, store.append("p", 0, statistics));
+            assertEquals(1L, store.append("q", 0, Map.of("wait", 3.5)));
+            assertEquals(2L, store.append("p", 1, Map.of("count", 9L, "wait", 4.5)));
+
+            assertEquals(3L, store.getNumberRows());
+            assertEquals(Arrays.asList("count", "wait", "busy", "queue[0]", "queue[1]"), store.getVariableNames());
+            assertEquals(Arrays.asList("p", "q"), store.getPointIds());
+            assertTrue(store.isLong("count"));
+            assertFalse(store.isLong("wait"));
+            assertEquals(7L, store.getLong(0, "count"));
+            assertEquals(ResultStore.MISSING_LONG, store.getLong(1, "count"));
+            assertTrue(Double.isNaN(store.getDouble(1, "count")));
+            assertEquals(1.0, store.getDouble(0, "busy"));
+            assertEquals(2.0, store.getDouble(0, "queue[1]"));
+            assertTrue(Double.isNaN(store.getDouble(2, "queue[1]")));
+            assertEquals("q", store.getPointId(1));
+            assertEquals(1L, store.getReplication(2));
+
+            StatisticSummary wait = store.summarize("wait");
+            assertEquals(3, wait.getCount());
+            assertEquals(3.5, wait.getMean(), 1.0E-12);
+            Map<String, StatisticSummary> byPoint = store.summarizeByPoint("wait");
+            assertEquals(Arrays.asList("p", "q"), Arrays.asList(byPoint.keySet().toArray()));
+            assertEquals(3.5, byPoint.get("p").getMean(), 1.0E-12);
+            assertEquals(1, byPoint.get("q").getCount());
+
+            assertThrows(IllegalArgumentException.class, () -> store.getDouble(0, "unknown"));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.getDouble(3, "wait"));
+            assertThrows(IndexOutOfBoundsException.class, () -> store.putDouble(3, "wait", 1.0));
+        }
+    }
+
+    /**
+     * A column of long values keeps integral double values exactly, and becomes a column of double values for the first value
+     * that is not integral, keeping its earlier values and its missing values; the new type survives a reopen.
+     * @throws IOException on error
+     */
+    @Test
+    public void testPromotion() throws IOException
+    {
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                store.appendRow("p", i);
+            }
+            store.putLong(0, "n", 3L);
+            store.putLong(0, "other", 1L);
+            store.putDouble(1, "n", 4.0);
+            assertTrue(store.isLong("n"));
+            assertEquals(4L, store.getLong(1, "n"));
+            store.putDouble(2, "n", 1.0E300);
+            assertFalse(store.isLong("n"));
+            store.putDouble(3, "n", 2.5);
+            store.putLong(1, "other", 2L);
+
+            assertEquals(3.0, store.getDouble(0, "n"));
+            assertEquals(4.0, store.getDouble(1, "n"));
+            assertEquals(1.0E300, store.getDouble(2, "n"));
+            assertEquals(2.5, store.getDouble(3, "n"));
+            assertTrue(store.isLong("other"));
+        }
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            assertEquals(Arrays.asList("n", "other"), store.getVariableNames());
+            assertFalse(store.isLong("n"));
+            assertTrue(store.isLong("other"));
+            assertEquals(2.5, store.getDouble(3, "n"));
+            assertEquals(3L, store.getLong(0, "n"));
+            assertEquals(2L, store.getLong(1, "other"));
+            assertEquals(ResultStore.MISSING_LONG, store.getLong(2, "other"));
+
+            // a new row of the promoted column is missing until it is written
+            long row = store.appendRow("p", 4);
+            assertTrue(Double.isNaN(store.getDouble(row, "n")));
+            store.putDouble(row, "n", 0.25);
+            assertEquals(0.25, store.getDouble(row, "n"));
+        }
+    }
+
+    /**
+     * A store keeps its rows, points and columns when it is reopened, and appends after them; rows that cross into a new
+     * segment of a column have missing values in the file, not zeros.
+     * @throws IOException on error
+     */
+    @Test
+    public void testReopenAndAppend() throws IOException
+    {
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                store.append(i % 2 == 0 ? "even" : "odd", i, Map.of("x", i * 1.5, "k", i));
+            }
+        }
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            assertEquals(10L, store.getNumberRows());
+            assertEquals(Arrays.asList("even", "odd"), store.getPointIds());
+            assertEquals(7.5, store.getDouble(5, "x"));
+            assertEquals(5L, store.getLong(5, "k"));
+            assertEquals("odd", store.getPointId(5));
+
+            // append past the first segment, with a value in the last row only
+            long last = 0L;
+            while (store.getNumberRows() < SEGMENT_ROWS + 5)
+            {
+                last = store.appendRow("odd", store.getNumberRows());
+            }
+            store.putDouble(last, "x", -1.0);
+            store.putLong(last, "k", -1L);
+            assertEquals(Arrays.asList("even", "odd"), store.getPointIds());
+        }
+        try (ResultStore store = new ResultStore(this.directory))
+        {
+            long rows = SEGMENT_ROWS + 5;
+            assertEquals(rows, store.getNumberRows());
+            assertEquals(-1.0, store.getDouble(rows - 1, "x"));
+            assertEquals(-1L, store.getLong(rows - 1, "k"));
+            assertTrue(Double.isNaN(store.getDouble(SEGMENT_ROWS, "x")));
+            assertEquals(ResultStore.MISSING_LONG, store.getLong(SEGMENT_ROWS, "k"));
+            assertTrue(Double.isNaN(store.getDouble(10, "x")));
+            assertEquals(11, store.summarize("x").getCount());
+            assertEquals(rows - 1, store.getReplication(rows - 1));
+            assertEquals(5, store.summarizeByPoint("k").get("even").getCount());
+            assertEquals(6, store.summarizeByPoint("k").get("odd").getCount());
+        }
+        // the column files hold two whole segments
+        for (String file : new String[] {"point.col", "c0.col", "c1.col"})
+        {
+            assertEquals(2L * 8L * SEGMENT_ROWS, Files.size(this.directory.resolve(file)), file);
+        }
+    }
+
+    /**
+     * A closed store cannot be written, and a directory with another file named rows.meta is not a store.
+     * @throws IOException on error
+     */
+    @Test
+    public void testErrors() throws IOException
+    {
+        ResultStore store = new ResultStore(this.directory.resolve("store"));
+        store.appendRow("p", 0);
+        store.close();
+        store.close();
+        assertThrows(IllegalStateException.class, () -> store.appendRow("p", 1));
+        assertThrows(IllegalStateException.class, () -> store.putDouble(0, "x", 1.0));
+        try (ResultStore reopened = new ResultStore(this.directory.resolve("store")))
+        {
+            assertEquals(1L, reopened.getNumberRows());
+            assertThrows(IllegalArgumentException.class, () -> reopened.appendRow("a\nb", 1));
+        }
+
+        Path other = this.directory.resolve("other");
+        Files.createDirectories(other);
+        Files.write(other.resolve("rows.meta"), new byte[16]);
+        assertThrows(IOException.class, () -> new ResultStore(other));
+    }
+
+}
@@ -0,0 +1,183 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.StatisticSummary;
+
+/**
+ * Tests of the StatisticSummary: Welford's mean and variance against a two-pass computation, the merge of summaries, and the
+ * Student t quantiles of the confidence interval.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestStatisticSummary
+{
+    /** the parameter k of the quantile sketches. */
+    private static final int K = 200;
+
+    /**
+     * @param seed the seed of the values
+     * @param n the number of values
+     * @return normally distributed values with a large mean and a small standard deviation, where a one-pass sum of squares
+     *         loses its precision
+     */
+    private static double[] values(final long seed, final int n)
+    {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            values[i] = 1.0E9 + random.nextGaussian();
+        }
+        return values;
+    }
+
+    /**
+     * @param values the values
+     * @return the mean and the sample variance of the values, computed in two passes
+     */
+    private static double[] twoPass(final double[] values)
+    {
+        double sum = 0.0;
+        for (double value : values)
+        {
+            sum += value;
+        }
+        double mean = sum / values.length;
+        double squares = 0.0;
+        for (double value : values)
+        {
+            squares += (value - mean) * (value - mean);
+        }
+        return new double[] {mean, squares / (values.length - 1)};
+    }
+
+    /**
+     * The mean and variance of Welford's algorithm equal the ones of a two-pass computation, also with a large mean.
+     */
+    @Test
+    public void testWelford()
+    {
+        double[] values = values(1L, 10_000);
+        StatisticSummary summary = new StatisticSummary(K);
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values)
+        {
+            summary.add(value);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double[] expected = twoPass(values);
+        assertEquals(values.length, summary.getCount());
+        assertEquals(expected[0], summary.getMean(), 1.0E-14 * expected[0]);
+        assertEquals(expected[1], summary.getVariance(), 1.0E-6 * expected[1]);
+        assertEquals(Math.sqrt(expected[1]), summary.getStDev(), 1.0E-6);
+        assertEquals(min, summary.getMin());
+        assertEquals(max, summary.getMax());
+    }
+
+    /**
+     * NaN values are not counted, and a summary with too few values has NaN statistics.
+     */
+    @Test
+    public void testNaNAndEmpty()
+    {
+        StatisticSummary summary = new StatisticSummary(K);
+        assertTrue(Double.isNaN(summary.getMean()));
+        assertTrue(Double.isNaN(summary.getMin()));
+        assertTrue(Double.isNaN(summary.getQuantile(0.5)));
+        summary.add(Double.NaN);
+        summary.add(2.0);
+        summary.add(Double.NaN);
+        assertEquals(1, summary.getCount());
+        assertEquals(2.0, summary.getMean());
+        assertTrue(Double.isNaN(summary.getVariance()));
+        double[] interval = summary.getConfidenceInterval(0.95);
+        assertTrue(Double.isNaN(interval[0]) && Double.isNaN(interval[1]));
+        assertThrows(IllegalArgumentException.class, () -> summary.getConfidenceInterval(1.0));
+        assertThrows(IllegalArgumentException.class, () -> summary.getConfidenceInterval(0.0));
+    }
+
+    /**
+     * Two summaries of parts of the values merge into the summary of all values; merging into an empty summary, or merging
+     * an empty summary, gives the other summary, and a summary that is merged into itself counts its values twice.
+     */
+    @Test
+    public void testMerge()
+    {
+        double[] values = values(2L, 5_001);
+        StatisticSummary first = new StatisticSummary(K);
+        StatisticSummary second = new StatisticSummary(K);
+        for (int i = 0; i < values.length; i++)
+        {
+            (i < 1_234 ? first : second).add(values[i]);
+        }
+        StatisticSummary empty = new StatisticSummary(K);
+        first.merge(empty);
+        empty.merge(second);
+        assertEquals(second.getCount(), empty.getCount());
+        assertEquals(second.getMean(), empty.getMean(), 1.0E-14 * second.getMean());
+        assertEquals(second.getMin(), empty.getMin());
+
+        first.merge(second);
+        double[] expected = twoPass(values);
+        assertEquals(values.length, first.getCount());
+        assertEquals(expected[0], first.getMean(), 1.0E-14 * expected[0]);
+        assertEquals(expected[1], first.getVariance(), 1.0E-6 * expected[1]);
+        assertEquals(Arrays.stream(values).min().getAsDouble(), first.getMin());
+        assertEquals(Arrays.stream(values).max().getAsDouble(), first.getMax());
+
+        StatisticSummary copy = first.copy();
+        copy.merge(copy);
+        assertEquals(2L * values.length, copy.getCount());
+        assertEquals(first.getMean(), copy.getMean(), 1.0E-14 * first.getMean());
+        assertEquals(first.getMax(), copy.getMax());
+        assertEquals(values.length, first.getCount());
+    }
+
+    /**
+     * The half width of the confidence interval follows the Student t quantiles of a table: exact for 1 and 2 degrees of
+     * freedom, and within 1% from 3 degrees of freedom.
+     */
+    @Test
+    public void testStudentT()
+    {
+        // two-sided 95% quantiles per degrees of freedom
+        long[] df = {1, 2, 3, 5, 10, 30, 100};
+        double[] t = {12.7062, 4.3027, 3.1824, 2.5706, 2.2281, 2.0423, 1.9840};
+        for (int i = 0; i < df.length; i++)
+        {
+            StatisticSummary summary = new StatisticSummary(K);
+            for (int j = 0; j <= df[i]; j++)
+            {
+                summary.add(j);
+            }
+            double[] interval = summary.getConfidenceInterval(0.95);
+            double halfWidth = (interval[1] - interval[0]) / 2.0;
+            assertEquals(summary.getMean(), (interval[0] + interval[1]) / 2.0, 1.0E-9);
+            double quantile = halfWidth * Math.sqrt(summary.getCount()) / summary.getStDev();
+            assertEquals(t[i], quantile, (df[i] < 3 ? 1.0E-3 : 1.0E-2) * t[i], "df=" + df[i]);
+        }
+
+        // a 99% interval with 10 degrees of freedom
+        StatisticSummary summary = new StatisticSummary(K);
+        for (int j = 0; j <= 10; j++)
+        {
+            summary.add(j);
+        }
+        double[] interval = summary.getConfidenceInterval(0.99);
+        double quantile = (interval[1] - interval[0]) / 2.0 * Math.sqrt(summary.getCount()) / summary.getStDev();
+        assertEquals(3.1693, quantile, 1.0E-2 * 3.1693);
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.djunits.unit.DurationUnit;
+import org.djunits.value.vdouble.scalar.Duration;
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.StatisticSummary;
+import org.sim0mq.federationmanager.StatisticsAggregator;
+
+/**
+ * Tests of the StatisticsAggregator: scalars, arrays and values that are not numeric, the merge of aggregators, and the copies
+ * of the summaries.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestStatisticsAggregator
+{
+    /**
+     * Numbers, booleans and scalars are aggregated in SI units; strings and nulls are skipped.
+     */
+    @Test
+    public void testScalars()
+    {
+        StatisticsAggregator aggregator = new StatisticsAggregator();
+        assertTrue(aggregator.add("wait", 1));
+        assertTrue(aggregator.add("wait", 2.0f));
+        assertTrue(aggregator.add("wait", new Duration(3.0, DurationUnit.MINUTE)));
+        assertTrue(aggregator.add("busy", true));
+        assertTrue(aggregator.add("busy", false));
+        assertFalse(aggregator.add("name", "model"));
+        assertFalse(aggregator.add("name", null));
+        assertEquals(Arrays.asList("wait", "busy"), aggregator.getVariableNames());
+        assertNull(aggregator.getSummary("name"));
+
+        StatisticSummary wait = aggregator.getSummary("wait");
+        assertEquals(3, wait.getCount());
+        assertEquals(1.0, wait.getMin());
+        assertEquals(180.0, wait.getMax());
+        assertEquals(61.0, wait.getMean(), 1.0E-9);
+        assertEquals(0.5, aggregator.getSummary("busy").getMean(), 1.0E-9);
+    }
+
+    /**
+     * Arrays and matrices are aggregated per element; a longer array adds elements, which start empty.
+     */
+    @Test
+    public void testArrays()
+    {
+        StatisticsAggregator aggregator = new StatisticsAggregator();
+        assertTrue(aggregator.add("queue", new double[] {1.0, 2.0}));
+        assertTrue(aggregator.add("queue", new int[] {3, 4, 5}));
+        assertTrue(aggregator.add("grid", new double[][] {{1.0, 2.0}, {3.0, 4.0}}));
+        assertFalse(aggregator.add("names", new String[] {"a", "b"}));
+
+        StatisticSummary[] queue = aggregator.getSummaries("queue");
+        assertEquals(3, queue.length);
+        assertEquals(2, queue[0].getCount());
+        assertEquals(2.0, queue[0].getMean(), 1.0E-9);
+        assertEquals(3.0, queue[1].getMean(), 1.0E-9);
+        assertEquals(1, queue[2].getCount());
+        assertEquals(5.0, queue[2].getMean(), 1.0E-9);
+        assertEquals(queue[0].getMean(), aggregator.getSummary("queue").getMean());
+        assertEquals(4, aggregator.getSummaries("grid").length);
+        assertEquals(3.0, aggregator.getSummaries("grid")[2].getMean());
+    }
+
+    /**
+     * The statistics of runs are added with addAll, which skips the values that are not numeric, and two aggregators merge
+     * into the aggregate of all runs without changing the other one.
+     */
+    @Test
+    public void testMerge()
+    {
+        StatisticsAggregator first = new StatisticsAggregator(64);
+        StatisticsAggregator second = new StatisticsAggregator(64);
+        StatisticsAggregator all = new StatisticsAggregator(64);
+        for (int run = 0; run < 100; run++)
+        {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("wait", run * 0.5);
+            statistics.put("queue", new double[] {run, 2.0 * run});
+            statistics.put("log", "run " + run);
+            (run % 3 == 0 ? first : second).addAll(statistics);
+            all.addAll(statistics);
+        }
+        first.merge(second);
+        assertEquals(Arrays.asList("wait", "queue"), first.getVariableNames());
+        assertEquals(100 - 34, second.getSummary("wait").getCount());
+        StatisticSummary merged = first.getSummary("wait");
+        StatisticSummary expected = all.getSummary("wait");
+        assertEquals(expected.getCount(), merged.getCount());
+        assertEquals(expected.getMean(), merged.getMean(), 1.0E-9);
+        assertEquals(expected.getVariance(), merged.getVariance(), 1.0E-9);
+        assertEquals(expected.getMin(), merged.getMin());
+        assertEquals(expected.getMax(), merged.getMax());
+        assertEquals(99.0, first.getSummaries("queue")[1].getMean(), 1.0E-9);
+
+        // an aggregator that is merged into itself counts its values twice
+        first.merge(first);
+        assertEquals(200, first.getSummary("wait").getCount());
+    }
+
+    /**
+     * The summaries that an aggregator returns are copies, which do not change the aggregate.
+     */
+    @Test
+    public void testCopies()
+    {
+        StatisticsAggregator aggregator = new StatisticsAggregator();
+        aggregator.add("wait", 1.0);
+        aggregator.getSummary("wait").add(100.0);
+        aggregator.getSummaries("wait")[0].add(100.0);
+        assertEquals(1, aggregator.getSummary("wait").getCount());
+        assertEquals(1.0, aggregator.getSummary("wait").getMax());
+    }
+
+}
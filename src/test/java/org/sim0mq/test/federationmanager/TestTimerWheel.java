@@ -0,0 +1,179 @@
+package org.sim0mq.test.federationmanager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.sim0mq.federationmanager.TimerWheel;
+import org.sim0mq.federationmanager.TimerWheel.Timeout;
+
+/**
+ * Tests of the TimerWheel: the order in which timers fire, timers that are due more than one revolution ahead, a wheel that
+ * is advanced by more than one revolution at once, and timers that are cancelled or that throw while the timers of a bucket
+ * fire.
+ * <p>
+ * Copyright (c) 2016-2024 Delft University of Technology, PO Box 5, 2600 AA, Delft, the Netherlands. All rights reserved. <br>
+ * BSD-style license. See <a href="http://sim0mq.org/docs/current/license.html">Sim0MQ License</a>.
+ * </p>
+ * @author <a href="http://www.tbm.tudelft.nl/averbraeck">Alexander Verbraeck</a>
+ */
+public class TestTimerWheel
+{
+    /**
+     * Timers fire at the first tick at or after their due time, in the order in which they were scheduled within a tick; a
+     * timer that is due in the past fires at the next tick.
+     */
+    @Test
+    public void testOrder()
+    {
+        TimerWheel wheel = new TimerWheel(10L, 16, 1000L);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(1025L, () -> fired.add("b1"));
+        wheel.schedule(1011L, () -> fired.add("a"));
+        wheel.schedule(1030L, () -> fired.add("b2"));
+        wheel.schedule(500L, () -> fired.add("past"));
+        assertEquals(4, wheel.size());
+
+        assertEquals(1, wheel.advance(1010L));
+        assertEquals(Arrays.asList("past"), fired);
+        assertEquals(0, wheel.advance(1019L));
+        assertEquals(1, wheel.advance(1020L));
+        assertEquals(2, wheel.advance(1030L));
+        assertEquals(Arrays.asList("past", "a", "b1", "b2"), fired);
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(1030L));
+    }
+
+    /**
+     * A timer that is due more than one revolution ahead shares its bucket with earlier timers, and only fires in the
+     * revolution in which it is due.
+     */
+    @Test
+    public void testRevolutions()
+    {
+        TimerWheel wheel = new TimerWheel(1L, 8, 0L);
+        List<Long> fired = new ArrayList<>();
+        for (long due : new long[] {3L, 11L, 19L})
+        {
+            wheel.schedule(due, () -> fired.add(due));
+        }
+        assertEquals(1, wheel.advance(7L));
+        assertEquals(Arrays.asList(3L), fired);
+        assertEquals(0, wheel.advance(10L));
+        assertEquals(1, wheel.advance(16L));
+        assertEquals(Arrays.asList(3L, 11L), fired);
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.advance(19L));
+        assertEquals(Arrays.asList(3L, 11L, 19L), fired);
+    }
+
+    /**
+     * A wheel that is advanced by more than one revolution at once fires every timer that is due once, and keeps the timers
+     * that are due later; the ticks after the gap are processed normally.
+     */
+    @Test
+    public void testRevolutionOverflow()
+    {
+        TimerWheel wheel = new TimerWheel(1L, 8, 0L);
+        List<Long> fired = new ArrayList<>();
+        for (long due : new long[] {2L, 5L, 10L, 13L, 30L, 102L, 111L})
+        {
+            wheel.schedule(due, () -> fired.add(due));
+        }
+        assertEquals(5, wheel.advance(100L));
+        assertEquals(Arrays.asList(2L, 5L, 10L, 13L, 30L), fired.stream().sorted().toList());
+        assertEquals(2, wheel.size());
+
+        // a timer scheduled after the gap is due relative to the new tick
+        wheel.schedule(50L, () -> fired.add(50L));
+        assertEquals(1, wheel.advance(101L));
+        assertEquals(1, wheel.advance(102L));
+        assertEquals(0, wheel.advance(110L));
+        assertEquals(1, wheel.advance(111L));
+        assertEquals(Arrays.asList(50L, 102L, 111L), fired.subList(5, 8));
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * An action can cancel a later timer of the same bucket, which then does not fire, and can schedule a timer for the same
+     * tick, which fires at the next tick; a timer that has fired cannot be cancelled.
+     */
+    @Test
+    public void testCancelDuringFire()
+    {
+        TimerWheel wheel = new TimerWheel(1L, 8, 0L);
+        List<String> fired = new ArrayList<>();
+        Timeout[] later = new Timeout[1];
+        Timeout first = wheel.schedule(5L, () ->
+        {
+            fired.add("first");
+            assertTrue(later[0].cancel());
+            wheel.schedule(5L, () -> fired.add("rescheduled"));
+        });
+        later[0] = wheel.schedule(5L, () -> fired.add("later"));
+        Timeout other = wheel.schedule(13L, () -> fired.add("other"));
+
+        assertEquals(1, wheel.advance(5L));
+        assertEquals(Arrays.asList("first"), fired);
+        assertTrue(first.isDone());
+        assertFalse(first.cancel());
+        assertTrue(later[0].isDone());
+        assertFalse(later[0].cancel());
+        assertEquals(2, wheel.size());
+
+        assertEquals(1, wheel.advance(6L));
+        assertEquals(Arrays.asList("first", "rescheduled"), fired);
+        assertTrue(other.cancel());
+        assertFalse(other.cancel());
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(20L));
+        assertEquals(2, fired.size());
+    }
+
+    /**
+     * An action that throws does not stop the other timers of its tick.
+     */
+    @Test
+    public void testThrowingAction()
+    {
+        TimerWheel wheel = new TimerWheel(1L, 8, 0L);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(2L, () ->
+        {
+            throw new IllegalStateException("expected in the test");
+        });
+        wheel.schedule(2L, () -> fired.add("after"));
+        assertEquals(2, wheel.advance(2L));
+        assertEquals(Arrays.asList("after"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * The delay runs to the first tick with a timer, and is at most the maximum delay; a bucket count that is not a power of
+     * two is rounded up, and invalid arguments are refused.
+     */
+    @Test
+    public void testDelayAndArguments()
+    {
+        TimerWheel wheel = new TimerWheel(10L, 5, 0L);
+        assertEquals(100L, wheel.delay(0L, 100L));
+        Timeout timeout = wheel.schedule(45L, () -> {});
+        assertEquals(50L, wheel.delay(0L, 100L));
+        assertEquals(47L, wheel.delay(3L, 100L));
+        assertEquals(20L, wheel.delay(0L, 20L));
+        timeout.cancel();
+        assertEquals(100L, wheel.delay(0L, 100L));
+        assertTrue(wheel.toString().contains("buckets=8"));
+
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel(0L, 8, 0L));
+        assertThrows(IllegalArgumentException.class, () -> new TimerWheel(1L, 0, 0L));
+        assertThrows(NullPointerException.class, () -> wheel.schedule(10L, null));
+    }
+
+}
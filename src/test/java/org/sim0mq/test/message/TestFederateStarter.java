@@ -76,6 +76,8 @@ public class TestFederateStarter
         {
             fail("Could not find or read software properties file /resources/software.properties");
         }
+        // the FederateStarter reports a process that cannot be started, so use the java of the JVM that runs the test
+        softwareProperties.setProperty("java8+", Path.of(System.getProperty("java.home"), "bin", "java").toString());
         Thread fsThread = new Thread(new Runnable()
         {
             @Override
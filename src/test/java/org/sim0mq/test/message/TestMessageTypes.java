@@ -1,11 +1,15 @@
 package org.sim0mq.test.message;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.djunits.unit.DurationUnit;
@@ -25,6 +29,15 @@ import org.sim0mq.message.federatestarter.FS2FederateStartedMessage;
 import org.sim0mq.message.federatestarter.FS3KillModelMessage;
 import org.sim0mq.message.federatestarter.FS4FederateKilledMessage;
 import org.sim0mq.message.federatestarter.FS5FederatesKilledMessage;
+import org.sim0mq.message.federatestarter.FS6FederateExitedMessage;
+import org.sim0mq.message.federatestarter.FS7FederateStatisticsMessage;
+import org.sim0mq.message.federatestarter.FS8FederateOutputMessage;
+import org.sim0mq.message.federatestarter.FS9FederatesStartedMessage;
+import org.sim0mq.message.federationmanager.FM10RequestFederateStatisticsMessage;
+import org.sim0mq.message.federationmanager.FM11RequestFederateOutputMessage;
+import org.sim0mq.message.federationmanager.FM12StartFederatesMessage;
+import org.sim0mq.message.federationmanager.FM13RequestStatisticsListMessage;
+import org.sim0mq.message.federationmanager.FM14SetParametersMessage;
 import org.sim0mq.message.federationmanager.FM1StartFederateMessage;
 import org.sim0mq.message.federationmanager.FM2SimRunControlMessage;
 import org.sim0mq.message.federationmanager.FM3SetParameterMessage;
@@ -40,6 +53,7 @@ import org.sim0mq.message.modelcontroller.MC1StatusMessage;
 import org.sim0mq.message.modelcontroller.MC2AckNakMessage;
 import org.sim0mq.message.modelcontroller.MC3StatisticsMessage;
 import org.sim0mq.message.modelcontroller.MC4StatisticsErrorMessage;
+import org.sim0mq.message.modelcontroller.MC5StatisticsListMessage;
 
 /**
  * Test the field types of the messages.
@@ -121,6 +135,21 @@ public class TestMessageTypes
         assertEquals(false, fm1.isDeleteWorkingDirectory());
         assertEquals(true, fm1.isDeleteStdout());
         assertEquals(true, fm1.isDeleteStderr());
+        assertEquals("", fm1.getTemplate());
+
+        FM1StartFederateMessage fm1t = new FM1StartFederateMessage(fmfs.federationId, fmfs.senderId, fmfs.receiverId,
+                fmfs.messageId, "IDVV.15", "java8+", "-Xmx500M -jar", "C:/models/MM1/mm1.jar", "./model.properties",
+                "C:/models/MM1/run15", "", "out.txt", "err.txt", true, true, true, "mm1-input");
+        Object[] fm1to = fm1t.createObjectArray();
+        FM1StartFederateMessage fm1td = new FM1StartFederateMessage.Builder().setSimulationRunId(fmfs.federationId)
+                .setSenderId(fmfs.senderId).setReceiverId(fmfs.receiverId).setMessageId(fmfs.messageId).setInstanceId("IDVV.15")
+                .setSoftwareCode("java8+").setArgsBefore("-Xmx500M -jar").setModelPath("C:/models/MM1/mm1.jar")
+                .setArgsAfter("./model.properties").setWorkingDirectory("C:/models/MM1/run15").setRedirectStdin("")
+                .setRedirectStdout("out.txt").setRedirectStderr("err.txt").setDeleteWorkingDirectory(true).setDeleteStdout(true)
+                .setDeleteStderr(true).setTemplate("mm1-input").build();
+        testMessage(fm1t, fm1to, fm1td, fmfs, "FM.1");
+        assertEquals(13, fm1t.getNumberOfPayloadFields());
+        assertEquals("mm1-input", fm1t.getTemplate());
 
         Map<Object, Long> streamMap = new LinkedHashMap<>();
         streamMap.put("default", 1L);
@@ -182,6 +211,85 @@ public class TestMessageTypes
         FM9KillAllMessage fm9d = new FM9KillAllMessage.Builder().setSimulationRunId(fmfs.federationId)
                 .setSenderId(fmfs.senderId).setReceiverId(fmfs.receiverId).setMessageId(fmfs.messageId).build();
         testMessage(fm9, fm9o, fm9d, fmfs, "FM.9");
+
+        FM10RequestFederateStatisticsMessage fm10 = new FM10RequestFederateStatisticsMessage(fmfs.federationId,
+                fmfs.senderId, fmfs.receiverId, fmfs.messageId, "IDVV.14");
+        Object[] fm10o = fm10.createObjectArray();
+        FM10RequestFederateStatisticsMessage fm10d = new FM10RequestFederateStatisticsMessage.Builder()
+                .setSimulationRunId(fmfs.federationId).setSenderId(fmfs.senderId).setReceiverId(fmfs.receiverId)
+                .setMessageId(fmfs.messageId).setInstanceId("IDVV.14").build();
+        testMessage(fm10, fm10o, fm10d, fmfs, "FM.10");
+        assertEquals("IDVV.14", fm10.getInstanceId());
+
+        FM11RequestFederateOutputMessage fm11 = new FM11RequestFederateOutputMessage(fmfs.federationId, fmfs.senderId,
+                fmfs.receiverId, fmfs.messageId, "IDVV.14", "stderr", 4096);
+        Object[] fm11o = fm11.createObjectArray();
+        FM11RequestFederateOutputMessage fm11d = new FM11RequestFederateOutputMessage.Builder()
+                .setSimulationRunId(fmfs.federationId).setSenderId(fmfs.senderId).setReceiverId(fmfs.receiverId)
+                .setMessageId(fmfs.messageId).setInstanceId("IDVV.14").setStream("stderr").setMaxBytes(4096).build();
+        testMessage(fm11, fm11o, fm11d, fmfs, "FM.11");
+        assertEquals("stderr", fm11.getStream());
+        assertEquals(4096, fm11.getMaxBytes());
+
+        Map<String, String> instanceMap = new LinkedHashMap<>();
+        instanceMap.put("IDVV.14", "");
+        instanceMap.put("IDVV.15", "-seed 15");
+        FM12StartFederatesMessage fm12 = new FM12StartFederatesMessage(fmfs.federationId, fmfs.senderId, fmfs.receiverId,
+                fmfs.messageId, "java", "-jar", "/home/models/mm1.jar", "-port %PORT%", "/tmp/%INSTANCE%", "", "out.txt",
+                "err.txt", true, false, false, "mm1-input", 2, instanceMap);
+        Object[] fm12o = fm12.createObjectArray();
+        FM12StartFederatesMessage fm12d = new FM12StartFederatesMessage.Builder().setSimulationRunId(fmfs.federationId)
+                .setSenderId(fmfs.senderId).setReceiverId(fmfs.receiverId).setMessageId(fmfs.messageId).setSoftwareCode("java")
+                .setArgsBefore("-jar").setModelPath("/home/models/mm1.jar").setArgsAfter("-port %PORT%")
+                .setWorkingDirectory("/tmp/%INSTANCE%").setRedirectStdin("").setRedirectStdout("out.txt")
+                .setRedirectStderr("err.txt").setDeleteWorkingDirectory(true).setTemplate("mm1-input").addInstance("IDVV.14")
+                .addInstance("IDVV.15", "-seed 15").build();
+        testMessage(fm12, fm12o, fm12d, fmfs, "FM.12");
+        assertEquals(17, fm12.getNumberOfPayloadFields());
+        assertEquals(instanceMap, fm12.getInstanceMap());
+        assertEquals("mm1-input", fm12.getTemplate());
+
+        List<String> variableNames = List.of("ThroughputAvg", "queue1.*", "server?.utilization");
+        FM13RequestStatisticsListMessage fm13 = new FM13RequestStatisticsListMessage(fmmc.federationId, fmmc.senderId,
+                fmmc.receiverId, fmmc.messageId, variableNames);
+        Object[] fm13o = fm13.createObjectArray();
+        FM13RequestStatisticsListMessage fm13d = new FM13RequestStatisticsListMessage.Builder()
+                .setSimulationRunId(fmmc.federationId).setSenderId(fmmc.senderId).setReceiverId(fmmc.receiverId)
+                .setMessageId(fmmc.messageId).addVariableName("ThroughputAvg").addVariableName("queue1.*")
+                .addVariableName("server?.utilization").build();
+        testMessage(fm13, fm13o, fm13d, fmmc, "FM.13");
+        assertEquals(4, fm13.getNumberOfPayloadFields());
+        assertEquals(variableNames, fm13.getVariableNames());
+        assertFalse(FM13RequestStatisticsListMessage.isPattern("ThroughputAvg"));
+        assertTrue(FM13RequestStatisticsListMessage.isPattern("queue1.*"));
+        assertTrue(FM13RequestStatisticsListMessage.matches("queue1.*", "queue1.length"));
+        assertTrue(FM13RequestStatisticsListMessage.matches("queue1.*", "queue1."));
+        assertFalse(FM13RequestStatisticsListMessage.matches("queue1.*", "queue2.length"));
+        assertTrue(FM13RequestStatisticsListMessage.matches("server?.utilization", "server3.utilization"));
+        assertFalse(FM13RequestStatisticsListMessage.matches("server?.utilization", "server12.utilization"));
+        assertTrue(FM13RequestStatisticsListMessage.matches("*.avg*", "queue.length.avg.hour"));
+        assertTrue(FM13RequestStatisticsListMessage.matches("ThroughputAvg", "ThroughputAvg"));
+        assertFalse(FM13RequestStatisticsListMessage.matches("ThroughputAvg", "ThroughputAvg2"));
+
+        Map<String, Object> parameterMap = new LinkedHashMap<>();
+        parameterMap.put("EnergyParam", new Energy(1.67, EnergyUnit.GIGAWATT_HOUR));
+        parameterMap.put("servers", 4);
+        parameterMap.put("name", "MM1");
+        FM14SetParametersMessage fm14 = new FM14SetParametersMessage(fmmc.federationId, fmmc.senderId, fmmc.receiverId,
+                fmmc.messageId, parameterMap);
+        Object[] fm14o = fm14.createObjectArray();
+        FM14SetParametersMessage fm14d = new FM14SetParametersMessage.Builder().setSimulationRunId(fmmc.federationId)
+                .setSenderId(fmmc.senderId).setReceiverId(fmmc.receiverId).setMessageId(fmmc.messageId)
+                .addParameter("EnergyParam", new Energy(1.67, EnergyUnit.GIGAWATT_HOUR)).addParameter("servers", 4)
+                .addParameter("name", "MM1").build();
+        testMessage(fm14, fm14o, fm14d, fmmc, "FM.14");
+        assertEquals(7, fm14.getNumberOfPayloadFields());
+        assertEquals(parameterMap, fm14.getParameterMap());
+        FM14SetParametersMessage fm14a = new FM14SetParametersMessage(Sim0MQMessage.decodeToArray(
+                new FM14SetParametersMessage.Builder().setSimulationRunId(fmmc.federationId).setSenderId(fmmc.senderId)
+                        .setReceiverId(fmmc.receiverId).setMessageId(fmmc.messageId)
+                        .addParameter("arrivals", new double[] {1.0, 2.5}).build().createByteArray()));
+        assertArrayEquals(new Double[] {1.0, 2.5}, (Object[]) fm14a.getParameterMap().get("arrivals"));
     }
 
     /**
@@ -218,6 +326,30 @@ public class TestMessageTypes
         assertEquals("started", fs2.getStatus());
         assertEquals((short) 5012, fs2.getModelPort());
         assertEquals("", fs2.getError());
+        assertEquals(Duration.ZERO, fs2.getEstimatedWait());
+        assertEquals("IDVV.12", fs2.getModelId());
+
+        FS2FederateStartedMessage fs2q = new FS2FederateStartedMessage(fsfm.federationId, fsfm.senderId, fsfm.receiverId,
+                fsfm.messageId, "IDVV.13", "queued", 0, "", new Duration(2.5, DurationUnit.SECOND));
+        Object[] fs2qo = fs2q.createObjectArray();
+        FS2FederateStartedMessage fs2qd = new FS2FederateStartedMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId).setInstanceId("IDVV.13")
+                .setStatus("queued").setModelPort(0).setError("").setEstimatedWait(new Duration(2.5, DurationUnit.SECOND))
+                .build();
+        testMessage(fs2q, fs2qo, fs2qd, fsfm, "FS.2");
+        assertEquals("queued", fs2q.getStatus());
+        assertEquals(new Duration(2.5, DurationUnit.SECOND), fs2q.getEstimatedWait());
+
+        FS2FederateStartedMessage fs2r = new FS2FederateStartedMessage(fsfm.federationId, fsfm.senderId, fsfm.receiverId,
+                fsfm.messageId, "IDVV.14", "started", 5013, "", Duration.ZERO, "IDVV.11");
+        Object[] fs2ro = fs2r.createObjectArray();
+        FS2FederateStartedMessage fs2rd = new FS2FederateStartedMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId).setInstanceId("IDVV.14")
+                .setStatus("started").setModelPort(5013).setError("").setModelId("IDVV.11").build();
+        testMessage(fs2r, fs2ro, fs2rd, fsfm, "FS.2");
+        assertEquals(6, fs2r.getNumberOfPayloadFields());
+        assertEquals("IDVV.14", fs2r.getInstanceId());
+        assertEquals("IDVV.11", fs2r.getModelId());
 
         FS3KillModelMessage fs3 = new FS3KillModelMessage(fsmc.federationId, fsmc.senderId, fsmc.receiverId, fsmc.messageId);
         Object[] fs3o = fs3.createObjectArray();
@@ -245,6 +377,64 @@ public class TestMessageTypes
         testMessage(fs5, fs5o, fs5d, fsfm, "FS.5");
         assertEquals(false, fs5.isStatus());
         assertEquals("", fs5.getError());
+
+        FS6FederateExitedMessage fs6 = new FS6FederateExitedMessage(fsfm.federationId, fsfm.senderId, fsfm.receiverId,
+                fsfm.messageId, "IDVV.12", 137, new Duration(12.5, DurationUnit.SECOND));
+        Object[] fs6o = fs6.createObjectArray();
+        FS6FederateExitedMessage fs6d = new FS6FederateExitedMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId).setInstanceId("IDVV.12")
+                .setExitCode(137).setRuntime(new Duration(12.5, DurationUnit.SECOND)).build();
+        testMessage(fs6, fs6o, fs6d, fsfm, "FS.6");
+        assertEquals("IDVV.12", fs6.getInstanceId());
+        assertEquals(137, fs6.getExitCode());
+        assertEquals(new Duration(12.5, DurationUnit.SECOND), fs6.getRuntime());
+
+        Long[] sampleTimes = new Long[] {1000L, 2000L, 3000L};
+        Double[] cpuLoad = new Double[] {0.0, 0.95, 1.5};
+        Long[] residentMemory = new Long[] {1L << 20, 1L << 24, 1L << 30};
+        Long[] readBytes = new Long[] {0L, 4096L, 8192L};
+        Long[] writeBytes = new Long[] {-1L, -1L, -1L};
+        FS7FederateStatisticsMessage fs7 = new FS7FederateStatisticsMessage(fsfm.federationId, fsfm.senderId,
+                fsfm.receiverId, fsfm.messageId, "IDVV.14", true, "", sampleTimes, cpuLoad, residentMemory, readBytes,
+                writeBytes);
+        Object[] fs7o = fs7.createObjectArray();
+        FS7FederateStatisticsMessage fs7d = new FS7FederateStatisticsMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId).setInstanceId("IDVV.14")
+                .setStatus(true).setError("").setSampleTimes(sampleTimes).setCpuLoad(cpuLoad)
+                .setResidentMemory(residentMemory).setReadBytes(readBytes).setWriteBytes(writeBytes).build();
+        testMessage(fs7, fs7o, fs7d, fsfm, "FS.7");
+        assertEquals("IDVV.14", fs7.getInstanceId());
+        assertEquals(true, fs7.isStatus());
+        assertArrayEquals(cpuLoad, fs7.getCpuLoad());
+        assertArrayEquals(residentMemory, fs7.getResidentMemory());
+
+        FS8FederateOutputMessage fs8 = new FS8FederateOutputMessage(fsfm.federationId, fsfm.senderId, fsfm.receiverId,
+                fsfm.messageId, "IDVV.14", "stdout", true, "", 123456L, "replication 3 finished\n");
+        Object[] fs8o = fs8.createObjectArray();
+        FS8FederateOutputMessage fs8d = new FS8FederateOutputMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId).setInstanceId("IDVV.14")
+                .setStream("stdout").setStatus(true).setError("").setTotalBytes(123456L)
+                .setOutput("replication 3 finished\n").build();
+        testMessage(fs8, fs8o, fs8d, fsfm, "FS.8");
+        assertEquals("stdout", fs8.getStream());
+        assertEquals(123456L, fs8.getTotalBytes());
+        assertEquals("replication 3 finished\n", fs8.getOutput());
+
+        FS9FederatesStartedMessage fs9d = new FS9FederatesStartedMessage.Builder().setSimulationRunId(fsfm.federationId)
+                .setSenderId(fsfm.senderId).setReceiverId(fsfm.receiverId).setMessageId(fsfm.messageId)
+                .addInstanceStatus("IDVV.14", "started", 5501, "").addInstanceStatus("IDVV.15", "queued", 0, "")
+                .addInstanceStatus("IDVV.16", "error", 0, "No free port number")
+                .addInstanceStatus("IDVV.17", "started", 5502, "", "IDVV.13").build();
+        FS9FederatesStartedMessage fs9 = new FS9FederatesStartedMessage(fsfm.federationId, fsfm.senderId, fsfm.receiverId,
+                fsfm.messageId, 4, fs9d.getInstanceStatusList());
+        Object[] fs9o = fs9.createObjectArray();
+        testMessage(fs9, fs9o, fs9d, fsfm, "FS.9");
+        assertEquals(21, fs9.getNumberOfPayloadFields());
+        assertEquals("queued", fs9.getInstanceStatusList().get(1).getStatus());
+        assertEquals(5501, fs9.getInstanceStatusList().get(0).getModelPort());
+        assertEquals("No free port number", fs9.getInstanceStatusList().get(2).getError());
+        assertEquals("IDVV.14", fs9.getInstanceStatusList().get(0).getModelId());
+        assertEquals("IDVV.13", fs9.getInstanceStatusList().get(3).getModelId());
     }
 
     /**
@@ -284,6 +474,19 @@ public class TestMessageTypes
         assertEquals(802L, mc2.getReplyToId());
         assertEquals(false, mc2.getStatus());
         assertEquals("Simulation model crashed", mc2.getError());
+        assertTrue(mc2.getFailureMap().isEmpty());
+
+        Map<String, String> failureMap = new LinkedHashMap<>();
+        failureMap.put("servers", "should be positive");
+        MC2AckNakMessage mc2f = new MC2AckNakMessage(mcfm.federationId, mcfm.senderId, mcfm.receiverId, mcfm.messageId, 804L,
+                false, "1 parameter could not be set", failureMap);
+        Object[] mc2fo = mc2f.createObjectArray();
+        MC2AckNakMessage mc2fd = new MC2AckNakMessage.Builder().setSimulationRunId(mcfm.federationId)
+                .setSenderId(mcfm.senderId).setReceiverId(mcfm.receiverId).setMessageId(mcfm.messageId).setReplyToId(804L)
+                .setStatus(false).setError("1 parameter could not be set").addFailure("servers", "should be positive").build();
+        testMessage(mc2f, mc2fo, mc2fd, mcfm, "MC.2");
+        assertEquals(6, mc2f.getNumberOfPayloadFields());
+        assertEquals(failureMap, mc2f.getFailureMap());
 
         MC3StatisticsMessage mc3 = new MC3StatisticsMessage(mcfm.federationId, mcfm.senderId, mcfm.receiverId, mcfm.messageId,
                 "ThroughputAvg", 80.56d);
@@ -305,6 +508,26 @@ public class TestMessageTypes
         assertEquals("ThroughputAvg", mc4.getVariableName());
         assertEquals("ThroughputAvg not known in the model", mc4.getError());
 
+        Map<String, Object> valueMap = new LinkedHashMap<>();
+        valueMap.put("queue1.length", 4.5d);
+        valueMap.put("queue1.waiting", new Duration(2.5, DurationUnit.MINUTE));
+        Map<String, String> errorMap = new LinkedHashMap<>();
+        errorMap.put("ThroughputAvg", "name");
+        MC5StatisticsListMessage mc5 = new MC5StatisticsListMessage(mcfm.federationId, mcfm.senderId, mcfm.receiverId,
+                mcfm.messageId, 803L, valueMap, errorMap);
+        Object[] mc5o = mc5.createObjectArray();
+        MC5StatisticsListMessage mc5d = new MC5StatisticsListMessage.Builder().setSimulationRunId(mcfm.federationId)
+                .setSenderId(mcfm.senderId).setReceiverId(mcfm.receiverId).setMessageId(mcfm.messageId).setReplyToId(803L)
+                .addValue("queue1.length", 4.5d).addValue("queue1.waiting", new Duration(2.5, DurationUnit.MINUTE))
+                .addError("ThroughputAvg", "name").build();
+        testMessage(mc5, mc5o, mc5d, mcfm, "MC.5");
+        assertEquals(803L, mc5.getReplyToId());
+        assertEquals(9, mc5.getNumberOfPayloadFields());
+        assertEquals(2, mc5.getNumberValues());
+        assertEquals(4.5d, mc5.getValueMap().get("queue1.length"));
+        assertEquals(new Duration(2.5, DurationUnit.MINUTE), mc5.getValueMap().get("queue1.waiting"));
+        assertEquals(errorMap, mc5.getErrorMap());
+
     }
 
     /**
@@ -475,8 +698,15 @@ public class TestMessageTypes
         {
             assertEquals(o1[i].getClass(),
                     o2[i].getClass(), "field " + i + ", expected class: " + o1[i].getClass() + ", actual class: " + o2[i].getClass());
-            assertEquals(o1[i], o2[i],
-                    "field " + i + ", expected value: " + o1[i].toString() + ", actual value: " + o2[i].toString());
+            if (o1[i] instanceof Object[])
+            {
+                assertArrayEquals((Object[]) o1[i], (Object[]) o2[i], "field " + i);
+            }
+            else
+            {
+                assertEquals(o1[i], o2[i],
+                        "field " + i + ", expected value: " + o1[i].toString() + ", actual value: " + o2[i].toString());
+            }
         }
     }
 }